@@ -1,6 +1,7 @@
 package com.echzny.playhls;
 
 import com.echzny.playhls.radiko.Radiko;
+import com.echzny.playhls.radiko.relay.RelayServer;
 import javafx.beans.value.WeakChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.ToggleButton;
@@ -12,6 +13,8 @@ import javafx.scene.media.MediaView;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Objects;
 
 @Slf4j
@@ -31,6 +34,26 @@ public class Controller {
   protected void initialize() {
     radiko = new Radiko();
 
+    try {
+      radiko.init();
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    }
+
+    // authToken は更新の度にプロキシへ反映し、再生開始時には取得済みのものを使う
+    val tokens = radiko.getClient().getTokens();
+    PlayHLS.getRadioProxySelector().attach(radiko.getClient());
+    tokens.getTokenAsync();
+
+    if (Config.RELAY_ENABLED) {
+      try {
+        new RelayServer(radiko.getStationRelay(),
+            new InetSocketAddress(Config.RELAY_PORT)).start();
+      } catch (IOException e) {
+        log.warn("could not start relay", e);
+      }
+    }
+
     button.setUserData("main");
     toggleGroup.selectedToggleProperty().addListener(new WeakChangeListener<>(
         (observable, oldValue, newValue) -> {
@@ -47,8 +70,6 @@ public class Controller {
 
             try {
               if (Objects.nonNull(newValue)) {
-                val proxy = PlayHLS.getRadioProxySelector();
-                proxy.setRadikoToken(radiko.getClient().getAuths().getToken());
                 val media = new Media(Config.HLS_URL);
 
                 player = new MediaPlayer(media);
@@ -0,0 +1,72 @@
+package com.echzny.playhls;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import lombok.NonNull;
+import lombok.val;
+import org.apache.logging.log4j.LogManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 画像を扱うユーティリティ群
+ * JavaFX と AWT のクラスを使うので core の Util から分けている
+ */
+public class Images {
+  /**
+   * DB へ保存するために image を byte array へ変換する
+   * @param image
+   * @return 変換後の byte array
+   */
+  public static byte[] bufferedImageToByteArray(@NonNull BufferedImage image) {
+    val output = new ByteArrayOutputStream();
+
+    try {
+      ImageIO.write(image, "png", output);
+
+      return output.toByteArray();
+    } catch (IOException e) {
+      LogManager.getLogger().error(e.getMessage(), e);
+
+      return null;
+    }
+  }
+
+  public static InputStream bufferedImageToInputStream(@NonNull BufferedImage image) {
+    return new ByteArrayInputStream(bufferedImageToByteArray(image));
+  }
+
+  public static byte[] imageToByteArray(@NonNull Image image) {
+    return bufferedImageToByteArray(SwingFXUtils.fromFXImage(image, null));
+  }
+
+  public static Image trimImageToSquare(@NonNull Image image) {
+    Double height = image.getHeight();
+    Double width = image.getWidth();
+    if (width > height) {
+      return new WritableImage(image.getPixelReader(),
+          (int) Math.round((width - height) / 2), 0,
+          height.intValue(), height.intValue());
+    } else {
+      return new WritableImage(image.getPixelReader(), 0,
+          (int) Math.round((height - width) / 2),
+          width.intValue(), width.intValue());
+    }
+  }
+
+  public static BufferedImage trimBufferedImageToSquare(@NonNull BufferedImage image) {
+    val height = image.getHeight();
+    val width = image.getWidth();
+    if (width > height) {
+      return image.getSubimage(Math.round((width - height) / 2), 0, height, height);
+    } else {
+      return image.getSubimage(0, Math.round((height - width) / 2), width, width);
+    }
+  }
+}
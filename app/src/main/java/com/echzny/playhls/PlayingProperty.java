@@ -0,0 +1,45 @@
+package com.echzny.playhls;
+
+import com.echzny.playhls.radiko.PlayableItem;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleBooleanProperty;
+import lombok.NonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * PlayableItem の再生中フラグを UI からバインドするための property
+ * どちらを変更してももう一方に反映する（Item 側の変更は JavaFX のスレッドで反映する）
+ * 不要になったら dispose して Item のリスナーを外すこと
+ */
+public class PlayingProperty extends SimpleBooleanProperty {
+  private final PlayableItem item;
+  private final Consumer<Boolean> listener = this::update;
+
+  /**
+   * コンストラクタ
+   * @param item 対象の Item
+   */
+  public PlayingProperty(@NonNull PlayableItem item) {
+    super(item, "playing", item.isPlaying());
+    this.item = item;
+
+    item.addPlayingListener(listener);
+    addListener((observable, oldValue, newValue) -> item.setPlaying(newValue));
+  }
+
+  /**
+   * Item のリスナーを外す
+   */
+  public void dispose() {
+    item.removePlayingListener(listener);
+  }
+
+  private void update(Boolean value) {
+    if (Platform.isFxApplicationThread()) {
+      set(value);
+    } else {
+      Platform.runLater(() -> set(value));
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.echzny.playhls;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * ベンチマーク用に記録したサンプル（src/jmh/resources）を読み込む
+ */
+public final class Samples {
+  private Samples() {
+  }
+
+  /**
+   * クラスパス上のサンプルを読み込む
+   * @param name "/radiko/weekly-TBS.xml" など
+   * @return
+   */
+  public static byte[] read(@NonNull String name) {
+    try (val in = Samples.class.getResourceAsStream(name)) {
+      if (Objects.isNull(in)) {
+        throw new IllegalArgumentException("sample not found: " + name);
+      }
+
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.echzny.playhls.proxy;
+
+import com.echzny.playhls.Samples;
+import com.echzny.playhls.hls.Playlist;
+import com.echzny.playhls.hls.PlaylistParser;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * プロキシで 1 リクエストごとに行う処理（ヘッダーの付加、URI の変換、m3u8 の書き換え）のベンチマーク
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RadikoHttpFiltersBenchmark {
+  private static final String PREFIX = "http://127.0.0.1:3000/";
+  private static final Route ROUTE = new Route("f-radiko.smartstream.ne.jp",
+      "TBS", () -> "0123456789abcdefghijklmnopqrstuv");
+
+  private String segmentUri;
+  private String proxiedSegmentUri;
+  private URI livePlaylistUri;
+  private URI timeFreePlaylistUri;
+  private byte[] livePlaylist;
+  private byte[] timeFreePlaylist;
+
+  @Setup
+  public void setup() {
+    livePlaylist = Samples.read("/hls/live.m3u8");
+    timeFreePlaylist = Samples.read("/hls/timefree.m3u8");
+    livePlaylistUri = URI.create("http://f-radiko.smartstream.ne.jp/TBS/"
+        + "_definst_/simul-stream.stream/chunklist_w1234567890.m3u8");
+    timeFreePlaylistUri = URI.create(
+        "http://radiko.jp/v2/api/ts/playlist.m3u8?station_id=TBS");
+    segmentUri = "http://f-radiko.smartstream.ne.jp/TBS/_definst_/"
+        + "simul-stream.stream/media_w1234567890_123456.aac";
+
+    val rewriter = new PlaylistRewriter(PREFIX, livePlaylistUri);
+    val rewritten = rewriter.rewrite(Unpooled.wrappedBuffer(livePlaylist));
+    rewritten.writeBytes(rewriter.finish());
+    proxiedSegmentUri = "/" + rewritten.toString(StandardCharsets.UTF_8)
+        .lines()
+        .filter(line -> line.startsWith(PREFIX))
+        .findFirst().orElseThrow().substring(PREFIX.length());
+  }
+
+  /**
+   * セグメントへのリクエストにヘッダーを付加する
+   */
+  @Benchmark
+  public HttpHeaders applySegmentRequestHeaders() {
+    val request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+        segmentUri);
+    RadikoHttpFilters.applyRequestHeaders(request.headers(), false, ROUTE);
+
+    return request.headers();
+  }
+
+  /**
+   * プロキシ経由に書き換えた URI を上流の URI に戻す
+   */
+  @Benchmark
+  public String toUpstreamUri() {
+    return PlaylistRewriter.toUpstreamUri(proxiedSegmentUri);
+  }
+
+  /**
+   * ライブの m3u8（6 セグメント）を書き換える
+   */
+  @Benchmark
+  public int rewriteLivePlaylist() {
+    return rewrite(livePlaylistUri, livePlaylist);
+  }
+
+  /**
+   * タイムフリーの m3u8（1 時間、720 セグメント）を書き換える
+   */
+  @Benchmark
+  public int rewriteTimeFreePlaylist() {
+    return rewrite(timeFreePlaylistUri, timeFreePlaylist);
+  }
+
+  /**
+   * タイムフリーの m3u8 を解析する
+   */
+  @Benchmark
+  public Playlist parseTimeFreePlaylist() {
+    return PlaylistParser.parse(timeFreePlaylist);
+  }
+
+  private static int rewrite(URI uri, byte[] body) {
+    val rewriter = new PlaylistRewriter(PREFIX, uri);
+    val out = rewriter.rewrite(Unpooled.wrappedBuffer(body));
+    out.writeBytes(rewriter.finish());
+    val length = out.readableBytes();
+    out.release();
+
+    return length;
+  }
+}
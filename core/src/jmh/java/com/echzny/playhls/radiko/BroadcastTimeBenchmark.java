@@ -0,0 +1,72 @@
+package com.echzny.playhls.radiko;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 放送日・29 時間制の時刻の変換と、チャンネル ID の分解のベンチマーク
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastTimeBenchmark {
+  private LocalDateTime lateNight;
+  private LocalTime lateNightTime;
+  private String timestamp;
+  private Program program;
+  private Program programWithoutParts;
+
+  @Setup
+  public void setup() {
+    lateNight = LocalDateTime.of(2021, 2, 2, 1, 30);
+    lateNightTime = lateNight.toLocalTime();
+    timestamp = "20210202013000";
+    program = new Program("1001", "TBS:JP13:radiko", "TBSラジオ", "番組",
+        null, null, null, null, null, lateNight, lateNight.plusHours(2), null);
+    // 分解できないチャンネル ID は getter のたびに split する
+    programWithoutParts = new Program("1002", "TBS:JP13:unknown", "TBSラジオ",
+        "番組", null, null, null, null, null, lateNight,
+        lateNight.plusHours(2), null);
+  }
+
+  @Benchmark
+  public String localDateTimeTo29HString() {
+    return Util.localDateTimeTo29HString(lateNight);
+  }
+
+  @Benchmark
+  public String toOnAirDateString() {
+    return Util.toOnAirDateString(lateNight);
+  }
+
+  @Benchmark
+  public int localTimeTo29HMin() {
+    return Util.localTimeTo29HMin(lateNightTime);
+  }
+
+  @Benchmark
+  public long parseRadikoTimestamp() {
+    return BroadcastTime.parseRadikoTimestamp(timestamp);
+  }
+
+  @Benchmark
+  public String programStartTimeString() {
+    return program.getStartTimeString();
+  }
+
+  @Benchmark
+  public String getChannelCode() {
+    return program.getChannelCode();
+  }
+
+  @Benchmark
+  public String[] getSplitedChannelId() {
+    return programWithoutParts.getSplitedChannelId();
+  }
+}
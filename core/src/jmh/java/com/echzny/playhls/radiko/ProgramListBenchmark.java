@@ -0,0 +1,84 @@
+package com.echzny.playhls.radiko;
+
+import com.echzny.playhls.Samples;
+import lombok.val;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1 週間分の番組表（weekly-TBS.xml）から番組一覧を作る処理のベンチマーク
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramListBenchmark {
+  private byte[] xml;
+  private Channel channel;
+  private Radiko radiko;
+  private Elements stations;
+  private Elements progs;
+
+  @Setup
+  public void setup() throws IOException {
+    xml = Samples.read("/radiko/weekly-TBS.xml");
+    channel = new Channel("TBS", "TBSラジオ", "JP13:radiko");
+    radiko = new Radiko(Files.createTempDirectory("playhls-jmh"));
+
+    val doc = Jsoup.parse(new String(xml, StandardCharsets.UTF_8), "",
+        Parser.xmlParser());
+    stations = doc.getElementsByTag("station");
+    progs = doc.getElementsByTag("prog");
+  }
+
+  /**
+   * 解析済みの prog 要素 1 件ずつから Program を作る
+   */
+  @Benchmark
+  public void parserProgram(Blackhole bh) {
+    for (Element el : progs) {
+      bh.consume(com.echzny.playhls.radiko.Parser.program(el, channel));
+    }
+  }
+
+  /**
+   * 解析済みの DOM から番組一覧を作る
+   */
+  @Benchmark
+  public List<Program> elementsToProgramList() {
+    return radiko.elementsToProgramList(stations, channel);
+  }
+
+  /**
+   * Jsoup で DOM を作ってから番組一覧を作る（レスポンスの受信後にかかる全体）
+   */
+  @Benchmark
+  public List<Program> parseDocumentToProgramList() {
+    val doc = Jsoup.parse(new String(xml, StandardCharsets.UTF_8), "",
+        Parser.xmlParser());
+
+    return radiko.elementsToProgramList(doc.getElementsByTag("station"),
+        channel);
+  }
+
+  /**
+   * DOM を作らずにストリームから番組一覧を作る
+   */
+  @Benchmark
+  public List<Program> streamToProgramList() throws IOException {
+    return radiko.streamToProgramList(new ByteArrayInputStream(xml), channel);
+  }
+}
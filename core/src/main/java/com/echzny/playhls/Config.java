@@ -0,0 +1,34 @@
+package com.echzny.playhls;
+
+import java.time.Duration;
+
+public class Config {
+  public static final int PROXY_PORT = 3000;
+  // プロキシの計測値をテキストで返すポート（ループバックのみ）
+  public static final int METRICS_PORT = 3001;
+  // 放送を複数の聴取者へ中継するポート（全てのインターフェースで待ち受ける）
+  public static final boolean RELAY_ENABLED = false;
+  public static final int RELAY_PORT = 3002;
+  // ヘッドレスのサーバーで番組表・録音予約の API を提供するポート（ループバックのみ）
+  public static final int API_PORT = 3003;
+  /*public static final String HOST_NAME = "radio-stream.nhk.jp";
+  public static final String HLS_URL =
+      "http://" + HOST_NAME + "/hls/live/2023545/nhkradiruikr1/master.m3u8";*/
+  public static final String HOST_NAME = "f-radiko.smartstream.ne.jp";
+  public static final String HLS_URL =
+      "http://" + HOST_NAME + "/TBS/_definst_/simul-stream.stream/playlist.m3u8";
+
+  // HLS セグメントのキャッシュ
+  public static final long SEGMENT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+  public static final Duration SEGMENT_CACHE_MAX_AGE = Duration.ofMinutes(5);
+  public static final Duration SEGMENT_CACHE_STALE_IF_ERROR = Duration.ofSeconds(30);
+
+  // m3u8 のキャッシュ（同じ m3u8 へのリクエストを上流への 1 回の取得にまとめる）
+  public static final double PLAYLIST_CACHE_TTL_RATIO = 0.5;      // TARGETDURATION に対する割合
+  public static final Duration PLAYLIST_CACHE_DEFAULT_TTL = Duration.ofSeconds(2);
+  public static final Duration PLAYLIST_CACHE_FETCH_TIMEOUT = Duration.ofSeconds(10);
+
+  // 再生中のライブの m3u8 の先読み（プレーヤーからのリクエストが無くなったら取得をやめる）
+  public static final Duration LIVE_POLLER_IDLE_TIMEOUT = Duration.ofSeconds(30);
+  public static final Duration LIVE_POLLER_FETCH_TIMEOUT = Duration.ofSeconds(10);
+}
@@ -0,0 +1,135 @@
+package com.echzny.playhls;
+
+import com.echzny.playhls.concurrent.Workers;
+import com.echzny.playhls.proxy.LivePoller;
+import com.echzny.playhls.proxy.MetricsEndpoint;
+import com.echzny.playhls.proxy.PlaylistCache;
+import com.echzny.playhls.proxy.ProxyMetrics;
+import com.echzny.playhls.proxy.RadikoHttpFilters;
+import com.echzny.playhls.proxy.Route;
+import com.echzny.playhls.proxy.RoutingTable;
+import com.echzny.playhls.proxy.SegmentCache;
+import com.echzny.playhls.radiko.client.Client;
+import com.echzny.playhls.radiko.client.Tokens;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+@Slf4j
+public class RadioProxySelector extends ProxySelector {
+  private final ProxySelector defaultSelector;
+  @Setter private volatile String radikoToken = "";
+  // プロキシ経由の取得も authToken の利用として数え、再生中は期限前の更新を続けさせる
+  private volatile Tokens tokens;
+  @Getter private final SegmentCache segmentCache = new SegmentCache(
+      Config.SEGMENT_CACHE_MAX_BYTES, Config.SEGMENT_CACHE_MAX_AGE,
+      Config.SEGMENT_CACHE_STALE_IF_ERROR);
+  @Getter private final PlaylistCache playlistCache = new PlaylistCache(
+      Config.PLAYLIST_CACHE_TTL_RATIO, Config.PLAYLIST_CACHE_DEFAULT_TTL,
+      Config.PLAYLIST_CACHE_FETCH_TIMEOUT);
+  // 再生中のライブの m3u8 を取得し続け、新しいセグメントをキャッシュへ先読みする
+  @Getter private final LivePoller livePoller = new LivePoller(segmentCache,
+      playlistCache, getProxyPrefix(), Config.LIVE_POLLER_IDLE_TIMEOUT,
+      Config.LIVE_POLLER_FETCH_TIMEOUT);
+  @Getter private final ProxyMetrics metrics = new ProxyMetrics();
+  // プロキシを経由させるホスト（解決したストリームの URL から実行中に追加する）
+  @Getter private final RoutingTable routes = new RoutingTable(this::getRadikoToken);
+  // routes に無いホスト（m3u8 から辿ったセグメントの配信元など）に使う
+  private final Route defaultRoute = routes.newRoute(Config.HOST_NAME, "default");
+
+  public RadioProxySelector(ProxySelector defaultSelector) {
+    this.defaultSelector = defaultSelector;
+    routes.put(defaultRoute);
+    metrics.register();
+    Workers.shared().execute(() -> {
+      try {
+        DefaultHttpProxyServer.bootstrap()
+            .withPort(Config.PROXY_PORT)
+            .withFiltersSource(new HttpFiltersSourceAdapter() {
+              public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                return new RadikoHttpFilters(originalRequest, ctx, routes,
+                    defaultRoute, segmentCache, playlistCache, livePoller, metrics,
+                    getProxyPrefix());
+              }
+            })
+            .start();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+
+      try {
+        new MetricsEndpoint(metrics, Config.METRICS_PORT).start();
+      } catch (IOException e) {
+        log.warn("could not start metrics endpoint", e);
+      }
+    });
+  }
+
+  public RadioProxySelector() {
+    this(ProxySelector.getDefault());
+  }
+
+  /**
+   * m3u8 内の URI の書き換え先となる、ローカルのプロキシの URL
+   * @return
+   */
+  public static String getProxyPrefix() {
+    return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+        + Config.PROXY_PORT + "/";
+  }
+
+  /**
+   * プロキシが upstream へ付ける authToken
+   * @return
+   */
+  private String getRadikoToken() {
+    val tokens = this.tokens;
+
+    if (Objects.isNull(tokens)) {
+      return radikoToken;
+    }
+
+    return tokens.peekToken().orElse(radikoToken);
+  }
+
+  /**
+   * radiko のクライアントが取得した authToken をプロキシへ反映し、
+   * 解決したストリームの URL のホストをプロキシ経由にする（放送局を切り替えても再起動は不要）
+   * @param client
+   */
+  public void attach(@NonNull Client client) {
+    tokens = client.getTokens();
+    tokens.addListener(this::setRadikoToken);
+    client.getStations().addStreamUrlListener(
+        (stationId, uri) -> routes.register(uri, stationId));
+    client.getTimeFrees().addM3U8Listener(
+        (channelCode, uri) -> routes.register(uri, channelCode));
+  }
+
+  public List<Proxy> select(URI uri) {
+    if (routes.contains(uri.getHost())) {
+      val proxy = new Proxy(Proxy.Type.HTTP,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), Config.PROXY_PORT));
+      return Arrays.asList(proxy);
+    } else {
+      return defaultSelector.select(uri);
+    }
+  }
+
+  public void connectFailed(URI uri, SocketAddress sa, IOException ioe) {
+    ioe.printStackTrace();
+  }
+}
@@ -0,0 +1,258 @@
+package com.echzny.playhls.concurrent;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 1 件のジョブ（録音・ダウンロードなど）から派生したタスクをまとめて扱う
+ * cancel するとまだ終わっていない子タスクをすべて中止し、以降のタスクは受け付けない
+ * 同時に実行する子タスクの数はジョブごとのセマフォで制限し、空きを待つ子タスクはキューに積んでおく
+ */
+@Slf4j
+public class JobScope implements AutoCloseable {
+  @Getter private final String name;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  private final Set<CompletableFuture<?>> children = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled = false;
+
+  /**
+   * コンストラクタ
+   * @param name           ジョブ名（ログ用）
+   * @param maxConcurrency 同時に実行する子タスクの上限
+   */
+  public JobScope(@NonNull String name, int maxConcurrency) {
+    this(name, maxConcurrency, Workers.shared());
+  }
+
+  /**
+   * コンストラクタ
+   * @param name           ジョブ名（ログ用）
+   * @param maxConcurrency 同時に実行する子タスクの上限
+   * @param executor       子タスクを実行する executor
+   */
+  public JobScope(@NonNull String name, int maxConcurrency,
+                  @NonNull ExecutorService executor) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be positive");
+    }
+
+    this.name = name;
+    this.executor = executor;
+    this.permits = new Semaphore(maxConcurrency);
+  }
+
+  /**
+   * 子タスクとして実行する
+   * 上限に達している場合はキューで空きを待ち、空いてから executor へ渡す（待機中のタスクはスレッドを使わない）
+   * @param task
+   * @param <T>
+   * @return cancel すると実行中のタスクに割り込む
+   */
+  public <T> CompletableFuture<T> fork(@NonNull Callable<T> task) {
+    val result = new CompletableFuture<T>();
+
+    enqueue(result, () -> {
+      val future = executor.submit(() -> {
+        try {
+          if (!result.isDone()) {
+            result.complete(task.call());
+          }
+        } catch (InterruptedException e) {
+          result.cancel(false);
+        } catch (Throwable e) {
+          result.completeExceptionally(e);
+        }
+      });
+
+      result.whenComplete((v, e) -> {
+        if (result.isCancelled()) {
+          future.cancel(true);
+        }
+      });
+    });
+
+    return result;
+  }
+
+  /**
+   * 非同期処理を子タスクとして実行する
+   * 上限に達している場合はキューで空きを待ち、空いてから task を呼び出す
+   * 枠は task の返した future が終わるまで使う（待機にスレッドは使わない）
+   * @param task 非同期処理を始める（呼び出し元のスレッドで呼ぶので、すぐに戻ること）
+   * @param <T>
+   * @return cancel すると task の返した future も cancel する
+   */
+  public <T> CompletableFuture<T> forkAsync(
+      @NonNull Supplier<CompletableFuture<T>> task) {
+    val result = new CompletableFuture<T>();
+
+    enqueue(result, () -> {
+      val future = task.get();
+
+      future.whenComplete((v, e) -> {
+        if (Objects.nonNull(e)) {
+          result.completeExceptionally(e);
+        } else {
+          result.complete(v);
+        }
+      });
+      result.whenComplete((v, e) -> {
+        if (result.isCancelled()) {
+          future.cancel(false);
+        }
+      });
+    });
+
+    return result;
+  }
+
+  /**
+   * 子タスクを待ち行列に入れ、空きがあれば始める
+   * 枠は result が終わった時点で返す
+   * @param result 子タスクの結果
+   * @param start  子タスクを始める処理
+   */
+  private void enqueue(CompletableFuture<?> result, Runnable start) {
+    if (cancelled) {
+      result.cancel(false);
+      return;
+    }
+
+    register(result);
+    pending.add(() -> {
+      if (result.isDone() || cancelled) {
+        // 待機中に cancel された
+        result.cancel(false);
+        permits.release();
+        return;
+      }
+
+      result.whenComplete((v, e) -> {
+        permits.release();
+        drain();
+      });
+
+      try {
+        start.run();
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    drain();
+  }
+
+  /**
+   * 空いている枠の分だけ待機中の子タスクを始める
+   * 子タスクの終了から呼ばれても再帰しないよう、処理中のスレッドがあればそちらに任せる
+   */
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      while (!pending.isEmpty() && permits.tryAcquire()) {
+        val next = pending.poll();
+
+        if (Objects.isNull(next)) {
+          permits.release();
+          break;
+        }
+
+        next.run();
+      }
+    } while (drainRequests.decrementAndGet() != 0);
+  }
+
+  /**
+   * 非同期処理を子タスクとして登録する
+   * スコープが cancel されると登録した future も cancel する
+   * @param future
+   * @param <T>
+   * @return 引数の future
+   */
+  public <T> CompletableFuture<T> track(@NonNull CompletableFuture<T> future) {
+    register(future);
+
+    return future;
+  }
+
+  private void register(CompletableFuture<?> child) {
+    children.add(child);
+    child.whenComplete((v, e) -> children.remove(child));
+
+    // 登録中に cancel された場合
+    if (cancelled) {
+      child.cancel(false);
+    }
+  }
+
+  /**
+   * 子タスクをすべて中止する
+   */
+  public void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+
+    val count = children.size();
+
+    for (val child : children) {
+      child.cancel(false);
+    }
+    // 待機中の子タスクを捨てる
+    drain();
+
+    if (count > 0) {
+      log.debug("cancelled " + name + ", children: " + count);
+    }
+  }
+
+  /**
+   * 中止したか確認する
+   * @return
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * 実行中・待機中の子タスクの数
+   * @return
+   */
+  public int getActiveCount() {
+    return children.size();
+  }
+
+  /**
+   * 残っている子タスクを中止する
+   */
+  @Override
+  public void close() {
+    cancel();
+  }
+
+  /**
+   * 指定した future が終わったら（cancel を含む）このスコープを中止する
+   * @param owner ジョブ全体の結果
+   * @return this
+   */
+  public JobScope bindTo(@NonNull CompletableFuture<?> owner) {
+    owner.whenComplete((v, e) -> cancel());
+
+    return this;
+  }
+}
@@ -0,0 +1,63 @@
+package com.echzny.playhls.concurrent;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 同じキーの処理が実行中の間は新たに実行せず、実行中の処理の結果を共有する
+ * 完了した時点でキーを外すので、結果はキャッシュしない
+ * @param <K> キー
+ * @param <V> 結果
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight
+      = new ConcurrentHashMap<>();
+
+  /**
+   * 同じキーの処理が実行中であればその結果を、無ければ supplier を実行した結果を返す
+   * 返す future は呼び出し元ごとのコピーなので、cancel しても他の呼び出し元には影響しない
+   * @param key      処理を一意に表すキー
+   * @param supplier 処理を開始して結果の future を返す
+   * @return
+   */
+  public CompletableFuture<V> run(@NonNull K key,
+                                  @NonNull Supplier<CompletableFuture<V>> supplier) {
+    val created = new CompletableFuture<V>();
+    val running = inFlight.putIfAbsent(key, created);
+
+    if (Objects.nonNull(running)) {
+      return running.copy();
+    }
+
+    try {
+      supplier.get().whenComplete((value, e) -> {
+        // 完了後に来た呼び出しは新たに実行させる
+        inFlight.remove(key, created);
+
+        if (Objects.nonNull(e)) {
+          created.completeExceptionally(e);
+        } else {
+          created.complete(value);
+        }
+      });
+    } catch (RuntimeException e) {
+      inFlight.remove(key, created);
+      created.completeExceptionally(e);
+    }
+
+    return created.copy();
+  }
+
+  /**
+   * 実行中の処理の数
+   * @return
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,100 @@
+package com.echzny.playhls.concurrent;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 録音・ダウンロード・プレイリストの取得などのジョブを動かすスレッド
+ * 仮想スレッドが使える JVM では 1 タスクごとに仮想スレッドを作り、
+ * 使えない場合は必要に応じて増減するデーモンスレッドのプールで代用する
+ * 同時実行数の制限はスレッド数ではなく JobScope のセマフォで行う（空きを待つタスクは executor へ渡さない）
+ */
+@Slf4j
+public final class Workers {
+  private static final long IDLE_SECONDS = 60;
+  private static final ExecutorService SHARED = newExecutor("worker");
+
+  private Workers() {
+  }
+
+  /**
+   * 共有の executor
+   * @return
+   */
+  public static ExecutorService shared() {
+    return SHARED;
+  }
+
+  /**
+   * 仮想スレッドが使えるか確認する
+   * @return
+   */
+  public static boolean isVirtual() {
+    return VirtualThreads.OF_VIRTUAL != null;
+  }
+
+  /**
+   * 1 タスクごとにスレッドを割り当てる executor を作る
+   * @param name スレッド名の接頭辞
+   * @return
+   */
+  public static ExecutorService newExecutor(@NonNull String name) {
+    if (isVirtual()) {
+      try {
+        return VirtualThreads.newExecutor(name);
+      } catch (ReflectiveOperationException e) {
+        log.warn("could not create virtual thread executor, fall back to platform threads", e);
+      }
+    }
+
+    val count = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      val thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_SECONDS,
+        TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+  }
+
+  /**
+   * 仮想スレッドの API（Java 21 以降）をリフレクションで呼び出す
+   * ビルドは Java 11 を対象にしているため直接は参照しない
+   */
+  private static class VirtualThreads {
+    private static final Method OF_VIRTUAL = find();
+
+    private static Method find() {
+      try {
+        return Thread.class.getMethod("ofVirtual");
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+
+    static ExecutorService newExecutor(String name)
+        throws ReflectiveOperationException {
+      val builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, name + "-", 1L);
+      val factory = (ThreadFactory) builderClass.getMethod("factory")
+          .invoke(builder);
+
+      return (ExecutorService) Executors.class
+          .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+          .invoke(null, factory);
+    }
+  }
+}
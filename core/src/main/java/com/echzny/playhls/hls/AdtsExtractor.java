@@ -0,0 +1,231 @@
+package com.echzny.playhls.hls;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * HLS のセグメントから ADTS のフレームだけを取り出す（デコードはしない）
+ * ID3 タグの付いた AAC（packed audio）と、AAC を格納した MPEG-TS に対応する
+ * 取り出したフレームを繋げると、そのまま 1 本の AAC のストリームとして再生できる
+ */
+public class AdtsExtractor {
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_SYNC_BYTE = 0x47;
+  private static final int STREAM_TYPE_ADTS = 0x0F;
+  private static final int ID3_HEADER_SIZE = 10;
+  private static final int ADTS_HEADER_SIZE = 7;
+
+  private AdtsExtractor() {
+  }
+
+  /**
+   * セグメントから ADTS のフレームを取り出す
+   * 途中で切れたフレームや、ADTS 以外のデータは捨てる
+   * @param segment セグメント
+   * @return ADTS のフレームを繋げたもの
+   */
+  public static byte[] extract(@NonNull byte[] segment) {
+    if (isTransportStream(segment)) {
+      return frames(demux(segment));
+    }
+
+    return frames(segment);
+  }
+
+  /**
+   * MPEG-TS か確認する
+   * @param data
+   * @return
+   */
+  public static boolean isTransportStream(@NonNull byte[] data) {
+    return data.length >= TS_PACKET_SIZE
+        && (data[0] & 0xFF) == TS_SYNC_BYTE
+        && (data.length < TS_PACKET_SIZE * 2
+        || (data[TS_PACKET_SIZE] & 0xFF) == TS_SYNC_BYTE);
+  }
+
+  /**
+   * ADTS のフレームだけを残す
+   * 連続するフレームはまとめて書き出す
+   */
+  private static byte[] frames(byte[] data) {
+    val out = new ByteArrayOutputStream(data.length);
+    int pos = 0;
+    int runStart = -1;    // 書き出していない連続したフレームの先頭
+
+    while (pos + ADTS_HEADER_SIZE <= data.length) {
+      val length = adtsFrameLength(data, pos);
+
+      if (length > 0 && pos + length <= data.length) {
+        if (runStart < 0) {
+          runStart = pos;
+        }
+        pos += length;
+        continue;
+      }
+
+      if (runStart >= 0) {
+        out.write(data, runStart, pos - runStart);
+        runStart = -1;
+      }
+
+      if (length > 0) {
+        // 最後のフレームが途中で切れている
+        break;
+      }
+
+      val id3 = id3TagSize(data, pos);
+      pos += id3 > 0 ? id3 : 1;
+    }
+
+    if (runStart >= 0) {
+      out.write(data, runStart, pos - runStart);
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * ADTS のヘッダーであればフレームの長さを返す
+   * @return フレームの長さ（ADTS のヘッダーでない場合は 0）
+   */
+  private static int adtsFrameLength(byte[] data, int pos) {
+    // syncword 0xFFF、layer 00
+    if ((data[pos] & 0xFF) != 0xFF || (data[pos + 1] & 0xF6) != 0xF0) {
+      return 0;
+    }
+
+    val length = ((data[pos + 3] & 0x03) << 11)
+        | ((data[pos + 4] & 0xFF) << 3)
+        | ((data[pos + 5] & 0xE0) >> 5);
+
+    return length >= ADTS_HEADER_SIZE ? length : 0;
+  }
+
+  /**
+   * ID3v2 タグであればタグ全体の長さを返す
+   * @return タグの長さ（ID3v2 タグでない場合は 0）
+   */
+  private static int id3TagSize(byte[] data, int pos) {
+    if (pos + ID3_HEADER_SIZE > data.length
+        || data[pos] != 'I' || data[pos + 1] != 'D' || data[pos + 2] != '3') {
+      return 0;
+    }
+
+    // サイズは 7bit ずつの synchsafe integer
+    val size = ((data[pos + 6] & 0x7F) << 21)
+        | ((data[pos + 7] & 0x7F) << 14)
+        | ((data[pos + 8] & 0x7F) << 7)
+        | (data[pos + 9] & 0x7F);
+    val footer = (data[pos + 5] & 0x10) != 0;
+
+    return ID3_HEADER_SIZE + size + (footer ? ID3_HEADER_SIZE : 0);
+  }
+
+  /**
+   * MPEG-TS から ADTS の音声の PES のペイロードを取り出す
+   * PAT・PMT は 1 パケットに収まっているものとする
+   */
+  private static byte[] demux(byte[] ts) {
+    val out = new ByteArrayOutputStream(ts.length);
+    int pmtPid = -1;
+    int audioPid = -1;
+
+    for (int packet = 0; packet + TS_PACKET_SIZE <= ts.length;
+         packet += TS_PACKET_SIZE) {
+      if ((ts[packet] & 0xFF) != TS_SYNC_BYTE) {
+        continue;
+      }
+
+      val unitStart = (ts[packet + 1] & 0x40) != 0;
+      val pid = ((ts[packet + 1] & 0x1F) << 8) | (ts[packet + 2] & 0xFF);
+      val adaptation = (ts[packet + 3] >> 4) & 0x03;
+      int pos = packet + 4;
+      val end = packet + TS_PACKET_SIZE;
+
+      if ((adaptation & 0x01) == 0) {
+        continue;   // ペイロード無し
+      }
+      if ((adaptation & 0x02) != 0) {
+        pos += 1 + (ts[pos] & 0xFF);
+      }
+      if (pos >= end) {
+        continue;
+      }
+
+      if (pid == 0 && unitStart && pmtPid < 0) {
+        pmtPid = parsePat(ts, pos + 1 + (ts[pos] & 0xFF), end);
+      } else if (pid == pmtPid && unitStart && audioPid < 0) {
+        audioPid = parsePmt(ts, pos + 1 + (ts[pos] & 0xFF), end);
+      } else if (pid == audioPid) {
+        if (unitStart) {
+          // PES ヘッダー（start code 00 00 01 から PES_header_data_length まで 9 バイト）を飛ばす
+          if (pos + 9 > end || ts[pos] != 0 || ts[pos + 1] != 0
+              || ts[pos + 2] != 1) {
+            continue;
+          }
+          pos += 9 + (ts[pos + 8] & 0xFF);
+        }
+        if (pos < end) {
+          out.write(ts, pos, end - pos);
+        }
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * PAT から最初の番組の PMT の PID を取得する
+   * @return PID（見つからない場合は -1）
+   */
+  private static int parsePat(byte[] ts, int pos, int end) {
+    if (pos + 8 > end) {
+      return -1;
+    }
+
+    val sectionLength = ((ts[pos + 1] & 0x0F) << 8) | (ts[pos + 2] & 0xFF);
+    // CRC32 の 4 バイトを除く
+    val last = Math.min(pos + 3 + sectionLength - 4, end);
+
+    for (int i = pos + 8; i + 4 <= last; i += 4) {
+      val program = ((ts[i] & 0xFF) << 8) | (ts[i + 1] & 0xFF);
+
+      if (program != 0) {   // 0 は NIT
+        return ((ts[i + 2] & 0x1F) << 8) | (ts[i + 3] & 0xFF);
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * PMT から ADTS の音声の PID を取得する
+   * @return PID（見つからない場合は -1）
+   */
+  private static int parsePmt(byte[] ts, int pos, int end) {
+    if (pos + 12 > end) {
+      return -1;
+    }
+
+    val sectionLength = ((ts[pos + 1] & 0x0F) << 8) | (ts[pos + 2] & 0xFF);
+    val programInfoLength = ((ts[pos + 10] & 0x0F) << 8)
+        | (ts[pos + 11] & 0xFF);
+    val last = Math.min(pos + 3 + sectionLength - 4, end);
+
+    for (int i = pos + 12 + programInfoLength; i + 5 <= last; ) {
+      val streamType = ts[i] & 0xFF;
+      val pid = ((ts[i + 1] & 0x1F) << 8) | (ts[i + 2] & 0xFF);
+      val infoLength = ((ts[i + 3] & 0x0F) << 8) | (ts[i + 4] & 0xFF);
+
+      if (streamType == STREAM_TYPE_ADTS) {
+        return pid;
+      }
+      i += 5 + infoLength;
+    }
+
+    return -1;
+  }
+}
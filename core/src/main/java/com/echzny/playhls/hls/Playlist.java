@@ -0,0 +1,148 @@
+package com.echzny.playhls.hls;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * m3u8 の解析結果
+ * URI は行ごとに String を作らず、1 つの byte 配列に詰めてオフセットで管理する
+ */
+public class Playlist {
+  @Getter private int targetDuration = -1;     // #EXT-X-TARGETDURATION (秒)
+  @Getter private long mediaSequence = 0;      // #EXT-X-MEDIA-SEQUENCE
+  @Getter private boolean endList = false;     // #EXT-X-ENDLIST
+
+  private byte[] uris = new byte[1024];
+  private int urisLength = 0;
+
+  @Getter private int segmentCount = 0;
+  private int[] segmentDurations = new int[8]; // ミリ秒
+  private int[] segmentUriOffsets = new int[8];
+  private int[] segmentUriLengths = new int[8];
+
+  @Getter private int variantCount = 0;
+  private long[] variantBandwidths = new long[2];
+  private int[] variantUriOffsets = new int[2];
+  private int[] variantUriLengths = new int[2];
+
+  /**
+   * マスタープレイリスト（#EXT-X-STREAM-INF を含む）か確認する
+   * @return
+   */
+  public boolean isMaster() {
+    return variantCount > 0;
+  }
+
+  /**
+   * セグメントの長さ（ミリ秒）を取得する
+   * @param index
+   * @return
+   */
+  public int getSegmentDurationMillis(int index) {
+    checkIndex(index, segmentCount);
+    return segmentDurations[index];
+  }
+
+  /**
+   * セグメントのメディアシーケンス番号を取得する
+   * @param index
+   * @return
+   */
+  public long getSegmentSequence(int index) {
+    checkIndex(index, segmentCount);
+    return mediaSequence + index;
+  }
+
+  /**
+   * セグメントの URI を取得する（プレイリストに書かれたまま、相対 URI は解決しない）
+   * @param index
+   * @return
+   */
+  public String getSegmentUri(int index) {
+    checkIndex(index, segmentCount);
+    return new String(uris, segmentUriOffsets[index], segmentUriLengths[index],
+        StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * バリアントストリームの帯域幅を取得する
+   * @param index
+   * @return
+   */
+  public long getVariantBandwidth(int index) {
+    checkIndex(index, variantCount);
+    return variantBandwidths[index];
+  }
+
+  /**
+   * バリアントストリームの URI を取得する（プレイリストに書かれたまま、相対 URI は解決しない）
+   * @param index
+   * @return
+   */
+  public String getVariantUri(int index) {
+    checkIndex(index, variantCount);
+    return new String(uris, variantUriOffsets[index], variantUriLengths[index],
+        StandardCharsets.US_ASCII);
+  }
+
+  void setTargetDuration(int targetDuration) {
+    this.targetDuration = targetDuration;
+  }
+
+  void setMediaSequence(long mediaSequence) {
+    this.mediaSequence = mediaSequence;
+  }
+
+  void setEndList(boolean endList) {
+    this.endList = endList;
+  }
+
+  void addSegment(int durationMillis, byte[] buf, int off, int len) {
+    if (segmentCount == segmentDurations.length) {
+      val size = segmentCount * 2;
+      segmentDurations = Arrays.copyOf(segmentDurations, size);
+      segmentUriOffsets = Arrays.copyOf(segmentUriOffsets, size);
+      segmentUriLengths = Arrays.copyOf(segmentUriLengths, size);
+    }
+
+    segmentDurations[segmentCount] = durationMillis;
+    segmentUriOffsets[segmentCount] = appendUri(buf, off, len);
+    segmentUriLengths[segmentCount] = len;
+    segmentCount++;
+  }
+
+  void addVariant(long bandwidth, byte[] buf, int off, int len) {
+    if (variantCount == variantBandwidths.length) {
+      val size = variantCount * 2;
+      variantBandwidths = Arrays.copyOf(variantBandwidths, size);
+      variantUriOffsets = Arrays.copyOf(variantUriOffsets, size);
+      variantUriLengths = Arrays.copyOf(variantUriLengths, size);
+    }
+
+    variantBandwidths[variantCount] = bandwidth;
+    variantUriOffsets[variantCount] = appendUri(buf, off, len);
+    variantUriLengths[variantCount] = len;
+    variantCount++;
+  }
+
+  private int appendUri(byte[] buf, int off, int len) {
+    if (urisLength + len > uris.length) {
+      uris = Arrays.copyOf(uris, Math.max(uris.length * 2, urisLength + len));
+    }
+
+    val offset = urisLength;
+    System.arraycopy(buf, off, uris, offset, len);
+    urisLength += len;
+
+    return offset;
+  }
+
+  private static void checkIndex(int index, int count) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("index: " + index + ", count: " + count);
+    }
+  }
+}
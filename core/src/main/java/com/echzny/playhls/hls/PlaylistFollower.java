@@ -0,0 +1,324 @@
+package com.echzny.playhls.hls;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * ライブのプレイリストを定期的に取得し、新しく追加されたセグメントを media sequence 順に通知する
+ * 同じ media sequence のセグメントは 2 度通知しない
+ * 再取得の間隔は RFC 8216 6.3.4 に従い、変化があれば target duration、無ければその半分とする
+ * predictive の場合は、最後に更新を確認した時刻と最後のセグメントの長さから次の更新を予想し、
+ * その少し前から短い間隔で取得して、新しいセグメントが現れてすぐに通知する
+ * onPlaylist を設定すると、セグメントの通知の後にプレイリストごとに呼び、その完了を待ってから次の取得を予約する
+ */
+@Slf4j
+public class PlaylistFollower {
+  private static final int DEFAULT_TARGET_DURATION_MILLIS = 5000;
+  private static final int MAX_CONSECUTIVE_FAILURES = 5;
+  // predictive の場合に、更新の予想時刻の前後で取得する間隔（target duration に対する割合と下限）
+  private static final int PREDICTIVE_INTERVAL_DIVISOR = 10;
+  private static final int MIN_PREDICTIVE_INTERVAL_MILLIS = 200;
+
+  @Getter private final URI playlistUri;
+  private final Function<URI, CompletableFuture<byte[]>> fetcher;
+  private final ScheduledExecutorService scheduler;
+  private final Consumer<Segment> listener;
+  @Getter private final boolean predictive;
+  @Getter private final CompletableFuture<Void> completion
+      = new CompletableFuture<>();
+  private Function<Playlist, CompletableFuture<?>> playlistHandler;
+
+  private URI mediaPlaylistUri;      // マスタープレイリストの場合は辿った先
+  private long lastSequence = -1;    // 通知済みの最後の media sequence
+  private int failures = 0;
+  private long changedAt = 0;        // 最後に新しいセグメントを確認した時刻（predictive の場合）
+  private int lastSegmentMillis = 0; // その時の最後のセグメントの長さ
+  private ScheduledFuture<?> next;   // 次回の取得（this で保護）
+  @Getter private volatile Playlist lastPlaylist;
+
+  /**
+   * コンストラクタ
+   * @param playlistUri プレイリスト（マスタープレイリストの場合は最初のバリアントを辿る）
+   * @param fetcher     URI の内容を取得する処理
+   * @param scheduler   再取得の予約に使う
+   * @param listener    新しいセグメントを受け取る
+   */
+  public PlaylistFollower(@NonNull URI playlistUri,
+                          @NonNull Function<URI, CompletableFuture<byte[]>> fetcher,
+                          @NonNull ScheduledExecutorService scheduler,
+                          @NonNull Consumer<Segment> listener) {
+    this(playlistUri, fetcher, scheduler, listener, false);
+  }
+
+  /**
+   * コンストラクタ
+   * @param playlistUri プレイリスト（マスタープレイリストの場合は最初のバリアントを辿る）
+   * @param fetcher     URI の内容を取得する処理
+   * @param scheduler   再取得の予約に使う
+   * @param listener    新しいセグメントを受け取る
+   * @param predictive  次の更新を予想して再取得するか
+   */
+  public PlaylistFollower(@NonNull URI playlistUri,
+                          @NonNull Function<URI, CompletableFuture<byte[]>> fetcher,
+                          @NonNull ScheduledExecutorService scheduler,
+                          @NonNull Consumer<Segment> listener,
+                          boolean predictive) {
+    this.playlistUri = playlistUri;
+    this.mediaPlaylistUri = playlistUri;
+    this.fetcher = fetcher;
+    this.scheduler = scheduler;
+    this.listener = listener;
+    this.predictive = predictive;
+  }
+
+  /**
+   * 指定した media sequence までのセグメントを通知済みとして扱う（start の前に呼ぶ）
+   * @param sequence 通知済みとして扱う最後の media sequence
+   * @return
+   */
+  public PlaylistFollower skipUntil(long sequence) {
+    lastSequence = sequence;
+    return this;
+  }
+
+  /**
+   * 取得したプレイリストのセグメントを通知した後に呼ぶ処理を設定する（start の前に呼ぶ）
+   * 返した future が完了するまで次の取得を予約しない（失敗しても取得は続ける）
+   * @param handler
+   * @return
+   */
+  public PlaylistFollower onPlaylist(
+      @NonNull Function<Playlist, CompletableFuture<?>> handler) {
+    playlistHandler = handler;
+    return this;
+  }
+
+  /**
+   * 取得を始める
+   * @return
+   */
+  public PlaylistFollower start() {
+    poll();
+    return this;
+  }
+
+  /**
+   * 取得をやめる
+   */
+  public synchronized void stop() {
+    if (Objects.nonNull(next)) {
+      next.cancel(false);
+    }
+    completion.complete(null);
+  }
+
+  /**
+   * 停止したか確認する
+   * @return
+   */
+  public boolean isStopped() {
+    return completion.isDone();
+  }
+
+  private void poll() {
+    if (isStopped()) {
+      return;
+    }
+
+    val uri = mediaPlaylistUri;
+
+    fetcher.apply(uri).whenComplete((body, e) -> {
+      if (isStopped()) {
+        return;
+      }
+
+      val fetchedAt = System.currentTimeMillis();
+
+      if (Objects.nonNull(e)) {
+        failures++;
+        log.warn("could not get playlist " + uri + ", failures: " + failures,
+            e);
+
+        if (failures >= MAX_CONSECUTIVE_FAILURES) {
+          completion.completeExceptionally(e);
+          return;
+        }
+
+        schedule(targetDurationMillis());
+        return;
+      }
+
+      failures = 0;
+
+      try {
+        val playlist = PlaylistParser.parse(body);
+
+        if (playlist.isMaster()) {
+          if (playlist.getVariantCount() == 0) {
+            throw new IllegalStateException("no variant in " + uri);
+          }
+          mediaPlaylistUri = uri.resolve(playlist.getVariantUri(0));
+          schedule(0);
+          return;
+        }
+
+        lastPlaylist = playlist;
+        val changed = emit(uri, playlist);
+
+        if (Objects.isNull(playlistHandler)) {
+          next(changed, playlist, fetchedAt);
+          return;
+        }
+
+        playlistHandler.apply(playlist).whenComplete((v, ex) -> {
+          if (Objects.nonNull(ex)) {
+            log.warn("playlist handler failed, " + uri, ex);
+          }
+          next(changed, playlist, fetchedAt);
+        });
+      } catch (RuntimeException ex) {
+        completion.completeExceptionally(ex);
+      }
+    });
+  }
+
+  private void next(boolean changed, Playlist playlist, long fetchedAt) {
+    if (playlist.isEndList()) {
+      stop();
+      return;
+    }
+
+    schedule(nextDelayMillis(changed, playlist, fetchedAt,
+        System.currentTimeMillis()));
+  }
+
+  /**
+   * 未通知のセグメントを通知する
+   * @return 新しいセグメントがあれば true
+   */
+  private boolean emit(URI uri, Playlist playlist) {
+    val first = playlist.getMediaSequence();
+    val last = first + playlist.getSegmentCount() - 1;
+
+    if (lastSequence >= 0 && last < lastSequence - playlist.getSegmentCount()) {
+      // media sequence が大きく戻ったので配信が再開されたものとして扱う
+      log.info("media sequence restarted, " + lastSequence + " -> " + last);
+      lastSequence = first - 1;
+    }
+
+    boolean changed = false;
+
+    for (int i = 0; i < playlist.getSegmentCount(); i++) {
+      val sequence = playlist.getSegmentSequence(i);
+
+      if (sequence <= lastSequence) {
+        continue;
+      }
+
+      lastSequence = sequence;
+      changed = true;
+
+      try {
+        listener.accept(new Segment(sequence,
+            uri.resolve(playlist.getSegmentUri(i)),
+            playlist.getSegmentDurationMillis(i)));
+      } catch (Exception e) {
+        log.error(e.getMessage(), e);
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * 次の取得までの時間
+   * @param changed   新しいセグメントがあったか
+   * @param playlist  取得したプレイリスト
+   * @param fetchedAt プレイリストを取得した時刻（更新を確認した時刻として使う）
+   * @param now       現在時刻
+   * @return
+   */
+  long nextDelayMillis(boolean changed, Playlist playlist, long fetchedAt,
+                       long now) {
+    val target = targetDurationMillis();
+
+    if (!predictive) {
+      return changed ? target : target / 2;
+    }
+
+    val interval = Math.max(MIN_PREDICTIVE_INTERVAL_MILLIS,
+        target / PREDICTIVE_INTERVAL_DIVISOR);
+
+    if (changed) {
+      changedAt = fetchedAt;
+      val count = playlist.getSegmentCount();
+      lastSegmentMillis = count > 0
+          ? playlist.getSegmentDurationMillis(count - 1) : 0;
+      if (lastSegmentMillis <= 0) {
+        lastSegmentMillis = target;
+      }
+    }
+    if (changedAt == 0) {
+      return target / 2;
+    }
+
+    // 予想時刻より interval だけ早く取得する
+    // 更新を確認した時刻が実際より遅れていても、セグメントごとに interval ずつ追いつく
+    val expected = changedAt + lastSegmentMillis;
+
+    if (now < expected - interval) {
+      return expected - interval - now;
+    }
+    // 予想時刻を target duration 過ぎても更新されなければ、通常の間隔に戻す
+    if (now < expected + target) {
+      return interval;
+    }
+
+    return target / 2;
+  }
+
+  private int targetDurationMillis() {
+    val playlist = lastPlaylist;
+
+    if (Objects.isNull(playlist) || playlist.getTargetDuration() <= 0) {
+      return DEFAULT_TARGET_DURATION_MILLIS;
+    }
+
+    return playlist.getTargetDuration() * 1000;
+  }
+
+  private synchronized void schedule(long delayMillis) {
+    if (isStopped()) {
+      return;
+    }
+
+    next = scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * プレイリスト内のセグメント
+   */
+  @Getter
+  public static class Segment {
+    private final long sequence;
+    private final URI uri;
+    private final int durationMillis;
+
+    public Segment(long sequence, URI uri, int durationMillis) {
+      this.sequence = sequence;
+      this.uri = uri;
+      this.durationMillis = durationMillis;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package com.echzny.playhls.hls;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * m3u8 を逐次解析する
+ * 受信したデータを分割されたまま {@link #feed(byte[], int, int)} に渡し、最後に {@link #finish()} を呼ぶ
+ */
+public class PlaylistParser {
+  private static final byte[] EXTINF = ascii("#EXTINF:");
+  private static final byte[] STREAM_INF = ascii("#EXT-X-STREAM-INF:");
+  private static final byte[] TARGET_DURATION = ascii("#EXT-X-TARGETDURATION:");
+  private static final byte[] MEDIA_SEQUENCE = ascii("#EXT-X-MEDIA-SEQUENCE:");
+  private static final byte[] END_LIST = ascii("#EXT-X-ENDLIST");
+  private static final byte[] BANDWIDTH = ascii("BANDWIDTH=");
+
+  /**
+   * 行の種類
+   */
+  public enum LineType { TAG, SEGMENT_URI, VARIANT_URI, OTHER }
+
+  /**
+   * 解析した行を受け取る
+   */
+  public interface LineHandler {
+    /**
+     * @param buf  行のデータ（改行は含まない）
+     * @param off  開始位置
+     * @param len  長さ
+     * @param type 行の種類
+     */
+    void line(byte[] buf, int off, int len, LineType type);
+  }
+
+  private final Playlist playlist = new Playlist();
+  private final LineHandler handler;
+
+  private byte[] carry = new byte[256];  // 前回の feed で改行まで届かなかった行
+  private int carryLength = 0;
+  private int pendingDuration = -1;      // 直前の #EXTINF
+  private long pendingBandwidth = -1;    // 直前の #EXT-X-STREAM-INF
+  private boolean finished = false;
+
+  public PlaylistParser() {
+    this(null);
+  }
+
+  /**
+   * コンストラクタ
+   * @param handler 解析した行を受け取るハンドラー（不要な場合は null）
+   */
+  public PlaylistParser(LineHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * 受信したデータを解析する
+   * @param buf
+   * @param off
+   * @param len
+   */
+  public void feed(@NonNull byte[] buf, int off, int len) {
+    if (finished) {
+      throw new IllegalStateException("already finished");
+    }
+
+    int start = off;
+    val end = off + len;
+
+    for (int i = off; i < end; i++) {
+      if (buf[i] != '\n') {
+        continue;
+      }
+
+      if (carryLength > 0) {
+        appendCarry(buf, start, i - start);
+        line(carry, 0, carryLength);
+        carryLength = 0;
+      } else {
+        line(buf, start, i - start);
+      }
+      start = i + 1;
+    }
+
+    if (start < end) {
+      appendCarry(buf, start, end - start);
+    }
+  }
+
+  /**
+   * 残りのデータを解析して結果を返す
+   * @return
+   */
+  public Playlist finish() {
+    if (!finished) {
+      if (carryLength > 0) {
+        line(carry, 0, carryLength);
+        carryLength = 0;
+      }
+      finished = true;
+    }
+
+    return playlist;
+  }
+
+  /**
+   * byte 配列全体を解析する
+   * @param buf
+   * @return
+   */
+  public static Playlist parse(@NonNull byte[] buf) {
+    val parser = new PlaylistParser();
+    parser.feed(buf, 0, buf.length);
+
+    return parser.finish();
+  }
+
+  private void appendCarry(byte[] buf, int off, int len) {
+    if (carryLength + len > carry.length) {
+      carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + len));
+    }
+
+    System.arraycopy(buf, off, carry, carryLength, len);
+    carryLength += len;
+  }
+
+  private void line(byte[] buf, int off, int len) {
+    if (len > 0 && buf[off + len - 1] == '\r') {
+      len--;
+    }
+
+    // 前後の空白を除く
+    while (len > 0 && isSpace(buf[off])) {
+      off++;
+      len--;
+    }
+    while (len > 0 && isSpace(buf[off + len - 1])) {
+      len--;
+    }
+
+    LineType type;
+
+    if (len == 0) {
+      type = LineType.OTHER;
+    } else if (buf[off] == '#') {
+      type = LineType.TAG;
+      tag(buf, off, len);
+    } else if (pendingBandwidth >= 0) {
+      type = LineType.VARIANT_URI;
+      playlist.addVariant(pendingBandwidth, buf, off, len);
+      pendingBandwidth = -1;
+    } else {
+      type = LineType.SEGMENT_URI;
+      playlist.addSegment(Math.max(pendingDuration, 0), buf, off, len);
+      pendingDuration = -1;
+    }
+
+    if (Objects.nonNull(handler)) {
+      handler.line(buf, off, len, type);
+    }
+  }
+
+  private void tag(byte[] buf, int off, int len) {
+    if (startsWith(buf, off, len, EXTINF)) {
+      pendingDuration = parseMillis(buf, off + EXTINF.length,
+          off + len);
+    } else if (startsWith(buf, off, len, STREAM_INF)) {
+      val at = attributeIndex(buf, off + STREAM_INF.length - 1, off + len,
+          BANDWIDTH);
+      pendingBandwidth = at < 0 ? 0 : parseLong(buf, at + BANDWIDTH.length,
+          off + len);
+    } else if (startsWith(buf, off, len, TARGET_DURATION)) {
+      playlist.setTargetDuration((int) parseLong(buf,
+          off + TARGET_DURATION.length, off + len));
+    } else if (startsWith(buf, off, len, MEDIA_SEQUENCE)) {
+      playlist.setMediaSequence(parseLong(buf, off + MEDIA_SEQUENCE.length,
+          off + len));
+    } else if (startsWith(buf, off, len, END_LIST)) {
+      playlist.setEndList(true);
+    }
+  }
+
+  /**
+   * 先頭から数字が続く範囲を整数として読む
+   */
+  static long parseLong(byte[] buf, int from, int to) {
+    long value = 0;
+
+    for (int i = from; i < to; i++) {
+      val c = buf[i];
+
+      if (c < '0' || c > '9') {
+        break;
+      }
+      value = value * 10 + (c - '0');
+    }
+
+    return value;
+  }
+
+  /**
+   * "5.005," の様な秒数をミリ秒として読む
+   */
+  static int parseMillis(byte[] buf, int from, int to) {
+    long seconds = 0;
+    int millis = 0;
+    int scale = 100;
+    boolean fraction = false;
+
+    for (int i = from; i < to; i++) {
+      val c = buf[i];
+
+      if (c == '.' && !fraction) {
+        fraction = true;
+      } else if (c >= '0' && c <= '9') {
+        if (fraction) {
+          millis += (c - '0') * scale;
+          scale /= 10;
+        } else {
+          seconds = seconds * 10 + (c - '0');
+        }
+      } else {
+        break;
+      }
+    }
+
+    return (int) (seconds * 1000 + millis);
+  }
+
+  private static boolean startsWith(byte[] buf, int off, int len, byte[] prefix) {
+    if (len < prefix.length) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf[off + i] != prefix[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 属性リストから属性名の位置を探す（AVERAGE-BANDWIDTH などの部分一致は除く）
+   * @param from 属性リストの直前の ':' の位置
+   */
+  private static int attributeIndex(byte[] buf, int from, int to, byte[] target) {
+    for (int i = from + 1; i <= to - target.length; i++) {
+      val prev = buf[i - 1];
+
+      if ((prev == ':' || prev == ',') && startsWith(buf, i, to - i, target)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static boolean isSpace(byte c) {
+    return c == ' ' || c == '\t' || c == '\r';
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,103 @@
+package com.echzny.playhls.proxy;
+
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所要時間の分布をロックなしで集計する
+ * マイクロ秒を 2 の累乗ごとのバケットに数えるので、パーセンタイルは最大 2 倍の誤差を含む
+ */
+public class LatencyHistogram {
+  // 2^0〜2^(BUCKETS - 1) マイクロ秒（約 35 分まで、それ以上は最後のバケット）
+  private static final int BUCKETS = 32;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * 所要時間を記録する
+   * @param nanos 所要時間（ナノ秒）
+   */
+  public void record(long nanos) {
+    val micros = Math.max(nanos / 1000, 0);
+    val index = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+    buckets.incrementAndGet(index);
+    count.increment();
+    sumMicros.add(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  /**
+   * 記録した件数
+   * @return
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * 合計（ミリ秒）
+   * @return
+   */
+  public double getSumMillis() {
+    return sumMicros.sum() / 1000.0;
+  }
+
+  /**
+   * 平均（ミリ秒）
+   * @return
+   */
+  public double getMeanMillis() {
+    val n = count.sum();
+    return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+  }
+
+  /**
+   * 最大（ミリ秒）
+   * @return
+   */
+  public double getMaxMillis() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /**
+   * パーセンタイル（ミリ秒）
+   * 該当するバケットの上限を返す
+   * @param percentile 0〜100
+   * @return
+   */
+  public double getPercentileMillis(double percentile) {
+    val snapshot = new long[BUCKETS];
+    long total = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    val rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100)
+        / 100.0);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+
+      if (seen >= rank && snapshot[i] > 0) {
+        // バケット i は [2^(i-1), 2^i) マイクロ秒、最大値を超えないようにする
+        return Math.min(1L << i, maxMicros.get()) / 1000.0;
+      }
+    }
+
+    return getMaxMillis();
+  }
+}
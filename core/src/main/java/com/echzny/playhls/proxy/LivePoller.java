@@ -0,0 +1,281 @@
+package com.echzny.playhls.proxy;
+
+import com.echzny.playhls.concurrent.Workers;
+import com.echzny.playhls.hls.Playlist;
+import com.echzny.playhls.hls.PlaylistFollower;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * プレーヤーが再生中のライブの m3u8 をプロキシ自身が取得し続け、新しいセグメントを現れた時点でメモリへ読み込む
+ * セグメントを SegmentCache へ入れてから書き換えた m3u8 を PlaylistCache へ入れるので、
+ * プレーヤーは新しいセグメントを知った時点で上流を待たずにキャッシュから受け取れる
+ * 再取得の時刻は TARGETDURATION と実際に更新された時刻から予想する（PlaylistFollower の predictive）
+ * プレーヤーからのリクエストが idleTimeout の間無い m3u8 は取得をやめる
+ */
+@Slf4j
+public class LivePoller {
+  private final SegmentCache segmentCache;
+  private final PlaylistCache playlistCache;
+  private final String proxyPrefix;
+  @Getter private final Duration idleTimeout;
+  @Getter private final Duration fetchTimeout;
+  // 上流へ直接接続する（既定の ProxySelector だとこのプロキシを経由してしまう）
+  private final HttpClient client = HttpClient.newBuilder()
+      .proxy(HttpClient.Builder.NO_PROXY)
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .executor(Workers.shared())
+      .build();
+  private final Map<String, Poll> polls = new HashMap<>();  // this で保護
+  private final ScheduledExecutorService scheduler
+      = Executors.newSingleThreadScheduledExecutor(r -> {
+    val thread = new Thread(r, "live-poller");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * コンストラクタ
+   * @param segmentCache  先読みしたセグメントの保存先
+   * @param playlistCache 取得した m3u8 の保存先
+   * @param proxyPrefix   m3u8 内の URI の書き換え先（"http://127.0.0.1:PORT/"）
+   * @param idleTimeout   プレーヤーからのリクエストが無くなってから取得をやめるまでの時間
+   * @param fetchTimeout  m3u8・セグメントの取得のタイムアウト
+   */
+  public LivePoller(@NonNull SegmentCache segmentCache,
+                    @NonNull PlaylistCache playlistCache,
+                    @NonNull String proxyPrefix,
+                    @NonNull Duration idleTimeout,
+                    @NonNull Duration fetchTimeout) {
+    this.segmentCache = segmentCache;
+    this.playlistCache = playlistCache;
+    this.proxyPrefix = proxyPrefix;
+    this.idleTimeout = idleTimeout;
+    this.fetchTimeout = fetchTimeout;
+  }
+
+  /**
+   * プレーヤーから m3u8 がリクエストされた
+   * 取得中の m3u8 であれば、取得をやめるまでの時間を延ばす
+   * @param uri 上流の URI
+   */
+  public synchronized void requested(@NonNull String uri) {
+    val poll = polls.get(uri);
+
+    if (Objects.nonNull(poll)) {
+      poll.requestedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * プレーヤーが上流から取得したライブの m3u8 の取得を始める
+   * マスタープレイリスト・終了した（#EXT-X-ENDLIST のある）m3u8 と、取得中の m3u8 は何もしない
+   * @param uri      上流の URI
+   * @param route    取得に付加する authToken・ヘッダー
+   * @param playlist プレーヤーが取得した m3u8 の解析結果
+   */
+  public synchronized void activate(@NonNull String uri, @NonNull Route route,
+                                    @NonNull Playlist playlist) {
+    if (playlist.isMaster() || playlist.isEndList()
+        || playlist.getSegmentCount() == 0) {
+      return;
+    }
+
+    val current = polls.get(uri);
+
+    if (Objects.nonNull(current)) {
+      current.route = route;
+      current.requestedAt = System.currentTimeMillis();
+      return;
+    }
+
+    val poll = new Poll(uri, route, playlist.getMediaSequence()
+        + playlist.getSegmentCount() - 1);
+    polls.put(uri, poll);
+    log.info("start polling " + uri + " (" + route.getLabel() + ")");
+    poll.start();
+  }
+
+  /**
+   * 取得中の m3u8 の数
+   * @return
+   */
+  public synchronized int size() {
+    return polls.size();
+  }
+
+  /**
+   * すべての m3u8 の取得をやめる
+   */
+  public void stopAll() {
+    List<Poll> all;
+
+    synchronized (this) {
+      all = new ArrayList<>(polls.values());
+    }
+
+    for (val poll : all) {
+      poll.follower.stop();
+    }
+  }
+
+  private HttpRequest newRequest(URI uri, Route route) {
+    val builder = HttpRequest.newBuilder(uri)
+        .timeout(fetchTimeout)
+        .header("Accept", "*/*")
+        .header("X-Radiko-AuthToken", route.getToken().get())
+        .GET();
+
+    for (val header : route.getHeaders().entrySet()) {
+      try {
+        builder.setHeader(header.getKey(), header.getValue());
+      } catch (IllegalArgumentException e) {
+        // HttpClient が管理するヘッダー（Host・Connection など）は付加できない
+        log.debug("skip header " + header.getKey() + ": " + e.getMessage());
+      }
+    }
+
+    return builder.build();
+  }
+
+  private CompletableFuture<HttpResponse<byte[]>> get(URI uri, Route route) {
+    return client.sendAsync(newRequest(uri, route),
+        HttpResponse.BodyHandlers.ofByteArray())
+        .thenApply(res -> {
+          if (res.statusCode() != HttpResponseStatus.OK.code()) {
+            throw new IllegalStateException(
+                "status " + res.statusCode() + ", uri: " + uri);
+          }
+
+          return res;
+        });
+  }
+
+  /**
+   * 1 つの m3u8 の取得
+   * 新しいセグメントは PlaylistFollower から通知された時点で読み込み始め、
+   * m3u8 はそのすべての読み込みが済んでから PlaylistCache へ入れる
+   */
+  private class Poll {
+    private final String uri;
+    private volatile Route route;
+    private volatile long requestedAt = System.currentTimeMillis();
+    private final long lastSequence;    // プレーヤーが取得済みの最後の media sequence
+    private PlaylistFollower follower;
+    // 以下は PlaylistFollower の取得・通知の中だけで順に使う
+    private URI fetchedUri;
+    private HttpResponse<byte[]> fetched;
+    private final List<CompletableFuture<Void>> prefetches = new ArrayList<>();
+
+    Poll(String uri, Route route, long lastSequence) {
+      this.uri = uri;
+      this.route = route;
+      this.lastSequence = lastSequence;
+    }
+
+    private void start() {
+      follower = new PlaylistFollower(URI.create(uri), this::fetch, scheduler,
+          this::prefetch, true)
+          .skipUntil(lastSequence)
+          .onPlaylist(this::publish);
+      follower.getCompletion().whenComplete((v, e) -> stopped(e));
+      follower.start();
+    }
+
+    /**
+     * m3u8 を取得する
+     * @return 取得した m3u8
+     */
+    private CompletableFuture<byte[]> fetch(URI playlistUri) {
+      if (System.currentTimeMillis() - requestedAt > idleTimeout.toMillis()) {
+        log.info("stop polling " + uri + ", no request for " + idleTimeout);
+        follower.stop();
+
+        return CompletableFuture.failedFuture(new CancellationException("idle"));
+      }
+
+      return get(playlistUri, route).thenApply(res -> {
+        fetchedUri = playlistUri;
+        fetched = res;
+        return res.body();
+      });
+    }
+
+    /**
+     * 新しいセグメントを SegmentCache へ読み込み始める
+     * 失敗したセグメントはプレーヤーのリクエストで取得するので、ここでは無視する
+     */
+    private void prefetch(PlaylistFollower.Segment segment) {
+      val segmentUri = segment.getUri();
+      val key = segmentUri.toString();
+
+      // https のセグメントはプロキシを経由しないので読み込んでも使われない
+      if (!"http".equalsIgnoreCase(segmentUri.getScheme())
+          || segmentCache.getFresh(key).isPresent()) {
+        return;
+      }
+
+      prefetches.add(get(segmentUri, route).handle((res, e) -> {
+        if (Objects.nonNull(e)) {
+          log.debug("could not prefetch " + key + ", cause: " + e);
+          return null;
+        }
+
+        segmentCache.put(key, new SegmentCache.Entry(HttpResponseStatus.OK,
+            res.headers().firstValue("Content-Type").orElse(null),
+            res.body()));
+        log.debug("prefetched " + key);
+        return null;
+      }));
+    }
+
+    /**
+     * 読み込み中のセグメントを待ってから、m3u8 をプロキシ経由に書き換えて PlaylistCache へ入れる
+     */
+    private CompletableFuture<Void> publish(Playlist playlist) {
+      val playlistUri = fetchedUri;
+      val res = fetched;
+      val pending = prefetches.toArray(new CompletableFuture<?>[0]);
+      prefetches.clear();
+
+      return CompletableFuture.allOf(pending).thenRun(() -> {
+        val rewriter = new PlaylistRewriter(proxyPrefix, playlistUri);
+        val content = rewriter.rewrite(Unpooled.wrappedBuffer(res.body()));
+        content.writeBytes(rewriter.finish());
+
+        val bytes = new byte[content.readableBytes()];
+        content.readBytes(bytes);
+
+        playlistCache.put(uri, new SegmentCache.Entry(HttpResponseStatus.OK,
+            res.headers().firstValue("Content-Type").orElse(null), bytes),
+            rewriter.getPlaylist());
+      });
+    }
+
+    private void stopped(Throwable error) {
+      synchronized (LivePoller.this) {
+        polls.remove(uri, this);
+      }
+
+      if (Objects.nonNull(error)) {
+        log.warn("stop polling " + uri + ", cause: " + error);
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.echzny.playhls.proxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ProxyMetrics をテキスト形式で返す HTTP のエンドポイント
+ * ループバックアドレスでのみ待ち受ける
+ */
+@Slf4j
+public class MetricsEndpoint {
+  public static final String PATH = "/metrics";
+
+  private final ProxyMetrics metrics;
+  private final HttpServer server;
+
+  /**
+   * コンストラクタ
+   * @param metrics 公開する計測値
+   * @param port    待ち受けるポート
+   * @throws IOException
+   */
+  public MetricsEndpoint(@NonNull ProxyMetrics metrics, int port)
+      throws IOException {
+    this.metrics = metrics;
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.server.createContext(PATH, this::handle);
+  }
+
+  /**
+   * 待ち受けを始める
+   * @return
+   */
+  public MetricsEndpoint start() {
+    server.start();
+    log.info("metrics endpoint: http://" + server.getAddress().getHostString()
+        + ":" + server.getAddress().getPort() + PATH);
+
+    return this;
+  }
+
+  /**
+   * 待ち受けをやめる
+   */
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * 待ち受けているポート
+   * @return
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      val body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type",
+          "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package com.echzny.playhls.proxy;
+
+import com.echzny.playhls.hls.Playlist;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 書き換え済みの m3u8 を短時間だけ保持し、同じ m3u8 へのリクエストを上流への 1 回の取得にまとめる
+ * 有効期限は m3u8 の TARGETDURATION に ttlRatio を掛けた時間
+ * 取得中に届いたリクエストには、その取得の結果で応答する（netty のスレッドは止めず、future で待つ）
+ */
+public class PlaylistCache {
+  @Getter private final double ttlRatio;
+  @Getter private final Duration defaultTtl;
+  @Getter private final Duration fetchTimeout;
+
+  private final Map<String, Slot> slots = new HashMap<>();
+
+  /**
+   * コンストラクタ
+   * @param ttlRatio     TARGETDURATION に対する有効期限の割合
+   * @param defaultTtl   TARGETDURATION の無い m3u8（マスタープレイリストなど）の有効期限
+   * @param fetchTimeout 上流から取得中とみなす時間の上限（応答が無いまま終わったリクエストの分）
+   */
+  public PlaylistCache(double ttlRatio, @NonNull Duration defaultTtl,
+                       @NonNull Duration fetchTimeout) {
+    this.ttlRatio = ttlRatio;
+    this.defaultTtl = defaultTtl;
+    this.fetchTimeout = fetchTimeout;
+  }
+
+  /**
+   * キャッシュから応答できる m3u8 を探す
+   * 有効期限内の m3u8 があればそれを、他のリクエストが取得中であればその取得の結果を待つ future を返す
+   * どちらも無い場合は呼び出し元が上流から取得するものとして取得中にする（put か fetchFailed を呼ぶこと）
+   * @param uri 上流の URI
+   * @return
+   */
+  public synchronized Lookup lookup(@NonNull String uri) {
+    val now = System.currentTimeMillis();
+    val slot = slots.computeIfAbsent(uri, key -> new Slot());
+
+    if (Objects.nonNull(slot.entry) && slot.entry.age(now) <= slot.ttlMillis) {
+      return new Lookup(slot.entry, null);
+    }
+    if (slot.isFetching(now, fetchTimeout.toMillis())) {
+      // 待っている側の cancel・タイムアウトが取得中の future に及ばないよう copy する
+      return new Lookup(null, slot.pending.copy()
+          .orTimeout(fetchTimeout.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    if (Objects.nonNull(slot.pending)) {
+      // 応答の無いまま fetchTimeout を過ぎた取得
+      slot.pending.completeExceptionally(
+          new TimeoutException("fetch timed out: " + uri));
+    }
+    slot.fetchingSince = now;
+    slot.pending = new CompletableFuture<>();
+
+    return new Lookup(null, null);
+  }
+
+  /**
+   * 取得に失敗した際に代わりに返す m3u8 を取得する
+   * 有効期限の 2 倍（ttlRatio = 0.5 なら TARGETDURATION）まで経過したものを返す
+   * @param uri 上流の URI
+   * @return
+   */
+  public synchronized Optional<SegmentCache.Entry> getStale(@NonNull String uri) {
+    val slot = slots.get(uri);
+
+    if (Objects.isNull(slot) || Objects.isNull(slot.entry)
+        || slot.entry.age(System.currentTimeMillis()) > slot.ttlMillis * 2) {
+      return Optional.empty();
+    }
+
+    return Optional.of(slot.entry);
+  }
+
+  /**
+   * 上流から取得した m3u8 を保存する
+   * @param uri      上流の URI
+   * @param entry    書き換え済みの m3u8
+   * @param playlist 解析結果（有効期限の計算に使う）
+   */
+  public synchronized void put(@NonNull String uri,
+                               @NonNull SegmentCache.Entry entry,
+                               @NonNull Playlist playlist) {
+    val now = System.currentTimeMillis();
+    val slot = slots.computeIfAbsent(uri, key -> new Slot());
+
+    slot.entry = entry;
+    slot.ttlMillis = ttlMillis(playlist);
+    slot.finishFetch(entry, null);
+
+    evict(now);
+  }
+
+  /**
+   * 上流からの取得に失敗した
+   * 次のリクエストで再び取得する
+   * @param uri 上流の URI
+   */
+  public synchronized void fetchFailed(@NonNull String uri) {
+    val slot = slots.get(uri);
+
+    if (Objects.nonNull(slot)) {
+      slot.finishFetch(null, new IOException("could not fetch " + uri));
+    }
+  }
+
+  /**
+   * 保持している m3u8 の数
+   * @return
+   */
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  /**
+   * m3u8 の有効期限（ミリ秒）
+   * @param playlist
+   * @return
+   */
+  long ttlMillis(Playlist playlist) {
+    if (playlist.getTargetDuration() <= 0) {
+      return defaultTtl.toMillis();
+    }
+
+    return (long) (playlist.getTargetDuration() * 1000L * ttlRatio);
+  }
+
+  /**
+   * 長い間リクエストの無い m3u8 を破棄する
+   * @param now
+   */
+  private void evict(long now) {
+    Iterator<Slot> it = slots.values().iterator();
+
+    while (it.hasNext()) {
+      val slot = it.next();
+      val expired = Objects.isNull(slot.entry)
+          || slot.entry.age(now) > slot.ttlMillis * 2 + fetchTimeout.toMillis();
+
+      if (expired && !slot.isFetching(now, fetchTimeout.toMillis())) {
+        slot.finishFetch(null, new TimeoutException("fetch timed out"));
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * lookup の結果
+   * entry・pending のどちらも無い場合は、呼び出し元が上流から取得する
+   */
+  @Getter
+  public static class Lookup {
+    private final SegmentCache.Entry entry;                        // すぐに応答できる m3u8
+    private final CompletableFuture<SegmentCache.Entry> pending;   // 他のリクエストによる取得の結果
+
+    Lookup(SegmentCache.Entry entry,
+           CompletableFuture<SegmentCache.Entry> pending) {
+      this.entry = entry;
+      this.pending = pending;
+    }
+
+    public boolean isHit() {
+      return Objects.nonNull(entry);
+    }
+
+    public boolean isPending() {
+      return Objects.nonNull(pending);
+    }
+  }
+
+  /**
+   * m3u8 ごとの状態
+   */
+  private static class Slot {
+    SegmentCache.Entry entry;
+    long ttlMillis;
+    long fetchingSince = 0;     // 0 は取得中でない
+    CompletableFuture<SegmentCache.Entry> pending;  // 取得中の結果を待つリクエストへ通知する
+
+    boolean isFetching(long now, long timeout) {
+      return fetchingSince != 0 && now - fetchingSince <= timeout;
+    }
+
+    void finishFetch(SegmentCache.Entry result, Throwable error) {
+      fetchingSince = 0;
+
+      if (Objects.nonNull(pending)) {
+        if (Objects.nonNull(error)) {
+          pending.completeExceptionally(error);
+        } else {
+          pending.complete(result);
+        }
+        pending = null;
+      }
+    }
+  }
+}
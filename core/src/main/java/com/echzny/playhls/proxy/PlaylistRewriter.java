@@ -0,0 +1,151 @@
+package com.echzny.playhls.proxy;
+
+import com.echzny.playhls.hls.Playlist;
+import com.echzny.playhls.hls.PlaylistParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.NonNull;
+import lombok.val;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * 分割して届く m3u8 を解析しながら、セグメントなどの URI をローカルのプロキシ経由に書き換える
+ * "http://host/path" は "http://127.0.0.1:PORT/host/path" になる
+ */
+public class PlaylistRewriter implements PlaylistParser.LineHandler {
+  private static final byte[] HTTP = "http://".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HTTPS = "https://".getBytes(StandardCharsets.US_ASCII);
+
+  private final byte[] proxyPrefix;  // http://127.0.0.1:PORT/
+  private final byte[] root;         // http://127.0.0.1:PORT/host
+  private final byte[] base;         // http://127.0.0.1:PORT/host/dir/
+  private final PlaylistParser parser = new PlaylistParser(this);
+  private ByteBuf out;
+
+  /**
+   * コンストラクタ
+   * @param proxyPrefix ローカルのプロキシの URL（"http://127.0.0.1:PORT/"）
+   * @param playlistUri 上流のプレイリストの URI（相対 URI の解決に使う）
+   */
+  public PlaylistRewriter(@NonNull String proxyPrefix, @NonNull URI playlistUri) {
+    val path = Objects.isNull(playlistUri.getRawPath())
+        ? "/" : playlistUri.getRawPath();
+    val root = proxyPrefix + playlistUri.getRawAuthority();
+
+    this.proxyPrefix = ascii(proxyPrefix);
+    this.root = ascii(root);
+    this.base = ascii(root + path.substring(0, path.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * プロキシ経由に書き換えた URI を元の上流の URI に戻す
+   * "/host/path" 以外の形式の場合はそのまま返す
+   * @param requestUri
+   * @return
+   */
+  public static String toUpstreamUri(String requestUri) {
+    if (Objects.isNull(requestUri) || !requestUri.startsWith("/")) {
+      return requestUri;
+    }
+
+    val slash = requestUri.indexOf('/', 1);
+    val host = slash < 0 ? requestUri.substring(1)
+        : requestUri.substring(1, slash);
+
+    if (!host.contains(".")) {
+      return requestUri;
+    }
+
+    return "http:/" + requestUri;
+  }
+
+  /**
+   * 受信したデータを書き換える
+   * 行の途中までのデータは次の呼び出しか {@link #finish()} で出力する
+   * @param in
+   * @return 書き換えたデータ
+   */
+  public ByteBuf rewrite(@NonNull ByteBuf in) {
+    val bytes = new byte[in.readableBytes()];
+    in.getBytes(in.readerIndex(), bytes);
+
+    out = Unpooled.buffer(bytes.length + 256);
+    parser.feed(bytes, 0, bytes.length);
+
+    return out;
+  }
+
+  /**
+   * 残りのデータを書き換える
+   * @return 書き換えたデータ
+   */
+  public ByteBuf finish() {
+    out = Unpooled.buffer(256);
+    parser.finish();
+
+    return out;
+  }
+
+  /**
+   * 解析結果を取得する（{@link #finish()} の後に呼ぶ）
+   * @return
+   */
+  public Playlist getPlaylist() {
+    return parser.finish();
+  }
+
+  @Override
+  public void line(byte[] buf, int off, int len, PlaylistParser.LineType type) {
+    switch (type) {
+      case SEGMENT_URI:
+      case VARIANT_URI:
+        writeUri(buf, off, len);
+        break;
+      default:
+        out.writeBytes(buf, off, len);
+        break;
+    }
+
+    out.writeByte('\n');
+  }
+
+  private void writeUri(byte[] buf, int off, int len) {
+    if (startsWith(buf, off, len, HTTP)) {
+      out.writeBytes(proxyPrefix);
+      out.writeBytes(buf, off + HTTP.length, len - HTTP.length);
+    } else if (startsWith(buf, off, len, HTTPS)) {
+      // TLS の上流はプロキシで扱えないのでそのまま
+      out.writeBytes(buf, off, len);
+    } else if (len > 1 && buf[off] == '/' && buf[off + 1] == '/') {
+      out.writeBytes(proxyPrefix);
+      out.writeBytes(buf, off + 2, len - 2);
+    } else if (len > 0 && buf[off] == '/') {
+      out.writeBytes(root);
+      out.writeBytes(buf, off, len);
+    } else {
+      out.writeBytes(base);
+      out.writeBytes(buf, off, len);
+    }
+  }
+
+  private static boolean startsWith(byte[] buf, int off, int len, byte[] prefix) {
+    if (len < prefix.length) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf[off + i] != prefix[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,330 @@
+package com.echzny.playhls.proxy;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * プロキシのリクエストごとの計測値を集計する
+ * 上流の最初のバイトまでの時間・上流からの転送時間・クライアントへの応答までの時間と、
+ * 送受信したバイト数・ステータスコードを m3u8 / セグメント / その他に分けて数える
+ * 集計はロックなしで行うので netty のスレッドから直接呼び出してよい
+ */
+@Slf4j
+public class ProxyMetrics implements ProxyMetricsMXBean {
+  public static final String OBJECT_NAME = "com.echzny.playhls:type=ProxyMetrics";
+
+  /**
+   * リクエストの種類
+   */
+  public enum Kind {
+    PLAYLIST, SEGMENT, OTHER
+  }
+
+  private volatile Stats[] stats = newStats();
+
+  private static Stats[] newStats() {
+    val stats = new Stats[Kind.values().length];
+
+    for (int i = 0; i < stats.length; i++) {
+      stats[i] = new Stats();
+    }
+
+    return stats;
+  }
+
+  private Stats of(Kind kind) {
+    return stats[kind.ordinal()];
+  }
+
+  /**
+   * リクエストを受け付けた
+   * @param kind
+   */
+  public void requestStarted(@NonNull Kind kind) {
+    of(kind).requests.increment();
+  }
+
+  /**
+   * キャッシュから応答した
+   * @param kind
+   */
+  public void cacheHit(@NonNull Kind kind) {
+    of(kind).cacheHits.increment();
+  }
+
+  /**
+   * 上流のエラーの代わりに期限切れのキャッシュで応答した
+   * @param kind
+   */
+  public void staleServed(@NonNull Kind kind) {
+    of(kind).staleServed.increment();
+  }
+
+  /**
+   * 上流に接続できなかった・応答がなかった
+   * @param kind
+   */
+  public void upstreamFailed(@NonNull Kind kind) {
+    of(kind).upstreamFailures.increment();
+  }
+
+  /**
+   * 上流から最初のバイトを受信した
+   * @param kind
+   * @param nanos リクエストを送信してからの時間
+   */
+  public void upstreamFirstByte(@NonNull Kind kind, long nanos) {
+    of(kind).upstreamFirstByte.record(nanos);
+  }
+
+  /**
+   * 上流からの受信が終わった
+   * @param kind
+   * @param nanos リクエストを送信してからの時間
+   * @param bytes 受信した本文のバイト数
+   */
+  public void upstreamCompleted(@NonNull Kind kind, long nanos, long bytes) {
+    val s = of(kind);
+    s.upstreamTransfer.record(nanos);
+    s.bytesIn.add(bytes);
+  }
+
+  /**
+   * クライアントへの応答が終わった
+   * @param kind
+   * @param status ステータスコード
+   * @param nanos  リクエストを受け付けてからの時間
+   * @param bytes  送信した本文のバイト数
+   */
+  public void requestCompleted(@NonNull Kind kind, int status, long nanos,
+                               long bytes) {
+    val s = of(kind);
+    s.total.record(nanos);
+    s.bytesOut.add(bytes);
+    s.statusClasses[Math.min(Math.max(status / 100, 0), 5)].increment();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Snapshot getPlaylist() {
+    return new Snapshot(of(Kind.PLAYLIST));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Snapshot getSegment() {
+    return new Snapshot(of(Kind.SEGMENT));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Snapshot getOther() {
+    return new Snapshot(of(Kind.OTHER));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void reset() {
+    stats = newStats();
+  }
+
+  /**
+   * プラットフォームの MBeanServer に登録する
+   * 既に登録されている場合は置き換える
+   */
+  public void register() {
+    try {
+      val server = ManagementFactory.getPlatformMBeanServer();
+      val name = new ObjectName(OBJECT_NAME);
+
+      try {
+        server.registerMBean(this, name);
+      } catch (InstanceAlreadyExistsException e) {
+        server.unregisterMBean(name);
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      log.warn("could not register " + OBJECT_NAME, e);
+    }
+  }
+
+  /**
+   * テキスト形式（Prometheus の exposition format）で出力する
+   * @return
+   */
+  public String toText() {
+    val sb = new StringBuilder(4096);
+
+    counter(sb, "playhls_proxy_requests_total",
+        "Requests received",
+        s -> s.requests);
+    counter(sb, "playhls_proxy_cache_hits_total",
+        "Responses served from the segment cache",
+        s -> s.cacheHits);
+    counter(sb, "playhls_proxy_stale_served_total",
+        "Stale responses served on upstream errors",
+        s -> s.staleServed);
+    counter(sb, "playhls_proxy_upstream_failures_total",
+        "Upstream connection failures and timeouts",
+        s -> s.upstreamFailures);
+    counter(sb, "playhls_proxy_bytes_in_total",
+        "Body bytes received from upstream",
+        s -> s.bytesIn);
+    counter(sb, "playhls_proxy_bytes_out_total",
+        "Body bytes sent to clients",
+        s -> s.bytesOut);
+
+    sb.append("# HELP playhls_proxy_responses_total Responses by status class\n")
+        .append("# TYPE playhls_proxy_responses_total counter\n");
+    for (val kind : Kind.values()) {
+      val classes = of(kind).statusClasses;
+
+      for (int i = 1; i < classes.length; i++) {
+        sb.append("playhls_proxy_responses_total{kind=\"").append(label(kind))
+            .append("\",status=\"").append(i).append("xx\"} ")
+            .append(classes[i].sum()).append('\n');
+      }
+    }
+
+    summary(sb, "playhls_proxy_upstream_first_byte_millis",
+        "Time from sending the upstream request to its first byte",
+        s -> s.upstreamFirstByte);
+    summary(sb, "playhls_proxy_upstream_transfer_millis",
+        "Time from sending the upstream request to its last byte",
+        s -> s.upstreamTransfer);
+    summary(sb, "playhls_proxy_total_millis",
+        "Time from receiving the request to the end of the response",
+        s -> s.total);
+
+    return sb.toString();
+  }
+
+  private void counter(StringBuilder sb, String name, String help,
+                       Function<Stats, LongAdder> field) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+        .append("# TYPE ").append(name).append(" counter\n");
+
+    for (val kind : Kind.values()) {
+      sb.append(name).append("{kind=\"").append(label(kind)).append("\"} ")
+          .append(field.apply(of(kind)).sum()).append('\n');
+    }
+  }
+
+  private void summary(StringBuilder sb, String name, String help,
+                       Function<Stats, LatencyHistogram> field) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+        .append("# TYPE ").append(name).append(" summary\n");
+
+    for (val kind : Kind.values()) {
+      val histogram = field.apply(of(kind));
+      val label = label(kind);
+
+      for (val quantile : new double[] {0.5, 0.9, 0.99}) {
+        sb.append(name).append("{kind=\"").append(label)
+            .append("\",quantile=\"").append(quantile).append("\"} ")
+            .append(format(histogram.getPercentileMillis(quantile * 100)))
+            .append('\n');
+      }
+      sb.append(name).append("_count{kind=\"").append(label).append("\"} ")
+          .append(histogram.getCount()).append('\n');
+      sb.append(name).append("_sum{kind=\"").append(label).append("\"} ")
+          .append(format(histogram.getSumMillis())).append('\n');
+    }
+  }
+
+  private static String label(Kind kind) {
+    return kind.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  /**
+   * 種類ごとの集計値
+   */
+  private static class Stats {
+    final LongAdder requests = new LongAdder();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder staleServed = new LongAdder();
+    final LongAdder upstreamFailures = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder[] statusClasses = newAdders(6);   // 添字はステータスコード / 100
+    final LatencyHistogram upstreamFirstByte = new LatencyHistogram();
+    final LatencyHistogram upstreamTransfer = new LatencyHistogram();
+    final LatencyHistogram total = new LatencyHistogram();
+
+    private static LongAdder[] newAdders(int size) {
+      val adders = new LongAdder[size];
+
+      for (int i = 0; i < size; i++) {
+        adders[i] = new LongAdder();
+      }
+
+      return adders;
+    }
+  }
+
+  /**
+   * JMX で公開する集計値のスナップショット
+   */
+  @Getter
+  public static class Snapshot {
+    private final long requests;
+    private final long cacheHits;
+    private final long staleServed;
+    private final long upstreamFailures;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long responses2xx;
+    private final long responses3xx;
+    private final long responses4xx;
+    private final long responses5xx;
+    private final double upstreamFirstByteP50Millis;
+    private final double upstreamFirstByteP99Millis;
+    private final double upstreamTransferP50Millis;
+    private final double upstreamTransferP99Millis;
+    private final double totalP50Millis;
+    private final double totalP99Millis;
+    private final double totalMaxMillis;
+
+    Snapshot(Stats s) {
+      requests = s.requests.sum();
+      cacheHits = s.cacheHits.sum();
+      staleServed = s.staleServed.sum();
+      upstreamFailures = s.upstreamFailures.sum();
+      bytesIn = s.bytesIn.sum();
+      bytesOut = s.bytesOut.sum();
+      responses2xx = s.statusClasses[2].sum();
+      responses3xx = s.statusClasses[3].sum();
+      responses4xx = s.statusClasses[4].sum();
+      responses5xx = s.statusClasses[5].sum();
+      upstreamFirstByteP50Millis = s.upstreamFirstByte.getPercentileMillis(50);
+      upstreamFirstByteP99Millis = s.upstreamFirstByte.getPercentileMillis(99);
+      upstreamTransferP50Millis = s.upstreamTransfer.getPercentileMillis(50);
+      upstreamTransferP99Millis = s.upstreamTransfer.getPercentileMillis(99);
+      totalP50Millis = s.total.getPercentileMillis(50);
+      totalP99Millis = s.total.getPercentileMillis(99);
+      totalMaxMillis = s.total.getMaxMillis();
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.echzny.playhls.proxy;
+
+/**
+ * プロキシの計測値を JMX で公開するためのインターフェース
+ */
+public interface ProxyMetricsMXBean {
+  /**
+   * m3u8 へのリクエストの計測値
+   * @return
+   */
+  ProxyMetrics.Snapshot getPlaylist();
+
+  /**
+   * セグメントへのリクエストの計測値
+   * @return
+   */
+  ProxyMetrics.Snapshot getSegment();
+
+  /**
+   * その他のリクエストの計測値
+   * @return
+   */
+  ProxyMetrics.Snapshot getOther();
+
+  /**
+   * 計測値をリセットする
+   */
+  void reset();
+}
@@ -0,0 +1,482 @@
+package com.echzny.playhls.proxy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.littleshoot.proxy.HttpFiltersAdapter;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * radiko のストリームへのリクエストにヘッダーを付加し、セグメントをキャッシュする
+ * m3u8 は URI をローカルのプロキシ経由に書き換えてから返し、同じ m3u8 へのリクエストは PlaylistCache でまとめる
+ * ライブの m3u8 は以降 LivePoller が取得し続け、新しいセグメントを先読みする
+ * リクエストごとの所要時間・転送量・ステータスコードを ProxyMetrics に記録する
+ */
+@Slf4j
+public class RadikoHttpFilters extends HttpFiltersAdapter {
+  private final Route route;
+  private final SegmentCache segmentCache;
+  private final PlaylistCache playlistCache;
+  private final LivePoller livePoller;
+  private final ProxyMetrics metrics;
+  private final String proxyPrefix;
+  private final String uri;                   // 上流の URI
+  private final boolean segment;
+  private final boolean playlist;
+  private final ProxyMetrics.Kind kind;
+
+  // 計測用（System.nanoTime、0 は未到達）
+  private final long receivedAt = System.nanoTime();
+  private long sentAt = 0;
+  private long firstByteAt = 0;
+  private long bytesIn = 0;
+  private long bytesOut = 0;
+  private int responseStatus = 0;
+
+  private ByteArrayOutputStream buffer;       // キャッシュ用に受信中のセグメント・書き換えた m3u8
+  private HttpResponseStatus status;
+  private String contentType;
+  private SegmentCache.Entry stale;           // 上流のエラー時に代わりに返すセグメント
+  private PlaylistRewriter rewriter;
+
+  /**
+   * コンストラクタ
+   * @param originalRequest クライアントからのリクエスト
+   * @param ctx             クライアントとのコネクション
+   * @param routes          プロキシを経由させるホストの一覧
+   * @param defaultRoute    routes に無いホスト（m3u8 から辿ったセグメントなど）に使う Route
+   * @param segmentCache    セグメントのキャッシュ
+   * @param playlistCache   m3u8 のキャッシュ
+   * @param livePoller      ライブの m3u8 の先読み
+   * @param metrics         計測値の集計先
+   * @param proxyPrefix     m3u8 内の URI の書き換え先（"http://127.0.0.1:PORT/"）
+   */
+  public RadikoHttpFilters(HttpRequest originalRequest,
+                           ChannelHandlerContext ctx,
+                           @NonNull RoutingTable routes,
+                           @NonNull Route defaultRoute,
+                           @NonNull SegmentCache segmentCache,
+                           @NonNull PlaylistCache playlistCache,
+                           @NonNull LivePoller livePoller,
+                           @NonNull ProxyMetrics metrics,
+                           @NonNull String proxyPrefix) {
+    super(originalRequest, ctx);
+    this.segmentCache = segmentCache;
+    this.playlistCache = playlistCache;
+    this.livePoller = livePoller;
+    this.metrics = metrics;
+    this.proxyPrefix = proxyPrefix;
+    this.uri = PlaylistRewriter.toUpstreamUri(originalRequest.getUri());
+    this.route = routes.lookup(hostOf(uri, originalRequest)).orElse(defaultRoute);
+    this.segment = SegmentCache.isSegmentUri(uri);
+    this.playlist = isPlaylistUri(uri);
+    this.kind = playlist ? ProxyMetrics.Kind.PLAYLIST
+        : segment ? ProxyMetrics.Kind.SEGMENT : ProxyMetrics.Kind.OTHER;
+    metrics.requestStarted(kind);
+  }
+
+  /**
+   * 上流のホスト名を取得する
+   * 絶対 URI でない場合は Host ヘッダーから取得する
+   * @param uri
+   * @param request
+   * @return
+   */
+  static String hostOf(String uri, HttpRequest request) {
+    if (Objects.nonNull(uri)) {
+      val scheme = uri.indexOf("://");
+
+      if (scheme > 0) {
+        val start = scheme + 3;
+        int end = start;
+
+        while (end < uri.length() && "/:?#".indexOf(uri.charAt(end)) < 0) {
+          end++;
+        }
+
+        return uri.substring(start, end);
+      }
+    }
+
+    val host = request.headers().get(HttpHeaders.Names.HOST);
+
+    if (Objects.isNull(host)) {
+      return null;
+    }
+
+    val port = host.indexOf(':');
+
+    return port < 0 ? host : host.substring(0, port);
+  }
+
+  private static boolean isPlaylistUri(String uri) {
+    if (Objects.isNull(uri)) {
+      return false;
+    }
+
+    val query = uri.indexOf('?');
+
+    return (query < 0 ? uri : uri.substring(0, query)).endsWith(".m3u8");
+  }
+
+  @Override
+  public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+    if (httpObject instanceof HttpRequest) {
+      val request = (HttpRequest) httpObject;
+
+      // プロキシ経由に書き換えた URI を上流の URI に戻す
+      if (!this.uri.equals(request.getUri())) {
+        request.setUri(this.uri);
+        request.headers().set(HttpHeaders.Names.HOST,
+            URI.create(this.uri).getRawAuthority());
+      }
+    }
+    if (httpObject instanceof HttpMessage) {
+      applyRequestHeaders(((HttpMessage) httpObject).headers(), playlist, route);
+    }
+
+    if (segment && httpObject instanceof HttpRequest) {
+      val cached = segmentCache.getFresh(this.uri);
+
+      if (cached.isPresent()) {
+        log.debug("segment cache hit: " + this.uri);
+        metrics.cacheHit(kind);
+
+        return cached.get().toResponse();
+      }
+    }
+
+    if (playlist && httpObject instanceof HttpRequest) {
+      livePoller.requested(this.uri);
+      val lookup = playlistCache.lookup(this.uri);
+
+      if (lookup.isHit()) {
+        log.debug("playlist cache hit: " + this.uri);
+        metrics.cacheHit(kind);
+
+        return lookup.getEntry().toResponse();
+      }
+      if (lookup.isPending()) {
+        log.debug("wait for playlist fetch: " + this.uri);
+        metrics.cacheHit(kind);
+
+        return awaitFetch(lookup.getPending());
+      }
+    }
+
+    return super.clientToProxyRequest(httpObject);
+  }
+
+  /**
+   * 他のリクエストが取得中の m3u8 で応答する
+   * ヘッダーだけ先に返して本文を後から書き込むと、LittleProxy の状態管理の外での書き込みになり、
+   * 同じコネクションの次のリクエストの応答と混ざり得るので、取得が終わるまで待って 1 つのレスポンスで返す
+   * 取得が fetchTimeout 内に終わらないか失敗した場合は、期限切れの m3u8 があればそれを返し、無ければ上流から取得する
+   * @param pending 取得の結果（fetchTimeout で打ち切られる）
+   * @return レスポンス（上流から取得する場合は null）
+   */
+  private HttpResponse awaitFetch(CompletableFuture<SegmentCache.Entry> pending) {
+    try {
+      return pending.get().toResponse();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.warn("playlist fetch failed: " + uri + ", cause: " + e.getCause());
+    }
+
+    val stale = playlistCache.getStale(uri);
+
+    if (stale.isPresent()) {
+      log.debug("serve stale playlist: " + uri);
+      return stale.get().toResponse();
+    }
+
+    return null;
+  }
+
+  /**
+   * 上流へのリクエストに radiko のストリームの取得に必要なヘッダーと Route のヘッダーを付加する
+   * @param headers  リクエストのヘッダー
+   * @param playlist m3u8 へのリクエストか
+   * @param route    付加する authToken・ヘッダー
+   */
+  static void applyRequestHeaders(HttpHeaders headers, boolean playlist,
+                                  Route route) {
+    headers.set("Accept", "*/*");
+    headers.set("Range", "bytes=0-");
+    // m3u8 の再取得ごとに上流へ接続し直さないよう、常にコネクションを維持する
+    headers.set("Connection", "keep-alive");
+    // SegmentFetcher など、既に付けているリクエストで重複しないよう set する
+    headers.set("Icy-MetaData", "1");
+    headers.set("X-Radiko-AuthToken", route.getToken().get());
+    if (playlist) {
+      headers.set(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.IDENTITY);
+    }
+    for (val header : route.getHeaders().entrySet()) {
+      headers.set(header.getKey(), header.getValue());
+    }
+  }
+
+  @Override
+  public void proxyToServerRequestSent() {
+    sentAt = System.nanoTime();
+  }
+
+  @Override
+  public void serverToProxyResponseReceiving() {
+    if (firstByteAt == 0 && sentAt != 0) {
+      firstByteAt = System.nanoTime();
+      metrics.upstreamFirstByte(kind, firstByteAt - sentAt);
+    }
+  }
+
+  @Override
+  public void serverToProxyResponseReceived() {
+    if (sentAt != 0) {
+      metrics.upstreamCompleted(kind, System.nanoTime() - sentAt, bytesIn);
+    }
+  }
+
+  @Override
+  public void serverToProxyResponseTimedOut() {
+    upstreamFailed();
+  }
+
+  @Override
+  public void proxyToServerConnectionFailed() {
+    upstreamFailed();
+  }
+
+  @Override
+  public void proxyToServerResolutionFailed(String hostAndPort) {
+    upstreamFailed();
+  }
+
+  private void upstreamFailed() {
+    metrics.upstreamFailed(kind);
+
+    if (playlist) {
+      playlistCache.fetchFailed(uri);
+    }
+  }
+
+  @Override
+  public HttpObject serverToProxyResponse(HttpObject httpObject) {
+    log.trace(httpObject.toString());
+
+    if (httpObject instanceof HttpContent) {
+      bytesIn += ((HttpContent) httpObject).content().readableBytes();
+    }
+
+    if (playlist) {
+      return rewritePlaylist(httpObject);
+    }
+
+    if (!segment) {
+      return httpObject;
+    }
+
+    if (httpObject instanceof HttpResponse) {
+      val res = (HttpResponse) httpObject;
+      status = res.getStatus();
+
+      if (status.code() >= 500) {
+        // 上流のエラー中は期限切れのセグメントで代用する
+        stale = segmentCache.getStale(uri).orElse(null);
+
+        if (Objects.nonNull(stale)) {
+          log.warn("serve stale segment, status: " + status + ", uri: " + uri);
+          metrics.staleServed(kind);
+
+          return stale.toResponseHeader();
+        }
+      } else if (SegmentCache.isCompleteResponse(res)) {
+        val length = HttpHeaders.getContentLength(res, 0);
+
+        if (length <= segmentCache.getMaxBytes()) {
+          contentType = res.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+          buffer = new ByteArrayOutputStream((int) Math.max(length, 1024));
+        }
+      }
+    }
+
+    if (httpObject instanceof HttpContent) {
+      if (Objects.nonNull(stale)) {
+        if (httpObject instanceof LastHttpContent) {
+          return stale.toLastContent();
+        } else {
+          return new DefaultHttpContent(Unpooled.EMPTY_BUFFER);
+        }
+      }
+
+      if (Objects.nonNull(buffer)) {
+        val content = ((HttpContent) httpObject).content();
+        val bytes = new byte[content.readableBytes()];
+        content.getBytes(content.readerIndex(), bytes);
+        buffer.write(bytes, 0, bytes.length);
+
+        if (buffer.size() > segmentCache.getMaxBytes()) {
+          buffer = null;
+        } else if (httpObject instanceof LastHttpContent) {
+          // 全体を保持しているので、206 で受け取ったものも 200 として返す
+          segmentCache.put(uri, new SegmentCache.Entry(HttpResponseStatus.OK,
+              contentType, buffer.toByteArray()));
+          buffer = null;
+        }
+      }
+    }
+
+    return httpObject;
+  }
+
+  /**
+   * m3u8 を書き換える
+   * 書き換えで長さが変わるので chunked で返す
+   * 書き換えた m3u8 は PlaylistCache に保存する
+   * @param httpObject
+   * @return
+   */
+  private HttpObject rewritePlaylist(HttpObject httpObject) {
+    if (httpObject instanceof FullHttpResponse) {
+      return rewriteFullPlaylist((FullHttpResponse) httpObject);
+    }
+
+    if (httpObject instanceof HttpResponse) {
+      val res = (HttpResponse) httpObject;
+
+      if (SegmentCache.isCompleteResponse(res)) {
+        rewriter = new PlaylistRewriter(proxyPrefix, URI.create(uri));
+        contentType = res.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+        buffer = new ByteArrayOutputStream(
+            (int) Math.max(HttpHeaders.getContentLength(res, 0), 1024));
+        // 書き換えで長さが変わるので、206 の Content-Range は使えない（全体を 200 で返す）
+        res.setStatus(HttpResponseStatus.OK);
+        res.headers().remove(HttpHeaders.Names.CONTENT_RANGE);
+        res.headers().remove(HttpHeaders.Names.CONTENT_LENGTH);
+        HttpHeaders.setTransferEncodingChunked(res);
+      } else {
+        playlistCache.fetchFailed(uri);
+      }
+    }
+
+    if (httpObject instanceof HttpContent && Objects.nonNull(rewriter)) {
+      val content = rewriter.rewrite(((HttpContent) httpObject).content());
+
+      if (httpObject instanceof LastHttpContent) {
+        content.writeBytes(rewriter.finish());
+        append(content);
+        publishPlaylist();
+
+        return new DefaultLastHttpContent(content);
+      } else {
+        append(content);
+
+        return new DefaultHttpContent(content);
+      }
+    }
+
+    return httpObject;
+  }
+
+  /**
+   * 本文を含めて 1 度に届いた m3u8 を書き換え、長さを付け直したレスポンスを返す
+   * ステータス・ヘッダーは上流のものを引き継ぐ（206 は全体を返すので 200 にする）
+   * @param res
+   * @return
+   */
+  private HttpObject rewriteFullPlaylist(FullHttpResponse res) {
+    if (!SegmentCache.isCompleteResponse(res)) {
+      playlistCache.fetchFailed(uri);
+
+      return res;
+    }
+
+    rewriter = new PlaylistRewriter(proxyPrefix, URI.create(uri));
+    contentType = res.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+    buffer = new ByteArrayOutputStream(
+        Math.max(res.content().readableBytes(), 1024));
+
+    val content = rewriter.rewrite(res.content());
+    content.writeBytes(rewriter.finish());
+    append(content);
+    publishPlaylist();
+
+    val rewritten = new DefaultFullHttpResponse(res.getProtocolVersion(),
+        HttpResponseStatus.OK, content);
+    rewritten.headers().set(res.headers());
+    rewritten.headers().remove(HttpHeaders.Names.CONTENT_RANGE);
+    rewritten.headers().remove(HttpHeaders.Names.TRANSFER_ENCODING);
+    HttpHeaders.setContentLength(rewritten, content.readableBytes());
+
+    return rewritten;
+  }
+
+  /**
+   * 書き換え終えた m3u8 を PlaylistCache に保存し、ライブであれば LivePoller の取得を始める
+   */
+  private void publishPlaylist() {
+    val playlist = rewriter.getPlaylist();
+    log.debug(String.format(
+        "playlist: %s, target duration: %d, media sequence: %d, segments: %d, variants: %d",
+        uri, playlist.getTargetDuration(), playlist.getMediaSequence(),
+        playlist.getSegmentCount(), playlist.getVariantCount()));
+    playlistCache.put(uri,
+        new SegmentCache.Entry(HttpResponseStatus.OK, contentType,
+            buffer.toByteArray()),
+        playlist);
+    livePoller.activate(uri, route, playlist);
+    rewriter = null;
+    buffer = null;
+  }
+
+  private void append(ByteBuf content) {
+    val bytes = new byte[content.readableBytes()];
+    content.getBytes(content.readerIndex(), bytes);
+    buffer.write(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public HttpObject proxyToClientResponse(HttpObject httpObject) {
+    val response = replaceWithStale(httpObject);
+
+    if (response instanceof HttpResponse) {
+      responseStatus = ((HttpResponse) response).getStatus().code();
+    }
+    if (response instanceof HttpContent) {
+      bytesOut += ((HttpContent) response).content().readableBytes();
+    }
+    if (response instanceof LastHttpContent) {
+      metrics.requestCompleted(kind, responseStatus,
+          System.nanoTime() - receivedAt, bytesOut);
+    }
+
+    return response;
+  }
+
+  private HttpObject replaceWithStale(HttpObject httpObject) {
+    // 接続失敗やタイムアウト時に LittleProxy が生成する 502/504 を期限切れのセグメントで代用する
+    if (segment && httpObject instanceof FullHttpResponse
+        && ((FullHttpResponse) httpObject).getStatus().code() >= 500) {
+      val cached = segmentCache.getStale(uri);
+
+      if (cached.isPresent()) {
+        log.warn("serve stale segment, status: "
+            + ((FullHttpResponse) httpObject).getStatus() + ", uri: " + uri);
+        metrics.staleServed(kind);
+
+        return cached.get().toResponse();
+      }
+    }
+
+    return httpObject;
+  }
+}
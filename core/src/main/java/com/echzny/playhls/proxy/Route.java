@@ -0,0 +1,65 @@
+package com.echzny.playhls.proxy;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.val;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * プロキシを経由させるホストと、そのホストへのリクエストに付加する authToken・ヘッダー
+ */
+@Getter
+@ToString
+public class Route {
+  private final String host;
+  private final String label;                    // 放送局の ID など（ログ用）
+  @ToString.Exclude private final Supplier<String> token;
+  private final Map<String, String> headers;
+
+  /**
+   * コンストラクタ
+   * @param host    ホスト名
+   * @param label   放送局の ID など（ログ用）
+   * @param token   付加する authToken（呼び出しの度に最新の値を返す）
+   * @param headers 追加で付加するヘッダー
+   */
+  public Route(@NonNull String host, String label,
+               @NonNull Supplier<String> token,
+               @NonNull Map<String, String> headers) {
+    this.host = RoutingTable.normalize(host);
+    this.label = label;
+    this.token = token;
+    this.headers = headers.isEmpty()
+        ? Collections.emptyMap()
+        : Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+  }
+
+  /**
+   * コンストラクタ
+   * @param host  ホスト名
+   * @param label 放送局の ID など（ログ用）
+   * @param token 付加する authToken（呼び出しの度に最新の値を返す）
+   */
+  public Route(@NonNull String host, String label,
+               @NonNull Supplier<String> token) {
+    this(host, label, token, Collections.emptyMap());
+  }
+
+  /**
+   * ヘッダーを追加した Route を返す
+   * @param name
+   * @param value
+   * @return
+   */
+  public Route withHeader(@NonNull String name, @NonNull String value) {
+    val copy = new LinkedHashMap<>(headers);
+    copy.put(name, value);
+
+    return new Route(host, label, token, copy);
+  }
+}
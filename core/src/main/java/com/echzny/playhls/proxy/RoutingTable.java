@@ -0,0 +1,134 @@
+package com.echzny.playhls.proxy;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * プロキシを経由させるホストの一覧
+ * 再生・録音の際に解決したストリームの URL から実行中に更新し、ホスト名で定数時間で引く
+ */
+@Slf4j
+public class RoutingTable {
+  private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+  private final Supplier<String> defaultToken;
+
+  /**
+   * コンストラクタ
+   * @param defaultToken register で登録する Route が付加する authToken
+   */
+  public RoutingTable(@NonNull Supplier<String> defaultToken) {
+    this.defaultToken = defaultToken;
+  }
+
+  /**
+   * Route を登録する（同じホストの Route は置き換える）
+   * @param route
+   * @return 置き換えた Route
+   */
+  public Optional<Route> put(@NonNull Route route) {
+    val previous = routes.put(route.getHost(), route);
+
+    if (Objects.isNull(previous)) {
+      log.info("add route: " + route);
+    }
+
+    return Optional.ofNullable(previous);
+  }
+
+  /**
+   * ストリームの URL のホストを、既定の authToken を付加する Route として登録する
+   * @param streamUri 解決したストリームの URL
+   * @param label     放送局の ID など（ログ用）
+   * @return 登録した Route（http 以外の URL の場合は empty）
+   */
+  public Optional<Route> register(@NonNull URI streamUri, String label) {
+    val host = streamUri.getHost();
+
+    // https はプロキシでヘッダーを付加できない（CONNECT でトンネルするだけ）ので登録しない
+    if (Objects.isNull(host) || !"http".equalsIgnoreCase(streamUri.getScheme())) {
+      return Optional.empty();
+    }
+
+    val current = routes.get(normalize(host));
+
+    // 同じホストの Route があれば、付加するヘッダーはそのまま残す
+    if (Objects.nonNull(current)) {
+      return Optional.of(current);
+    }
+
+    val route = new Route(host, label, defaultToken);
+    put(route);
+
+    return Optional.of(route);
+  }
+
+  /**
+   * Route を削除する
+   * @param host
+   * @return 削除した Route
+   */
+  public Optional<Route> remove(@NonNull String host) {
+    return Optional.ofNullable(routes.remove(normalize(host)));
+  }
+
+  /**
+   * ホストの Route を取得する
+   * @param host
+   * @return
+   */
+  public Optional<Route> lookup(String host) {
+    if (Objects.isNull(host)) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(routes.get(normalize(host)));
+  }
+
+  /**
+   * プロキシを経由させるホストか確認する
+   * @param host
+   * @return
+   */
+  public boolean contains(String host) {
+    return Objects.nonNull(host) && routes.containsKey(normalize(host));
+  }
+
+  /**
+   * 登録されている Route の一覧
+   * @return
+   */
+  public List<Route> getRoutes() {
+    return new ArrayList<>(routes.values());
+  }
+
+  /**
+   * 既定の authToken を付加する Route を作る
+   * @param host
+   * @param label
+   * @return
+   */
+  public Route newRoute(@NonNull String host, String label) {
+    return new Route(host, label, defaultToken);
+  }
+
+  static String normalize(String host) {
+    // ほとんどの場合は小文字なので、変換が必要な場合だけ新しい文字列を作る
+    for (int i = 0; i < host.length(); i++) {
+      if (Character.isUpperCase(host.charAt(i))) {
+        return host.toLowerCase(Locale.ROOT);
+      }
+    }
+
+    return host;
+  }
+}
@@ -0,0 +1,253 @@
+package com.echzny.playhls.proxy;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.*;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * HLS のセグメントをメモリ上に保持する LRU キャッシュ
+ * 合計サイズと保存してからの経過時間で古いものから破棄する
+ */
+@Slf4j
+public class SegmentCache {
+  private static final String[] SEGMENT_EXTENSIONS = {
+      ".aac", ".ts", ".m4s", ".mp3", ".mp4" };
+
+  @Getter private final long maxBytes;
+  @Getter private final Duration maxAge;
+  @Getter private final Duration staleIfError;
+
+  // accessOrder = true で LRU 順に並べる
+  private final LinkedHashMap<String, Entry> entries
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+
+  /**
+   * コンストラクタ
+   * @param maxBytes     保持するセグメントの合計サイズの上限
+   * @param maxAge       キャッシュから応答する期間
+   * @param staleIfError maxAge 経過後も上流のエラー時に限り応答する期間
+   */
+  public SegmentCache(long maxBytes, @NonNull Duration maxAge,
+                      @NonNull Duration staleIfError) {
+    this.maxBytes = maxBytes;
+    this.maxAge = maxAge;
+    this.staleIfError = staleIfError;
+  }
+
+  /**
+   * キャッシュ対象となるセグメントの URI か確認する
+   * @param uri
+   * @return
+   */
+  public static boolean isSegmentUri(String uri) {
+    if (Objects.isNull(uri)) {
+      return false;
+    }
+
+    val query = uri.indexOf('?');
+    val path = query < 0 ? uri : uri.substring(0, query);
+
+    for (val extension : SEGMENT_EXTENSIONS) {
+      if (path.endsWith(extension)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * 上流のレスポンスが本文全体を含み、キャッシュできるか確認する
+   * 上流へは Range: bytes=0- を付けて取得するので 206 が返ることがあるが、
+   * Content-Range が先頭から最後までを示す場合に限り全体とみなす
+   * @param res
+   * @return
+   */
+  public static boolean isCompleteResponse(@NonNull HttpResponse res) {
+    val code = res.getStatus().code();
+
+    if (code == HttpResponseStatus.OK.code()) {
+      return true;
+    }
+    if (code != HttpResponseStatus.PARTIAL_CONTENT.code()) {
+      return false;
+    }
+
+    // bytes 0-999/1000
+    val range = res.headers().get(HttpHeaders.Names.CONTENT_RANGE);
+
+    if (Objects.isNull(range) || !range.startsWith("bytes 0-")) {
+      return false;
+    }
+
+    val slash = range.indexOf('/');
+
+    try {
+      val last = Long.parseLong(range.substring("bytes 0-".length(), slash).trim());
+      val total = Long.parseLong(range.substring(slash + 1).trim());
+
+      return last + 1 == total;
+    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * 有効期限内のセグメントを取得する
+   * @param uri
+   * @return
+   */
+  public synchronized Optional<Entry> getFresh(String uri) {
+    val entry = entries.get(uri);
+
+    if (Objects.isNull(entry)
+        || entry.age(System.currentTimeMillis()) > maxAge.toMillis()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(entry);
+  }
+
+  /**
+   * 上流のエラー時に返す、有効期限切れを含むセグメントを取得する
+   * @param uri
+   * @return
+   */
+  public synchronized Optional<Entry> getStale(String uri) {
+    val entry = entries.get(uri);
+
+    if (Objects.isNull(entry) || entry.age(System.currentTimeMillis())
+        > maxAge.toMillis() + staleIfError.toMillis()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(entry);
+  }
+
+  /**
+   * セグメントを保存する
+   * @param uri
+   * @param entry
+   */
+  public synchronized void put(@NonNull String uri, @NonNull Entry entry) {
+    if (entry.getBody().length > maxBytes) {
+      return;
+    }
+
+    val old = entries.put(uri, entry);
+
+    if (Objects.nonNull(old)) {
+      totalBytes -= old.getBody().length;
+    }
+    totalBytes += entry.getBody().length;
+
+    evict(System.currentTimeMillis());
+  }
+
+  /**
+   * 保持しているセグメントの合計サイズ
+   * @return
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * 保持しているセグメントの数
+   * @return
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * 期限切れのセグメントと、上限を超えた分の古いセグメントを破棄する
+   * @param now
+   */
+  private void evict(long now) {
+    val expire = maxAge.toMillis() + staleIfError.toMillis();
+    Iterator<Entry> it = entries.values().iterator();
+
+    while (it.hasNext()) {
+      val entry = it.next();
+
+      if (totalBytes > maxBytes || entry.age(now) > expire) {
+        totalBytes -= entry.getBody().length;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * キャッシュしたセグメント
+   * 本文全体を保持するので、上流が 206 で返したものも 200 として保存する
+   */
+  @Getter
+  public static class Entry {
+    private final HttpResponseStatus status;
+    private final String contentType;
+    private final byte[] body;
+    private final long storedAt;
+
+    public Entry(@NonNull HttpResponseStatus status, String contentType,
+                 @NonNull byte[] body) {
+      this.status = status;
+      this.contentType = contentType;
+      this.body = body;
+      this.storedAt = System.currentTimeMillis();
+    }
+
+    public long age(long now) {
+      return now - storedAt;
+    }
+
+    /**
+     * ヘッダーのみのレスポンスを生成する（本文は別途 {@link #toLastContent()} で送る）
+     * @return
+     */
+    public HttpResponse toResponseHeader() {
+      val res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+      setHeaders(res);
+
+      return res;
+    }
+
+    /**
+     * 本文のみを生成する
+     * @return
+     */
+    public LastHttpContent toLastContent() {
+      return new DefaultLastHttpContent(Unpooled.wrappedBuffer(body));
+    }
+
+    /**
+     * 本文を含むレスポンスを生成する
+     * @return
+     */
+    public FullHttpResponse toResponse() {
+      val res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+          Unpooled.wrappedBuffer(body));
+      setHeaders(res);
+
+      return res;
+    }
+
+    private void setHeaders(HttpResponse res) {
+      if (Objects.nonNull(contentType)) {
+        res.headers().set(HttpHeaders.Names.CONTENT_TYPE, contentType);
+      }
+      HttpHeaders.setContentLength(res, body.length);
+      HttpHeaders.setKeepAlive(res, true);
+    }
+  }
+}
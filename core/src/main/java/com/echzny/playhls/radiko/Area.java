@@ -23,7 +23,7 @@ public class Area {
    * @param name      地域名
    */
   public Area(String code, String name, BroadcasterType radioType) {
-    this.id = String.format("%s:%s", code, radioType.getCode());
+    this.id = code + ":" + radioType.getCode();
     this.code = code;
     this.name = name;
     this.radioType = radioType;
@@ -39,12 +39,13 @@ public class Area {
       return Optional.empty();
     }
 
-    val split = id.split(":");
-    if (split.length != 2) {
+    val separator = id.indexOf(':');
+    if (separator < 0 || separator == id.length() - 1
+        || id.indexOf(':', separator + 1) >= 0) {
       return Optional.empty();
     }
 
-    return Optional.of(split[0]);
+    return Optional.of(id.substring(0, separator));
   }
 
   public static Optional<BroadcasterType> getBroadcasterTypeFromId(String id) {
@@ -52,11 +53,13 @@ public class Area {
       return Optional.empty();
     }
 
-    val split = id.split(":");
-    if (split.length != 2) {
+    val separator = id.indexOf(':');
+    if (separator < 0 || separator == id.length() - 1
+        || id.indexOf(':', separator + 1) >= 0) {
       return Optional.empty();
     } else {
-      return Optional.of(BroadcasterType.valueOf(split[1]));
+      // 未知の放送サービス種別は empty にする（Channel の生成で例外にしない）
+      return BroadcasterType.findByCode(id.substring(separator + 1));
     }
   }
 }
@@ -0,0 +1,277 @@
+package com.echzny.playhls.radiko;
+
+import lombok.NonNull;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 放送日（05:00〜28:59 の 29h 形式）の時刻を扱うユーティリティ群
+ * 番組表の更新や描画で大量に呼ばれるので、DateTimeFormatter や String.format を使わずに
+ * epoch 秒（日本時間）と primitive だけで変換する
+ */
+public class BroadcastTime {
+  public static final ZoneOffset JST = ZoneOffset.ofHours(9);
+
+  private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+  private static final int JST_OFFSET_SECONDS = 9 * 60 * 60;
+  private static final int DAY_START_SECONDS = 5 * 60 * 60;   // 放送日は 05:00 に切り替わる
+
+  /**
+   * radiko の ft/to 属性（yyyyMMddHHmmss、日本時間）を epoch 秒に変換する
+   * @param s
+   * @return
+   * @throws IllegalArgumentException 形式が正しくない
+   */
+  public static long parseRadikoTimestamp(@NonNull CharSequence s) {
+    if (s.length() != 14) {
+      throw new IllegalArgumentException("invalid timestamp: " + s);
+    }
+
+    int year = digits(s, 0, 4);
+    int month = digits(s, 4, 2);
+    int day = digits(s, 6, 2);
+    int hour = digits(s, 8, 2);
+    int minute = digits(s, 10, 2);
+    int second = digits(s, 12, 2);
+
+    if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+        || hour > 23 || minute > 59 || second > 59) {
+      throw new IllegalArgumentException("invalid timestamp: " + s);
+    }
+
+    return toEpochSecond(year, month, day, hour, minute, second);
+  }
+
+  /**
+   * 日本時間の日時を epoch 秒に変換する
+   */
+  public static long toEpochSecond(int year, int month, int day, int hour,
+                                   int minute, int second) {
+    return epochDay(year, month, day) * SECONDS_PER_DAY
+        + hour * 3600 + minute * 60 + second - JST_OFFSET_SECONDS;
+  }
+
+  /**
+   * LocalDateTime（日本時間）を epoch 秒に変換する
+   * @param ldt
+   * @return
+   */
+  public static long toEpochSecond(@NonNull LocalDateTime ldt) {
+    return ldt.toEpochSecond(JST);
+  }
+
+  /**
+   * epoch 秒を LocalDateTime（日本時間）に変換する
+   * @param epochSecond
+   * @return
+   */
+  public static LocalDateTime toLocalDateTime(long epochSecond) {
+    return LocalDateTime.ofEpochSecond(epochSecond, 0, JST);
+  }
+
+  /**
+   * 29h 形式での放送日（epoch day）を返す（00:00〜04:59 は前日になる）
+   * @param epochSecond
+   * @return
+   */
+  public static long broadcastDay(long epochSecond) {
+    return Math.floorDiv(epochSecond + JST_OFFSET_SECONDS - DAY_START_SECONDS,
+        SECONDS_PER_DAY);
+  }
+
+  /**
+   * 29h 形式での放送日を返す
+   * @param epochSecond
+   * @return
+   */
+  public static LocalDate broadcastDate(long epochSecond) {
+    return LocalDate.ofEpochDay(broadcastDay(epochSecond));
+  }
+
+  /**
+   * 放送日の 00:00 からの経過分（05:00〜28:59 なので 300〜1739）を返す
+   * @param epochSecond
+   * @return
+   */
+  public static int minutesOf29H(long epochSecond) {
+    int secondOfDay = Math.floorMod(
+        epochSecond + JST_OFFSET_SECONDS - DAY_START_SECONDS, SECONDS_PER_DAY);
+
+    return secondOfDay / 60 + DAY_START_SECONDS / 60;
+  }
+
+  /**
+   * 時・分を 29h 形式の 00:00 からの経過分に変換する
+   * @param hour
+   * @param minute
+   * @return
+   */
+  public static int minutesOf29H(int hour, int minute) {
+    return (hour < 5 ? hour + 24 : hour) * 60 + minute;
+  }
+
+  /**
+   * "05:00"〜"28:59" の形式で buf に書き込む（5 文字）
+   * @param epochSecond
+   * @param buf
+   * @param off
+   * @return 書き込んだ文字数
+   */
+  public static int format29H(long epochSecond, @NonNull char[] buf, int off) {
+    return format29HMinutes(minutesOf29H(epochSecond), buf, off);
+  }
+
+  /**
+   * 29h 形式の経過分を "05:00"〜"28:59" の形式で buf に書き込む（5 文字）
+   * @param minutes
+   * @param buf
+   * @param off
+   * @return 書き込んだ文字数
+   */
+  public static int format29HMinutes(int minutes, @NonNull char[] buf, int off) {
+    put2(minutes / 60, buf, off);
+    buf[off + 2] = ':';
+    put2(minutes % 60, buf, off + 3);
+
+    return 5;
+  }
+
+  /**
+   * "05:00"〜"28:59" の形式で sb に追加する
+   * @param epochSecond
+   * @param sb
+   * @return
+   */
+  public static StringBuilder append29H(long epochSecond,
+                                        @NonNull StringBuilder sb) {
+    int minutes = minutesOf29H(epochSecond);
+    int hour = minutes / 60;
+    int minute = minutes % 60;
+
+    return sb.append((char) ('0' + hour / 10)).append((char) ('0' + hour % 10))
+        .append(':')
+        .append((char) ('0' + minute / 10)).append((char) ('0' + minute % 10));
+  }
+
+  /**
+   * epoch day を "yyyy/MM/dd" の様な形式で buf に書き込む（10 文字）
+   * @param epochDay
+   * @param separator 区切り文字
+   * @param buf
+   * @param off
+   * @return 書き込んだ文字数
+   */
+  public static int formatDate(long epochDay, char separator,
+                               @NonNull char[] buf, int off) {
+    long ymd = civil(epochDay);
+    put4((int) (ymd / 10000), buf, off);
+    buf[off + 4] = separator;
+    put2((int) (ymd / 100 % 100), buf, off + 5);
+    buf[off + 7] = separator;
+    put2((int) (ymd % 100), buf, off + 8);
+
+    return 10;
+  }
+
+  /**
+   * epoch 秒を radiko の ft/to の形式（yyyyMMddHHmmss、日本時間）で buf に書き込む（14 文字）
+   * @param epochSecond
+   * @param buf
+   * @param off
+   * @return 書き込んだ文字数
+   */
+  public static int formatRadikoTimestamp(long epochSecond,
+                                          @NonNull char[] buf, int off) {
+    long local = epochSecond + JST_OFFSET_SECONDS;
+    long ymd = civil(Math.floorDiv(local, SECONDS_PER_DAY));
+    int secondOfDay = Math.floorMod(local, SECONDS_PER_DAY);
+
+    put4((int) (ymd / 10000), buf, off);
+    put2((int) (ymd / 100 % 100), buf, off + 4);
+    put2((int) (ymd % 100), buf, off + 6);
+    put2(secondOfDay / 3600, buf, off + 8);
+    put2(secondOfDay / 60 % 60, buf, off + 10);
+    put2(secondOfDay % 60, buf, off + 12);
+
+    return 14;
+  }
+
+  /**
+   * 固定長の数字を読む
+   */
+  private static int digits(CharSequence s, int off, int len) {
+    int value = 0;
+
+    for (int i = off; i < off + len; i++) {
+      int c = s.charAt(i) - '0';
+
+      if (c < 0 || c > 9) {
+        throw new IllegalArgumentException("invalid timestamp: " + s);
+      }
+      value = value * 10 + c;
+    }
+
+    return value;
+  }
+
+  private static void put2(int value, char[] buf, int off) {
+    buf[off] = (char) ('0' + value / 10 % 10);
+    buf[off + 1] = (char) ('0' + value % 10);
+  }
+
+  private static void put4(int value, char[] buf, int off) {
+    put2(value / 100, buf, off);
+    put2(value % 100, buf, off + 2);
+  }
+
+  /**
+   * 月の日数（グレゴリオ暦）
+   */
+  static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * 年月日から epoch day を求める
+   * see http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+   */
+  static long epochDay(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yoe = y - era * 400;
+    long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+    return era * 146097 + doe - 719468;
+  }
+
+  /**
+   * epoch day から年月日を yyyyMMdd の整数で求める
+   * see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+   */
+  static long civil(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long doe = z - era * 146097;
+    long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    long mp = (5 * doy + 2) / 153;
+    long day = doy - (153 * mp + 2) / 5 + 1;
+    long month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+    return year * 10000 + month * 100 + day;
+  }
+}
@@ -0,0 +1,266 @@
+package com.echzny.playhls.radiko;
+
+import com.echzny.playhls.concurrent.JobScope;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ラジオの再生・録音サービスの基底クラス
+ */
+@Slf4j
+@Getter
+public abstract class Broadcaster {
+  private static final LocalTime fiveOClock = LocalTime.of(5, 0);
+  private final BroadcasterType broadcasterType;                // 放送サービス種別
+
+  // 地域・チャンネル一覧（更新時は丸ごと差し替える）
+  private volatile StationRegistry registry = StationRegistry.EMPTY;
+
+  /**
+   * コンストラクタ
+   * @param broadcasterType
+   */
+  protected Broadcaster(@NonNull BroadcasterType broadcasterType) {
+    this.broadcasterType = broadcasterType;
+  }
+
+  /**
+   * 地域一覧を取得する
+   * @return
+   */
+  public List<Area> getAreaList() {
+    return registry.getAreaList();
+  }
+
+  /**
+   * チャンネル一覧を取得する
+   * @return
+   */
+  public List<Channel> getChannelList() {
+    return registry.getChannelList();
+  }
+
+  /**
+   * 地域一覧を更新する
+   * @param newList
+   */
+  public synchronized void updateAreaList(@NonNull List<Area> list) {
+    if (list.size() > 0) {
+      registry = registry.withAreaList(list);
+    }
+  }
+
+  /**
+   * チャンネル一覧を更新する
+   * @param list
+   */
+  public synchronized void updateChannelList(@NonNull List<Channel> list) {
+    if (list.size() > 0) {
+      registry = registry.withChannelList(list);
+    }
+  }
+
+  /**
+   * 地域一覧とチャンネル一覧を同時に更新する
+   * @param areaList
+   * @param channelList
+   */
+  public synchronized void updateRegistry(@NonNull List<Area> areaList,
+                                          @NonNull List<Channel> channelList) {
+    if (areaList.size() > 0 && channelList.size() > 0) {
+      registry = new StationRegistry(areaList, channelList);
+    } else {
+      updateAreaList(areaList);
+      updateChannelList(channelList);
+    }
+  }
+
+  /**
+   * 指定された地域に該当するチャンネル一覧を取得する
+   * @param areaId
+   * @return
+   */
+  public List<Channel> getChannelListByAreaId(String areaId) {
+    return registry.getChannelListByAreaId(areaId);
+  }
+
+  /**
+   * id に該当する地域情報を取得する
+   * @param areaId
+   * @return
+   */
+  public Optional<Area> getAreaById(String areaId) {
+    return registry.getAreaById(areaId);
+  }
+
+  /**
+   * id に該当するチャンネル情報を取得する
+   * @param channelId
+   * @return
+   */
+  public Optional<Channel> getChannelById(String channelId) {
+    return registry.getChannelById(channelId);
+  }
+
+  /**
+   * 初期化処理
+   */
+  public abstract void init() throws IOException, URISyntaxException;
+
+  /**
+   * デフォルトの地域情報を取得する
+   * @return
+   */
+  public abstract Optional<Area> getDefaultArea();
+
+  /**
+   * 番組表一覧を取得する
+   * @param channel
+   * @param date
+   * @return
+   */
+  public abstract List<Program> getProgramListOfOneDay(Channel channel,
+                                                       LocalDate date)
+      throws IOException;
+
+  /**
+   * 7日前から6日後までの直近2週間分の番組表を取得
+   * @param channel
+   * @return
+   */
+  public abstract List<Program> getProgramListOfTwoWeeks(Channel channel)
+      throws IOException;
+
+  /**
+   * 複数チャンネルの番組表をまとめて取得する
+   * @param channels    対象のチャンネル一覧
+   * @param date        日付
+   * @param parallelism 同時に取得するチャンネル数の上限
+   * @return チャンネルごとの取得結果（一部のチャンネルが失敗しても他の結果は返す）
+   */
+  public CompletableFuture<Map<Channel, ProgramListResult>> getProgramListOfOneDay(
+      @NonNull Collection<Channel> channels, @NonNull LocalDate date,
+      int parallelism) {
+    return getProgramLists(channels, parallelism,
+        channel -> getProgramListOfOneDay(channel, date));
+  }
+
+  /**
+   * 複数チャンネルの直近2週間分の番組表をまとめて取得する
+   * @param channels    対象のチャンネル一覧
+   * @param parallelism 同時に取得するチャンネル数の上限
+   * @return チャンネルごとの取得結果（一部のチャンネルが失敗しても他の結果は返す）
+   */
+  public CompletableFuture<Map<Channel, ProgramListResult>> getProgramListOfTwoWeeks(
+      @NonNull Collection<Channel> channels, int parallelism) {
+    return getProgramLists(channels, parallelism,
+        this::getProgramListOfTwoWeeks);
+  }
+
+  /**
+   * 1 チャンネル分の番組表を取得する処理
+   */
+  @FunctionalInterface
+  protected interface ProgramListFetcher {
+    List<Program> fetch(Channel channel) throws IOException;
+  }
+
+  /**
+   * 同時実行数を制限して各チャンネルの番組表を取得する
+   * 同一ホストへの同時接続数は JsoupSession で制限する
+   * @param channels
+   * @param parallelism
+   * @param fetcher
+   * @return チャンネルの順序を保った取得結果
+   */
+  protected CompletableFuture<Map<Channel, ProgramListResult>> getProgramLists(
+      Collection<Channel> channels, int parallelism, ProgramListFetcher fetcher) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+
+    val targets = new ArrayList<>(channels);
+
+    if (targets.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+
+    // parallelism の分だけワーカーで取得し、残りのチャンネルはスレッドを使わずに空きを待つ
+    val scope = new JobScope("program-list", parallelism);
+    val futures = new ArrayList<CompletableFuture<ProgramListResult>>();
+
+    for (val channel : targets) {
+      futures.add(scope.fork(() -> {
+        try {
+          return ProgramListResult.of(channel, fetcher.fetch(channel));
+        } catch (Exception e) {
+          log.warn("could not get program list, channel: " + channel.getId(), e);
+
+          return ProgramListResult.failed(channel, e);
+        }
+      }));
+    }
+
+    val all = CompletableFuture
+        .allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(v -> {
+          Map<Channel, ProgramListResult> results = new LinkedHashMap<>();
+
+          for (val future : futures) {
+            val result = future.join();
+            results.put(result.getChannel(), result);
+          }
+
+          return results;
+        });
+    scope.bindTo(all);
+
+    return all;
+  }
+
+  /**
+   * 視聴可能なチャンネルか確認する
+   * @param channel
+   * @return
+   */
+  public abstract Boolean isPlayable(Channel channel);
+
+  /**
+   * 再生が可能か確認（放送前やタイムフリー対象外は false）
+   * @param program
+   * @return
+   */
+  public abstract Boolean isPlayable(Program program);
+
+  /**
+   * 録音が可能か確認（放送開始前や終了後でも予約録音やタイムフリーなどで録音可能な場合は true）
+   * @param program
+   * @return
+   */
+  public abstract Boolean isRecordable(Program program);
+
+  /**
+   * 地域名を取得する
+   * @param program
+   * @return
+   */
+  public String getAreaName(@NonNull Program program) {
+    val res = getAreaById(program.getAreaId());
+
+    if (res.isPresent()) {
+      return res.get().getName();
+    } else {
+      return "";
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.echzny.playhls.radiko;
 
+import java.util.Optional;
+
 /**
  * 放送局一覧
  */
@@ -37,4 +39,19 @@ public enum BroadcasterType {
   public static BroadcasterType ofCode(String code) {
     return BroadcasterType.valueOf(code);
   }
+
+  /**
+   * 放送局コードの文字列からインスタンスを検索する
+   * @param code
+   * @return 該当するものが無い場合は empty
+   */
+  public static Optional<BroadcasterType> findByCode(String code) {
+    for (BroadcasterType type : values()) {
+      if (type.getCode().equals(code)) {
+        return Optional.of(type);
+      }
+    }
+
+    return Optional.empty();
+  }
 }
@@ -1,6 +1,8 @@
 package com.echzny.playhls.radiko;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.val;
 
 import java.util.Optional;
@@ -15,6 +17,14 @@ public class Channel implements GetPrimaryKey {
   private final String name;
   private final String areaId;
 
+  // areaId を分解した値
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final String areaCode;
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final BroadcasterType broadcasterType;
+
   /**
    * コンストラクタ
    * @param id       チャンネル ID (unique)
@@ -23,18 +33,20 @@ public class Channel implements GetPrimaryKey {
    * @param areaId   地域 ID
    */
   public Channel(String code, String name, String areaId) {
-    this.id = String.format("%s:%s", code, areaId);
+    this.id = code + ":" + areaId;
     this.code = code;
     this.name = name;
     this.areaId = areaId;
+    this.areaCode = Area.getCodeFromId(areaId).orElse(null);
+    this.broadcasterType = Area.getBroadcasterTypeFromId(areaId).orElse(null);
   }
 
   public Optional<String> getAreaCode() {
-    return Area.getCodeFromId(areaId);
+    return Optional.ofNullable(areaCode);
   }
 
   public Optional<BroadcasterType> getBroadcasterType() {
-    return Area.getBroadcasterTypeFromId(areaId);
+    return Optional.ofNullable(broadcasterType);
   }
 
   @Override
@@ -47,9 +59,12 @@ public class Channel implements GetPrimaryKey {
       return Optional.empty();
     }
 
-    val split = id.split(":");
-    if (split.length == 3) {
-      return Optional.of(split[0]);
+    val first = id.indexOf(':');
+    val second = first < 0 ? -1 : id.indexOf(':', first + 1);
+
+    if (second >= 0 && second < id.length() - 1
+        && id.indexOf(':', second + 1) < 0) {
+      return Optional.of(id.substring(0, first));
     } else {
       return Optional.empty();
     }
@@ -60,9 +75,12 @@ public class Channel implements GetPrimaryKey {
       return Optional.empty();
     }
 
-    val split = id.split(":");
-    if (split.length == 3) {
-      return Optional.of(split[1] + ":" + split[2]);
+    val first = id.indexOf(':');
+    val second = first < 0 ? -1 : id.indexOf(':', first + 1);
+
+    if (second >= 0 && second < id.length() - 1
+        && id.indexOf(':', second + 1) < 0) {
+      return Optional.of(id.substring(first + 1));
     } else {
       return Optional.empty();
     }
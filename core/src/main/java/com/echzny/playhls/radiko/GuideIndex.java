@@ -0,0 +1,305 @@
+package com.echzny.playhls.radiko;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 番組表を検索するためのインデックス
+ * チャンネルごとに番組を開始時刻順に並べ、開始・終了時刻を epoch ミリ秒の配列で持つ
+ * 生成後は変更しないので、複数のスレッドから同時に検索できる
+ */
+public class GuideIndex {
+  private final Map<String, ChannelPrograms> channels;         // チャンネル ID -> 番組
+  private final Map<String, List<ChannelPrograms>> areas;      // 地域 ID -> チャンネルごとの番組
+
+  private GuideIndex(Map<String, ChannelPrograms> channels,
+                     Map<String, List<ChannelPrograms>> areas) {
+    this.channels = channels;
+    this.areas = areas;
+  }
+
+  /**
+   * 番組一覧からインデックスを生成する
+   * @param programs
+   * @return
+   */
+  public static GuideIndex of(@NonNull Collection<Program> programs) {
+    val grouped = new LinkedHashMap<String, List<Program>>();
+
+    for (val program : programs) {
+      grouped.computeIfAbsent(program.getChannelId(), key -> new ArrayList<>())
+          .add(program);
+    }
+
+    val channels = new HashMap<String, ChannelPrograms>();
+    val areas = new HashMap<String, List<ChannelPrograms>>();
+
+    for (val entry : grouped.entrySet()) {
+      val list = entry.getValue();
+      list.sort(Comparator.comparingLong(Program::getStartEpochSecond));
+
+      val channelPrograms = new ChannelPrograms(entry.getKey(),
+          list.toArray(new Program[0]));
+      channels.put(entry.getKey(), channelPrograms);
+      areas.computeIfAbsent(list.get(0).getAreaId(), key -> new ArrayList<>())
+          .add(channelPrograms);
+    }
+
+    return new GuideIndex(channels, areas);
+  }
+
+  /**
+   * LocalDateTime（日本時間）を epoch ミリ秒に変換する
+   * @param ldt
+   * @return
+   */
+  public static long toEpochMilli(@NonNull LocalDateTime ldt) {
+    return BroadcastTime.toEpochSecond(ldt) * 1000
+        + ldt.getNano() / 1_000_000;
+  }
+
+  /**
+   * 指定したチャンネルで放送中の番組を取得する
+   * @param channelId
+   * @param now 判定に使う時刻
+   * @return
+   */
+  public Optional<Program> getOnAir(String channelId, @NonNull LocalDateTime now) {
+    val channelPrograms = channels.get(channelId);
+
+    if (Objects.isNull(channelPrograms)) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(channelPrograms.onAir(toEpochMilli(now)));
+  }
+
+  /**
+   * 全チャンネルで現在放送中の番組を取得する
+   * @return チャンネル ID -> 番組
+   */
+  public Map<String, Program> getOnAirAll() {
+    return getOnAirAll(LocalDateTime.now());
+  }
+
+  /**
+   * 全チャンネルで放送中の番組を取得する（全チャンネルを同じ時刻で判定する）
+   * @param now 判定に使う時刻
+   * @return チャンネル ID -> 番組
+   */
+  public Map<String, Program> getOnAirAll(@NonNull LocalDateTime now) {
+    val at = toEpochMilli(now);
+    val result = new HashMap<String, Program>();
+
+    for (val channelPrograms : channels.values()) {
+      val program = channelPrograms.onAir(at);
+
+      if (Objects.nonNull(program)) {
+        result.put(channelPrograms.channelId, program);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * 指定した地域の各チャンネルで放送中の番組を取得する（全チャンネルを同じ時刻で判定する）
+   * @param areaId
+   * @param now 判定に使う時刻
+   * @return チャンネル ID -> 番組
+   */
+  public Map<String, Program> getOnAirByAreaId(String areaId,
+                                               @NonNull LocalDateTime now) {
+    val at = toEpochMilli(now);
+    val result = new HashMap<String, Program>();
+
+    for (val channelPrograms : areas.getOrDefault(areaId,
+        Collections.emptyList())) {
+      val program = channelPrograms.onAir(at);
+
+      if (Objects.nonNull(program)) {
+        result.put(channelPrograms.channelId, program);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * 指定した地域で、期間内に放送される番組を開始時刻順に取得する
+   * @param areaId
+   * @param from 期間の開始
+   * @param to   期間の終了
+   * @return
+   */
+  public List<Program> getRangeByAreaId(String areaId,
+                                        @NonNull LocalDateTime from,
+                                        @NonNull LocalDateTime to) {
+    return merge(areas.getOrDefault(areaId, Collections.emptyList()),
+        toEpochMilli(from), toEpochMilli(to));
+  }
+
+  /**
+   * 指定したチャンネルで、期間内に放送される番組を開始時刻順に取得する
+   * @param channelIds
+   * @param from 期間の開始
+   * @param to   期間の終了
+   * @return
+   */
+  public List<Program> getRange(@NonNull Collection<String> channelIds,
+                                @NonNull LocalDateTime from,
+                                @NonNull LocalDateTime to) {
+    val targets = new ArrayList<ChannelPrograms>();
+
+    for (val channelId : channelIds) {
+      val channelPrograms = channels.get(channelId);
+
+      if (Objects.nonNull(channelPrograms)) {
+        targets.add(channelPrograms);
+      }
+    }
+
+    return merge(targets, toEpochMilli(from), toEpochMilli(to));
+  }
+
+  /**
+   * 各チャンネルの期間内の番組を開始時刻順にマージする
+   * @param targets
+   * @param from
+   * @param to
+   * @return
+   */
+  private static List<Program> merge(List<ChannelPrograms> targets,
+                                     long from, long to) {
+    val result = new ArrayList<Program>();
+
+    if (from >= to) {
+      return result;
+    }
+
+    // cursor: [チャンネルの添字, 次の番組の添字, 終わりの添字]
+    val queue = new PriorityQueue<int[]>((a, b) -> {
+      val compared = Long.compare(targets.get(a[0]).starts[a[1]],
+          targets.get(b[0]).starts[b[1]]);
+
+      return compared != 0 ? compared : Integer.compare(a[0], b[0]);
+    });
+
+    for (int i = 0; i < targets.size(); i++) {
+      val channelPrograms = targets.get(i);
+      val begin = channelPrograms.firstFinishingAfter(from);
+      val end = channelPrograms.firstStartingAtOrAfter(to);
+
+      if (begin < end) {
+        queue.add(new int[] { i, begin, end });
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      val cursor = queue.poll();
+      val channelPrograms = targets.get(cursor[0]);
+
+      if (channelPrograms.finishes[cursor[1]] > from) {
+        result.add(channelPrograms.programs[cursor[1]]);
+      }
+
+      cursor[1]++;
+      if (cursor[1] < cursor[2]) {
+        queue.add(cursor);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * 1 チャンネル分の開始時刻順の番組
+   */
+  private static class ChannelPrograms {
+    private final String channelId;
+    private final Program[] programs;
+    private final long[] starts;
+    private final long[] finishes;
+    private final long[] maxFinishes;  // 先頭からその番組までの終了時刻の最大値
+
+    ChannelPrograms(String channelId, Program[] programs) {
+      this.channelId = channelId;
+      this.programs = programs;
+      this.starts = new long[programs.length];
+      this.finishes = new long[programs.length];
+      this.maxFinishes = new long[programs.length];
+
+      long max = Long.MIN_VALUE;
+
+      for (int i = 0; i < programs.length; i++) {
+        starts[i] = programs[i].getStartEpochSecond() * 1000;
+        finishes[i] = programs[i].getFinishEpochSecond() * 1000;
+        max = Math.max(max, finishes[i]);
+        maxFinishes[i] = max;
+      }
+    }
+
+    /**
+     * 放送中の番組（Program.isOnAir と同じく開始・終了時刻ちょうどは含まない）
+     */
+    Program onAir(long at) {
+      val index = lastStartingBefore(at);
+
+      if (index >= 0 && at < finishes[index]) {
+        return programs[index];
+      }
+
+      return null;
+    }
+
+    /**
+     * 開始時刻が at より前の最後の番組の添字
+     */
+    int lastStartingBefore(long at) {
+      int low = 0;
+      int high = starts.length - 1;
+
+      while (low <= high) {
+        val mid = (low + high) >>> 1;
+
+        if (starts[mid] < at) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+
+      return high;
+    }
+
+    /**
+     * 開始時刻が at 以降の最初の番組の添字
+     */
+    int firstStartingAtOrAfter(long at) {
+      return lastStartingBefore(at) + 1;
+    }
+
+    /**
+     * 終了時刻が at より後になりうる最初の番組の添字
+     */
+    int firstFinishingAfter(long at) {
+      int low = 0;
+      int high = maxFinishes.length - 1;
+
+      while (low <= high) {
+        val mid = (low + high) >>> 1;
+
+        if (maxFinishes[mid] <= at) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+
+      return low;
+    }
+  }
+}
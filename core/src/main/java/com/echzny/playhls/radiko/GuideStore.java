@@ -0,0 +1,612 @@
+package com.echzny.playhls.radiko;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 地域・チャンネル・番組表を保存するファイル
+ * 起動時は MappedByteBuffer で開くだけで、番組は放送日ごとに必要になった時に読み出す
+ *
+ * ファイルの構成（数値はビッグエンディアン）
+ * <pre>
+ * ヘッダー        HEADER_SIZE バイト
+ * 文字列の位置    int[文字列数 + 1]（文字列データの先頭からの位置）
+ * 文字列データ    UTF-8
+ * 地域            [code, name, 放送サービス種別] の int * 3
+ * チャンネル      [code, name, 地域 ID] の int * 3
+ * 番組のチャンネル [チャンネル ID, チャンネル名] の int * 2
+ * 放送日          [epoch day(long), 先頭の番組, 番組数] を epoch day 順に並べたもの
+ * 番組            PROGRAM_SIZE バイトの固定長（放送日ごとにチャンネル・開始時刻順）
+ * 視聴可能なチャンネルコード int[]
+ * </pre>
+ * 文字列は文字列の添字で参照し、null は -1 で表す
+ * 更新時は新しいファイルを書いてから古いファイルを削除する（開いているファイルは書き換えない）
+ */
+@Slf4j
+public class GuideStore {
+  private static final String FILE_PREFIX = "guide-";
+  private static final String FILE_SUFFIX = ".bin";
+  private static final int MAGIC = 0x50484753;   // "PHGS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 80;
+  private static final int AREA_SIZE = 3 * 4;
+  private static final int CHANNEL_SIZE = 3 * 4;
+  private static final int PROGRAM_CHANNEL_SIZE = 2 * 4;
+  private static final int DAY_SIZE = 8 + 4 + 4;
+  private static final int PROGRAM_SIZE = 9 * 4 + 2 * 8;
+
+  @Getter private final Path path;
+  @Getter private final Instant savedAt;
+  private final ByteBuffer buf;
+  private final String[] strings;                  // 読み出した文字列（遅延して埋める）
+  private final int stringOffsetsPos;
+  private final int stringDataPos;
+  private final int areaCount;
+  private final int areaPos;
+  private final int channelCount;
+  private final int channelPos;
+  private final int programChannelCount;
+  private final int programChannelPos;
+  private final int dayCount;
+  private final int dayPos;
+  private final int programPos;
+  private final int allowedCount;
+  private final int allowedPos;
+  private final int currentAreaCodeIndex;
+
+  private GuideStore(Path path, ByteBuffer buf) throws IOException {
+    this.path = path;
+    this.buf = buf;
+
+    if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC
+        || buf.getInt(4) != VERSION || buf.getInt(76) != buf.limit()) {
+      throw new IOException("invalid guide store: " + path);
+    }
+
+    this.savedAt = Instant.ofEpochMilli(buf.getLong(8));
+    this.strings = new String[buf.getInt(16)];
+    this.stringOffsetsPos = buf.getInt(20);
+    this.stringDataPos = buf.getInt(24);
+    this.areaCount = buf.getInt(28);
+    this.areaPos = buf.getInt(32);
+    this.channelCount = buf.getInt(36);
+    this.channelPos = buf.getInt(40);
+    this.programChannelCount = buf.getInt(44);
+    this.programChannelPos = buf.getInt(48);
+    this.dayCount = buf.getInt(52);
+    this.dayPos = buf.getInt(56);
+    this.programPos = buf.getInt(60);
+    this.allowedCount = buf.getInt(64);
+    this.allowedPos = buf.getInt(68);
+    this.currentAreaCodeIndex = buf.getInt(72);
+  }
+
+  /**
+   * 保存先のディレクトリ
+   * @return
+   */
+  public static Path defaultDirectory() {
+    return Util.getDataPath("guide");
+  }
+
+  /**
+   * ディレクトリ内で最も新しいファイルを開く
+   * @param directory
+   * @return 読めるファイルが無ければ empty
+   */
+  public static Optional<GuideStore> open(@NonNull Path directory) {
+    for (val file : listFiles(directory)) {
+      try {
+        return Optional.of(map(file));
+      } catch (IOException | RuntimeException e) {
+        log.warn("could not open guide store: " + file, e);
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * ファイルをメモリにマップして開く
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static GuideStore map(@NonNull Path file) throws IOException {
+    try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new GuideStore(file,
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * 新しいファイルに保存して開き、古いファイルを削除する
+   * @param directory           保存先のディレクトリ
+   * @param registry            地域・チャンネル一覧
+   * @param allowedChannelCodes 視聴可能なチャンネルコード
+   * @param currentAreaCode     現在地の地域コード
+   * @param programs            番組
+   * @return 保存したファイル
+   * @throws IOException
+   */
+  public static GuideStore save(@NonNull Path directory,
+                                @NonNull StationRegistry registry,
+                                @NonNull Collection<String> allowedChannelCodes,
+                                String currentAreaCode,
+                                @NonNull Collection<Program> programs)
+      throws IOException {
+    val data = new Writer(registry, allowedChannelCodes, currentAreaCode,
+        programs).write(Instant.now());
+
+    Files.createDirectories(directory);
+    val tmp = Files.createTempFile(directory, FILE_PREFIX, ".tmp");
+    val file = directory.resolve(FILE_PREFIX
+        + String.format("%020d", System.currentTimeMillis()) + FILE_SUFFIX);
+
+    try {
+      try (val channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (data.hasRemaining()) {
+          channel.write(data);
+        }
+        channel.force(true);
+      }
+
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+
+    val store = map(file);
+
+    // 他で開いているファイルは削除できないことがあるので、次回の保存時に再度試す
+    for (val old : listFiles(directory)) {
+      if (!old.equals(file)) {
+        try {
+          Files.deleteIfExists(old);
+        } catch (IOException e) {
+          log.debug("could not delete old guide store: " + old);
+        }
+      }
+    }
+
+    return store;
+  }
+
+  /**
+   * ディレクトリ内のファイルを新しい順に返す
+   */
+  private static List<Path> listFiles(Path directory) {
+    val files = new ArrayList<Path>();
+
+    if (!Files.isDirectory(directory)) {
+      return files;
+    }
+
+    try (val stream = Files.newDirectoryStream(directory,
+        FILE_PREFIX + "*" + FILE_SUFFIX)) {
+      for (val file : stream) {
+        files.add(file);
+      }
+    } catch (IOException e) {
+      log.warn("could not list guide store: " + directory, e);
+    }
+
+    // ファイル名は保存時刻を 0 埋めしたものなので名前順で新しい順になる
+    files.sort(Comparator.comparing(Path::getFileName).reversed());
+
+    return files;
+  }
+
+  /**
+   * 地域一覧
+   * @return
+   */
+  public List<Area> getAreaList() {
+    val list = new ArrayList<Area>(areaCount);
+
+    for (int i = 0; i < areaCount; i++) {
+      val pos = areaPos + i * AREA_SIZE;
+      list.add(new Area(string(buf.getInt(pos)), string(buf.getInt(pos + 4)),
+          BroadcasterType.values()[buf.getInt(pos + 8)]));
+    }
+
+    return list;
+  }
+
+  /**
+   * チャンネル一覧
+   * @return
+   */
+  public List<Channel> getChannelList() {
+    val list = new ArrayList<Channel>(channelCount);
+
+    for (int i = 0; i < channelCount; i++) {
+      val pos = channelPos + i * CHANNEL_SIZE;
+      list.add(new Channel(string(buf.getInt(pos)), string(buf.getInt(pos + 4)),
+          string(buf.getInt(pos + 8))));
+    }
+
+    return list;
+  }
+
+  /**
+   * 地域・チャンネル一覧
+   * @return
+   */
+  public StationRegistry getRegistry() {
+    return new StationRegistry(getAreaList(), getChannelList());
+  }
+
+  /**
+   * 視聴可能なチャンネルコード
+   * @return
+   */
+  public Set<String> getAllowedChannelCodes() {
+    val set = new HashSet<String>();
+
+    for (int i = 0; i < allowedCount; i++) {
+      set.add(string(buf.getInt(allowedPos + i * 4)));
+    }
+
+    return set;
+  }
+
+  /**
+   * 現在地の地域コード
+   * @return
+   */
+  public Optional<String> getCurrentAreaCode() {
+    return Optional.ofNullable(string(currentAreaCodeIndex));
+  }
+
+  /**
+   * 番組が保存されている放送日
+   * @return
+   */
+  public List<LocalDate> getDays() {
+    val list = new ArrayList<LocalDate>(dayCount);
+
+    for (int i = 0; i < dayCount; i++) {
+      list.add(LocalDate.ofEpochDay(buf.getLong(dayPos + i * DAY_SIZE)));
+    }
+
+    return list;
+  }
+
+  /**
+   * 指定した放送日（29h 形式）の全チャンネルの番組
+   * @param day
+   * @return チャンネル・開始時刻順の番組
+   */
+  public List<Program> getPrograms(@NonNull LocalDate day) {
+    return getPrograms(day, -1);
+  }
+
+  /**
+   * 指定した放送日（29h 形式）・チャンネルの番組
+   * @param channelId
+   * @param day
+   * @return 開始時刻順の番組
+   */
+  public List<Program> getPrograms(@NonNull String channelId,
+                                   @NonNull LocalDate day) {
+    val programChannel = indexOfProgramChannel(channelId);
+
+    if (programChannel < 0) {
+      return new ArrayList<>();
+    }
+
+    return getPrograms(day, programChannel);
+  }
+
+  /**
+   * 指定したチャンネルの全ての放送日の番組
+   * @param channelId
+   * @return 開始時刻順の番組
+   */
+  public List<Program> getPrograms(@NonNull String channelId) {
+    val list = new ArrayList<Program>();
+    val programChannel = indexOfProgramChannel(channelId);
+
+    if (programChannel >= 0) {
+      for (int i = 0; i < dayCount; i++) {
+        readPrograms(i, programChannel, list);
+      }
+    }
+
+    return list;
+  }
+
+  private List<Program> getPrograms(LocalDate day, int programChannel) {
+    val list = new ArrayList<Program>();
+    val index = indexOfDay(day.toEpochDay());
+
+    if (index >= 0) {
+      readPrograms(index, programChannel, list);
+    }
+
+    return list;
+  }
+
+  /**
+   * 放送日の番組を読み出す
+   * @param dayIndex       放送日の添字
+   * @param programChannel 番組のチャンネルの添字（-1 なら全て）
+   * @param list           読み出した番組の追加先
+   */
+  private void readPrograms(int dayIndex, int programChannel,
+                            List<Program> list) {
+    val first = buf.getInt(dayPos + dayIndex * DAY_SIZE + 8);
+    val count = buf.getInt(dayPos + dayIndex * DAY_SIZE + 12);
+
+    for (int i = first; i < first + count; i++) {
+      val pos = programPos + i * PROGRAM_SIZE;
+      val channel = buf.getInt(pos + 4);
+
+      if (programChannel >= 0 && channel != programChannel) {
+        continue;
+      }
+
+      val channelPos = programChannelPos + channel * PROGRAM_CHANNEL_SIZE;
+      list.add(new Program(
+          string(buf.getInt(pos)),
+          string(buf.getInt(channelPos)),
+          string(buf.getInt(channelPos + 4)),
+          string(buf.getInt(pos + 8)),
+          string(buf.getInt(pos + 12)),
+          string(buf.getInt(pos + 16)),
+          string(buf.getInt(pos + 20)),
+          string(buf.getInt(pos + 24)),
+          string(buf.getInt(pos + 28)),
+          BroadcastTime.toLocalDateTime(buf.getLong(pos + 36)),
+          BroadcastTime.toLocalDateTime(buf.getLong(pos + 44)),
+          string(buf.getInt(pos + 32))));
+    }
+  }
+
+  private int indexOfDay(long epochDay) {
+    int low = 0;
+    int high = dayCount - 1;
+
+    while (low <= high) {
+      val mid = (low + high) >>> 1;
+      val value = buf.getLong(dayPos + mid * DAY_SIZE);
+
+      if (value < epochDay) {
+        low = mid + 1;
+      } else if (value > epochDay) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -1;
+  }
+
+  private int indexOfProgramChannel(String channelId) {
+    for (int i = 0; i < programChannelCount; i++) {
+      if (channelId.equals(
+          string(buf.getInt(programChannelPos + i * PROGRAM_CHANNEL_SIZE)))) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * 文字列を読み出す（1 度読んだものは使い回す）
+   */
+  private String string(int index) {
+    if (index < 0) {
+      return null;
+    }
+
+    val cached = strings[index];
+
+    if (Objects.nonNull(cached)) {
+      return cached;
+    }
+
+    val start = buf.getInt(stringOffsetsPos + index * 4);
+    val end = buf.getInt(stringOffsetsPos + (index + 1) * 4);
+    val bytes = new byte[end - start];
+    val view = buf.duplicate();
+    view.position(stringDataPos + start);
+    view.get(bytes);
+
+    val value = new String(bytes, StandardCharsets.UTF_8);
+    strings[index] = value;
+
+    return value;
+  }
+
+  /**
+   * ファイルの内容を組み立てる
+   */
+  private static class Writer {
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<byte[]> stringBytes = new ArrayList<>();
+    private final Map<String, Integer> programChannelIndexes = new HashMap<>();
+    private final List<int[]> programChannels = new ArrayList<>();
+    private final List<Area> areas;
+    private final List<Channel> channels;
+    private final List<String> allowed;
+    private final String currentAreaCode;
+    private final TreeMap<Long, List<Program>> days = new TreeMap<>();
+
+    Writer(StationRegistry registry, Collection<String> allowedChannelCodes,
+           String currentAreaCode, Collection<Program> programs) {
+      this.areas = registry.getAreaList();
+      this.channels = registry.getChannelList();
+      this.allowed = new ArrayList<>(allowedChannelCodes);
+      this.currentAreaCode = currentAreaCode;
+
+      for (val program : programs) {
+        days.computeIfAbsent(
+            BroadcastTime.broadcastDay(program.getStartEpochSecond()),
+            key -> new ArrayList<>()).add(program);
+      }
+    }
+
+    ByteBuffer write(Instant savedAt) {
+      // 先に文字列と番組のチャンネルを登録して大きさを決める
+      val areaRecords = new int[areas.size() * 3];
+      for (int i = 0; i < areas.size(); i++) {
+        val area = areas.get(i);
+        areaRecords[i * 3] = intern(area.getCode());
+        areaRecords[i * 3 + 1] = intern(area.getName());
+        areaRecords[i * 3 + 2] = area.getRadioType().ordinal();
+      }
+
+      val channelRecords = new int[channels.size() * 3];
+      for (int i = 0; i < channels.size(); i++) {
+        val channel = channels.get(i);
+        channelRecords[i * 3] = intern(channel.getCode());
+        channelRecords[i * 3 + 1] = intern(channel.getName());
+        channelRecords[i * 3 + 2] = intern(channel.getAreaId());
+      }
+
+      val allowedRecords = new int[allowed.size()];
+      for (int i = 0; i < allowed.size(); i++) {
+        allowedRecords[i] = intern(allowed.get(i));
+      }
+
+      val currentAreaCodeIndex = intern(currentAreaCode);
+      int programCount = 0;
+
+      for (val list : days.values()) {
+        for (val program : list) {
+          programChannel(program);
+          programCount++;
+        }
+        list.sort(Comparator
+            .comparingInt((Program program) -> programChannel(program))
+            .thenComparingLong(Program::getStartEpochSecond));
+      }
+
+      val programRecords = new ArrayList<int[]>(programCount);
+      for (val list : days.values()) {
+        for (val program : list) {
+          programRecords.add(new int[] {
+              intern(program.getCode()),
+              programChannel(program),
+              intern(program.getName()),
+              intern(program.getSubTitle()),
+              intern(program.getCastMember()),
+              intern(program.getWebSite()),
+              intern(program.getThumbnailUrl()),
+              intern(program.getDescription()),
+              intern(program.getM3u8()) });
+        }
+      }
+
+      int stringDataSize = 0;
+      for (val bytes : stringBytes) {
+        stringDataSize += bytes.length;
+      }
+
+      val stringOffsetsPos = HEADER_SIZE;
+      val stringDataPos = stringOffsetsPos + (stringBytes.size() + 1) * 4;
+      val areaPos = stringDataPos + stringDataSize;
+      val channelPos = areaPos + areas.size() * AREA_SIZE;
+      val programChannelPos = channelPos + channels.size() * CHANNEL_SIZE;
+      val dayPos = programChannelPos
+          + programChannels.size() * PROGRAM_CHANNEL_SIZE;
+      val programPos = dayPos + days.size() * DAY_SIZE;
+      val allowedPos = programPos + programCount * PROGRAM_SIZE;
+      val size = allowedPos + allowed.size() * 4;
+
+      val buf = ByteBuffer.allocate(size);
+      buf.putInt(MAGIC).putInt(VERSION).putLong(savedAt.toEpochMilli())
+          .putInt(stringBytes.size()).putInt(stringOffsetsPos)
+          .putInt(stringDataPos)
+          .putInt(areas.size()).putInt(areaPos)
+          .putInt(channels.size()).putInt(channelPos)
+          .putInt(programChannels.size()).putInt(programChannelPos)
+          .putInt(days.size()).putInt(dayPos).putInt(programPos)
+          .putInt(allowed.size()).putInt(allowedPos)
+          .putInt(currentAreaCodeIndex).putInt(size);
+
+      buf.position(stringOffsetsPos);
+      int offset = 0;
+      for (val bytes : stringBytes) {
+        buf.putInt(offset);
+        offset += bytes.length;
+      }
+      buf.putInt(offset);
+      for (val bytes : stringBytes) {
+        buf.put(bytes);
+      }
+
+      for (val value : areaRecords) {
+        buf.putInt(value);
+      }
+      for (val value : channelRecords) {
+        buf.putInt(value);
+      }
+      for (val record : programChannels) {
+        buf.putInt(record[0]).putInt(record[1]);
+      }
+
+      int first = 0;
+      for (val entry : days.entrySet()) {
+        buf.putLong(entry.getKey()).putInt(first)
+            .putInt(entry.getValue().size());
+        first += entry.getValue().size();
+      }
+
+      int index = 0;
+      for (val list : days.values()) {
+        for (val program : list) {
+          for (val value : programRecords.get(index++)) {
+            buf.putInt(value);
+          }
+          buf.putLong(program.getStartEpochSecond())
+              .putLong(program.getFinishEpochSecond());
+        }
+      }
+
+      for (val value : allowedRecords) {
+        buf.putInt(value);
+      }
+
+      buf.flip();
+
+      return buf;
+    }
+
+    private int intern(String value) {
+      if (Objects.isNull(value)) {
+        return -1;
+      }
+
+      return stringIndexes.computeIfAbsent(value, key -> {
+        stringBytes.add(key.getBytes(StandardCharsets.UTF_8));
+        return stringBytes.size() - 1;
+      });
+    }
+
+    private int programChannel(Program program) {
+      return programChannelIndexes.computeIfAbsent(program.getChannelId(),
+          key -> {
+            programChannels.add(new int[] {
+                intern(program.getChannelId()),
+                intern(program.getChannelName()) });
+            return programChannels.size() - 1;
+          });
+    }
+  }
+}
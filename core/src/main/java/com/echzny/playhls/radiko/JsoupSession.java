@@ -0,0 +1,494 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko;
+
+import com.echzny.playhls.concurrent.SingleFlight;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.val;
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Cookie を保持し、Jsoup の connection 作成時に自動的に Cookie を付加する
+ * XML などの小さなリクエスト向けに、接続を使い回す HttpClient による通信も提供する
+ * 同時に同じ内容を取得しようとした場合は、実行中の通信の結果を共有する
+ */
+public class JsoupSession {
+  private final static int DEFAULT_TIMEOUT = 10000;
+  private final static int MAX_CONNECTIONS_PER_HOST = 6;
+  // Jsoup と同じ User-Agent を送る
+  private final static String USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac "
+      + "OS X 10_12_5) AppleWebKit/537.36 (KHTML, like Gecko) "
+      + "Chrome/53.0.2785.143 Safari/537.36";
+
+  // 全セッションで共有し、keep-alive の接続（HTTP/2 が使えればその接続）を使い回す
+  private static final HttpClient httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .connectTimeout(Duration.ofMillis(DEFAULT_TIMEOUT))
+      .build();
+
+  @Getter
+  @Setter
+  private volatile Map<String, String> cookies = null;
+  private final Map<String, HostPermits> hostPermits = new ConcurrentHashMap<>();
+  private final SingleFlight<String, Object> flights = new SingleFlight<>();
+
+  /**
+   * Jsoup.connection を作成し、cookkie を設定して返す
+   * @param url 接続先の url
+   * @return 作成したconnectionのインスタンス
+   */
+  public Connection createConnection(@NonNull String url) {
+    Connection con = Jsoup.connect(url).timeout(DEFAULT_TIMEOUT);
+    if (!Objects.isNull(cookies)) {
+      con.cookies(cookies);
+    }
+
+    return con;
+  }
+
+  /**
+   * 同一ホストへの同時接続数を制限して connection を実行し、cookie を保存する
+   * @param con 実行する connection
+   * @return 通信のレスポンス
+   * @throws IOException 通信エラー
+   */
+  public Connection.Response execute(@NonNull Connection con)
+      throws IOException {
+    val host = con.request().url().getHost();
+    val permits = getHostPermits(host);
+    val permit = permits.acquire();
+
+    try {
+      permit.get();
+    } catch (InterruptedException e) {
+      permits.cancel(permit);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for " + host);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try {
+      val res = con.execute();
+      updateByResponse(res);
+
+      return res;
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * HttpClient 用のリクエストを作成し、cookie を設定して返す
+   * @param url 接続先の url
+   * @return 作成したリクエストのビルダー
+   */
+  public HttpRequest.Builder newRequest(@NonNull String url) {
+    val builder = HttpRequest.newBuilder(URI.create(url))
+        .timeout(Duration.ofMillis(DEFAULT_TIMEOUT))
+        .header("User-Agent", USER_AGENT);
+    val cookies = this.cookies;
+
+    if (Objects.nonNull(cookies) && !cookies.isEmpty()) {
+      val sb = new StringBuilder();
+
+      for (val entry : cookies.entrySet()) {
+        if (sb.length() > 0) {
+          sb.append("; ");
+        }
+        sb.append(entry.getKey()).append('=').append(entry.getValue());
+      }
+      builder.header("Cookie", sb.toString());
+    }
+
+    return builder;
+  }
+
+  /**
+   * 同一ホストへの同時接続数を制限してリクエストを送信し、cookie を保存する
+   * 応答が 2xx 以外の場合は HttpStatusException で失敗する
+   * GET の場合、同じ URI・ヘッダーのリクエストが実行中であれば送信せずにその応答を共有する
+   * （共有した応答の本文の配列は変更しないこと）
+   * @param request 送信するリクエスト
+   * @return レスポンス（本文は byte 配列）
+   */
+  public CompletableFuture<HttpResponse<byte[]>> sendAsync(
+      @NonNull HttpRequest request) {
+    if ("GET".equals(request.method())) {
+      return coalesce(requestKey(request),
+          () -> sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+    }
+
+    return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  /**
+   * 同じ key の処理が実行中であれば新たに実行せず、その結果を共有する
+   * 起動時などに複数の呼び出し元から同じ情報を同時に取得する場合の重複を省く
+   * 結果はキャッシュしないので、完了後の呼び出しでは再び実行する
+   * @param key      処理の内容を一意に表す文字列（"クラス名.メソッド名:引数" など）
+   * @param supplier 処理を開始して結果の future を返す
+   * @return 呼び出し元ごとの future（cancel しても他の呼び出し元には影響しない）
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> coalesce(
+      @NonNull String key, @NonNull Supplier<CompletableFuture<T>> supplier) {
+    return (CompletableFuture<T>) flights.run(key,
+        () -> (CompletableFuture<Object>) (CompletableFuture<?>) supplier.get());
+  }
+
+  /**
+   * 実行中の処理の数（{@link #coalesce} でまとめたもの）
+   * @return
+   */
+  public int getInFlightCount() {
+    return flights.getInFlightCount();
+  }
+
+  private static String requestKey(HttpRequest request) {
+    return request.method() + " " + request.uri() + " "
+        + request.headers().map();
+  }
+
+  /**
+   * 同一ホストへの同時接続数を制限してリクエストを送信し、cookie を保存する
+   * 応答が 2xx 以外の場合は HttpStatusException で失敗する
+   * （条件付きリクエストに対する 304 Not Modified は失敗として扱わない）
+   * @param request 送信するリクエスト
+   * @param handler 本文の受け取り方
+   * @return レスポンス
+   */
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      @NonNull HttpRequest request,
+      @NonNull HttpResponse.BodyHandler<T> handler) {
+    val permits = getHostPermits(request.uri().getHost());
+
+    // 本文をストリームで受け取る場合でも、Jsoup と同様にヘッダーを受け取った時点で枠を返す
+    return permits.acquire()
+        .thenCompose(ignored -> httpClient.sendAsync(request, handler))
+        .whenComplete((res, e) -> permits.release())
+        .thenApply(res -> {
+          updateByResponse(res);
+
+          if ((res.statusCode() < 200 || res.statusCode() >= 300)
+              && res.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            if (res.body() instanceof InputStream) {
+              try {
+                ((InputStream) res.body()).close();
+              } catch (IOException e) {
+                // ignore
+              }
+            }
+
+            throw new CompletionException(new HttpStatusException(
+                "HTTP error fetching URL", res.statusCode(),
+                res.uri().toString()));
+          }
+
+          return res;
+        });
+  }
+
+  /**
+   * sendAsync の完了を待つ
+   * @param request 送信するリクエスト
+   * @return レスポンス（本文は byte 配列）
+   * @throws IOException 通信エラー
+   */
+  public HttpResponse<byte[]> send(@NonNull HttpRequest request)
+      throws IOException {
+    return await(sendAsync(request));
+  }
+
+  /**
+   * sendAsync の完了を待つ
+   * @param request 送信するリクエスト
+   * @param handler 本文の受け取り方
+   * @return レスポンス
+   * @throws IOException 通信エラー
+   */
+  public <T> HttpResponse<T> send(@NonNull HttpRequest request,
+                                  @NonNull HttpResponse.BodyHandler<T> handler)
+      throws IOException {
+    return await(sendAsync(request, handler));
+  }
+
+  /**
+   * 非同期処理の完了を待ち、失敗した場合は原因の IOException を投げる
+   * @param future
+   * @return
+   * @throws IOException 通信エラー
+   */
+  public static <T> T await(@NonNull CompletableFuture<T> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting response");
+    } catch (ExecutionException e) {
+      throw unwrap(e.getCause());
+    }
+  }
+
+  /**
+   * 非同期処理の失敗の原因を取り出す（CompletionException・ExecutionException を外す）
+   * unwrap と違い例外を投げないので、ログの出力にも使える
+   * @param e
+   * @return
+   */
+  public static Throwable causeOf(Throwable e) {
+    while ((e instanceof CompletionException || e instanceof ExecutionException)
+        && Objects.nonNull(e.getCause())) {
+      e = e.getCause();
+    }
+
+    return e;
+  }
+
+  /**
+   * 非同期処理の失敗の原因を IOException として取り出す
+   * @param e
+   * @return
+   */
+  public static IOException unwrap(Throwable e) {
+    e = causeOf(e);
+
+    if (e instanceof IOException) {
+      return (IOException) e;
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+
+    return new IOException(e);
+  }
+
+  /**
+   * レスポンスの本文を解析して Document を生成する
+   * @param res    レスポンス
+   * @param parser Jsoup のパーサー
+   * @return
+   */
+  public static Document parse(@NonNull HttpResponse<byte[]> res,
+                               @NonNull Parser parser) {
+    return parse(res.body(),
+        res.headers().firstValue("Content-Type").orElse(null),
+        res.uri().toString(), parser);
+  }
+
+  /**
+   * 本文を解析して Document を生成する
+   * @param body        本文
+   * @param contentType Content-Type ヘッダーの値（null の場合は本文から判定する）
+   * @param baseUri     取得元の URI
+   * @param parser      Jsoup のパーサー
+   * @return
+   */
+  public static Document parse(@NonNull byte[] body, String contentType,
+                               @NonNull String baseUri,
+                               @NonNull Parser parser) {
+    try {
+      return Jsoup.parse(new ByteArrayInputStream(body),
+          charsetOf(contentType).map(Charset::name).orElse(null),
+          baseUri, parser);
+    } catch (IOException e) {
+      // メモリ上のデータなので発生しない
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * レスポンスの本文を文字列として取得する
+   * @param res レスポンス
+   * @return
+   */
+  public static String body(@NonNull HttpResponse<byte[]> res) {
+    return new String(res.body(),
+        charsetOf(res.headers().firstValue("Content-Type").orElse(null))
+            .orElse(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * application/x-www-form-urlencoded の本文を作成する
+   * @param keyValues キーと値を交互に並べたもの
+   * @return
+   */
+  public static HttpRequest.BodyPublisher formBody(@NonNull String... keyValues) {
+    if (keyValues.length % 2 != 0) {
+      throw new IllegalArgumentException("keyValues must be pairs");
+    }
+
+    val sb = new StringBuilder();
+
+    for (int i = 0; i < keyValues.length; i += 2) {
+      if (sb.length() > 0) {
+        sb.append('&');
+      }
+      sb.append(URLEncoder.encode(keyValues[i], StandardCharsets.UTF_8))
+          .append('=')
+          .append(URLEncoder.encode(keyValues[i + 1], StandardCharsets.UTF_8));
+    }
+
+    return HttpRequest.BodyPublishers.ofString(sb.toString());
+  }
+
+  private static Optional<Charset> charsetOf(String contentType) {
+    if (Objects.isNull(contentType)) {
+      return Optional.empty();
+    }
+
+    for (val param : contentType.split(";")) {
+      val trimmed = param.trim();
+
+      if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+        try {
+          return Optional.of(Charset.forName(
+              trimmed.substring(8).replace("\"", "")));
+        } catch (IllegalArgumentException e) {
+          return Optional.empty();
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * HttpClient のレスポンスを元に cookie を保存する
+   * @param res 通信のレスポンス
+   */
+  public void updateByResponse(@NonNull HttpResponse<?> res) {
+    val setCookies = res.headers().allValues("Set-Cookie");
+
+    if (setCookies.isEmpty()) {
+      return;
+    }
+
+    val current = this.cookies;
+    val cookies = Objects.isNull(current)
+        ? new LinkedHashMap<String, String>() : new LinkedHashMap<>(current);
+
+    for (val header : setCookies) {
+      try {
+        for (val cookie : HttpCookie.parse(header)) {
+          cookies.put(cookie.getName(), cookie.getValue());
+        }
+      } catch (IllegalArgumentException e) {
+        // 解析できない cookie は無視する
+      }
+    }
+
+    this.cookies = cookies;
+  }
+
+  private HostPermits getHostPermits(String host) {
+    return hostPermits.computeIfAbsent(host,
+        key -> new HostPermits(MAX_CONNECTIONS_PER_HOST));
+  }
+
+  /**
+   * レスポンスを元にcookieを保存する
+   * @param res 通信のレスポンス
+   */
+  public void updateByResponse(@NonNull Connection.Response res) {
+    Map<String, String> cookies = res.cookies();
+    if (Objects.nonNull(cookies) && cookies.size() != 0) {
+      this.cookies = cookies;
+    }
+  }
+
+  /**
+   * Cookie を削除する
+   */
+  public void clearCookie() {
+    cookies = null;
+  }
+
+  /**
+   * ホストごとの同時接続数の枠
+   * 空きが無い場合はスレッドを止めずに、空いた時に完了する future を返す
+   */
+  private static class HostPermits {
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    HostPermits(int permits) {
+      this.available = permits;
+    }
+
+    synchronized CompletableFuture<Void> acquire() {
+      if (available > 0) {
+        available--;
+        return CompletableFuture.completedFuture(null);
+      }
+
+      val waiter = new CompletableFuture<Void>();
+      waiters.add(waiter);
+
+      return waiter;
+    }
+
+    void release() {
+      CompletableFuture<Void> next;
+
+      synchronized (this) {
+        do {
+          next = waiters.poll();
+        } while (Objects.nonNull(next) && next.isDone());
+
+        if (Objects.isNull(next)) {
+          available++;
+          return;
+        }
+      }
+
+      // 待っていた処理は枠を受け取ったスレッドで続けて実行される
+      if (!next.complete(null)) {
+        release();
+      }
+    }
+
+    /**
+     * acquire した枠を待つのをやめる（既に枠を受け取っていれば返す）
+     */
+    void cancel(CompletableFuture<Void> permit) {
+      if (!permit.cancel(false)) {
+        release();
+      }
+    }
+  }
+}
@@ -5,9 +5,6 @@ import lombok.val;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-
 /**
  * 番組や地域、チャンネルなどの情報を生成する
  */
@@ -45,16 +42,47 @@ public class Parser {
    */
   public static Program program(@NonNull Element el,
                                 @NonNull Channel channel) {
-    val formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-    val ft = el.attr("ft");
-    val start = LocalDateTime.parse(ft, formatter);
-    val to = el.attr("to");
-    val id = el.attr("id") + "-" + ft + "-" + to;
-    val finish = LocalDateTime.parse(to, formatter);
-    String subTitle = Util.getInnerTextByTag(el, "desc");
+    return program(channel,
+        el.attr("id"),
+        el.attr("ft"),
+        el.attr("to"),
+        Util.getInnerTextByTag(el, "title"),
+        Util.getInnerTextByTag(el, "desc"),
+        Util.getInnerTextByTag(el, "pfm"),
+        Util.getInnerTextByTag(el, "url"),
+        Util.getInnerTextByTag(el, "img"),
+        Util.getInnerTextByTag(el, "info"));
+  }
+
+  /**
+   * XML から取り出した値から番組情報を生成する
+   * @param channel
+   * @param progId   prog 要素の id 属性
+   * @param ft       開始日時（yyyyMMddHHmmss）
+   * @param to       終了日時（yyyyMMddHHmmss）
+   * @param title
+   * @param desc
+   * @param pfm
+   * @param url
+   * @param img
+   * @param info
+   * @return
+   */
+  public static Program program(@NonNull Channel channel, String progId,
+                                @NonNull String ft, @NonNull String to,
+                                String title, String desc, String pfm,
+                                String url, String img, String info) {
+    val start = BroadcastTime.toLocalDateTime(
+        BroadcastTime.parseRadikoTimestamp(ft));
+    val id = progId + "-" + ft + "-" + to;
+    val finish = BroadcastTime.toLocalDateTime(
+        BroadcastTime.parseRadikoTimestamp(to));
+    String subTitle = desc;
 
     if (!Util.isNullOrEmpty(subTitle)) {
-      subTitle = Jsoup.parse(subTitle).text();  // remove html tag
+      if (subTitle.indexOf('<') >= 0 || subTitle.indexOf('&') >= 0) {
+        subTitle = Jsoup.parse(subTitle).text();  // remove html tag
+      }
 
       if (subTitle.length() > 256) {
         subTitle = subTitle.substring(0, 256 - 3) + "...";
@@ -65,12 +93,12 @@ public class Parser {
         id,
         channel.getId(),
         channel.getName(),
-        Util.getInnerTextByTag(el, "title"),
+        title,
         subTitle,
-        Util.getInnerTextByTag(el, "pfm"),
-        Util.getInnerTextByTag(el, "url"),
-        Util.getInnerTextByTag(el, "img"),
-        Util.getInnerTextByTag(el, "info"),
+        pfm,
+        url,
+        img,
+        info,
         start,
         finish,
         null);
@@ -0,0 +1,96 @@
+package com.echzny.playhls.radiko;
+
+import lombok.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 再生可能な Item の情報を管理する
+ */
+@Slf4j
+@EqualsAndHashCode
+@ToString
+public abstract class PlayableItem {
+  @Getter
+  private final String id;
+  @Getter
+  private final PlayableItemType playableItemType;
+
+  // 再生中フラグ（UI の property は app の PlayingProperty がリスナー経由で同期する）
+  // リスナーのリストは番組表の大量の Item では使わないので、登録されるまで生成しない
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private volatile boolean playing;
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private List<Consumer<Boolean>> playingListeners;   // this で保護
+  public Boolean isPlaying() {
+    return playing;
+  }
+  public void setPlaying(@NonNull Boolean value) {
+    List<Consumer<Boolean>> listeners;
+
+    synchronized (this) {
+      if (playing == value) {
+        return;
+      }
+      playing = value;
+      listeners = playingListeners;
+    }
+
+    if (Objects.nonNull(listeners)) {
+      for (val listener : listeners) {
+        try {
+          listener.accept(value);
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * 再生中フラグが変わった時に呼ばれるリスナーを登録する
+   * @param listener 変更後の値を受け取る
+   */
+  public synchronized void addPlayingListener(
+      @NonNull Consumer<Boolean> listener) {
+    if (Objects.isNull(playingListeners)) {
+      playingListeners = new CopyOnWriteArrayList<>();
+    }
+    playingListeners.add(listener);
+  }
+
+  /**
+   * 登録したリスナーを外す
+   * @param listener
+   */
+  public synchronized void removePlayingListener(
+      @NonNull Consumer<Boolean> listener) {
+    if (Objects.nonNull(playingListeners)) {
+      playingListeners.remove(listener);
+    }
+  }
+
+  /**
+   * コンストラクタ
+   * @param id
+   * @param playableItemType
+   */
+  protected PlayableItem(String id,
+                         @NonNull PlayableItemType playableItemType) {
+    if (Util.isNullOrEmpty(id)) {
+      throw new IllegalArgumentException();
+    }
+
+    this.id = id;
+    this.playableItemType = playableItemType;
+    this.playing = !Util.isNullOrEmpty(id);
+  }
+
+  public abstract BroadcasterType getBroadcasterType();
+}
@@ -0,0 +1,263 @@
+package com.echzny.playhls.radiko;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.val;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * 番組情報
+ */
+@Getter
+@ToString
+public class Program extends PlayableItem {
+  private final String code;
+  private final String channelId;
+  private final String channelName;
+  private final String name;
+  private final String subTitle;
+  private final String castMember;
+  private final String webSite;
+  private final String thumbnailUrl;
+  private final String description;
+  private final LocalDateTime start;
+  private final LocalDateTime finish;
+  private final String m3u8;
+
+  // channelId（"チャンネルコード:地域コード:放送サービス種別"）を分解した値
+  @ToString.Exclude private final String channelCode;
+  @ToString.Exclude private final String areaCode;
+  @ToString.Exclude private final String areaId;
+  @ToString.Exclude private final BroadcasterType broadcasterType;
+
+  // 開始・終了時刻の epoch 秒（日本時間）
+  @ToString.Exclude private final long startEpochSecond;
+  @ToString.Exclude private final long finishEpochSecond;
+
+  /**
+   * コンストラクタ
+   * @param code
+   * @param channelId
+   * @param channelName
+   * @param name
+   * @param subTitle
+   * @param castMember
+   * @param webSite
+   * @param thumbnailUrl
+   * @param description
+   * @param start
+   * @param finish
+   * @param m3u8
+   */
+  public Program(String code, String channelId, String channelName, String name,
+                 String subTitle, String castMember, String webSite,
+                 String thumbnailUrl, String description, LocalDateTime start,
+                 LocalDateTime finish, String m3u8) {
+    super(code + ":" + channelId, PlayableItemType.PROGRAM);
+
+    this.code = code;
+    this.channelId = intern(channelId);
+    this.channelName = intern(channelName);
+    this.name = name;
+    this.subTitle = subTitle;
+    this.castMember = castMember;
+    this.webSite = webSite;
+    this.thumbnailUrl = thumbnailUrl;
+    this.description = description;
+    this.start = start;
+    this.finish = finish;
+    this.m3u8 = m3u8;
+    this.startEpochSecond = Objects.isNull(start)
+        ? 0 : BroadcastTime.toEpochSecond(start);
+    this.finishEpochSecond = Objects.isNull(finish)
+        ? 0 : BroadcastTime.toEpochSecond(finish);
+
+    // 番組表では同じチャンネルの番組が大量に並ぶので、分解した値は共有する
+    val first = Util.isNullOrEmpty(channelId) ? -1 : channelId.indexOf(':');
+    val second = first < 0 ? -1 : channelId.indexOf(':', first + 1);
+    val type = second < 0 || channelId.indexOf(':', second + 1) >= 0
+        ? null : BroadcasterType.findByCode(channelId.substring(second + 1))
+        .orElse(null);
+
+    if (Objects.nonNull(type)) {
+      this.channelCode = intern(channelId.substring(0, first));
+      this.areaCode = intern(channelId.substring(first + 1, second));
+      this.areaId = intern(channelId.substring(first + 1));
+      this.broadcasterType = type;
+    } else {
+      this.channelCode = null;
+      this.areaCode = null;
+      this.areaId = null;
+      this.broadcasterType = null;
+    }
+  }
+
+  private static String intern(String value) {
+    return Objects.isNull(value) ? null : value.intern();
+  }
+
+  /**
+   * 放送サービス種別を取得
+   * @return
+   */
+  public BroadcasterType getBroadcasterType() {
+    if (Objects.isNull(broadcasterType)) {
+      return BroadcasterType.valueOf(getSplitedChannelId()[2]);
+    }
+
+    return broadcasterType;
+  }
+
+  /**
+   * 地域 ID を取得
+   * @return
+   */
+  public String getAreaId() {
+    if (Objects.isNull(areaId)) {
+      return getSplitedChannelId()[1] + ":" + getSplitedChannelId()[2];
+    }
+
+    return areaId;
+  }
+
+  /**
+   * 地域コードを取得
+   * @return
+   */
+  public String getAreaCode() {
+    if (Objects.isNull(areaCode)) {
+      return getSplitedChannelId()[1];
+    }
+
+    return areaCode;
+  }
+
+  /**
+   * チャンネルコードを取得
+   * @return
+   */
+  public String getChannelCode() {
+    if (Objects.isNull(channelCode)) {
+      return getSplitedChannelId()[0];
+    }
+
+    return channelCode;
+  }
+
+  /**
+   * チャンネル ID を区切り文字（:）で分割して返す
+   * @return
+   */
+  protected String[] getSplitedChannelId() {
+    val channelId = getChannelId();
+
+    if (Util.isNullOrEmpty(channelId)) {
+      throw new IllegalArgumentException("channelId is null or empty");
+    }
+
+    val splited = channelId.split(":");
+
+    if (splited.length != 3) {
+      throw new IllegalArgumentException("invalid channelId: " + channelId);
+    }
+
+    return splited;
+  }
+
+  /**
+   * 29h 形式での放送日を返す
+   * @return
+   */
+  public LocalDate getOnAirDate() {
+    return BroadcastTime.broadcastDate(startEpochSecond);
+  }
+
+  /**
+   * 29h 形式での放送年月日の文字列を取得
+   * @return
+   */
+  public String getOnAirDateString() {
+    val buf = new char[10];
+    BroadcastTime.formatDate(BroadcastTime.broadcastDay(startEpochSecond), '/',
+        buf, 0);
+
+    return new String(buf);
+  }
+
+  /**
+   * 放送前の確認
+   * @return
+   */
+  public Boolean isUnAired() {
+    return isUnAired(LocalDateTime.now());
+  }
+
+  /**
+   * 指定した時刻で放送前か確認
+   * @param now
+   * @return
+   */
+  public Boolean isUnAired(@NonNull LocalDateTime now) {
+    return now.isBefore(getStart());
+  }
+
+  /**
+   * 放送中を確認
+   * @return
+   */
+  public Boolean isOnAir() {
+    return isOnAir(LocalDateTime.now());
+  }
+
+  /**
+   * 指定した時刻で放送中か確認
+   * @param now
+   * @return
+   */
+  public Boolean isOnAir(@NonNull LocalDateTime now) {
+    return now.isAfter(getStart()) && now.isBefore(getFinish());
+  }
+
+  /**
+   * 放送終了後を確認
+   * @return
+   */
+  public Boolean isAfterOnAir() {
+    return isAfterOnAir(LocalDateTime.now());
+  }
+
+  /**
+   * 指定した時刻で放送終了後か確認
+   * @param now
+   * @return
+   */
+  public Boolean isAfterOnAir(@NonNull LocalDateTime now) {
+    return now.isAfter(getFinish());
+  }
+
+  /**
+   * 29h 形式での放送開始時間の文字列を取得
+   * @return
+   */
+  public String getStartTimeString() {
+    val buf = new char[5];
+    BroadcastTime.format29H(startEpochSecond, buf, 0);
+
+    return new String(buf);
+  }
+
+  /**
+   * 29h 形式での放送終了時間の文字列を取得
+   * @return
+   */
+  public String getFinishTimeString() {
+    val buf = new char[5];
+    BroadcastTime.format29H(finishEpochSecond, buf, 0);
+
+    return new String(buf);
+  }
+}
@@ -0,0 +1,65 @@
+package com.echzny.playhls.radiko;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * チャンネルごとの番組表の取得結果
+ */
+@ToString
+public class ProgramListResult {
+  @Getter private final Channel channel;
+  @Getter private final List<Program> programList;
+  private final Exception error;
+
+  private ProgramListResult(Channel channel, List<Program> programList,
+                            Exception error) {
+    this.channel = channel;
+    this.programList = programList;
+    this.error = error;
+  }
+
+  /**
+   * 取得に成功した結果を生成する
+   * @param channel
+   * @param programList
+   * @return
+   */
+  public static ProgramListResult of(@NonNull Channel channel,
+                                     @NonNull List<Program> programList) {
+    return new ProgramListResult(channel, programList, null);
+  }
+
+  /**
+   * 取得に失敗した結果を生成する
+   * @param channel
+   * @param error
+   * @return
+   */
+  public static ProgramListResult failed(@NonNull Channel channel,
+                                         @NonNull Exception error) {
+    return new ProgramListResult(channel, Collections.emptyList(), error);
+  }
+
+  /**
+   * 取得に成功したか確認する
+   * @return
+   */
+  public boolean isSucceeded() {
+    return Objects.isNull(error);
+  }
+
+  /**
+   * 取得に失敗した場合のエラー
+   * @return
+   */
+  public Optional<Exception> getError() {
+    return Optional.ofNullable(error);
+  }
+}
@@ -0,0 +1,201 @@
+package com.echzny.playhls.radiko;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 番組表の XML を DOM を作らずに先頭から 1 度だけ読み、prog 要素を読み終える度に番組情報を渡す
+ */
+public class ProgramXmlParser {
+  private static final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+  static {
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+  }
+
+  // prog 要素内で値を取り出すタグ（Util.getInnerTextByTag と同様に最初に見つけたものを使う）
+  private static final String[] TAGS = {
+      "title", "desc", "pfm", "url", "img", "info" };
+  private static final int TITLE = 0;
+  private static final int DESC = 1;
+  private static final int PFM = 2;
+  private static final int URL = 3;
+  private static final int IMG = 4;
+  private static final int INFO = 5;
+
+  /**
+   * XML を解析して番組情報を順に渡す
+   * @param in       番組表の XML
+   * @param channel  対象のチャンネル
+   * @param consumer 番組情報を受け取る
+   * @throws IOException XML の読み込みや解析に失敗
+   */
+  public static void parse(@NonNull InputStream in, @NonNull Channel channel,
+                           @NonNull Consumer<Program> consumer)
+      throws IOException {
+    XMLStreamReader reader = null;
+
+    try {
+      reader = factory.createXMLStreamReader(in, "UTF-8");
+
+      val values = new String[TAGS.length];
+      val text = new StringBuilder();
+      String progId = null;
+      String ft = null;
+      String to = null;
+      boolean inProg = false;
+      int capturing = -1;   // 値を取り出し中のタグ
+      int depth = 0;        // capturing のタグ内での入れ子の深さ
+
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            val name = reader.getLocalName();
+
+            if (capturing >= 0) {
+              depth++;
+            } else if ("prog".equals(name)) {
+              inProg = true;
+              progId = reader.getAttributeValue(null, "id");
+              ft = reader.getAttributeValue(null, "ft");
+              to = reader.getAttributeValue(null, "to");
+              for (int i = 0; i < values.length; i++) {
+                values[i] = null;
+              }
+            } else if (inProg) {
+              val index = indexOfTag(name);
+
+              if (index >= 0 && Objects.isNull(values[index])) {
+                capturing = index;
+                depth = 0;
+                text.setLength(0);
+              }
+            }
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (capturing >= 0) {
+              text.append(reader.getTextCharacters(), reader.getTextStart(),
+                  reader.getTextLength());
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (capturing >= 0) {
+              if (depth > 0) {
+                depth--;
+                break;
+              }
+
+              // Jsoup は title 要素内の空白をまとめない（pre と同じ扱い）ので前後だけ除く
+              values[capturing] = capturing == TITLE
+                  ? text.toString().trim() : normalize(text);
+              capturing = -1;
+            } else if (inProg && "prog".equals(reader.getLocalName())) {
+              inProg = false;
+
+              if (Objects.nonNull(ft) && Objects.nonNull(to)) {
+                consumer.accept(Parser.program(channel, progId, ft, to,
+                    valueOf(values[TITLE]), valueOf(values[DESC]),
+                    valueOf(values[PFM]), valueOf(values[URL]),
+                    valueOf(values[IMG]), valueOf(values[INFO])));
+              }
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("could not parse program xml, channel: "
+          + channel.getId(), e);
+    } finally {
+      if (Objects.nonNull(reader)) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * XML を解析して番組情報の一覧を返す
+   * @param in      番組表の XML
+   * @param channel 対象のチャンネル
+   * @return
+   * @throws IOException XML の読み込みや解析に失敗
+   */
+  public static List<Program> parse(@NonNull InputStream in,
+                                    @NonNull Channel channel)
+      throws IOException {
+    val programList = new ArrayList<Program>();
+    parse(in, channel, programList::add);
+
+    return programList;
+  }
+
+  private static int indexOfTag(String name) {
+    for (int i = 0; i < TAGS.length; i++) {
+      if (TAGS[i].equals(name)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static String valueOf(String value) {
+    return Objects.isNull(value) ? "" : value;
+  }
+
+  /**
+   * Jsoup の Element.text() と同様に空白をまとめて前後の空白を除く
+   * 全角スペースなど Jsoup が空白としない文字はそのまま残す
+   * @param text
+   * @return
+   */
+  static String normalize(CharSequence text) {
+    val sb = new StringBuilder(text.length());
+    boolean space = false;
+
+    for (int i = 0; i < text.length(); i++) {
+      val c = text.charAt(i);
+
+      if (isWhitespace(c)) {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(c);
+      }
+    }
+
+    // Element.text() は最後に String.trim() するので制御文字も除く
+    return sb.toString().trim();
+  }
+
+  /**
+   * Jsoup の StringUtil.isActuallyWhitespace と同じ文字
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r'
+        || c == '\u00a0';
+  }
+}
@@ -0,0 +1,571 @@
+package com.echzny.playhls.radiko;
+
+import com.echzny.playhls.radiko.client.Client;
+import com.echzny.playhls.radiko.record.LiveRecorder;
+import com.echzny.playhls.radiko.record.RecordScheduler;
+import com.echzny.playhls.radiko.record.TimeFreeDownloader;
+import com.echzny.playhls.radiko.relay.StationRelay;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * radiko の再生・録音を管理するクラス
+ */
+@Slf4j
+public class Radiko extends Broadcaster {
+  @Getter private final Client client = new Client();
+  @Getter private final TimeFreeDownloader timeFreeDownloader
+      = new TimeFreeDownloader(client.getSession(), client.getTimeFrees(),
+      client.getTokens());
+  @Getter private final LiveRecorder liveRecorder
+      = new LiveRecorder(client.getSession(), client.getStations(),
+      client.getTokens());
+  @Getter private final RecordScheduler recordScheduler
+      = new RecordScheduler(client.getSession(), client.getStations(),
+      client.getTokens(), liveRecorder);
+  @Getter private final StationRelay stationRelay
+      = new StationRelay(client.getSession(), client.getStations(),
+      client.getTokens());
+
+  // radiko 地域コード（JP*）とリージョンコード（Area.id）の対応表
+  private static final Map<String, String> regionCodes = Map.ofEntries(
+      Map.entry("JP1", "hokkaido-tohoku"),
+      Map.entry("JP2", "hokkaido-tohoku"),
+      Map.entry("JP3", "hokkaido-tohoku"),
+      Map.entry("JP4", "hokkaido-tohoku"),
+      Map.entry("JP5", "hokkaido-tohoku"),
+      Map.entry("JP6", "hokkaido-tohoku"),
+      Map.entry("JP7", "hokkaido-tohoku"),
+      Map.entry("JP8", "kanto"),
+      Map.entry("JP9", "kanto"),
+      Map.entry("JP10", "kanto"),
+      Map.entry("JP11", "kanto"),
+      Map.entry("JP12", "kanto"),
+      Map.entry("JP13", "kanto"),
+      Map.entry("JP14", "kanto"),
+      Map.entry("JP15", "hokuriku-koushinetsu"),
+      Map.entry("JP16", "hokuriku-koushinetsu"),
+      Map.entry("JP17", "hokuriku-koushinetsu"),
+      Map.entry("JP18", "hokuriku-koushinetsu"),
+      Map.entry("JP19", "hokuriku-koushinetsu"),
+      Map.entry("JP20", "hokuriku-koushinetsu"),
+      Map.entry("JP21", "chubu"),
+      Map.entry("JP22", "chubu"),
+      Map.entry("JP23", "chubu"),
+      Map.entry("JP24", "chubu"),
+      Map.entry("JP25", "kinki"),
+      Map.entry("JP26", "kinki"),
+      Map.entry("JP27", "kinki"),
+      Map.entry("JP28", "kinki"),
+      Map.entry("JP29", "kinki"),
+      Map.entry("JP30", "kinki"),
+      Map.entry("JP31", "chugoku-shikoku"),
+      Map.entry("JP32", "chugoku-shikoku"),
+      Map.entry("JP33", "chugoku-shikoku"),
+      Map.entry("JP34", "chugoku-shikoku"),
+      Map.entry("JP35", "chugoku-shikoku"),
+      Map.entry("JP36", "chugoku-shikoku"),
+      Map.entry("JP37", "chugoku-shikoku"),
+      Map.entry("JP38", "chugoku-shikoku"),
+      Map.entry("JP39", "chugoku-shikoku"),
+      Map.entry("JP40", "kyushu"),
+      Map.entry("JP41", "kyushu"),
+      Map.entry("JP42", "kyushu"),
+      Map.entry("JP43", "kyushu"),
+      Map.entry("JP44", "kyushu"),
+      Map.entry("JP45", "kyushu"),
+      Map.entry("JP46", "kyushu"),
+      Map.entry("JP47", "kyushu"));
+  public static final List<String> nhkStationIdList = Arrays.asList("JOIK",
+      "JOHK", "JOAK", "JOCK", "JOBK", "JOFK", "JOZK", "JOLK", "JOAB", "JOAK-FM");
+  public static final List<String> exclusiveIdList = Arrays.asList("JOAB");
+
+  // 保存した番組表と同期する際に同時に取得するチャンネル数
+  private static final int RECONCILE_PARALLELISM = 4;
+  // タイムフリーで遡れる日数（これより古い番組は保存しない）
+  private static final int TIME_FREE_DAYS = 7;
+
+  // 更新時は丸ごと差し替える
+  private volatile Set<String> allowedChannelCodes = Collections.emptySet();
+  private volatile String currentAreaCode;
+
+  private final Path storeDirectory;
+  private volatile GuideStore store;
+  // 保存してある番組表の放送中・期間の検索用（store と一緒に差し替える）
+  private volatile GuideIndex guideIndex = GuideIndex.of(Collections.emptyList());
+  private final ExecutorService reconcileExecutor
+      = Executors.newSingleThreadExecutor(r -> {
+    val thread = new Thread(r, "radiko-guide-reconcile");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * コンストラクタ
+   * @param activation
+   * @param setting
+   * @param recordService
+   */
+  public Radiko() {
+    this(GuideStore.defaultDirectory());
+  }
+
+  /**
+   * コンストラクタ
+   * @param storeDirectory 番組表を保存するディレクトリ
+   */
+  public Radiko(@NonNull Path storeDirectory) {
+    super(BroadcasterType.radiko);
+    this.storeDirectory = storeDirectory;
+  }
+
+  /**
+   * セッションの初期化と radiko プレミアムが有効な場合ログイン処理を行う
+   * @throws IOException
+   */
+  protected void initSession() throws IOException {
+    client.getSession().clearCookie();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void init() throws IOException, URISyntaxException {
+    log.trace("start init");
+
+    // 保存してある番組表ですぐに表示できるようにし、ネットワークとの同期は裏で行う
+    GuideStore.open(storeDirectory).ifPresent(this::restore);
+    reconcile();
+
+    log.trace("finish init");
+  }
+
+  /**
+   * 保存してある地域・チャンネル一覧を反映する
+   * @param store
+   */
+  protected void restore(@NonNull GuideStore store) {
+    this.store = store;
+    currentAreaCode = store.getCurrentAreaCode().orElse(null);
+    allowedChannelCodes = Collections.unmodifiableSet(
+        store.getAllowedChannelCodes());
+    updateRegistry(store.getAreaList(), store.getChannelList());
+
+    log.info("restored guide store, saved at: " + store.getSavedAt());
+
+    // 索引は全ての番組を読み出すので、表示を待たせないように裏で作る
+    // reconcile の保存と同じスレッドで順に実行するので、新しい索引を上書きしない
+    reconcileExecutor.execute(() -> {
+      val programs = new ArrayList<Program>();
+
+      for (val day : store.getDays()) {
+        programs.addAll(store.getPrograms(day));
+      }
+
+      if (this.store == store) {
+        guideIndex = GuideIndex.of(programs);
+      }
+    });
+  }
+
+  /**
+   * 地域・チャンネル一覧と視聴可能なチャンネルの番組表をネットワークから取得して保存する
+   * 取得できなかったチャンネルは保存してあった番組表を残す
+   * @return
+   */
+  public CompletableFuture<Void> reconcile() {
+    return CompletableFuture
+        .runAsync(() -> {
+          try {
+            update();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, reconcileExecutor)
+        .thenCompose(v -> {
+          val channels = new ArrayList<Channel>();
+
+          for (val channel : getChannelList()) {
+            if (isPlayable(channel)) {
+              channels.add(channel);
+            }
+          }
+
+          return getProgramListOfTwoWeeks(channels, RECONCILE_PARALLELISM);
+        })
+        .thenAcceptAsync(this::saveStore, reconcileExecutor)
+        .exceptionally(e -> {
+          log.warn("could not reconcile guide with network", e);
+          return null;
+        });
+  }
+
+  /**
+   * 番組表を保存する
+   * @param results
+   */
+  protected void saveStore(@NonNull Map<Channel, ProgramListResult> results) {
+    val previous = store;
+    val oldest = LocalDate.now().minusDays(TIME_FREE_DAYS);
+    val programs = new ArrayList<Program>();
+
+    for (val result : results.values()) {
+      val list = result.isSucceeded() || Objects.isNull(previous)
+          ? result.getProgramList()
+          : previous.getPrograms(result.getChannel().getId());
+
+      for (val program : list) {
+        if (!program.getOnAirDate().isBefore(oldest)) {
+          programs.add(program);
+        }
+      }
+    }
+
+    try {
+      store = GuideStore.save(storeDirectory, getRegistry(),
+          allowedChannelCodes, currentAreaCode, programs);
+      guideIndex = GuideIndex.of(programs);
+      log.info("saved guide store, programs: " + programs.size());
+    } catch (IOException e) {
+      log.warn("could not save guide store", e);
+    }
+  }
+
+  /**
+   * 保存してある番組表から、指定した放送日の番組を取得する（通信しない）
+   * @param date 放送日（29h 形式）
+   * @return チャンネル・開始時刻順の番組
+   */
+  public List<Program> getStoredProgramList(@NonNull LocalDate date) {
+    val current = store;
+
+    return Objects.isNull(current)
+        ? Collections.emptyList() : current.getPrograms(date);
+  }
+
+  /**
+   * 保存してある番組表から、指定したチャンネル・放送日の番組を取得する（通信しない）
+   * @param channel
+   * @param date 放送日（29h 形式）
+   * @return 開始時刻順の番組
+   */
+  public List<Program> getStoredProgramList(@NonNull Channel channel,
+                                            @NonNull LocalDate date) {
+    val current = store;
+
+    return Objects.isNull(current)
+        ? Collections.emptyList() : current.getPrograms(channel.getId(), date);
+  }
+
+  /**
+   * 保存してある番組表から、指定した時刻に放送中の番組を取得する（通信しない）
+   * @param channel
+   * @param now 判定に使う時刻
+   * @return
+   */
+  public Optional<Program> getOnAirProgram(@NonNull Channel channel,
+                                           @NonNull LocalDateTime now) {
+    return guideIndex.getOnAir(channel.getId(), now);
+  }
+
+  /**
+   * 保存してある番組表から、全チャンネルで指定した時刻に放送中の番組を取得する（通信しない）
+   * @param now 判定に使う時刻
+   * @return チャンネル ID -> 番組
+   */
+  public Map<String, Program> getOnAirPrograms(@NonNull LocalDateTime now) {
+    return guideIndex.getOnAirAll(now);
+  }
+
+  /**
+   * 保存してある番組表から、期間内に放送される番組を取得する（通信しない）
+   * @param channel
+   * @param from 期間の開始
+   * @param to   期間の終了
+   * @return 開始時刻順の番組
+   */
+  public List<Program> getStoredProgramList(@NonNull Channel channel,
+                                            @NonNull LocalDateTime from,
+                                            @NonNull LocalDateTime to) {
+    return guideIndex.getRange(Collections.singletonList(channel.getId()),
+        from, to);
+  }
+
+  /**
+   * 地域・チャンネル一覧の初期化と更新
+   * @param premium
+   * @throws IOException
+   */
+  protected void update() throws IOException {
+    log.trace("start update");
+
+    initSession();
+
+    val areaCode = client.getAreas().getCode();
+    val allowedCodes = new HashSet<String>();
+
+    // 放送可能な地域やチャンネル一覧を取得する（premiumの場合もNHKは該当地域のNHKしか視聴できない）
+    val current = client.getStations().getListByAreaCode(areaCode);
+    val currentStationList = current.getElementsByTag("stations");
+
+    for (val stations : currentStationList) {
+      val stationsList = stations.getElementsByTag("station");
+
+      for (val station : stationsList) {
+        allowedCodes.add(Util.getInnerTextByTag(station, "id"));
+      }
+    }
+
+    // 地域一覧とチャンネル一覧を取得
+    val fullList = client.getStations().getList().getElementsByTag("stations");
+    val areaList = new ArrayList<Area>();
+    val channelList = new ArrayList<Channel>();
+
+    for (val stations : fullList) {
+      val area = Parser.area(stations);
+      areaList.add(area);
+
+      val stationList = stations.getElementsByTag("station");
+
+      for (val station : stationList) {
+        val channel = Parser.channel(station, area);
+
+        if (exclusiveIdList.contains(channel.getCode())) {
+          continue;
+        }
+
+        channelList.add(channel);
+      }
+    }
+
+    currentAreaCode = areaCode;
+    allowedChannelCodes = Collections.unmodifiableSet(allowedCodes);
+    updateRegistry(areaList, channelList);
+
+    log.trace("finish update");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Optional<Area> getDefaultArea() {
+    val regionCode = regionCodes.get(currentAreaCode);
+
+    return getRegistry().getAreaListByCode(regionCode).stream().findFirst();
+  }
+
+  /**
+   * elements を解析して番組情報を取得する
+   * @param elements
+   * @param channel
+   * @return
+   */
+  protected List<Program> elementsToProgramList(@NonNull Elements elements,
+                                                @NonNull Channel channel) {
+    val programList = new ArrayList<Program>();
+
+    for (val element : elements) {
+      val innerElements = element.getElementsByTag("prog");
+
+      for (val innerElement : innerElements) {
+        val newProgram = Parser.program(innerElement, channel);
+
+        if (isListedProgram(newProgram)) {
+          programList.add(newProgram);
+        }
+      }
+    }
+
+    return programList;
+  }
+
+  /**
+   * 番組表に載せる番組か確認する
+   * @param program
+   * @return
+   */
+  protected static boolean isListedProgram(Program program) {
+    if (Objects.isNull(program)) {
+      return false;
+    }
+
+    val name = program.getName();
+
+    // 一部の番組は休止中の時間帯も番組情報が送られてくるのでスキップする
+    return !(Util.isNullOrEmpty(name)
+        || name.equals("番組休止中") || name.equals("放送休止中"));
+  }
+
+  /**
+   * XML のストリームを解析して番組情報を取得する
+   * @param in
+   * @param channel
+   * @return
+   * @throws IOException
+   */
+  protected List<Program> streamToProgramList(@NonNull InputStream in,
+                                              @NonNull Channel channel)
+      throws IOException {
+    val programList = new ArrayList<Program>();
+
+    try (in) {
+      ProgramXmlParser.parse(in, channel, program -> {
+        if (isListedProgram(program)) {
+          programList.add(program);
+        }
+      });
+    }
+
+    return programList;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Program> getProgramListOfOneDay(@NonNull Channel channel,
+                                              @NonNull LocalDate date)
+      throws IOException {
+    initSession();
+
+    try {
+      return streamToProgramList(
+          client.getPrograms().openListOfOneDay(channel.getCode(), date),
+          channel);
+    } catch (IOException e) {
+      val stored = getStoredProgramList(channel, date);
+
+      if (stored.isEmpty()) {
+        throw e;
+      }
+
+      log.warn("use stored program list, channel: " + channel.getId(), e);
+      return stored;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Program> getProgramListOfTwoWeeks(@NonNull Channel channel)
+      throws IOException {
+    initSession();
+
+    try {
+      return streamToProgramList(
+          client.getPrograms().openListOfTwoWeeks(channel.getCode()), channel);
+    } catch (IOException e) {
+      val current = store;
+      val stored = Objects.isNull(current)
+          ? Collections.<Program>emptyList() : current.getPrograms(channel.getId());
+
+      if (stored.isEmpty()) {
+        throw e;
+      }
+
+      log.warn("use stored program list, channel: " + channel.getId(), e);
+      return stored;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Boolean isPlayable(Channel channel) {
+    return allowedChannelCodes.contains(channel.getCode());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Boolean isPlayable(@NonNull Program program) {
+    val now = LocalDateTime.now();
+
+    if (program.isUnAired(now)) {
+      // 放送前はfalse
+      return false;
+    }
+
+    if (program.isAfterOnAir(now)) {
+      if (nhkStationIdList.contains(program.getChannelCode())) {
+        // NHKの番組はタイムフリー非対応なのでfalse
+        return false;
+      }
+
+      if (program.getOnAirDate().isBefore(now.toLocalDate().minusDays(7))) {
+        // 1週間以上前の番組はタイムフリー対応外なのでfalse
+        return false;
+      }
+    }
+
+    // 上記以外の場合は、視聴が許可されているチャンネルならtrue
+    return isAllowedChannelCode(program.getChannelCode());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Boolean isRecordable(@NonNull Program program) {
+    val now = LocalDateTime.now();
+
+    if (program.isAfterOnAir(now)) {
+      if (nhkStationIdList.contains(program.getChannelCode())) {
+        // NHKの番組はタイムフリー非対応なので、放送終了後は必ずfalseを返す
+        return false;
+      }
+
+      if (program.getOnAirDate().isBefore(now.toLocalDate().minusDays(7))) {
+        // 1週間以上前の番組はタイムフリー対応外なのでfalse
+        return false;
+      }
+   }
+
+    return isAllowedChannelCode(program.getChannelCode());
+  }
+
+  /**
+   * 放送前・放送中の番組の録音を予約する
+   * 放送が終わった番組は timeFreeDownloader でダウンロードする
+   * @param program 対象の番組
+   * @param target  保存先のファイル
+   * @return 予約
+   */
+  public RecordScheduler.Reservation reserve(@NonNull Program program,
+                                             @NonNull Path target) {
+    if (!isRecordable(program) || program.isAfterOnAir(LocalDateTime.now())) {
+      throw new IllegalArgumentException("could not reserve " + program.getName());
+    }
+
+    return recordScheduler.reserve(program, target);
+  }
+
+  /**
+   * 指定されたチャンネルが視聴可能か確認する
+   * @param channelCode
+   * @return
+   */
+  protected Boolean isAllowedChannelCode(String channelCode) {
+    return allowedChannelCodes.contains(channelCode);
+  }
+}
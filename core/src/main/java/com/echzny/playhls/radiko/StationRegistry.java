@@ -0,0 +1,146 @@
+package com.echzny.playhls.radiko;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * 地域・チャンネル一覧の不変なスナップショット
+ * id・コード・地域ごとのハッシュ索引を持ち、生成後は変更しないのでロックなしで参照できる
+ */
+public class StationRegistry {
+  public static final StationRegistry EMPTY
+      = new StationRegistry(Collections.emptyList(), Collections.emptyList());
+
+  @Getter private final List<Area> areaList;
+  @Getter private final List<Channel> channelList;
+
+  private final Map<String, Area> areasById;                 // 小文字の id -> 地域
+  private final Map<String, List<Area>> areasByCode;
+  private final Map<String, Channel> channelsById;           // 小文字の id -> チャンネル
+  private final Map<String, List<Channel>> channelsByCode;
+  private final Map<String, List<Channel>> channelsByAreaId;
+
+  /**
+   * コンストラクタ
+   * @param areaList    地域一覧
+   * @param channelList チャンネル一覧
+   */
+  public StationRegistry(@NonNull List<Area> areaList,
+                         @NonNull List<Channel> channelList) {
+    this.areaList = Collections.unmodifiableList(new ArrayList<>(areaList));
+    this.channelList = Collections.unmodifiableList(new ArrayList<>(channelList));
+
+    val areasById = new HashMap<String, Area>();
+    val areasByCode = new HashMap<String, List<Area>>();
+
+    for (val area : this.areaList) {
+      areasById.putIfAbsent(toKey(area.getId()), area);
+      areasByCode.computeIfAbsent(area.getCode(), key -> new ArrayList<>())
+          .add(area);
+    }
+
+    val channelsById = new HashMap<String, Channel>();
+    val channelsByCode = new HashMap<String, List<Channel>>();
+    val channelsByAreaId = new HashMap<String, List<Channel>>();
+
+    for (val channel : this.channelList) {
+      channelsById.putIfAbsent(toKey(channel.getId()), channel);
+      channelsByCode.computeIfAbsent(channel.getCode(), key -> new ArrayList<>())
+          .add(channel);
+      channelsByAreaId.computeIfAbsent(channel.getAreaId(),
+          key -> new ArrayList<>()).add(channel);
+    }
+
+    this.areasById = areasById;
+    this.areasByCode = freeze(areasByCode);
+    this.channelsById = channelsById;
+    this.channelsByCode = freeze(channelsByCode);
+    this.channelsByAreaId = freeze(channelsByAreaId);
+  }
+
+  /**
+   * 地域一覧を差し替えたスナップショットを生成する
+   * @param list
+   * @return
+   */
+  public StationRegistry withAreaList(@NonNull List<Area> list) {
+    return new StationRegistry(list, channelList);
+  }
+
+  /**
+   * チャンネル一覧を差し替えたスナップショットを生成する
+   * @param list
+   * @return
+   */
+  public StationRegistry withChannelList(@NonNull List<Channel> list) {
+    return new StationRegistry(areaList, list);
+  }
+
+  /**
+   * id に該当する地域情報を取得する（大文字・小文字は区別しない）
+   * @param areaId
+   * @return
+   */
+  public Optional<Area> getAreaById(String areaId) {
+    if (Objects.isNull(areaId)) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(areasById.get(toKey(areaId)));
+  }
+
+  /**
+   * コードに該当する地域情報を取得する
+   * @param code
+   * @return
+   */
+  public List<Area> getAreaListByCode(String code) {
+    return areasByCode.getOrDefault(code, Collections.emptyList());
+  }
+
+  /**
+   * id に該当するチャンネル情報を取得する（大文字・小文字は区別しない）
+   * @param channelId
+   * @return
+   */
+  public Optional<Channel> getChannelById(String channelId) {
+    if (Objects.isNull(channelId)) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(channelsById.get(toKey(channelId)));
+  }
+
+  /**
+   * コードに該当するチャンネル情報を取得する（複数の地域で同じコードのチャンネルがある）
+   * @param code
+   * @return
+   */
+  public List<Channel> getChannelListByCode(String code) {
+    return channelsByCode.getOrDefault(code, Collections.emptyList());
+  }
+
+  /**
+   * 指定された地域に該当するチャンネル一覧を取得する
+   * @param areaId
+   * @return
+   */
+  public List<Channel> getChannelListByAreaId(String areaId) {
+    return channelsByAreaId.getOrDefault(areaId, Collections.emptyList());
+  }
+
+  private static String toKey(String id) {
+    return id.toLowerCase(Locale.ROOT);
+  }
+
+  private static <T> Map<String, List<T>> freeze(Map<String, List<T>> map) {
+    for (val entry : map.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+
+    return map;
+  }
+}
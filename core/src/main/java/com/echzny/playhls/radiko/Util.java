@@ -3,16 +3,8 @@
  */
 package com.echzny.playhls.radiko;
 
-import com.sun.jna.Platform;
-import com.sun.jna.platform.win32.Advapi32;
-import com.sun.jna.platform.win32.Advapi32Util;
-import com.sun.jna.platform.win32.WinNT;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
 import lombok.NonNull;
 import lombok.val;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.logging.log4j.LogManager;
 import org.jsoup.nodes.Element;
 
@@ -21,9 +13,6 @@ import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
-import javax.imageio.ImageIO;
-import javax.swing.filechooser.FileSystemView;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -36,43 +25,56 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * 各クラスで共通して利用するユーティリティ群
+ * UI のない環境（サーバー）でも使うので、JavaFX や Swing のクラスは使わない（画像の処理は app の Images）
  */
 public class Util {
   private static final String CRYPT_KEY = "mN25zxS67fDZvVBt";
   private static final String CRYPT_ALGORITHM = "AES";
   private static final String NETRADIO_RECORDER_FOLDER_NAME = "NetRadioRecorder";
+  private static final String OS_NAME
+      = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+
+  // DateTimeFormatter はスレッドセーフなので使い回す
+  private static final DateTimeFormatter LONG_TIME_FORMATTER
+      = DateTimeFormatter.ofPattern("ahh時mm分", Locale.JAPAN);
+  private static final DateTimeFormatter MIDDLE_TIME_FORMATTER
+      = DateTimeFormatter.ofPattern("HH時mm分");
+  private static final DateTimeFormatter SHORT_TIME_FORMATTER
+      = DateTimeFormatter.ofPattern("ahhmm", Locale.ENGLISH);
+  private static final DateTimeFormatter EXTRA_SHORT_TIME_FORMATTER
+      = DateTimeFormatter.ofPattern("HHmm");
+  private static final DateTimeFormatter LONG_DATE_FORMATTER
+      = DateTimeFormatter.ofPattern("yyyy年M月d日");
+  private static final DateTimeFormatter MIDDLE_DATE_FORMATTER
+      = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+  private static final DateTimeFormatter SHORT_DATE_FORMATTER
+      = DateTimeFormatter.ofPattern("M月d日");
 
   /**
-   * DB へ保存するために image を byte array へ変換する
-   * @param image
-   * @param extension
-   * @return 変換後の byte array
+   * Windows で実行しているか確認する
+   * @return
    */
-  public static byte[] bufferedImageToByteArray(@NonNull BufferedImage image) {
-    val output = new ByteArrayOutputStream();
-
-    try {
-      ImageIO.write(image, "png", output);
-
-      return output.toByteArray();
-    } catch (IOException e) {
-      LogManager.getLogger().error(e.getMessage(), e);
-
-      return null;
-    }
+  public static boolean isWindows() {
+    return OS_NAME.startsWith("windows");
   }
 
-  public static InputStream bufferedImageToInputStream(@NonNull BufferedImage image) {
-    return new ByteArrayInputStream(bufferedImageToByteArray(image));
+  /**
+   * macOS で実行しているか確認する
+   * @return
+   */
+  public static boolean isMac() {
+    return OS_NAME.startsWith("mac");
   }
 
-  public static byte[] imageToByteArray(@NonNull Image image) {
-    return bufferedImageToByteArray(SwingFXUtils.fromFXImage(image, null));
+  /**
+   * Linux で実行しているか確認する
+   * @return
+   */
+  public static boolean isLinux() {
+    return OS_NAME.startsWith("linux");
   }
 
   /**
@@ -129,7 +131,7 @@ public class Util {
         return null;
       }
 
-      val encryptBytes = Base64.decodeBase64(encrypted);
+      val encryptBytes = Base64.getDecoder().decode(encrypted);
       val originalBytes = cipher(Cipher.DECRYPT_MODE, encryptBytes, CRYPT_KEY,
           CRYPT_ALGORITHM);
 
@@ -158,7 +160,7 @@ public class Util {
       val originalBytes = original.getBytes();
       val encryptBytes = cipher(Cipher.ENCRYPT_MODE, originalBytes, CRYPT_KEY,
           CRYPT_ALGORITHM);
-      val encryptBytesBase64 = Base64.encodeBase64(encryptBytes, false);
+      val encryptBytesBase64 = Base64.getEncoder().encode(encryptBytes);
 
       return new String(encryptBytesBase64);
     } catch (IllegalArgumentException | InvalidKeyException
@@ -209,16 +211,23 @@ public class Util {
   }
 
   /**
-   * `%APPDATA%` もしくは `~/Library/Application Support` へのパスを返す
+   * `%APPDATA%`、`~/Library/Application Support` もしくは
+   * `$XDG_DATA_HOME`（未設定の場合は `~/.local/share`）へのパスを返す
    * @return パス
    */
   public static Path getAppDataPath() {
     String appDir = "";
 
-    if (Platform.isWindows()) {
+    if (isWindows()) {
       appDir = System.getenv("AppData");
-    } else if (Platform.isMac()) {
+    } else if (isMac()) {
       appDir = System.getProperty("user.home") + "/Library/Application Support";
+    } else if (isLinux()) {
+      appDir = System.getenv("XDG_DATA_HOME");
+
+      if (isNullOrEmpty(appDir)) {
+        appDir = System.getProperty("user.home") + "/.local/share";
+      }
     } else {
       throw new UnsupportedOperationException("Not support this platform");
     }
@@ -226,6 +235,21 @@ public class Util {
     return Paths.get(appDir, "hoge");
   }
 
+  /**
+   * アプリケーションデータ内のフォルダのパスを返す
+   * アプリケーションデータの場所が分からない環境では一時ディレクトリ内のパスを返す
+   * @param folderName フォルダ名
+   * @return
+   */
+  public static Path getDataPath(@NonNull String folderName) {
+    try {
+      return getAppDataPath().resolve(folderName);
+    } catch (UnsupportedOperationException e) {
+      return Paths.get(System.getProperty("java.io.tmpdir"), "playhls",
+          folderName);
+    }
+  }
+
   /**
    * javapackager で作成した launcher のパスを返す
    * ※ launcher 環境以外では正しい情報を取得できないので注意
@@ -234,7 +258,7 @@ public class Util {
   public static Optional<Path> getAppLauncherPath() {
     Path launcherPath = null;
 
-    if (Platform.isWindows()) {
+    if (isWindows()) {
       // Windows はランチャーで起動すると user.dir の末尾が lib になる
       String userDir = System.getProperty("user.dir");
 
@@ -277,13 +301,12 @@ public class Util {
    * @return ドキュメントフォルダのパス
    */
   public static Path getDocumentPath() {
-    if (Platform.isWindows()) {
-      return FileSystemView.getFileSystemView().getDefaultDirectory().toPath();
-    } else if (Platform.isMac()) {
+    if (isWindows() || isMac() || isLinux()) {
+      // Windows でも既定の場所はユーザーフォルダ内の Documents（Swing を使わずに済ませる）
       return Paths.get(System.getProperty("user.home"), "Documents");
     } else {
       throw new UnsupportedOperationException(
-          "Windows と macOS 以外の環境には対応していません");
+          "Windows・macOS・Linux 以外の環境には対応していません");
     }
   }
 
@@ -302,7 +325,7 @@ public class Util {
       throws FileNotFoundException {
     String exeFileName = type.name().toLowerCase();
 
-    if (Platform.isWindows()) {
+    if (isWindows()) {
       exeFileName += ".exe";
     }
 
@@ -323,10 +346,12 @@ public class Util {
     paths.add(".." + sep);  // parent dir
 
     // for develop environment
-    if (Platform.isWindows()) {
+    if (isWindows()) {
       paths.add("../tools/win/");
-    } else if (Platform.isMac()) {
+    } else if (isMac()) {
       paths.add("../tools/mac/");
+    } else if (isLinux()) {
+      paths.add("../tools/linux/");
     } else {
       throw new UnsupportedOperationException("Not support this platform");
     }
@@ -375,7 +400,7 @@ public class Util {
     }
 
     // if Windows, "/C:/hoge/fuga" to "C:/hoge/fuga"
-    if (Platform.isWindows()) {
+    if (isWindows()) {
       while (path.charAt(0) == '/' && path.length() > 2) {
         path = path.substring(1, path.length());
       }
@@ -392,11 +417,13 @@ public class Util {
    * @return 00:00 から経過した時間（分）
    */
   public static int localTimeTo29HMin(@NonNull LocalTime lt) {
-    if (lt.isBefore(LocalTime.of(5, 0, 0, 1))) {
-      return (24 + lt.getHour()) * 60 + lt.getMinute();
-    } else {
-      return lt.getHour() * 60 + lt.getMinute();
+    // 05:00:00 ちょうどは前日の 29:00 として扱う
+    if (lt.getHour() == 5 && lt.getMinute() == 0 && lt.getSecond() == 0
+        && lt.getNano() == 0) {
+      return 29 * 60;
     }
+
+    return BroadcastTime.minutesOf29H(lt.getHour(), lt.getMinute());
   }
 
   /**
@@ -405,15 +432,11 @@ public class Util {
    * @return 変換した文字列
    */
   public static String localDateTimeTo29HString(@NonNull LocalDateTime ldt) {
-    int hour = ldt.getHour();
-
-    if (ldt.toLocalTime().isBefore(LocalTime.of(5, 0, 0))) {
-      hour += 24;
-    }
+    val buf = new char[5];
+    BroadcastTime.format29HMinutes(
+        BroadcastTime.minutesOf29H(ldt.getHour(), ldt.getMinute()), buf, 0);
 
-    val minute = ldt.getMinute();
-
-    return String.format("%02d:%02d", hour, minute);
+    return new String(buf);
   }
 
   /**
@@ -421,7 +444,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localTimeToLongString(@NonNull LocalTime time) {
-    return time.format(DateTimeFormatter.ofPattern("ahh時mm分", Locale.JAPAN));
+    return time.format(LONG_TIME_FORMATTER);
   }
 
   /**
@@ -429,7 +452,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localTimeToMiddleString(@NonNull LocalTime time) {
-    return time.format(DateTimeFormatter.ofPattern("HH時mm分"));
+    return time.format(MIDDLE_TIME_FORMATTER);
   }
 
   /**
@@ -437,7 +460,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localTimeToShortString(@NonNull LocalTime time) {
-    return time.format(DateTimeFormatter.ofPattern("ahhmm", Locale.ENGLISH));
+    return time.format(SHORT_TIME_FORMATTER);
   }
 
   /**
@@ -445,7 +468,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localTimeToExtraShortString(@NonNull LocalTime time) {
-    return time.format(DateTimeFormatter.ofPattern("HHmm"));
+    return time.format(EXTRA_SHORT_TIME_FORMATTER);
   }
 
   /**
@@ -453,7 +476,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localDateToLongString(@NonNull LocalDate date) {
-    return date.format(DateTimeFormatter.ofPattern("yyyy年M月d日"));
+    return date.format(LONG_DATE_FORMATTER);
   }
 
   /**
@@ -461,7 +484,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localDateToMiddleString(@NonNull LocalDate date) {
-    return date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    return date.format(MIDDLE_DATE_FORMATTER);
   }
 
   /**
@@ -469,7 +492,7 @@ public class Util {
    * @return 変換後の文字列
    */
   public static String localDateToShortString(@NonNull LocalDate date) {
-    return date.format(DateTimeFormatter.ofPattern("M月d日"));
+    return date.format(SHORT_DATE_FORMATTER);
   }
 
   /**
@@ -479,13 +502,12 @@ public class Util {
    * @return 変換した文字列
    */
   public static String toOnAirDateString(@NonNull LocalDateTime ldt) {
-    val formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+    val buf = new char[10];
+    BroadcastTime.formatDate(
+        BroadcastTime.broadcastDay(BroadcastTime.toEpochSecond(ldt)), '/',
+        buf, 0);
 
-    if (ldt.toLocalTime().isBefore(LocalTime.of(5, 0,0, 0))) {
-      return ldt.toLocalDate().minusDays(1).format(formatter);
-    } else {
-      return ldt.toLocalDate().format(formatter);
-    }
+    return new String(buf);
   }
 
   /**
@@ -516,30 +538,6 @@ public class Util {
     return fileName.substring(fileName.lastIndexOf('.') + 1);
   }
 
-  public static Image trimImageToSquare(@NonNull Image image) {
-    Double height = image.getHeight();
-    Double width = image.getWidth();
-    if (width > height) {
-      return new WritableImage(image.getPixelReader(),
-          (int) Math.round((width - height) / 2), 0,
-          height.intValue(), height.intValue());
-    } else {
-      return new WritableImage(image.getPixelReader(), 0,
-          (int) Math.round((height - width) / 2),
-          width.intValue(), width.intValue());
-    }
-  }
-
-  public static BufferedImage trimBufferedImageToSquare(@NonNull BufferedImage image) {
-    val height = image.getHeight();
-    val width = image.getWidth();
-    if (width > height) {
-      return image.getSubimage(Math.round((width - height) / 2), 0, height, height);
-    } else {
-      return image.getSubimage(0, Math.round((height - width) / 2), width, width);
-    }
-  }
-
   public static boolean isNullOrEmpty(String str) {
     return Objects.isNull(str) || str.isEmpty();
   }
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Util;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.HttpStatusException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpResponse;
+import java.util.Base64;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+/**
+ * radiko の authToken 取得と認可を行う
+ */
+@Slf4j
+public class Auths {
+  private static final String AUTH_URL1 = "https://radiko.jp/v2/api/auth1";
+  private static final String AUTH_APP = "pc_html5";
+  private static final String AUTH_APP_VERSION = "0.0.1";
+  private static final String AUTH_USER = "dummy_user";
+  private static final String AUTH_DEVICE = "pc";
+  private static final String AUTH_URL2 = "https://radiko.jp/v2/api/auth2";
+  private static final String COMMON_JS_URL
+      = "http://radiko.jp/apps/js/playerCommon.js";
+
+  private final JsoupSession session;
+  private volatile String basePartialKey = "";
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   */
+  public Auths(@NonNull JsoupSession session) {
+    this.session = session;
+  }
+
+  /**
+   * authToken を取得する
+   * @return authToken
+   * @throws IOException サーバーとの通信失敗
+   */
+  public String getToken() throws IOException {
+    return JsoupSession.await(getTokenAsync());
+  }
+
+  /**
+   * authToken を非同期で取得する
+   * @return authToken
+   */
+  public CompletableFuture<String> getTokenAsync() {
+    return auth1().thenCompose(res1 -> {
+      if (res1.statusCode() != HttpURLConnection.HTTP_OK) {
+        throw new CompletionException(new HttpStatusException(
+            "could not get authClient token",
+            res1.statusCode(), res1.uri().toString()));
+      }
+
+      val token = header(res1, "X-Radiko-AuthToken");
+      val length = intHeader(res1, "X-Radiko-KeyLength");
+      val offset = intHeader(res1, "X-Radiko-KeyOffset");
+
+      return getPartialKey(length, offset)
+          .thenCompose(partialKey -> auth2(token, Base64.getEncoder()
+              .encodeToString(partialKey.getBytes())))  // token を有効化
+          .thenApply(res2 -> {
+            if (res2.statusCode() != HttpURLConnection.HTTP_OK) {
+              throw new CompletionException(new HttpStatusException(
+                  "could not activate authClient token",
+                  res2.statusCode(), res2.uri().toString()));
+            }
+
+            return token;
+          });
+    });
+  }
+
+  /**
+   * auth1 のレスポンスのヘッダーを取得する
+   * @param res
+   * @param name
+   * @return
+   * @throws CompletionException ヘッダーが無い場合（原因は IOException）
+   */
+  private static String header(HttpResponse<?> res, String name) {
+    val value = res.headers().firstValue(name).orElse(null);
+
+    if (Util.isNullOrEmpty(value)) {
+      throw new CompletionException(new IOException(
+          "auth1 response has no " + name + ", uri: " + res.uri()));
+    }
+
+    return value;
+  }
+
+  /**
+   * auth1 のレスポンスの 0 以上の整数のヘッダーを取得する
+   * @param res
+   * @param name
+   * @return
+   * @throws CompletionException ヘッダーが無いか、0 以上の整数でない場合（原因は IOException）
+   */
+  private static int intHeader(HttpResponse<?> res, String name) {
+    val value = header(res, name);
+
+    try {
+      val parsed = Integer.parseInt(value.trim());
+
+      if (parsed >= 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // 下で IOException にする
+    }
+
+    throw new CompletionException(new IOException(
+        "auth1 response has invalid " + name + ": '" + value + "', uri: "
+            + res.uri()));
+  }
+
+  /**
+   * token と partialKey を取得する
+   * @return
+   */
+  protected CompletableFuture<HttpResponse<byte[]>> auth1() {
+    return session.sendAsync(session.newRequest(AUTH_URL1)
+        .header("pragma", "no-cache")
+        .header("X-Radiko-App", AUTH_APP)
+        .header("X-Radiko-App-Version", AUTH_APP_VERSION)
+        .header("X-Radiko-User", AUTH_USER)
+        .header("X-Radiko-Device", AUTH_DEVICE)
+        .GET()
+        .build());
+  }
+
+  /**
+   * token を有効化する
+   * @param token
+   * @param partialKey
+   * @return
+   */
+  protected CompletableFuture<HttpResponse<byte[]>> auth2(String token,
+                                                         String partialKey) {
+    if (Util.isNullOrEmpty(token) || Util.isNullOrEmpty(partialKey)) {
+      throw new IllegalArgumentException();
+    }
+
+    return session.sendAsync(session.newRequest(AUTH_URL2)
+        .header("x-radiko-authtoken", token)
+        .header("x-radiko-device", AUTH_DEVICE)
+        .header("x-radiko-partialkey", partialKey)
+        .header("x-radiko-user", AUTH_USER)
+        .GET()
+        .build());
+  }
+
+  /**
+   * radiko で実際に使用されている Javascript のプレイヤーから basePartialKey を取得する
+   * @return
+   */
+  protected CompletableFuture<String> getBasePartialKey() {
+    val cached = this.basePartialKey;
+
+    if (!Util.isNullOrEmpty(cached)) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    // 起動時に複数の認証が同時に走っても JS の取得と解析は 1 回にまとめる
+    return session.coalesce("Auths.getBasePartialKey", () -> session
+        .sendAsync(session.newRequest(COMMON_JS_URL).GET().build())
+        .thenApply(res -> {
+          val js = JsoupSession.body(res);
+          val p = Pattern.compile("new RadikoJSPlayer.*\\{");
+          val m = p.matcher(js);
+          String key = "";
+
+          while (m.find()) {
+            /* 次の一文から key を引っこ抜く
+             new RadikoJSPlayer($audio[0], 'pc_html5', 'bcd151073c03b352e1ef2fd66c32209da9ca0afa', {...});
+             -> bcd151073c03b352e1ef2fd66c32209da9ca0afa */
+            key = m.group().split(",")[2].replace("'", "").trim();
+          }
+
+          if (Util.isNullOrEmpty(key)) {
+            throw new NoSuchElementException("base partial key not found");
+          }
+
+          this.basePartialKey = key;
+
+          return key;
+        }));
+  }
+
+  /**
+   * basePartialKey から partialKey を取得する
+   * @param length
+   * @param offset
+   * @return
+   */
+  protected CompletableFuture<String> getPartialKey(@NonNull Integer length,
+                                                    @NonNull Integer offset) {
+    return getBasePartialKey().thenApply(partialKey -> {
+      if (Util.isNullOrEmpty(partialKey)) {
+        throw new IllegalArgumentException("partialKey is empty");
+      }
+
+      if (length > partialKey.length()
+          || (length + offset) > partialKey.length()) {
+        throw new IllegalArgumentException(String.format(
+            "invalid partial key, key: '%s', length: '%d', offset: '%d'.",
+            partialKey, length, offset));
+      }
+
+      return partialKey.substring(offset, offset + length);
+    });
+  }
+}
@@ -13,15 +13,19 @@ public class Client {
   @Getter
   private final JsoupSession session = new JsoupSession();
   @Getter
+  private final HttpCache httpCache = new HttpCache(session);
+  @Getter
   private final Areas areas = new Areas(session);
   @Getter
   private final Auths auths = new Auths(session);
   @Getter
+  private final Tokens tokens = new Tokens(auths);
+  @Getter
   private final Premiums premiums = new Premiums(session);
   @Getter
-  private final Stations stations = new Stations(session, premiums, areas);
+  private final Stations stations = new Stations(session, httpCache, premiums, areas);
   @Getter
-  private final Programs programs = new Programs(session);
+  private final Programs programs = new Programs(session, httpCache);
   @Getter
-  private final TimeFrees timeFrees = new TimeFrees(session, auths);
+  private final TimeFrees timeFrees = new TimeFrees(session, tokens);
 }
@@ -0,0 +1,473 @@
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Util;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * GET の応答をディスクに保存する HTTP キャッシュ（RFC 7234 の private cache）
+ * Cache-Control の max-age などで新鮮な間はディスクから返し、期限が切れたら
+ * ETag / Last-Modified を使った条件付きリクエストで再検証する
+ */
+@Slf4j
+public class HttpCache {
+  private static final String CACHE_FOLDER_NAME = "http-cache";
+  private static final String BODY_SUFFIX = ".body";
+  private static final String META_SUFFIX = ".meta";
+  // 鮮度の情報が無い場合の Last-Modified からの推定（RFC 7234 4.2.2 の 10%）
+  private static final double HEURISTIC_FRACTION = 0.1;
+  private static final Duration MAX_HEURISTIC_LIFETIME = Duration.ofDays(1);
+
+  private final JsoupSession session;
+  private final Path directory;
+
+  /**
+   * コンストラクタ
+   * @param session   JsoupSession のインスタンス
+   * @param directory キャッシュを保存するディレクトリ
+   */
+  public HttpCache(@NonNull JsoupSession session, @NonNull Path directory) {
+    this.session = session;
+    this.directory = directory;
+  }
+
+  /**
+   * アプリケーションデータのディレクトリに保存する
+   * @param session JsoupSession のインスタンス
+   */
+  public HttpCache(@NonNull JsoupSession session) {
+    this(session, defaultDirectory());
+  }
+
+  /**
+   * キャッシュの標準の保存先
+   * @return
+   */
+  public static Path defaultDirectory() {
+    return Util.getDataPath(CACHE_FOLDER_NAME);
+  }
+
+  /**
+   * url の内容を取得する
+   * @param url
+   * @return
+   * @throws IOException 通信エラー
+   */
+  public Entry get(@NonNull String url) throws IOException {
+    return JsoupSession.await(getAsync(url));
+  }
+
+  /**
+   * url の内容を非同期で取得する
+   * 新鮮なキャッシュがあれば通信せずに返し、無ければ条件付きリクエストで再検証する
+   * @param url
+   * @return
+   */
+  public CompletableFuture<Entry> getAsync(@NonNull String url) {
+    val cached = load(url);
+    val now = Instant.now();
+
+    if (Objects.nonNull(cached) && cached.isFresh(now)) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    val builder = session.newRequest(url).GET();
+
+    if (Objects.nonNull(cached)) {
+      if (Objects.nonNull(cached.etag)) {
+        builder.header("If-None-Match", cached.etag);
+      }
+      if (Objects.nonNull(cached.lastModified)) {
+        builder.header("If-Modified-Since", cached.lastModified);
+      }
+    }
+
+    return session.sendAsync(builder.build())
+        .thenApply(res -> {
+          val responseTime = Instant.now();
+
+          if (res.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            if (Objects.isNull(cached)) {
+              // 条件を付けていないのに 304 が返ってきた
+              throw new CompletionException(new HttpStatusException(
+                  "unexpected not modified", res.statusCode(), url));
+            }
+
+            val updated = cached.revalidated(res.headers(), responseTime);
+            store(updated, false);
+
+            return updated;
+          }
+
+          val entry = Entry.of(url, res, responseTime);
+
+          if (isStorable(res.headers())) {
+            store(entry, true);
+          } else {
+            delete(url);
+          }
+
+          return entry;
+        })
+        .exceptionally(e -> {
+          val cause = JsoupSession.unwrap(e);
+
+          // サーバーに接続できない場合は古いキャッシュを返す（RFC 7234 4.2.4）
+          if (Objects.nonNull(cached) && !cached.mustRevalidate
+              && !(cause instanceof HttpStatusException)) {
+            log.warn("serve stale cache, url: " + url + ", cause: " + cause);
+            return cached;
+          }
+
+          throw new CompletionException(cause);
+        });
+  }
+
+  /**
+   * url のキャッシュを削除する
+   * @param url
+   */
+  public void delete(@NonNull String url) {
+    val key = toKey(url);
+
+    try {
+      Files.deleteIfExists(directory.resolve(key + META_SUFFIX));
+      Files.deleteIfExists(directory.resolve(key + BODY_SUFFIX));
+    } catch (IOException e) {
+      log.warn("could not delete cache, url: " + url, e);
+    }
+  }
+
+  private static boolean isStorable(HttpHeaders headers) {
+    for (val directive : headers.allValues("Cache-Control")) {
+      for (val token : directive.split(",")) {
+        if (token.trim().equalsIgnoreCase("no-store")) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * ディスクからキャッシュを読み込む（壊れていれば null）
+   */
+  private Entry load(String url) {
+    val key = toKey(url);
+    val metaPath = directory.resolve(key + META_SUFFIX);
+    val bodyPath = directory.resolve(key + BODY_SUFFIX);
+
+    if (!Files.exists(metaPath) || !Files.exists(bodyPath)) {
+      return null;
+    }
+
+    try {
+      val meta = new Properties();
+
+      try (InputStream in = Files.newInputStream(metaPath)) {
+        meta.load(in);
+      }
+
+      if (!url.equals(meta.getProperty("url"))) {
+        return null;
+      }
+
+      val body = Files.readAllBytes(bodyPath);
+
+      if (body.length != Integer.parseInt(meta.getProperty("length", "-1"))) {
+        return null;
+      }
+
+      return new Entry(url, body, meta.getProperty("contentType"),
+          meta.getProperty("etag"), meta.getProperty("lastModified"),
+          Instant.ofEpochMilli(Long.parseLong(meta.getProperty("storedAt"))),
+          Duration.ofSeconds(Long.parseLong(meta.getProperty("freshness"))),
+          Boolean.parseBoolean(meta.getProperty("mustRevalidate")));
+    } catch (IOException | RuntimeException e) {
+      log.warn("could not load cache, url: " + url, e);
+      return null;
+    }
+  }
+
+  /**
+   * キャッシュをディスクに保存する
+   * 読み込み中のものと混ざらないように一時ファイルに書いてから置き換える
+   */
+  private void store(Entry entry, boolean withBody) {
+    val key = toKey(entry.url);
+
+    try {
+      Files.createDirectories(directory);
+
+      if (withBody) {
+        replace(directory.resolve(key + BODY_SUFFIX), out -> out.write(entry.body));
+      }
+
+      val meta = new Properties();
+      meta.setProperty("url", entry.url);
+      meta.setProperty("length", String.valueOf(entry.body.length));
+      meta.setProperty("storedAt", String.valueOf(entry.storedAt.toEpochMilli()));
+      meta.setProperty("freshness", String.valueOf(entry.freshness.getSeconds()));
+      meta.setProperty("mustRevalidate", String.valueOf(entry.mustRevalidate));
+      if (Objects.nonNull(entry.contentType)) {
+        meta.setProperty("contentType", entry.contentType);
+      }
+      if (Objects.nonNull(entry.etag)) {
+        meta.setProperty("etag", entry.etag);
+      }
+      if (Objects.nonNull(entry.lastModified)) {
+        meta.setProperty("lastModified", entry.lastModified);
+      }
+
+      replace(directory.resolve(key + META_SUFFIX), out -> meta.store(out, null));
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("could not store cache, url: " + entry.url, e);
+    }
+  }
+
+  private void replace(Path path, Writer writer) throws IOException {
+    val tmp = Files.createTempFile(directory, path.getFileName().toString(),
+        ".tmp");
+
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        writer.write(out);
+      }
+
+      try {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static String toKey(String url) {
+    try {
+      val digest = MessageDigest.getInstance("SHA-256")
+          .digest(url.getBytes(StandardCharsets.UTF_8));
+      val sb = new StringBuilder(digest.length * 2);
+
+      for (val b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+            .append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface Writer {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /**
+   * キャッシュされた応答
+   */
+  public static class Entry {
+    @Getter private final String url;
+    private final byte[] body;
+    @Getter private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private final Instant storedAt;        // 応答を受け取った時刻（Age を差し引いたもの）
+    private final Duration freshness;      // 新鮮な期間
+    private final boolean mustRevalidate;
+
+    Entry(String url, byte[] body, String contentType, String etag,
+          String lastModified, Instant storedAt, Duration freshness,
+          boolean mustRevalidate) {
+      this.url = url;
+      this.body = body;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.storedAt = storedAt;
+      this.freshness = freshness;
+      this.mustRevalidate = mustRevalidate;
+    }
+
+    static Entry of(String url, HttpResponse<byte[]> res, Instant responseTime) {
+      val headers = res.headers();
+
+      return new Entry(url, res.body(),
+          headers.firstValue("Content-Type").orElse(null),
+          headers.firstValue("ETag").orElse(null),
+          headers.firstValue("Last-Modified").orElse(null),
+          responseTime.minus(age(headers)),
+          freshness(headers, responseTime),
+          hasDirective(headers, "must-revalidate"));
+    }
+
+    /**
+     * 304 の応答でメタデータを更新する（RFC 7234 4.3.4）
+     */
+    Entry revalidated(HttpHeaders headers, Instant responseTime) {
+      return new Entry(url, body,
+          contentType,
+          headers.firstValue("ETag").orElse(etag),
+          headers.firstValue("Last-Modified").orElse(lastModified),
+          responseTime.minus(age(headers)),
+          freshness(headers, responseTime),
+          hasDirective(headers, "must-revalidate"));
+    }
+
+    /**
+     * 本文
+     * @return
+     */
+    public byte[] getBody() {
+      return body.clone();
+    }
+
+    /**
+     * 本文を読むストリーム
+     * @return
+     */
+    public InputStream openBody() {
+      return new ByteArrayInputStream(body);
+    }
+
+    /**
+     * 本文を解析して Document を生成する
+     * @param parser
+     * @return
+     */
+    public Document parse(@NonNull Parser parser) {
+      return JsoupSession.parse(body, contentType, url, parser);
+    }
+
+    boolean isFresh(Instant now) {
+      return Duration.between(storedAt, now).compareTo(freshness) < 0;
+    }
+
+    private static Duration age(HttpHeaders headers) {
+      try {
+        return Duration.ofSeconds(Math.max(0, Long.parseLong(
+            headers.firstValue("Age").orElse("0").trim())));
+      } catch (NumberFormatException e) {
+        return Duration.ZERO;
+      }
+    }
+
+    /**
+     * 応答が新鮮な期間を求める（RFC 7234 4.2.1）
+     */
+    private static Duration freshness(HttpHeaders headers, Instant responseTime) {
+      if (hasDirective(headers, "no-cache")) {
+        return Duration.ZERO;
+      }
+
+      val maxAge = directiveValue(headers, "max-age");
+
+      if (maxAge.isPresent()) {
+        try {
+          return Duration.ofSeconds(Math.max(0, Long.parseLong(maxAge.get())));
+        } catch (NumberFormatException e) {
+          return Duration.ZERO;
+        }
+      }
+
+      val date = parseDate(headers.firstValue("Date").orElse(null))
+          .orElse(responseTime);
+      val expires = headers.firstValue("Expires");
+
+      if (expires.isPresent()) {
+        // 日付として解釈できない Expires は期限切れとして扱う
+        return parseDate(expires.get())
+            .map(at -> Duration.between(date, at))
+            .filter(d -> !d.isNegative())
+            .orElse(Duration.ZERO);
+      }
+
+      return parseDate(headers.firstValue("Last-Modified").orElse(null))
+          .map(at -> Duration.between(at, date))
+          .filter(d -> !d.isNegative())
+          .map(d -> Duration.ofMillis((long) (d.toMillis() * HEURISTIC_FRACTION)))
+          .map(d -> d.compareTo(MAX_HEURISTIC_LIFETIME) > 0
+              ? MAX_HEURISTIC_LIFETIME : d)
+          .orElse(Duration.ZERO);
+    }
+
+    private static boolean hasDirective(HttpHeaders headers, String name) {
+      for (val value : headers.allValues("Cache-Control")) {
+        for (val token : value.split(",")) {
+          val trimmed = token.trim();
+
+          if (trimmed.equalsIgnoreCase(name)
+              || trimmed.regionMatches(true, 0, name + "=", 0,
+                  name.length() + 1)) {
+            return true;
+          }
+        }
+      }
+
+      return false;
+    }
+
+    private static Optional<String> directiveValue(HttpHeaders headers,
+                                                   String name) {
+      for (val value : headers.allValues("Cache-Control")) {
+        for (val token : value.split(",")) {
+          val trimmed = token.trim();
+
+          if (trimmed.regionMatches(true, 0, name + "=", 0,
+              name.length() + 1)) {
+            return Optional.of(trimmed.substring(name.length() + 1)
+                .replace("\"", "").trim());
+          }
+        }
+      }
+
+      return Optional.empty();
+    }
+
+    private static Optional<Instant> parseDate(String value) {
+      if (Objects.isNull(value)) {
+        return Optional.empty();
+      }
+
+      try {
+        return Optional.of(ZonedDateTime.parse(value.trim(),
+            DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+      } catch (DateTimeParseException e) {
+        return Optional.empty();
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 番組情報の取得を行う
+ */
+@Slf4j
+public class Programs {
+  private static final String PROGRAM_BY_STATION_ID_AND_DATE_URL =
+      "http://radiko.jp/v3/program/station/date/[YYYYMMDD]/[STATION_ID].xml";
+  private static final String PROGRAM_WEEKLY_URL =
+      "http://radiko.jp/v3/program/station/weekly/[STATION_ID].xml";
+  private static final DateTimeFormatter DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyyMMdd");
+
+  private final JsoupSession session;
+  private final HttpCache cache;
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   * @param cache HttpCache のインスタンス
+   */
+  public Programs(@NonNull JsoupSession session, @NonNull HttpCache cache) {
+    this.session = session;
+    this.cache = cache;
+  }
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   */
+  public Programs(@NonNull JsoupSession session) {
+    this(session, new HttpCache(session));
+  }
+
+  /**
+   * 指定チャンネル・日付の番組情報を取得して返す
+   * @param channelCode 対象のチャンネルのコード
+   * @param date    日付
+   * @return 取得した番組情報（XML）
+   * @throws IOException サーバーとの通信エラー
+   */
+  public Document getListOfOneDay(@NonNull String channelCode,
+                                  @NonNull LocalDate date) throws IOException {
+    return JsoupSession.await(getListOfOneDayAsync(channelCode, date));
+  }
+
+  /**
+   * 指定チャンネル・日付の番組情報を非同期で取得する
+   * @param channelCode 対象のチャンネルのコード
+   * @param date    日付
+   * @return 取得した番組情報（XML）
+   */
+  public CompletableFuture<Document> getListOfOneDayAsync(
+      @NonNull String channelCode, @NonNull LocalDate date) {
+    return session.sendAsync(oneDayRequest(channelCode, date))
+        .thenApply(res -> JsoupSession.parse(res, Parser.xmlParser()));
+  }
+
+  /**
+   * 指定チャンネル・日付の番組情報を DOM に変換せずにストリームのまま返す
+   * @param channelCode 対象のチャンネルのコード
+   * @param date    日付
+   * @return 番組情報（XML）のストリーム、読み終えたら close すること
+   * @throws IOException サーバーとの通信エラー
+   */
+  public InputStream openListOfOneDay(@NonNull String channelCode,
+                                      @NonNull LocalDate date)
+      throws IOException {
+    return session.send(oneDayRequest(channelCode, date),
+        HttpResponse.BodyHandlers.ofInputStream()).body();
+  }
+
+  /**
+   * 約２周間分（今日を含めて15日分）の番組情報を取得して返す
+   * 更新されていなければディスクのキャッシュを使う
+   * @param channelCode 取得する対象のチャンネルのコード
+   * @return 取得した番組情報（XML）
+   * @throws IOException サーバーとの通信エラー
+   */
+  public Document getListOfTwoWeeks(@NonNull String channelCode)
+      throws IOException {
+    return JsoupSession.await(getListOfTwoWeeksAsync(channelCode));
+  }
+
+  /**
+   * 約２周間分（今日を含めて15日分）の番組情報を非同期で取得する
+   * @param channelCode 取得する対象のチャンネルのコード
+   * @return 取得した番組情報（XML）
+   */
+  public CompletableFuture<Document> getListOfTwoWeeksAsync(
+      @NonNull String channelCode) {
+    return cache.getAsync(twoWeeksUrl(channelCode))
+        .thenApply(entry -> entry.parse(Parser.xmlParser()));
+  }
+
+  /**
+   * 約２周間分（今日を含めて15日分）の番組情報を DOM に変換せずにストリームのまま返す
+   * @param channelCode 取得する対象のチャンネルのコード
+   * @return 番組情報（XML）のストリーム、読み終えたら close すること
+   * @throws IOException サーバーとの通信エラー
+   */
+  public InputStream openListOfTwoWeeks(@NonNull String channelCode)
+      throws IOException {
+    return cache.get(twoWeeksUrl(channelCode)).openBody();
+  }
+
+  private HttpRequest oneDayRequest(String channelCode, LocalDate date) {
+    return session.newRequest(PROGRAM_BY_STATION_ID_AND_DATE_URL
+        .replace("[YYYYMMDD]", date.format(DATE_FORMATTER))
+        .replace("[STATION_ID]", channelCode))
+        .build();
+  }
+
+  private static String twoWeeksUrl(String channelCode) {
+    return PROGRAM_WEEKLY_URL.replace("[STATION_ID]", channelCode);
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Radiko;
+import com.echzny.playhls.radiko.Util;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * ステーション一覧を取得する。
+ */
+@Slf4j
+public class Stations {
+  private static final String STATION_LIST_FULL
+      = "http://radiko.jp/v3/station/region/full.xml";
+  private static final String STATION_LIST_PER_AREA
+      = "http://radiko.jp/v3/station/list/[AREA_ID].xml";
+  private static final String STATION_STREAM_URL
+      = "http://radiko.jp/v2/station/stream_smh_multi/[STATION_ID].xml";
+
+  private final JsoupSession session;
+  private final HttpCache cache;
+  private final Premiums premium;
+  private final Areas area;
+  private final List<BiConsumer<String, URI>> listeners
+      = new CopyOnWriteArrayList<>();
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   * @param cache HttpCache のインスタンス
+   * @param premium PremiumClient のインスタンス
+   * @param area AreaClient のインスタンス
+   */
+  public Stations(@NonNull JsoupSession session, @NonNull HttpCache cache,
+                  @NonNull Premiums premium, @NonNull Areas area) {
+    this.session = session;
+    this.cache = cache;
+    this.premium = premium;
+    this.area = area;
+  }
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   * @param premium PremiumClient のインスタンス
+   * @param area AreaClient のインスタンス
+   */
+  public Stations(@NonNull JsoupSession session, @NonNull Premiums premium,
+                  @NonNull Areas area) {
+    this(session, new HttpCache(session), premium, area);
+  }
+
+  /**
+   * ステーション一覧を取得する
+   * @return 一覧の収められたXML
+   * @throws IOException サーバーの通信エラー
+   */
+  public Document getList() throws IOException {
+    return JsoupSession.await(getListAsync());
+  }
+
+  /**
+   * ステーション一覧を非同期で取得する
+   * @return 一覧の収められたXML
+   */
+  public CompletableFuture<Document> getListAsync() {
+    return cache.getAsync(STATION_LIST_FULL)
+        .thenApply(entry -> entry.parse(Parser.xmlParser()));
+  }
+
+  /**
+   * 現在の視聴可能エリアのステーションを取得する
+   * @return ステーション一覧の収められたXML
+   * @throws IOException サーバーとの通信エラー
+   */
+  public Document getListByAreaCode(String areaCode) throws IOException {
+    return JsoupSession.await(getListByAreaCodeAsync(areaCode));
+  }
+
+  /**
+   * 現在の視聴可能エリアのステーションを非同期で取得する
+   * @return ステーション一覧の収められたXML
+   */
+  public CompletableFuture<Document> getListByAreaCodeAsync(String areaCode) {
+    if (Util.isNullOrEmpty(areaCode)) {
+      throw new IllegalArgumentException();
+    }
+
+    return cache.getAsync(STATION_LIST_PER_AREA.replace("[AREA_ID]", areaCode))
+        .thenApply(entry -> entry.parse(Parser.xmlParser()));
+  }
+
+  /**
+   * 再生中のm3u8 URIを取得する
+   * @param stationId 取得対象のステーションID
+   * @return m3u8 URI
+   * @throws IOException サーバーとの通信エラー
+   * @throws URISyntaxException 不正なm3u8 URIが含まれている
+   */
+  public URI getStreamUrl(String stationId)
+      throws IOException, URISyntaxException {
+    return notifyListeners(stationId,
+        new URI(JsoupSession.await(requestStreamUrl(stationId))));
+  }
+
+  /**
+   * 再生中のm3u8 URIを非同期で取得する
+   * @param stationId 取得対象のステーションID
+   * @return m3u8 URI（不正な URI の場合は IllegalArgumentException で失敗する）
+   */
+  public CompletableFuture<URI> getStreamUrlAsync(String stationId) {
+    return requestStreamUrl(stationId)
+        .thenApply(url -> notifyListeners(stationId, URI.create(url)));
+  }
+
+  /**
+   * 再生中の m3u8 URI を取得した時に呼ばれるリスナーを登録する
+   * プロキシの経路の更新などに使う
+   * @param listener 放送局の ID と取得した URI を受け取る
+   */
+  public void addStreamUrlListener(@NonNull BiConsumer<String, URI> listener) {
+    listeners.add(listener);
+  }
+
+  private URI notifyListeners(String stationId, URI uri) {
+    for (val listener : listeners) {
+      try {
+        listener.accept(stationId, uri);
+      } catch (Exception e) {
+        log.error(e.getMessage(), e);
+      }
+    }
+
+    return uri;
+  }
+
+  /**
+   * 再生中の m3u8 URI を文字列で取得する
+   * @param stationId 取得対象のステーションID
+   * @return
+   */
+  protected CompletableFuture<String> requestStreamUrl(String stationId) {
+    if (Util.isNullOrEmpty(stationId)) {
+      throw new IllegalArgumentException();
+    }
+
+    val url = STATION_STREAM_URL.replace("[STATION_ID]", stationId);
+
+    return session.sendAsync(session.newRequest(url).build())
+        .thenApply(res -> {
+          String areaFree = "0";
+
+          if (premium.isLoggedIn()
+              && !Radiko.nhkStationIdList.contains(stationId)) {
+            areaFree = "1";
+          }
+          val doc = JsoupSession.parse(res, Parser.xmlParser());
+          val elements = doc.getElementsByTag("url");
+
+          for (val el : elements) {
+            if (!el.attr("areafree").equals(areaFree)) {
+              continue;
+            } else {
+              return el.getElementsByTag("playlist_create_url").first().text();
+            }
+          }
+
+          throw new NoSuchElementException("stationId not found");
+        });
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.BroadcastTime;
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Util;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.HttpStatusException;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * タイムフリー放送の情報を取得する
+ */
+@Slf4j
+public class TimeFrees {
+  private static final String TIME_FREE_M3U8_URL
+      = "https://radiko.jp/v2/api/ts/playlist.m3u8";
+
+  private final JsoupSession session;
+  private final Tokens tokens;
+  private final List<BiConsumer<String, URI>> listeners
+      = new CopyOnWriteArrayList<>();
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   * @param tokens Tokens のインスタンス
+   */
+  public TimeFrees(@NonNull JsoupSession session, @NonNull Tokens tokens) {
+    this.session = session;
+    this.tokens = tokens;
+  }
+
+  /**
+   * タイムフリーのm3u8 URIを取得する
+   * @param channelCode 対象のチャンネルのコード
+   * @param start 開始日時
+   * @param finish 終了日時
+   * @return m3u8 URI
+   * @throws IOException サーバーとの通信エラー
+   * @throws URISyntaxException 不正なm3u8 URIが含まれている
+   */
+  public URI getM3U8(String channelCode,
+                     @NonNull LocalDateTime start,
+                     @NonNull LocalDateTime finish)
+      throws IOException, URISyntaxException {
+    return notifyListeners(channelCode, new URI(JsoupSession.await(
+        requestM3U8Url(channelCode, start, finish))));
+  }
+
+  /**
+   * タイムフリーのm3u8 URIを非同期で取得する
+   * @param channelCode 対象のチャンネルのコード
+   * @param start 開始日時
+   * @param finish 終了日時
+   * @return m3u8 URI（不正な URI の場合は IllegalArgumentException で失敗する）
+   */
+  public CompletableFuture<URI> getM3U8Async(String channelCode,
+                                             @NonNull LocalDateTime start,
+                                             @NonNull LocalDateTime finish) {
+    return requestM3U8Url(channelCode, start, finish)
+        .thenApply(url -> notifyListeners(channelCode, URI.create(url)));
+  }
+
+  /**
+   * タイムフリーの m3u8 URI を取得した時に呼ばれるリスナーを登録する
+   * プロキシの経路の更新などに使う
+   * @param listener チャンネルのコードと取得した URI を受け取る
+   */
+  public void addM3U8Listener(@NonNull BiConsumer<String, URI> listener) {
+    listeners.add(listener);
+  }
+
+  private URI notifyListeners(String channelCode, URI uri) {
+    for (val listener : listeners) {
+      try {
+        listener.accept(channelCode, uri);
+      } catch (Exception e) {
+        log.error(e.getMessage(), e);
+      }
+    }
+
+    return uri;
+  }
+
+  /**
+   * タイムフリーの m3u8 URI を文字列で取得する
+   * 保持していた authToken が拒否された場合は取り直して 1 度だけ再試行する
+   * @param channelCode
+   * @param start
+   * @param finish
+   * @return
+   */
+  protected CompletableFuture<String> requestM3U8Url(
+      String channelCode, LocalDateTime start, LocalDateTime finish) {
+    if (Util.isNullOrEmpty(channelCode)) {
+      throw new IllegalArgumentException();
+    }
+
+    val buf = new char[14];
+    BroadcastTime.formatRadikoTimestamp(
+        BroadcastTime.toEpochSecond(start), buf, 0);
+    val ft = new String(buf);
+    BroadcastTime.formatRadikoTimestamp(
+        BroadcastTime.toEpochSecond(finish), buf, 0);
+    val to = new String(buf);
+
+    return requestM3U8(channelCode, ft, to)
+        .handle((res, e) -> {
+          if (Objects.isNull(e)) {
+            return CompletableFuture.completedFuture(res);
+          }
+
+          val cause = JsoupSession.unwrap(e);
+
+          if (!(cause instanceof HttpStatusException)
+              || (((HttpStatusException) cause).getStatusCode()
+                  != HttpURLConnection.HTTP_UNAUTHORIZED
+              && ((HttpStatusException) cause).getStatusCode()
+                  != HttpURLConnection.HTTP_FORBIDDEN)) {
+            throw new CompletionException(cause);
+          }
+
+          // 保持していた authToken が失効していたので取り直す
+          tokens.invalidate();
+          return requestM3U8(channelCode, ft, to);
+        })
+        .thenCompose(future -> future)
+        .thenApply(res -> {
+          val doc = JsoupSession.parse(res, Parser.htmlParser());
+          val el = doc.getElementsByTag("body").first();
+
+          if (Objects.isNull(el)) {
+            throw new NoSuchElementException(
+                "time free url not found, res.body: " + JsoupSession.body(res));
+          }
+
+          val p = Pattern.compile("#EXT-X-STREAM-INF:.*(https.*\\.m3u8)");
+          val m = p.matcher(el.text());
+
+          if (!m.find()) {
+            throw new NoSuchElementException(
+                "#EXT-X-STREAM-INF section not found, res.body: "
+                    + JsoupSession.body(res));
+          }
+
+          return m.group(1);
+        });
+  }
+
+  /**
+   * タイムフリーの m3u8 を要求する
+   * @param channelCode
+   * @param ft
+   * @param to
+   * @return
+   */
+  protected CompletableFuture<HttpResponse<byte[]>> requestM3U8(
+      String channelCode, String ft, String to) {
+    return tokens.getTokenAsync().thenCompose(token -> session.sendAsync(
+        session.newRequest(TIME_FREE_M3U8_URL)
+            .header("X-Radiko-AuthToken", token)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(JsoupSession.formBody(
+                "station_id", channelCode, "ft", ft, "to", to))
+            .build()));
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2018 LODESTAR COMMUNICATIONS LTD. All Rights Reserved.
+ */
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 有効化済みの authToken を有効期限まで保持し、期限が切れる前に裏で更新する
+ */
+@Slf4j
+public class Tokens {
+  // radiko の authToken は約 70 分有効なので余裕を持たせる
+  private static final Duration TOKEN_TTL = Duration.ofMinutes(60);
+  private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+
+  private final Auths auths;
+  private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService executor
+      = Executors.newSingleThreadScheduledExecutor(r -> {
+    val thread = new Thread(r, "radiko-token-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile Token current;
+  private volatile Instant lastAccess = Instant.EPOCH;
+  private CompletableFuture<Token> refreshing;     // 実行中の更新（this で保護）
+  private ScheduledFuture<?> scheduledRefresh;     // 次回の先行更新（this で保護）
+
+  /**
+   * コンストラクタ
+   * @param auths Auths のインスタンス
+   */
+  public Tokens(@NonNull Auths auths) {
+    this.auths = auths;
+  }
+
+  /**
+   * 有効な authToken を取得する
+   * 保持している token が有効ならそのまま返し、無ければ取得を待つ
+   * @return authToken
+   * @throws IOException サーバーとの通信失敗
+   */
+  public String getToken() throws IOException {
+    return JsoupSession.await(getTokenAsync());
+  }
+
+  /**
+   * 有効な authToken を非同期で取得する
+   * 同時に呼ばれた場合は 1 回の更新を共有する
+   * @return authToken
+   */
+  public CompletableFuture<String> getTokenAsync() {
+    lastAccess = Instant.now();
+    val token = current;
+
+    if (Objects.nonNull(token) && token.isValid(lastAccess)) {
+      return CompletableFuture.completedFuture(token.getValue());
+    }
+
+    return refresh().thenApply(Token::getValue);
+  }
+
+  /**
+   * 保持している authToken を待たずに取得する
+   * 使われたものとして扱うので、取得し続けている間は期限前の更新が続く
+   * 有効な token が無ければ裏で更新を始めて empty を返す
+   * @return
+   */
+  public Optional<String> peekToken() {
+    lastAccess = Instant.now();
+    val token = current;
+
+    if (Objects.nonNull(token) && token.isValid(lastAccess)) {
+      return Optional.of(token.getValue());
+    }
+
+    refresh();
+    return Optional.empty();
+  }
+
+  /**
+   * 保持している authToken を破棄する（サーバーから拒否された場合などに呼ぶ）
+   */
+  public void invalidate() {
+    current = null;
+  }
+
+  /**
+   * authToken が更新された時に呼ばれるリスナーを登録する
+   * @param listener
+   */
+  public void addListener(@NonNull Consumer<String> listener) {
+    listeners.add(listener);
+
+    val token = current;
+    if (Objects.nonNull(token)) {
+      listener.accept(token.getValue());
+    }
+  }
+
+  /**
+   * authToken を更新する
+   * @return
+   */
+  protected synchronized CompletableFuture<Token> refresh() {
+    if (Objects.nonNull(refreshing)) {
+      return refreshing;
+    }
+
+    val future = auths.getTokenAsync()
+        .thenApply(value -> new Token(value, Instant.now().plus(TOKEN_TTL)));
+    refreshing = future;
+
+    future.whenComplete((token, e) -> {
+      // refreshing を外した時点で current が新しい authToken になっているようにする
+      synchronized (this) {
+        if (Objects.isNull(e)) {
+          current = token;
+        }
+        refreshing = null;
+      }
+
+      if (Objects.nonNull(e)) {
+        log.error("could not refresh authToken", e);
+        return;
+      }
+
+      schedule(token);
+
+      for (val listener : listeners) {
+        try {
+          listener.accept(token.getValue());
+        } catch (Exception ex) {
+          log.error(ex.getMessage(), ex);
+        }
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * 有効期限の少し前に更新を予約する
+   * 直近で使われていない場合は更新しない
+   * @param token
+   */
+  private synchronized void schedule(Token token) {
+    if (Objects.nonNull(scheduledRefresh)) {
+      scheduledRefresh.cancel(false);
+    }
+
+    val delay = Duration.between(Instant.now(),
+        token.getExpiresAt().minus(REFRESH_MARGIN));
+
+    scheduledRefresh = executor.schedule(() -> {
+      if (Duration.between(lastAccess, Instant.now()).compareTo(TOKEN_TTL) < 0) {
+        refresh();
+      }
+    }, Math.max(delay.toMillis(), 0), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 有効期限付きの authToken
+   */
+  @Getter
+  protected static class Token {
+    private final String value;
+    private final Instant expiresAt;
+
+    Token(String value, Instant expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isValid(Instant now) {
+      return now.isBefore(expiresAt);
+    }
+  }
+}
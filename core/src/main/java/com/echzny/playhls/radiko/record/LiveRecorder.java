@@ -0,0 +1,296 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.hls.PlaylistFollower;
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.client.Stations;
+import com.echzny.playhls.radiko.client.Tokens;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ライブ放送を再生せずにファイルへ録音する
+ * プレイリストを追いかけて新しいセグメントだけを取得し、media sequence 順にファイルへ追記する
+ * JavaFX のクラスは使わないので、サーバーなどで複数の放送局を同時に録音できる
+ */
+@Slf4j
+public class LiveRecorder {
+  private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 2;
+
+  private final Stations stations;
+  private final SegmentFetcher fetcher;
+  private final int maxConcurrentFetches;
+  private final ScheduledExecutorService scheduler
+      = Executors.newSingleThreadScheduledExecutor(r -> {
+    val thread = new Thread(r, "live-recorder");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * コンストラクタ
+   * @param session  JsoupSession のインスタンス
+   * @param stations Stations のインスタンス
+   * @param tokens   Tokens のインスタンス
+   */
+  public LiveRecorder(@NonNull JsoupSession session, @NonNull Stations stations,
+                      @NonNull Tokens tokens) {
+    this(session, stations, tokens, DEFAULT_MAX_CONCURRENT_FETCHES);
+  }
+
+  /**
+   * コンストラクタ
+   * @param session              JsoupSession のインスタンス
+   * @param stations             Stations のインスタンス
+   * @param tokens               Tokens のインスタンス
+   * @param maxConcurrentFetches 1 件の録音で同時に取得するセグメント数の上限
+   */
+  public LiveRecorder(@NonNull JsoupSession session, @NonNull Stations stations,
+                      @NonNull Tokens tokens, int maxConcurrentFetches) {
+    if (maxConcurrentFetches < 1) {
+      throw new IllegalArgumentException("maxConcurrentFetches must be positive");
+    }
+
+    this.stations = stations;
+    this.fetcher = new SegmentFetcher(session, tokens);
+    this.maxConcurrentFetches = maxConcurrentFetches;
+  }
+
+  /**
+   * 放送局のライブ放送を録音する
+   * @param stationId 放送局の ID
+   * @param target    保存先のファイル（既にあれば上書きする）
+   * @param duration  録音する長さ（null の場合は stop するまで）
+   * @return 録音
+   */
+  public Recording record(@NonNull String stationId, @NonNull Path target,
+                          Duration duration) {
+    val recording = new Recording(target, duration);
+
+    stations.getStreamUrlAsync(stationId)
+        .thenAccept(recording::start)
+        .exceptionally(e -> {
+          recording.fail(JsoupSession.unwrap(e));
+          return null;
+        });
+
+    return recording;
+  }
+
+  /**
+   * プレイリストを指定して録音する
+   * @param playlistUri ライブのプレイリスト
+   * @param target      保存先のファイル（既にあれば上書きする）
+   * @param duration    録音する長さ（null の場合は stop するまで）
+   * @return 録音
+   */
+  public Recording record(@NonNull URI playlistUri, @NonNull Path target,
+                          Duration duration) {
+    val recording = new Recording(target, duration);
+    recording.start(playlistUri);
+
+    return recording;
+  }
+
+  /**
+   * 1 件の録音
+   * セグメントは見つけた時点で取得を始め、書き込みは前のセグメントの書き込み後に行う
+   */
+  public class Recording {
+    @Getter private final Path target;
+    private final Duration duration;
+    @Getter private final CompletableFuture<Result> completion
+        = new CompletableFuture<>();
+    private final SegmentPipeline pipeline;
+    private final AtomicInteger segments = new AtomicInteger();
+    private volatile long bytes = 0;
+    private Instant startedAt;
+    private FileChannel channel;
+    private PlaylistFollower follower;
+
+    Recording(Path target, Duration duration) {
+      this.target = target;
+      this.duration = duration;
+      // 同時に取得する数は録音ごとに制限する
+      this.pipeline = new SegmentPipeline("live " + target.getFileName(),
+          fetcher::fetch, maxConcurrentFetches, this::write);
+    }
+
+    /**
+     * 書き込んだバイト数
+     * @return
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * 書き込んだセグメント数
+     * @return
+     */
+    public int getSegments() {
+      return segments.get();
+    }
+
+    /**
+     * 取得に失敗して飛ばしたセグメント数
+     * @return
+     */
+    public int getSkippedSegments() {
+      return pipeline.getSkippedSegments();
+    }
+
+    /**
+     * 録音をやめる（取得中のセグメントは書き込んでから閉じる）
+     */
+    public void stop() {
+      PlaylistFollower current;
+
+      synchronized (this) {
+        current = follower;
+      }
+
+      if (Objects.nonNull(current)) {
+        current.stop();
+      } else {
+        fail(new CancellationException("stopped before start"));
+      }
+    }
+
+    /**
+     * 録音を中止する（取得中のセグメントも中止し、書き込み済みの分だけを残す）
+     */
+    public void cancel() {
+      pipeline.cancel();
+      stop();
+    }
+
+    synchronized void start(URI playlistUri) {
+      if (completion.isDone()) {
+        return;
+      }
+
+      try {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        channel = FileChannel.open(target, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      } catch (IOException e) {
+        fail(e);
+        return;
+      }
+
+      startedAt = Instant.now();
+      log.info("start recording " + playlistUri + " -> " + target);
+
+      follower = new PlaylistFollower(playlistUri, fetcher::fetch, scheduler,
+          pipeline::append);
+      follower.getCompletion().whenComplete((v, e) -> close(e));
+
+      if (Objects.nonNull(duration)) {
+        scheduler.schedule(follower::stop, duration.toMillis(),
+            TimeUnit.MILLISECONDS);
+      }
+
+      follower.start();
+    }
+
+    private void write(byte[] data) {
+      FileChannel current;
+
+      synchronized (this) {
+        current = channel;
+      }
+
+      if (Objects.isNull(current)) {
+        return;
+      }
+
+      try {
+        val buf = ByteBuffer.wrap(data);
+        long position = bytes;
+
+        while (buf.hasRemaining()) {
+          position += current.write(buf, position);
+        }
+
+        bytes = position;
+        segments.incrementAndGet();
+      } catch (IOException e) {
+        log.error("could not write " + target, e);
+        follower.stop();
+      }
+    }
+
+    /**
+     * 書き込み待ちのセグメントを書き終えてからファイルを閉じる
+     */
+    private void close(Throwable error) {
+      pipeline.drained().whenComplete((v, e) -> {
+        synchronized (this) {
+          if (Objects.isNull(channel)) {
+            return;
+          }
+
+          try {
+            channel.force(false);
+            channel.close();
+          } catch (IOException ex) {
+            log.warn("could not close " + target, ex);
+          }
+          channel = null;
+        }
+
+        val elapsed = Duration.between(startedAt, Instant.now());
+        log.info("finish recording " + target + ", bytes: " + bytes
+            + ", elapsed: " + elapsed);
+
+        if (Objects.nonNull(error) && segments.get() == 0) {
+          completion.completeExceptionally(error);
+        } else {
+          completion.complete(new Result(target, segments.get(),
+              pipeline.getSkippedSegments(), bytes, elapsed));
+        }
+      });
+    }
+
+    private void fail(Throwable error) {
+      log.error("could not record " + target, error);
+      completion.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * 録音の結果
+   */
+  @Getter
+  public static class Result {
+    private final Path path;
+    private final int segments;
+    private final int skippedSegments;
+    private final long bytes;
+    private final Duration elapsed;
+
+    Result(Path path, int segments, int skippedSegments, long bytes,
+           Duration elapsed) {
+      this.path = path;
+      this.segments = segments;
+      this.skippedSegments = skippedSegments;
+      this.bytes = bytes;
+      this.elapsed = elapsed;
+    }
+  }
+}
@@ -0,0 +1,397 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.hls.PlaylistParser;
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Program;
+import com.echzny.playhls.radiko.client.Stations;
+import com.echzny.playhls.radiko.client.Tokens;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 番組の予約録音を管理する
+ * 予約は開始時刻順のキューで保持し、開始の少し前に authToken・ストリームの URL・
+ * 最初のプレイリストを取得しておくことで、開始時刻になったらすぐに録音を始める
+ * 別々の放送局の予約は時間が重なっていてもそれぞれ録音する
+ */
+@Slf4j
+public class RecordScheduler {
+  private static final Duration DEFAULT_PREWARM = Duration.ofSeconds(10);
+
+  private final Stations stations;
+  private final Tokens tokens;
+  private final LiveRecorder recorder;
+  private final SegmentFetcher fetcher;
+  @Getter private final Duration prewarm;
+  private final AtomicLong sequence = new AtomicLong();
+  private final ScheduledExecutorService scheduler
+      = Executors.newSingleThreadScheduledExecutor(r -> {
+    val thread = new Thread(r, "record-scheduler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 準備前の予約（開始時刻順、this で保護）
+  private final PriorityQueue<Reservation> queue = new PriorityQueue<>();
+  private ScheduledFuture<?> wakeUp;
+  // 放送局ごとの準備中の処理（同じ放送局の予約が重なった場合は共有する）
+  private final Map<String, CompletableFuture<URI>> warming
+      = new ConcurrentHashMap<>();
+
+  /**
+   * コンストラクタ
+   * @param session  JsoupSession のインスタンス
+   * @param stations Stations のインスタンス
+   * @param tokens   Tokens のインスタンス
+   * @param recorder LiveRecorder のインスタンス
+   */
+  public RecordScheduler(@NonNull JsoupSession session,
+                         @NonNull Stations stations, @NonNull Tokens tokens,
+                         @NonNull LiveRecorder recorder) {
+    this(session, stations, tokens, recorder, DEFAULT_PREWARM);
+  }
+
+  /**
+   * コンストラクタ
+   * @param session  JsoupSession のインスタンス
+   * @param stations Stations のインスタンス
+   * @param tokens   Tokens のインスタンス
+   * @param recorder LiveRecorder のインスタンス
+   * @param prewarm  開始時刻のどれだけ前に準備を始めるか
+   */
+  public RecordScheduler(@NonNull JsoupSession session,
+                         @NonNull Stations stations, @NonNull Tokens tokens,
+                         @NonNull LiveRecorder recorder,
+                         @NonNull Duration prewarm) {
+    if (prewarm.isNegative()) {
+      throw new IllegalArgumentException("prewarm must not be negative");
+    }
+
+    this.stations = stations;
+    this.tokens = tokens;
+    this.recorder = recorder;
+    this.fetcher = new SegmentFetcher(session, tokens);
+    this.prewarm = prewarm;
+  }
+
+  /**
+   * 番組の録音を予約する
+   * 既に始まっている番組は残りの時間を録音する
+   * @param program 対象の番組
+   * @param target  保存先のファイル
+   * @return 予約
+   */
+  public Reservation reserve(@NonNull Program program, @NonNull Path target) {
+    return reserve(program.getChannelCode(),
+        Instant.ofEpochSecond(program.getStartEpochSecond()),
+        Instant.ofEpochSecond(program.getFinishEpochSecond()), target);
+  }
+
+  /**
+   * 放送局・時間帯を指定して録音を予約する
+   * @param stationId 放送局の ID
+   * @param start     開始日時
+   * @param finish    終了日時
+   * @param target    保存先のファイル
+   * @return 予約
+   */
+  public Reservation reserve(@NonNull String stationId, @NonNull Instant start,
+                             @NonNull Instant finish, @NonNull Path target) {
+    if (!finish.isAfter(start)) {
+      throw new IllegalArgumentException("finish must be after start");
+    }
+    if (!finish.isAfter(Instant.now())) {
+      throw new IllegalArgumentException("already finished: " + stationId
+          + " " + start + " - " + finish);
+    }
+
+    val reservation = new Reservation(stationId, start, finish, target,
+        sequence.incrementAndGet());
+
+    synchronized (this) {
+      queue.add(reservation);
+      arm();
+    }
+
+    log.info("reserved " + reservation);
+
+    return reservation;
+  }
+
+  /**
+   * 準備前の予約を開始時刻順に取得する
+   * @return
+   */
+  public synchronized List<Reservation> getPendingReservations() {
+    val list = new ArrayList<>(queue);
+    Collections.sort(list);
+
+    return list;
+  }
+
+  /**
+   * 先頭の予約の準備時刻に起きるよう予約し直す（this で保護）
+   */
+  private void arm() {
+    if (Objects.nonNull(wakeUp)) {
+      wakeUp.cancel(false);
+      wakeUp = null;
+    }
+
+    val head = queue.peek();
+
+    if (Objects.isNull(head)) {
+      return;
+    }
+
+    val delay = Duration.between(Instant.now(), head.getStart().minus(prewarm))
+        .toMillis();
+    wakeUp = scheduler.schedule(this::dispatch, Math.max(delay, 0),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 準備時刻を過ぎた予約を取り出して準備を始める
+   */
+  private void dispatch() {
+    val due = new ArrayList<Reservation>();
+
+    synchronized (this) {
+      val threshold = Instant.now().plus(prewarm);
+
+      while (!queue.isEmpty() && !queue.peek().getStart().isAfter(threshold)) {
+        due.add(queue.poll());
+      }
+
+      arm();
+    }
+
+    for (val reservation : due) {
+      reservation.warmUp();
+    }
+  }
+
+  private synchronized boolean dequeue(Reservation reservation) {
+    val removed = queue.remove(reservation);
+
+    if (removed) {
+      arm();
+    }
+
+    return removed;
+  }
+
+  /**
+   * authToken とストリームの URL を取得し、プレイリストを辿ってメディアプレイリストの URI を返す
+   * 同じ放送局の準備が進行中であればその結果を共有する
+   * @param stationId
+   * @return
+   */
+  protected CompletableFuture<URI> resolve(String stationId) {
+    val pending = new CompletableFuture<URI>();
+    val current = warming.putIfAbsent(stationId, pending);
+
+    if (Objects.nonNull(current)) {
+      return current;
+    }
+
+    // authToken とストリームの URL は並行して取得する
+    stations.getStreamUrlAsync(stationId)
+        .thenCombine(tokens.getTokenAsync(), (uri, token) -> uri)
+        .thenCompose(this::resolveMediaPlaylist)
+        .whenComplete((uri, e) -> {
+          warming.remove(stationId, pending);
+
+          if (Objects.isNull(e)) {
+            pending.complete(uri);
+          } else {
+            pending.completeExceptionally(e);
+          }
+        });
+
+    return pending;
+  }
+
+  private CompletableFuture<URI> resolveMediaPlaylist(URI playlistUri) {
+    return fetcher.fetch(playlistUri).thenCompose(body -> {
+      val playlist = PlaylistParser.parse(body);
+
+      if (playlist.isMaster() && playlist.getVariantCount() > 0) {
+        return resolveMediaPlaylist(
+            playlistUri.resolve(playlist.getVariantUri(0)));
+      }
+
+      return CompletableFuture.completedFuture(playlistUri);
+    });
+  }
+
+  /**
+   * 予約の状態
+   */
+  public enum State {
+    WAITING, WARMING, RECORDING, FINISHED, FAILED, CANCELLED
+  }
+
+  /**
+   * 1 件の予約
+   */
+  public class Reservation implements Comparable<Reservation> {
+    @Getter private final String stationId;
+    @Getter private final Instant start;
+    @Getter private final Instant finish;
+    @Getter private final Path target;
+    private final long order;   // 開始時刻が同じ場合は予約順
+    @Getter private final CompletableFuture<LiveRecorder.Result> completion
+        = new CompletableFuture<>();
+    @Getter private volatile State state = State.WAITING;
+    private URI mediaPlaylistUri;
+    private ScheduledFuture<?> startTimer;
+    private LiveRecorder.Recording recording;
+
+    Reservation(String stationId, Instant start, Instant finish, Path target,
+                long order) {
+      this.stationId = stationId;
+      this.start = start;
+      this.finish = finish;
+      this.target = target;
+      this.order = order;
+    }
+
+    /**
+     * 予約を取り消す（録音中の場合はそこまでの分を残して停止する）
+     */
+    public void cancel() {
+      LiveRecorder.Recording current;
+
+      synchronized (this) {
+        if (state == State.FINISHED || state == State.FAILED
+            || state == State.CANCELLED) {
+          return;
+        }
+
+        current = recording;
+
+        if (Objects.isNull(current)) {
+          state = State.CANCELLED;
+
+          if (Objects.nonNull(startTimer)) {
+            startTimer.cancel(false);
+          }
+        }
+      }
+
+      if (Objects.nonNull(current)) {
+        current.stop();
+        return;
+      }
+
+      dequeue(this);
+      completion.cancel(false);
+      log.info("cancelled " + this);
+    }
+
+    /**
+     * 録音中の場合はその録音
+     * @return
+     */
+    public synchronized Optional<LiveRecorder.Recording> getRecording() {
+      return Optional.ofNullable(recording);
+    }
+
+    /**
+     * 開始時刻までにストリームを準備し、開始時刻に録音を始める
+     */
+    void warmUp() {
+      synchronized (this) {
+        if (state != State.WAITING) {
+          return;
+        }
+        state = State.WARMING;
+      }
+
+      val startedAt = System.nanoTime();
+
+      resolve(stationId).whenComplete((uri, e) -> {
+        if (Objects.nonNull(e)) {
+          // 開始時刻に放送局の ID から改めて取得する
+          log.warn("could not prepare " + this + ", cause: " + e);
+        } else {
+          log.info("prepared " + this + " in "
+              + Duration.ofNanos(System.nanoTime() - startedAt).toMillis()
+              + "ms");
+        }
+
+        synchronized (this) {
+          if (state != State.WARMING) {
+            return;
+          }
+
+          mediaPlaylistUri = uri;
+          val delay = Duration.between(Instant.now(), start).toMillis();
+          startTimer = scheduler.schedule(this::begin, Math.max(delay, 0),
+              TimeUnit.MILLISECONDS);
+        }
+      });
+    }
+
+    private void begin() {
+      LiveRecorder.Recording started;
+
+      synchronized (this) {
+        if (state != State.WARMING) {
+          return;
+        }
+
+        val duration = Duration.between(Instant.now(), finish);
+
+        if (duration.isNegative() || duration.isZero()) {
+          state = State.FAILED;
+          completion.completeExceptionally(
+              new IllegalStateException("already finished: " + this));
+          return;
+        }
+
+        started = Objects.nonNull(mediaPlaylistUri)
+            ? recorder.record(mediaPlaylistUri, target, duration)
+            : recorder.record(stationId, target, duration);
+        recording = started;
+        state = State.RECORDING;
+      }
+
+      started.getCompletion().whenComplete((result, e) -> {
+        synchronized (this) {
+          state = Objects.isNull(e) ? State.FINISHED : State.FAILED;
+        }
+
+        if (Objects.isNull(e)) {
+          completion.complete(result);
+        } else {
+          completion.completeExceptionally(e);
+        }
+      });
+    }
+
+    @Override
+    public int compareTo(Reservation other) {
+      val result = start.compareTo(other.start);
+
+      return result != 0 ? result : Long.compare(order, other.order);
+    }
+
+    @Override
+    public String toString() {
+      return "Reservation(" + stationId + ", " + start + " - " + finish
+          + ", " + target + ")";
+    }
+  }
+}
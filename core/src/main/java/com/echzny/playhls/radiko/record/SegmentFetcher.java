@@ -0,0 +1,90 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.client.Tokens;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.jsoup.HttpStatusException;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * radiko の authToken を付けてプレイリストやセグメントを取得する
+ * 失敗した場合は間隔を空けて再試行し、authToken が拒否された場合は取り直す
+ */
+@Slf4j
+public class SegmentFetcher {
+  private static final int MAX_ATTEMPTS = 3;
+  private static final Duration RETRY_INTERVAL = Duration.ofMillis(500);
+
+  private final JsoupSession session;
+  private final Tokens tokens;
+
+  /**
+   * コンストラクタ
+   * @param session JsoupSession のインスタンス
+   * @param tokens  Tokens のインスタンス
+   */
+  public SegmentFetcher(@NonNull JsoupSession session, @NonNull Tokens tokens) {
+    this.session = session;
+    this.tokens = tokens;
+  }
+
+  /**
+   * 取得する
+   * @param uri
+   * @return 本文
+   */
+  public CompletableFuture<byte[]> fetch(@NonNull URI uri) {
+    return fetch(uri, 1);
+  }
+
+  private CompletableFuture<byte[]> fetch(URI uri, int attempt) {
+    return tokens.getTokenAsync()
+        .thenCompose(token -> session.sendAsync(
+            session.newRequest(uri.toString())
+                .header("X-Radiko-AuthToken", token)
+                .GET()
+                .build()))
+        .thenApply(HttpResponse::body)
+        .handle((body, e) -> {
+          if (Objects.isNull(e)) {
+            return CompletableFuture.completedFuture(body);
+          }
+
+          val cause = JsoupSession.unwrap(e);
+
+          if (attempt >= MAX_ATTEMPTS) {
+            throw new CompletionException(cause);
+          }
+
+          if (cause instanceof HttpStatusException) {
+            val status = ((HttpStatusException) cause).getStatusCode();
+
+            if (status == HttpURLConnection.HTTP_UNAUTHORIZED
+                || status == HttpURLConnection.HTTP_FORBIDDEN) {
+              tokens.invalidate();
+            } else if (status < 500) {
+              throw new CompletionException(cause);
+            }
+          }
+
+          log.debug("retry " + uri + ", attempt: " + attempt + ", cause: "
+              + cause);
+
+          return CompletableFuture
+              .runAsync(() -> { }, CompletableFuture.delayedExecutor(
+                  RETRY_INTERVAL.toMillis() * attempt, TimeUnit.MILLISECONDS))
+              .thenCompose(v -> fetch(uri, attempt + 1));
+        })
+        .thenCompose(future -> future);
+  }
+}
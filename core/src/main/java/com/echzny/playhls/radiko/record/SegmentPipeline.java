@@ -0,0 +1,95 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.concurrent.JobScope;
+import com.echzny.playhls.hls.PlaylistFollower;
+import com.echzny.playhls.radiko.JsoupSession;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * ライブのセグメントを見つけた時点で取得を始め、取得したものをプレイリストの順に受け渡す
+ * 同時に取得する数は JobScope で制限する
+ * 取得に失敗したセグメントはライブなので取り直せない、飛ばして続ける
+ */
+@Slf4j
+public class SegmentPipeline {
+  @Getter private final String name;
+  private final Function<URI, CompletableFuture<byte[]>> fetcher;
+  private final JobScope scope;
+  private final Consumer<byte[]> consumer;
+  private final AtomicInteger skippedSegments = new AtomicInteger();
+  private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+  /**
+   * コンストラクタ
+   * @param name                 名前（ログ用）
+   * @param fetcher              URI の内容を取得する処理
+   * @param maxConcurrentFetches 同時に取得するセグメント数の上限
+   * @param consumer             取得したセグメントを順に受け取る
+   */
+  public SegmentPipeline(@NonNull String name,
+                         @NonNull Function<URI, CompletableFuture<byte[]>> fetcher,
+                         int maxConcurrentFetches,
+                         @NonNull Consumer<byte[]> consumer) {
+    this.name = name;
+    this.fetcher = fetcher;
+    this.scope = new JobScope(name, maxConcurrentFetches);
+    this.consumer = consumer;
+  }
+
+  /**
+   * セグメントの取得を始め、前のセグメントの後に受け渡すよう繋ぐ
+   * @param segment
+   */
+  public synchronized void append(@NonNull PlaylistFollower.Segment segment) {
+    val body = scope.forkAsync(() -> fetcher.apply(segment.getUri()));
+
+    tail = tail.thenCompose(v -> body.handle((data, e) -> {
+      if (Objects.nonNull(e)) {
+        skippedSegments.incrementAndGet();
+        log.warn(name + " skip segment " + segment.getSequence() + ", cause: "
+            + JsoupSession.causeOf(e));
+        return null;
+      }
+
+      try {
+        consumer.accept(data);
+      } catch (Exception ex) {
+        log.error(ex.getMessage(), ex);
+      }
+      return null;
+    }));
+  }
+
+  /**
+   * これまでに追加したセグメントをすべて受け渡した（または飛ばした）ら完了する
+   * @return
+   */
+  public synchronized CompletableFuture<Void> drained() {
+    return tail;
+  }
+
+  /**
+   * 取得中・取得待ちのセグメントを中止する（中止したセグメントは飛ばす）
+   */
+  public void cancel() {
+    scope.cancel();
+  }
+
+  /**
+   * 取得に失敗して飛ばしたセグメント数
+   * @return
+   */
+  public int getSkippedSegments() {
+    return skippedSegments.get();
+  }
+}
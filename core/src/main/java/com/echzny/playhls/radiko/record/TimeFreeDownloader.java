@@ -0,0 +1,380 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.concurrent.JobScope;
+import com.echzny.playhls.hls.Playlist;
+import com.echzny.playhls.hls.PlaylistParser;
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.Program;
+import com.echzny.playhls.radiko.client.TimeFrees;
+import com.echzny.playhls.radiko.client.Tokens;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * タイムフリーの番組をファイルにダウンロードする
+ * プレイリストのセグメントを同時に複数取得し、取得できたものから順番に
+ * FileChannel の位置指定書き込みでファイルへ書き出す
+ */
+@Slf4j
+public class TimeFreeDownloader {
+  private static final int DEFAULT_PARALLELISM = 6;
+
+  private final TimeFrees timeFrees;
+  private final SegmentFetcher fetcher;
+  @Getter private final int parallelism;
+
+  /**
+   * コンストラクタ
+   * @param session   JsoupSession のインスタンス
+   * @param timeFrees TimeFrees のインスタンス
+   * @param tokens    Tokens のインスタンス
+   */
+  public TimeFreeDownloader(@NonNull JsoupSession session,
+                            @NonNull TimeFrees timeFrees,
+                            @NonNull Tokens tokens) {
+    this(session, timeFrees, tokens, DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * コンストラクタ
+   * @param session     JsoupSession のインスタンス
+   * @param timeFrees   TimeFrees のインスタンス
+   * @param tokens      Tokens のインスタンス
+   * @param parallelism 同時に取得するセグメント数の上限
+   */
+  public TimeFreeDownloader(@NonNull JsoupSession session,
+                            @NonNull TimeFrees timeFrees,
+                            @NonNull Tokens tokens, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+
+    this.timeFrees = timeFrees;
+    this.fetcher = new SegmentFetcher(session, tokens);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * 番組をダウンロードする
+   * @param program  対象の番組
+   * @param target   保存先のファイル（既にあれば上書きする）
+   * @param listener 進捗を受け取る（null 可）
+   * @return 返された future を cancel すると残りのセグメントは取得しない
+   */
+  public CompletableFuture<Result> download(@NonNull Program program,
+                                            @NonNull Path target,
+                                            Consumer<Progress> listener) {
+    return download(program.getChannelCode(), program.getStart(),
+        program.getFinish(), target, listener);
+  }
+
+  /**
+   * 指定したチャンネル・時間帯をダウンロードする
+   * @param channelCode 対象のチャンネルのコード
+   * @param start       開始日時
+   * @param finish      終了日時
+   * @param target      保存先のファイル（既にあれば上書きする）
+   * @param listener    進捗を受け取る（null 可）
+   * @return 返された future を cancel すると残りのセグメントは取得しない
+   */
+  public CompletableFuture<Result> download(@NonNull String channelCode,
+                                            @NonNull LocalDateTime start,
+                                            @NonNull LocalDateTime finish,
+                                            @NonNull Path target,
+                                            Consumer<Progress> listener) {
+    val result = new CompletableFuture<Result>();
+
+    timeFrees.getM3U8Async(channelCode, start, finish)
+        .thenCompose(this::expand)
+        .thenAccept(segments -> new Job(segments, target, listener, result)
+            .start())
+        .exceptionally(e -> {
+          result.completeExceptionally(JsoupSession.unwrap(e));
+          return null;
+        });
+
+    return result;
+  }
+
+  /**
+   * プレイリストを展開してセグメントの URI 一覧を取得する
+   * マスタープレイリストの場合は最初のバリアントを辿る
+   * @param playlistUri
+   * @return
+   */
+  protected CompletableFuture<List<URI>> expand(@NonNull URI playlistUri) {
+    return fetch(playlistUri).thenCompose(body -> {
+      val playlist = PlaylistParser.parse(body);
+
+      if (playlist.isMaster()) {
+        return expand(playlistUri.resolve(playlist.getVariantUri(0)));
+      }
+
+      return CompletableFuture.completedFuture(toSegmentUris(playlistUri,
+          playlist));
+    });
+  }
+
+  private static List<URI> toSegmentUris(URI playlistUri, Playlist playlist) {
+    val uris = new ArrayList<URI>(playlist.getSegmentCount());
+
+    for (int i = 0; i < playlist.getSegmentCount(); i++) {
+      uris.add(playlistUri.resolve(playlist.getSegmentUri(i)));
+    }
+
+    return uris;
+  }
+
+  /**
+   * authToken を付けて取得する
+   * @param uri
+   * @return
+   */
+  protected CompletableFuture<byte[]> fetch(URI uri) {
+    return fetcher.fetch(uri);
+  }
+
+  /**
+   * 1 回分のダウンロード
+   * 取得は parallelism 個まで同時に行い、書き込みは先頭から順番に行う
+   * 取得済みで書き込めないセグメントは最大 parallelism * 2 個まで保持する
+   */
+  private class Job {
+    private final List<URI> segments;
+    private final Path target;
+    private final Consumer<Progress> listener;
+    private final CompletableFuture<Result> result;
+    private final byte[][] fetched;
+    private final JobScope scope;
+    private final long startedAt = System.nanoTime();
+    private FileChannel channel;
+    private int nextFetch = 0;      // 次に取得を始めるセグメント
+    private int nextWrite = 0;      // 次に書き込むセグメント
+    private int inFlight = 0;
+    private long position = 0;      // 書き込んだバイト数
+
+    Job(List<URI> segments, Path target, Consumer<Progress> listener,
+        CompletableFuture<Result> result) {
+      this.segments = segments;
+      this.target = target;
+      this.listener = listener;
+      this.result = result;
+      this.fetched = new byte[segments.size()][];
+      // result を cancel したら取得中のセグメントもまとめて中止する
+      this.scope = new JobScope("timefree " + target.getFileName(), parallelism)
+          .bindTo(result);
+    }
+
+    void start() {
+      try {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        channel = FileChannel.open(target, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      } catch (IOException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+
+      log.info("start download " + target + ", segments: " + segments.size());
+
+      synchronized (this) {
+        if (segments.isEmpty()) {
+          finish(null);
+        } else {
+          schedule();
+        }
+      }
+    }
+
+    /**
+     * 同時取得数と保持数の上限まで取得を始める（this で保護）
+     */
+    private void schedule() {
+      while (!result.isDone() && nextFetch < segments.size()
+          && inFlight < parallelism && nextFetch - nextWrite < parallelism * 2) {
+        val index = nextFetch++;
+        inFlight++;
+
+        scope.track(fetch(segments.get(index))).whenComplete((body, e) -> {
+          synchronized (this) {
+            inFlight--;
+
+            if (result.isDone()) {
+              finish(null);
+              return;
+            }
+
+            if (Objects.nonNull(e)) {
+              finish(JsoupSession.unwrap(e));
+              return;
+            }
+
+            fetched[index] = body;
+
+            try {
+              write();
+            } catch (IOException | UncheckedIOException ex) {
+              finish(ex);
+              return;
+            }
+
+            if (nextWrite == segments.size()) {
+              finish(null);
+            } else {
+              schedule();
+            }
+          }
+        });
+      }
+    }
+
+    /**
+     * 先頭から続けて取得できているセグメントを書き込む（this で保護）
+     */
+    private void write() throws IOException {
+      val written = nextWrite;
+
+      while (nextWrite < segments.size()
+          && Objects.nonNull(fetched[nextWrite])) {
+        val buf = ByteBuffer.wrap(fetched[nextWrite]);
+        fetched[nextWrite] = null;
+
+        while (buf.hasRemaining()) {
+          position += channel.write(buf, position);
+        }
+        nextWrite++;
+      }
+
+      if (Objects.nonNull(listener) && nextWrite > written) {
+        try {
+          listener.accept(new Progress(nextWrite, segments.size(), position,
+              Duration.ofNanos(System.nanoTime() - startedAt)));
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+        }
+      }
+    }
+
+    /**
+     * ファイルを閉じて結果を通知する（this で保護）
+     * 失敗・中止した場合は途中まで書いたファイルを削除する
+     */
+    private void finish(Exception error) {
+      if (Objects.isNull(channel)) {
+        return;  // 終了済み
+      }
+
+      val succeeded = Objects.isNull(error) && !result.isDone();
+
+      try {
+        if (succeeded) {
+          channel.force(false);
+        }
+        channel.close();
+      } catch (IOException e) {
+        error = Objects.isNull(error) ? e : error;
+      }
+      channel = null;
+      scope.close();
+
+      if (Objects.isNull(error) && succeeded) {
+        val elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        log.info("finish download " + target + ", bytes: " + position
+            + ", elapsed: " + elapsed);
+        result.complete(new Result(target, segments.size(), position, elapsed));
+        return;
+      }
+
+      try {
+        Files.deleteIfExists(target);
+      } catch (IOException e) {
+        log.warn("could not delete " + target, e);
+      }
+
+      if (Objects.nonNull(error)) {
+        result.completeExceptionally(error);
+      }
+    }
+  }
+
+  /**
+   * ダウンロードの進捗
+   */
+  @Getter
+  public static class Progress {
+    private final int completedSegments;
+    private final int totalSegments;
+    private final long bytes;
+    private final Duration elapsed;
+
+    Progress(int completedSegments, int totalSegments, long bytes,
+             Duration elapsed) {
+      this.completedSegments = completedSegments;
+      this.totalSegments = totalSegments;
+      this.bytes = bytes;
+      this.elapsed = elapsed;
+    }
+
+    /**
+     * 進捗率（0.0〜1.0）
+     * @return
+     */
+    public double getRatio() {
+      return totalSegments == 0 ? 1.0 : (double) completedSegments / totalSegments;
+    }
+
+    /**
+     * 書き込みの速度（バイト/秒）
+     * @return
+     */
+    public double getBytesPerSecond() {
+      val millis = elapsed.toMillis();
+      return millis == 0 ? 0 : bytes * 1000.0 / millis;
+    }
+  }
+
+  /**
+   * ダウンロードの結果
+   */
+  @Getter
+  public static class Result {
+    private final Path path;
+    private final int segments;
+    private final long bytes;
+    private final Duration elapsed;
+
+    Result(Path path, int segments, long bytes, Duration elapsed) {
+      this.path = path;
+      this.segments = segments;
+      this.bytes = bytes;
+      this.elapsed = elapsed;
+    }
+
+    /**
+     * 平均の速度（バイト/秒）
+     * @return
+     */
+    public double getBytesPerSecond() {
+      val millis = elapsed.toMillis();
+      return millis == 0 ? 0 : bytes * 1000.0 / millis;
+    }
+  }
+}
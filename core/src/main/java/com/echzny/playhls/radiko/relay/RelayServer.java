@@ -0,0 +1,146 @@
+package com.echzny.playhls.radiko.relay;
+
+import com.echzny.playhls.concurrent.Workers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * StationRelay の放送を HTTP で配信する
+ * "GET /relay/{放送局の ID}" に対し、セグメントを繋げた音声を切れ目なく返し続ける
+ * "GET /adts/{放送局の ID}" に対しては、コンテナ（ID3 タグ・MPEG-TS）を除いた ADTS のフレームだけを返し続ける
+ * どちらもセグメントを取得するたびに送るので、デコードせずにそのまま AAC として再生できる
+ * 聴取者ごとにワーカーのスレッドで送信するので、遅い聴取者は自分のスレッドだけを止める
+ */
+@Slf4j
+public class RelayServer {
+  public static final String PATH = "/relay/";
+  public static final String ADTS_PATH = "/adts/";
+  private static final Pattern STATION_ID = Pattern.compile("[A-Za-z0-9_-]+");
+  // 送信するものが無い間に、聴取者の切断と停止を確認する間隔
+  private static final Duration POLL_INTERVAL = Duration.ofSeconds(1);
+
+  private final StationRelay relay;
+  private final HttpServer server;
+  private final ExecutorService executor = Workers.newExecutor("relay");
+
+  /**
+   * コンストラクタ
+   * @param relay   配信する放送
+   * @param address 待ち受けるアドレス
+   * @throws IOException
+   */
+  public RelayServer(@NonNull StationRelay relay,
+                     @NonNull InetSocketAddress address) throws IOException {
+    this.relay = relay;
+    this.server = HttpServer.create(address, 0);
+    this.server.createContext(PATH,
+        exchange -> handle(exchange, PATH, StationRelay.Format.SEGMENT));
+    this.server.createContext(ADTS_PATH,
+        exchange -> handle(exchange, ADTS_PATH, StationRelay.Format.ADTS));
+    this.server.setExecutor(executor);
+  }
+
+  /**
+   * 待ち受けを始める
+   * @return
+   */
+  public RelayServer start() {
+    server.start();
+    val base = "http://" + server.getAddress().getHostString()
+        + ":" + server.getAddress().getPort();
+    log.info("relay: " + base + PATH + "{stationId}");
+    log.info("relay (adts): " + base + ADTS_PATH + "{stationId}");
+
+    return this;
+  }
+
+  /**
+   * 待ち受けをやめ、すべての聴取者を切断する
+   */
+  public void stop() {
+    relay.stopAll();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * 待ち受けているポート
+   * @return
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange, String path,
+                      StationRelay.Format format) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      val stationId = exchange.getRequestURI().getPath()
+          .substring(path.length());
+
+      if (!STATION_ID.matcher(stationId).matches()) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+
+      relay(exchange, stationId, format);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void relay(HttpExchange exchange, String stationId,
+                     StationRelay.Format format) throws IOException {
+    val listener = relay.subscribe(stationId, format);
+    val client = exchange.getRemoteAddress();
+
+    try {
+      exchange.getResponseHeaders().set("Content-Type", "audio/aac");
+      exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+      // 長さが決まらないので chunked で返す
+      exchange.sendResponseHeaders(200, 0);
+      log.info("relay " + stationId + " (" + format + ") to " + client);
+
+      val out = exchange.getResponseBody();
+
+      while (true) {
+        val data = listener.next(POLL_INTERVAL);
+
+        if (Objects.isNull(data)) {
+          break;
+        }
+        if (data.length == 0) {
+          continue;
+        }
+
+        out.write(data);
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("relay interrupted");
+    } catch (IOException e) {
+      // 聴取者が切断した
+      log.debug("relay " + stationId + " to " + client + " closed: " + e);
+    } finally {
+      listener.close();
+      log.info("relay " + stationId + " to " + client + " finished"
+          + (listener.isDropped() ? " (dropped, too slow)" : ""));
+    }
+  }
+}
@@ -0,0 +1,404 @@
+package com.echzny.playhls.radiko.relay;
+
+import com.echzny.playhls.hls.AdtsExtractor;
+import com.echzny.playhls.hls.PlaylistFollower;
+import com.echzny.playhls.radiko.JsoupSession;
+import com.echzny.playhls.radiko.client.Stations;
+import com.echzny.playhls.radiko.client.Tokens;
+import com.echzny.playhls.radiko.record.SegmentFetcher;
+import com.echzny.playhls.radiko.record.SegmentPipeline;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 放送局ごとにライブ放送を 1 度だけ上流から取得し、複数の聴取者へ配る
+ * 取得したセグメントは全聴取者で同じ byte 配列を共有し、聴取者ごとの上限付きのキューに積む
+ * キューが溢れた（送信が追いつかない）聴取者は切断するので、遅い聴取者が他の聴取者や取得を止めることはない
+ * 聴取者がいなくなった放送局は、しばらく待ってから取得をやめる
+ * ADTS のフレームだけを受け取る聴取者には、セグメントごとに 1 度だけ取り出したものを配る
+ */
+@Slf4j
+public class StationRelay {
+  private static final int DEFAULT_MAX_QUEUED_SEGMENTS = 4;
+  private static final Duration DEFAULT_LINGER = Duration.ofSeconds(15);
+  private static final int MAX_CONCURRENT_FETCHES = 2;
+  // キューの終わりを示す（聴取者の切断・放送局の取得の終了）
+  private static final byte[] END = new byte[0];
+
+  private final Stations stations;
+  private final SegmentFetcher fetcher;
+  @Getter private final int maxQueuedSegments;
+  @Getter private final Duration linger;
+  private final Map<String, Channel> channels = new HashMap<>();  // this で保護
+  private final ScheduledExecutorService scheduler
+      = Executors.newSingleThreadScheduledExecutor(r -> {
+    val thread = new Thread(r, "station-relay");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * コンストラクタ
+   * @param session  JsoupSession のインスタンス
+   * @param stations Stations のインスタンス
+   * @param tokens   Tokens のインスタンス
+   */
+  public StationRelay(@NonNull JsoupSession session, @NonNull Stations stations,
+                      @NonNull Tokens tokens) {
+    this(session, stations, tokens, DEFAULT_MAX_QUEUED_SEGMENTS, DEFAULT_LINGER);
+  }
+
+  /**
+   * コンストラクタ
+   * @param session           JsoupSession のインスタンス
+   * @param stations          Stations のインスタンス
+   * @param tokens            Tokens のインスタンス
+   * @param maxQueuedSegments 聴取者ごとに送信待ちにできるセグメント数（超えたら切断する）
+   * @param linger            聴取者がいなくなってから取得をやめるまでの時間
+   */
+  public StationRelay(@NonNull JsoupSession session, @NonNull Stations stations,
+                      @NonNull Tokens tokens, int maxQueuedSegments,
+                      @NonNull Duration linger) {
+    if (maxQueuedSegments < 1) {
+      throw new IllegalArgumentException("maxQueuedSegments must be positive");
+    }
+
+    this.stations = stations;
+    this.fetcher = new SegmentFetcher(session, tokens);
+    this.maxQueuedSegments = maxQueuedSegments;
+    this.linger = linger;
+  }
+
+  /**
+   * 聴取者が受け取る形式
+   */
+  public enum Format {
+    /** 取得したセグメントそのまま */
+    SEGMENT,
+    /** セグメントから取り出した ADTS のフレーム（ID3 タグ・MPEG-TS を除く） */
+    ADTS
+  }
+
+  /**
+   * 放送局の聴取者を追加する
+   * 放送局を取得していなければ取得を始め、取得中であれば直近のセグメントから送る
+   * @param stationId 放送局の ID
+   * @return 聴取者（聴取をやめたら close すること）
+   */
+  public Listener subscribe(@NonNull String stationId) {
+    return subscribe(stationId, Format.SEGMENT);
+  }
+
+  /**
+   * 放送局の聴取者を追加する
+   * 放送局を取得していなければ取得を始め、取得中であれば直近のセグメントから送る
+   * @param stationId 放送局の ID
+   * @param format    受け取る形式
+   * @return 聴取者（聴取をやめたら close すること）
+   */
+  public synchronized Listener subscribe(@NonNull String stationId,
+                                         @NonNull Format format) {
+    Channel channel = channels.get(stationId);
+    val opening = Objects.isNull(channel);
+
+    if (opening) {
+      channel = new Channel(stationId);
+      channels.put(stationId, channel);
+    }
+
+    val listener = new Listener(channel, format);
+    channel.add(listener);
+
+    if (opening) {
+      channel.open();
+    }
+
+    return listener;
+  }
+
+  /**
+   * 放送局ごとの聴取者数
+   * @return
+   */
+  public synchronized Map<String, Integer> getListenerCounts() {
+    val counts = new TreeMap<String, Integer>();
+
+    for (val channel : channels.values()) {
+      counts.put(channel.stationId, channel.listeners.size());
+    }
+
+    return counts;
+  }
+
+  /**
+   * すべての放送局の取得をやめ、聴取者を切断する
+   */
+  public void stopAll() {
+    List<Channel> all;
+
+    synchronized (this) {
+      all = new ArrayList<>(channels.values());
+    }
+
+    for (val channel : all) {
+      channel.stop(null);
+    }
+  }
+
+  /**
+   * 1 放送局分の取得と配信
+   */
+  private class Channel {
+    private final String stationId;
+    private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    private final SegmentPipeline pipeline;
+    private final AtomicLong segments = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile byte[] latest;                   // 途中から聴き始めた聴取者に最初に送る
+    private PlaylistFollower follower;                // StationRelay.this で保護
+    private ScheduledFuture<?> stopTask;              // StationRelay.this で保護
+    private boolean stopped = false;                  // StationRelay.this で保護
+
+    Channel(String stationId) {
+      this.stationId = stationId;
+      this.pipeline = new SegmentPipeline("relay " + stationId,
+          fetcher::fetch, MAX_CONCURRENT_FETCHES, this::broadcast);
+    }
+
+    private void open() {
+      log.info("start relaying " + stationId);
+      stations.getStreamUrlAsync(stationId)
+          .thenAccept(this::start)
+          .exceptionally(e -> {
+            stop(e);
+            return null;
+          });
+    }
+
+    private void start(URI playlistUri) {
+      synchronized (StationRelay.this) {
+        if (stopped) {
+          return;
+        }
+
+        follower = new PlaylistFollower(playlistUri, fetcher::fetch, scheduler,
+            pipeline::append);
+      }
+
+      follower.getCompletion().whenComplete((v, e) -> stop(e));
+      follower.start();
+    }
+
+    /**
+     * 聴取者を追加する（StationRelay.this のロック内で呼ぶ）
+     */
+    private void add(Listener listener) {
+      if (Objects.nonNull(stopTask)) {
+        stopTask.cancel(false);
+        stopTask = null;
+      }
+
+      listeners.add(listener);
+
+      val current = latest;
+
+      if (Objects.nonNull(current)) {
+        listener.offer(listener.format == Format.ADTS
+            ? AdtsExtractor.extract(current) : current);
+      }
+      log.info("relay " + stationId + " listeners: " + listeners.size());
+    }
+
+    /**
+     * 聴取者を外し、誰もいなくなったら linger 後に取得をやめる
+     */
+    private void remove(Listener listener) {
+      synchronized (StationRelay.this) {
+        if (!listeners.remove(listener)) {
+          return;
+        }
+        log.info("relay " + stationId + " listeners: " + listeners.size());
+
+        if (listeners.isEmpty() && !stopped && Objects.isNull(stopTask)) {
+          stopTask = scheduler.schedule(this::stopIfIdle,
+              linger.toMillis(), TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+
+    private void stopIfIdle() {
+      PlaylistFollower current;
+
+      // 空であることの確認と channels から外すのを同じロック内で行い、
+      // その間に subscribe した聴取者を止めてしまわないようにする
+      synchronized (StationRelay.this) {
+        stopTask = null;
+
+        if (!listeners.isEmpty() || !markStopped()) {
+          return;
+        }
+        current = follower;
+      }
+
+      tearDown(null, current);
+    }
+
+    private void broadcast(byte[] data) {
+      latest = data;
+      segments.incrementAndGet();
+      bytes.addAndGet(data.length);
+
+      byte[] adts = null;   // ADTS の聴取者がいる場合だけ取り出す
+
+      for (val listener : listeners) {
+        if (listener.format == Format.ADTS) {
+          if (Objects.isNull(adts)) {
+            adts = AdtsExtractor.extract(data);
+          }
+          listener.offer(adts);
+        } else {
+          listener.offer(data);
+        }
+      }
+    }
+
+    private void stop(Throwable error) {
+      PlaylistFollower current;
+
+      synchronized (StationRelay.this) {
+        if (!markStopped()) {
+          return;
+        }
+        current = follower;
+      }
+
+      tearDown(error, current);
+    }
+
+    /**
+     * 停止済みにして channels から外す（StationRelay.this のロック内で呼ぶ）
+     * @return 既に停止済みであれば false
+     */
+    private boolean markStopped() {
+      if (stopped) {
+        return false;
+      }
+      stopped = true;
+      channels.remove(stationId, this);
+
+      if (Objects.nonNull(stopTask)) {
+        stopTask.cancel(false);
+        stopTask = null;
+      }
+
+      return true;
+    }
+
+    /**
+     * 取得をやめて聴取者を切断する（ロックの外で呼ぶ）
+     */
+    private void tearDown(Throwable error, PlaylistFollower current) {
+      if (Objects.nonNull(error)) {
+        log.error("could not relay " + stationId, error);
+      }
+      log.info("stop relaying " + stationId + ", segments: " + segments.get()
+          + ", bytes: " + bytes.get());
+
+      pipeline.cancel();
+      if (Objects.nonNull(current)) {
+        current.stop();
+      }
+      for (val listener : listeners) {
+        listener.end();
+      }
+    }
+  }
+
+  /**
+   * 1 人の聴取者
+   * 送信待ちのセグメントを上限付きのキューで保持する
+   */
+  public class Listener implements AutoCloseable {
+    private final Channel channel;
+    @Getter private final Format format;
+    private final BlockingQueue<byte[]> queue;
+    private volatile boolean ended = false;
+    @Getter private volatile boolean dropped = false;
+
+    Listener(Channel channel, Format format) {
+      this.channel = channel;
+      this.format = format;
+      this.queue = new ArrayBlockingQueue<>(maxQueuedSegments + 1);
+    }
+
+    /**
+     * 放送局の ID
+     * @return
+     */
+    public String getStationId() {
+      return channel.stationId;
+    }
+
+    /**
+     * 次のセグメントを待って取得する
+     * @param timeout 待つ時間の上限
+     * @return セグメント（時間切れの場合は空の配列、終わった場合は null）
+     * @throws InterruptedException
+     */
+    public byte[] next(@NonNull Duration timeout) throws InterruptedException {
+      if (ended && queue.isEmpty()) {
+        return null;
+      }
+
+      val data = queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+      if (data == END) {
+        return null;
+      }
+
+      return Objects.isNull(data) ? new byte[0] : data;
+    }
+
+    /**
+     * 聴取をやめる
+     */
+    @Override
+    public void close() {
+      end();
+      channel.remove(this);
+    }
+
+    private void offer(byte[] data) {
+      // ADTS のフレームが無いセグメントは送らない（空の配列は時間切れと区別できない）
+      if (ended || data.length == 0) {
+        return;
+      }
+
+      // 終わりの印の分を 1 つ空けておく
+      if (queue.size() >= maxQueuedSegments || !queue.offer(data)) {
+        log.warn("drop slow relay listener of " + channel.stationId
+            + ", queued segments: " + queue.size());
+        dropped = true;
+        queue.clear();
+        end();
+        channel.remove(this);
+      }
+    }
+
+    private void end() {
+      if (ended) {
+        return;
+      }
+      ended = true;
+      queue.offer(END);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.echzny.playhls.concurrent;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobScopeTest {
+  @Test
+  void forkSubmitsOnlyAsManyTasksAsPermits() throws Exception {
+    val submitted = new AtomicInteger();
+    val executor = Executors.newCachedThreadPool();
+    val counting = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<>()) {
+      @Override
+      public Future<?> submit(Runnable task) {
+        submitted.incrementAndGet();
+        return executor.submit(task);
+      }
+    };
+    val scope = new JobScope("test", 2, counting);
+    val gate = new CountDownLatch(1);
+    val running = new AtomicInteger();
+    val maxRunning = new AtomicInteger();
+    val futures = new ArrayList<CompletableFuture<Integer>>();
+
+    for (int i = 0; i < 20; i++) {
+      val index = i;
+      futures.add(scope.fork(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        gate.await();
+        running.decrementAndGet();
+        return index;
+      }));
+    }
+
+    Thread.sleep(100);
+    // 空きを待つタスクは executor へ渡していない
+    assertEquals(2, submitted.get());
+
+    gate.countDown();
+    for (int i = 0; i < futures.size(); i++) {
+      assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(20, submitted.get());
+    assertEquals(2, maxRunning.get());
+    assertEquals(0, scope.getActiveCount());
+
+    executor.shutdownNow();
+  }
+
+  @Test
+  void forkAsyncHoldsPermitUntilFutureCompletes() throws Exception {
+    val scope = new JobScope("test", 1);
+    val first = new CompletableFuture<String>();
+    val started = new AtomicInteger();
+
+    val a = scope.forkAsync(() -> {
+      started.incrementAndGet();
+      return first;
+    });
+    val b = scope.forkAsync(() -> {
+      started.incrementAndGet();
+      return CompletableFuture.completedFuture("b");
+    });
+
+    assertEquals(1, started.get());
+    assertFalse(b.isDone());
+
+    first.complete("a");
+    assertEquals("a", a.get(1, TimeUnit.SECONDS));
+    assertEquals("b", b.get(1, TimeUnit.SECONDS));
+    assertEquals(2, started.get());
+  }
+
+  @Test
+  void forkAsyncPropagatesFailure() {
+    val scope = new JobScope("test", 1);
+    val cause = new IllegalStateException("failed");
+    val future = scope.forkAsync(
+        () -> CompletableFuture.<String>failedFuture(cause));
+
+    val e = assertThrows(ExecutionException.class, future::get);
+    assertSame(cause, e.getCause());
+    // 枠は返している
+    assertEquals("ok", scope.forkAsync(
+        () -> CompletableFuture.completedFuture("ok")).join());
+  }
+
+  @Test
+  void cancelStopsRunningAndPendingTasks() {
+    val scope = new JobScope("test", 1);
+    val running = new CompletableFuture<String>();
+    val started = new AtomicInteger();
+
+    val a = scope.forkAsync(() -> {
+      started.incrementAndGet();
+      return running;
+    });
+    val b = scope.forkAsync(() -> {
+      started.incrementAndGet();
+      return new CompletableFuture<String>();
+    });
+
+    scope.cancel();
+
+    assertTrue(a.isCancelled());
+    assertTrue(b.isCancelled());
+    assertTrue(running.isCancelled());
+    assertEquals(1, started.get());
+    assertTrue(scope.fork(() -> "late").isCancelled());
+  }
+
+  @Test
+  void manyQueuedTasksCompleteWithoutRecursion() {
+    val scope = new JobScope("test", 1);
+    val futures = new ArrayList<CompletableFuture<Integer>>();
+
+    for (int i = 0; i < 100_000; i++) {
+      val index = i;
+      futures.add(scope.forkAsync(
+          () -> CompletableFuture.completedFuture(index)));
+    }
+
+    assertEquals(99_999, futures.get(99_999).join());
+  }
+
+  @Test
+  void bindToCancelsWhenOwnerCompletes() {
+    val owner = new CompletableFuture<Void>();
+    val scope = new JobScope("test", 1).bindTo(owner);
+
+    owner.complete(null);
+
+    assertTrue(scope.isCancelled());
+  }
+}
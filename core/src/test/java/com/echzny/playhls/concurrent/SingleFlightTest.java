@@ -0,0 +1,160 @@
+package com.echzny.playhls.concurrent;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+  @Test
+  void sameKeySharesOneRun() {
+    val flight = new SingleFlight<String, String>();
+    val calls = new AtomicInteger();
+    val upstream = new CompletableFuture<String>();
+
+    val first = flight.run("a", () -> {
+      calls.incrementAndGet();
+      return upstream;
+    });
+    val second = flight.run("a", () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture("other");
+    });
+
+    assertEquals(1, calls.get());
+    assertEquals(1, flight.getInFlightCount());
+    assertFalse(first.isDone());
+
+    upstream.complete("value");
+    assertEquals("value", first.join());
+    assertEquals("value", second.join());
+  }
+
+  @Test
+  void keyIsRemovedAfterCompletion() {
+    val flight = new SingleFlight<String, Integer>();
+    val calls = new AtomicInteger();
+
+    assertEquals(1, flight.run("a", () -> CompletableFuture.completedFuture(
+        calls.incrementAndGet())).join());
+    assertEquals(0, flight.getInFlightCount());
+
+    // 結果はキャッシュしないので再度実行する
+    assertEquals(2, flight.run("a", () -> CompletableFuture.completedFuture(
+        calls.incrementAndGet())).join());
+    assertEquals(0, flight.getInFlightCount());
+  }
+
+  @Test
+  void cancelDoesNotAffectOtherCallers() {
+    val flight = new SingleFlight<String, String>();
+    val upstream = new CompletableFuture<String>();
+
+    val first = flight.run("a", () -> upstream);
+    val second = flight.run("a", () -> upstream);
+    assertTrue(first.cancel(true));
+
+    assertFalse(upstream.isDone());
+    upstream.complete("value");
+    assertTrue(first.isCancelled());
+    assertEquals("value", second.join());
+  }
+
+  @Test
+  void failurePropagates() {
+    val flight = new SingleFlight<String, String>();
+    val upstream = new CompletableFuture<String>();
+
+    val first = flight.run("a", () -> upstream);
+    val second = flight.run("a", () -> upstream);
+    upstream.completeExceptionally(new IOException("boom"));
+
+    for (val future : new CompletableFuture<?>[] { first, second }) {
+      val e = assertThrows(CompletionException.class, future::join);
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertEquals(0, flight.getInFlightCount());
+  }
+
+  @Test
+  void throwingSupplierFailsAndRemovesKey() {
+    val flight = new SingleFlight<String, String>();
+
+    val failed = flight.run("a", () -> {
+      throw new IllegalStateException("boom");
+    });
+
+    val e = assertThrows(CompletionException.class, failed::join);
+    assertTrue(e.getCause() instanceof IllegalStateException);
+    assertEquals(0, flight.getInFlightCount());
+    assertEquals("ok", flight.run("a",
+        () -> CompletableFuture.completedFuture("ok")).join());
+  }
+
+  @Test
+  void differentKeysRunSeparately() {
+    val flight = new SingleFlight<String, String>();
+    val a = new CompletableFuture<String>();
+    val b = new CompletableFuture<String>();
+
+    val first = flight.run("a", () -> a);
+    val second = flight.run("b", () -> b);
+    assertEquals(2, flight.getInFlightCount());
+
+    b.complete("b");
+    assertEquals("b", second.join());
+    assertFalse(first.isDone());
+    a.complete("a");
+    assertEquals("a", first.join());
+    assertEquals(0, flight.getInFlightCount());
+  }
+
+  @Test
+  void concurrentCallersShareOneRun() throws Exception {
+    val flight = new SingleFlight<String, String>();
+    val calls = new AtomicInteger();
+    val upstream = new CompletableFuture<String>();
+    val threads = 8;
+    val start = new CountDownLatch(1);
+    val executor = Executors.newFixedThreadPool(threads);
+
+    try {
+      val futures = new CompletableFuture<?>[threads];
+      val submitted = new Future<?>[threads];
+
+      for (int i = 0; i < threads; i++) {
+        val index = i;
+        submitted[i] = executor.submit(() -> {
+          start.await();
+          futures[index] = flight.run("a", () -> {
+            calls.incrementAndGet();
+            return upstream;
+          });
+          return null;
+        });
+      }
+
+      start.countDown();
+      for (val future : submitted) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+
+      assertEquals(1, calls.get());
+      upstream.complete("value");
+      for (val future : futures) {
+        assertEquals("value", future.join());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package com.echzny.playhls.hls;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdtsExtractorTest {
+  private static final int AUDIO_PID = 0x101;
+
+  /**
+   * 長さ length の ADTS のフレーム（ヘッダー 7 バイト + fill で埋めたペイロード）
+   */
+  private static byte[] frame(int length, int fill) {
+    val frame = new byte[length];
+    Arrays.fill(frame, (byte) fill);
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xF1;
+    frame[2] = 0x50;
+    frame[3] = (byte) (0x80 | ((length >> 11) & 0x03));
+    frame[4] = (byte) ((length >> 3) & 0xFF);
+    frame[5] = (byte) (((length & 0x07) << 5) | 0x1F);
+    frame[6] = (byte) 0xFC;
+    return frame;
+  }
+
+  private static byte[] frames(int count) {
+    val out = new ByteArrayOutputStream();
+
+    for (int i = 0; i < count; i++) {
+      out.writeBytes(frame(100 + i * 13, i));
+    }
+
+    return out.toByteArray();
+  }
+
+  private static byte[] id3(int size, boolean footer) {
+    val tag = new byte[10 + size + (footer ? 10 : 0)];
+    tag[0] = 'I';
+    tag[1] = 'D';
+    tag[2] = '3';
+    tag[3] = 4;
+    tag[5] = (byte) (footer ? 0x10 : 0);
+    // synchsafe integer
+    tag[8] = (byte) ((size >> 7) & 0x7F);
+    tag[9] = (byte) (size & 0x7F);
+    return tag;
+  }
+
+  private static byte[] packet(int... header) {
+    val packet = new byte[188];
+    Arrays.fill(packet, (byte) 0xFF);
+
+    for (int i = 0; i < header.length; i++) {
+      packet[i] = (byte) header[i];
+    }
+
+    return packet;
+  }
+
+  /**
+   * PAT（program 1 -> PMT の PID 0x1000）と PMT（stream_type 0x0F -> AUDIO_PID）
+   */
+  private static void writeTables(ByteArrayOutputStream ts, int pointer) {
+    val pat = new int[] { 0x47, 0x40, 0x00, 0x10, pointer };
+    val patSection = new int[] { 0x00, 0xB0, 17, 0, 1, 0xC1, 0, 0,
+        0, 0, 0xE0, 0x10,     // program 0（NIT）は飛ばす
+        0, 1, 0xF0, 0x00, 0, 0, 0, 0 };
+    ts.writeBytes(packet(concat(pat, new int[pointer], patSection)));
+
+    val pmt = new int[] { 0x47, 0x50, 0x00, 0x10, 0 };
+    val pmtSection = new int[] { 0x02, 0xB0, 26, 0, 1, 0xC1, 0, 0, 0xE1, 0x00,
+        0xF0, 0x00,
+        0x1B, 0xE1, 0x00, 0xF0, 0x03, 1, 2, 3,    // 映像（descriptor 付き）は飛ばす
+        0x0F, 0xE0 | (AUDIO_PID >> 8), AUDIO_PID & 0xFF, 0xF0, 0x00,
+        0, 0, 0, 0 };
+    ts.writeBytes(packet(concat(pmt, pmtSection)));
+  }
+
+  private static int[] concat(int[]... arrays) {
+    int length = 0;
+
+    for (val array : arrays) {
+      length += array.length;
+    }
+
+    val result = new int[length];
+    int pos = 0;
+
+    for (val array : arrays) {
+      System.arraycopy(array, 0, result, pos, array.length);
+      pos += array.length;
+    }
+
+    return result;
+  }
+
+  /**
+   * PES を 188 バイトのパケットに分ける（最後のパケットは adaptation field で埋める）
+   */
+  private static void writePes(ByteArrayOutputStream ts, int pid, byte[] payload) {
+    val pes = new ByteArrayOutputStream();
+    // PES ヘッダー + PTS（PES_header_data_length 5）
+    pes.writeBytes(new byte[] { 0, 0, 1, (byte) 0xC0, 0, 0, (byte) 0x80,
+        (byte) 0x80, 5, 0x21, 0, 1, 0, 1 });
+    pes.writeBytes(payload);
+
+    val data = pes.toByteArray();
+    int pos = 0;
+    int counter = 0;
+
+    while (pos < data.length) {
+      val packet = new byte[188];
+      val remaining = data.length - pos;
+      packet[0] = 0x47;
+      packet[1] = (byte) ((pos == 0 ? 0x40 : 0) | (pid >> 8));
+      packet[2] = (byte) (pid & 0xFF);
+
+      if (remaining >= 184) {
+        packet[3] = (byte) (0x10 | counter);
+        System.arraycopy(data, pos, packet, 4, 184);
+        pos += 184;
+      } else {
+        val stuffing = 183 - remaining;
+        packet[3] = (byte) (0x30 | counter);
+        packet[4] = (byte) stuffing;
+        if (stuffing > 0) {
+          packet[5] = 0;
+          Arrays.fill(packet, 6, 5 + stuffing, (byte) 0xFF);
+        }
+        System.arraycopy(data, pos, packet, 5 + stuffing, remaining);
+        pos += remaining;
+      }
+
+      counter = (counter + 1) & 0x0F;
+      ts.writeBytes(packet);
+    }
+  }
+
+  @Test
+  void packedAudioSkipsId3Tags() {
+    val adts = frames(20);
+    // フレームの間の ID3 タグ（フッター付き）も飛ばす
+    val split = 100 + 113 + 126;
+    val packed = new ByteArrayOutputStream();
+    packed.writeBytes(id3(200, false));
+    packed.writeBytes(Arrays.copyOfRange(adts, 0, split));
+    packed.writeBytes(id3(30, true));
+    packed.writeBytes(Arrays.copyOfRange(adts, split, adts.length));
+
+    assertArrayEquals(adts, AdtsExtractor.extract(packed.toByteArray()));
+  }
+
+  @Test
+  void dropsTruncatedLastFrame() {
+    val adts = frames(5);
+    val segment = new ByteArrayOutputStream();
+    segment.writeBytes(adts);
+    segment.writeBytes(Arrays.copyOf(frame(200, 9), 50));
+
+    assertArrayEquals(adts, AdtsExtractor.extract(segment.toByteArray()));
+    // ヘッダーの途中で切れている場合も捨てる
+    assertArrayEquals(adts, AdtsExtractor.extract(
+        Arrays.copyOf(segment.toByteArray(), adts.length + 5)));
+  }
+
+  @Test
+  void dropsGarbage() {
+    assertEquals(0, AdtsExtractor.extract(
+        new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }).length);
+    assertEquals(0, AdtsExtractor.extract(new byte[0]).length);
+    // 長さが 7 未満のヘッダーはフレームとみなさない
+    val tooShort = frame(20, 0);
+    tooShort[4] = 0;
+    tooShort[5] = (byte) ((6 << 5) | 0x1F);
+    assertEquals(0, AdtsExtractor.extract(tooShort).length);
+  }
+
+  @Test
+  void transportStream() {
+    val adts = frames(20);
+    val ts = new ByteArrayOutputStream();
+    writeTables(ts, 0);
+    // PMT に無い PID のパケットは無視する
+    writePes(ts, 0x100, new byte[500]);
+    writePes(ts, AUDIO_PID, adts);
+
+    val data = ts.toByteArray();
+
+    assertTrue(AdtsExtractor.isTransportStream(data));
+    assertArrayEquals(adts, AdtsExtractor.extract(data));
+  }
+
+  @Test
+  void transportStreamWithPointerFieldAndTruncatedPes() {
+    val adts = frames(6);
+    val truncated = new ByteArrayOutputStream();
+    truncated.writeBytes(adts);
+    truncated.writeBytes(Arrays.copyOf(frame(300, 7), 120));
+
+    val ts = new ByteArrayOutputStream();
+    writeTables(ts, 3);
+    writePes(ts, AUDIO_PID, truncated.toByteArray());
+
+    assertArrayEquals(adts, AdtsExtractor.extract(ts.toByteArray()));
+  }
+
+  @Test
+  void detectsTransportStream() {
+    assertFalse(AdtsExtractor.isTransportStream(frames(3)));
+    assertFalse(AdtsExtractor.isTransportStream(new byte[] { 0x47 }));
+
+    val broken = new byte[188 * 2];
+    broken[0] = 0x47;
+    assertFalse(AdtsExtractor.isTransportStream(broken));
+    broken[188] = 0x47;
+    assertTrue(AdtsExtractor.isTransportStream(broken));
+  }
+}
@@ -0,0 +1,175 @@
+package com.echzny.playhls.hls;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistFollowerTest {
+  private static final URI PLAYLIST = URI.create("http://example.com/live/a.m3u8");
+
+  private final ScheduledExecutorService scheduler
+      = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private static byte[] playlist(long first, int count, boolean endList) {
+    val text = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n"
+        + "#EXT-X-TARGETDURATION:1\n#EXT-X-MEDIA-SEQUENCE:" + first + "\n");
+
+    for (long sequence = first; sequence < first + count; sequence++) {
+      text.append("#EXTINF:1.0,\nseg").append(sequence).append(".aac\n");
+    }
+    if (endList) {
+      text.append("#EXT-X-ENDLIST\n");
+    }
+
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 用意したプレイリストを順に返す（最後のものは繰り返す）
+   */
+  private static class Script
+      implements Function<URI, CompletableFuture<byte[]>> {
+    private final List<byte[]> bodies;
+    private int index = 0;
+
+    Script(byte[]... bodies) {
+      this.bodies = List.of(bodies);
+    }
+
+    @Override
+    public synchronized CompletableFuture<byte[]> apply(URI uri) {
+      val body = bodies.get(Math.min(index, bodies.size() - 1));
+      index++;
+      return CompletableFuture.completedFuture(body);
+    }
+
+    synchronized int getFetches() {
+      return index;
+    }
+  }
+
+  @Test
+  void skipUntilAndRestart() throws Exception {
+    val sequences = Collections.synchronizedList(new ArrayList<Long>());
+    val follower = new PlaylistFollower(PLAYLIST,
+        new Script(playlist(100, 3, false), playlist(101, 3, false),
+            playlist(5, 3, true)),
+        scheduler, segment -> sequences.add(segment.getSequence()), true)
+        .skipUntil(101);
+
+    follower.start().getCompletion().get(10, TimeUnit.SECONDS);
+
+    // 101 までは通知済み、5 からは配信の再開として扱う
+    assertEquals(List.of(102L, 103L, 5L, 6L, 7L), sequences);
+  }
+
+  @Test
+  void segmentsResolveAgainstPlaylist() throws Exception {
+    val uris = Collections.synchronizedList(new ArrayList<URI>());
+    new PlaylistFollower(PLAYLIST, new Script(playlist(1, 1, true)), scheduler,
+        segment -> uris.add(segment.getUri()))
+        .start().getCompletion().get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of(URI.create("http://example.com/live/seg1.aac")), uris);
+  }
+
+  @Test
+  void onPlaylistRunsAfterSegmentsAndHoldsNextFetch() throws Exception {
+    val events = Collections.synchronizedList(new ArrayList<String>());
+    val hold = new CompletableFuture<Void>();
+    val script = new Script(playlist(1, 2, false), playlist(2, 2, true));
+    val follower = new PlaylistFollower(PLAYLIST, script, scheduler,
+        segment -> events.add("segment " + segment.getSequence()), true)
+        .onPlaylist(playlist -> {
+          events.add("playlist " + playlist.getMediaSequence());
+          // 最初のプレイリストは hold が完了するまで次の取得を予約させない
+          return playlist.getMediaSequence() == 1 ? hold
+              : CompletableFuture.completedFuture(null);
+        });
+
+    follower.start();
+    Thread.sleep(1500);
+
+    assertEquals(1, script.getFetches());
+    assertEquals(List.of("segment 1", "segment 2", "playlist 1"), events);
+
+    hold.complete(null);
+    follower.getCompletion().get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of("segment 1", "segment 2", "playlist 1", "segment 3",
+        "playlist 2"), events);
+  }
+
+  @Test
+  void failedHandlerDoesNotStopFollowing() throws Exception {
+    val sequences = Collections.synchronizedList(new ArrayList<Long>());
+    new PlaylistFollower(PLAYLIST,
+        new Script(playlist(1, 1, false), playlist(2, 1, true)), scheduler,
+        segment -> sequences.add(segment.getSequence()), true)
+        .onPlaylist(playlist -> CompletableFuture.failedFuture(
+            new IllegalStateException("failed")))
+        .start().getCompletion().get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of(1L, 2L), sequences);
+  }
+
+  /**
+   * 1 秒ごとにセグメントが増えるライブを追いかけ、現れてから通知までの遅れを測る
+   * predictive では予想時刻の interval（200 ms）前から取得するので、遅れは interval 程度に収まる
+   */
+  @Test
+  void predictiveNotifiesNearLiveEdge() throws Exception {
+    val startedAt = System.currentTimeMillis();
+    val lags = new ConcurrentHashMap<Long, Long>();
+    // 開始 300 ms 後から 1 秒ごとに media sequence 1, 2, ... が増える
+    Function<URI, CompletableFuture<byte[]>> fetcher = uri -> {
+      val elapsed = System.currentTimeMillis() - startedAt;
+      val last = Math.max(1, (elapsed - 300) / 1000 + 1);
+      return CompletableFuture.completedFuture(
+          playlist(Math.max(1, last - 2), (int) Math.min(3, last), false));
+    };
+    val follower = new PlaylistFollower(PLAYLIST, fetcher, scheduler,
+        segment -> lags.put(segment.getSequence(), System.currentTimeMillis()
+            - (startedAt + 300 + (segment.getSequence() - 1) * 1000)), true);
+
+    follower.start();
+    Thread.sleep(5600);
+    follower.stop();
+
+    // 最初の 2 つは予想の材料が無いので除く
+    val measured = lagsFrom(lags, 3);
+
+    assertTrue(measured.size() >= 3, "segments: " + lags.keySet());
+    for (val lag : measured) {
+      assertTrue(lag >= 0 && lag < 450, "lags: " + lags);
+    }
+  }
+
+  private static List<Long> lagsFrom(Map<Long, Long> lags, long first) {
+    val result = new ArrayList<Long>();
+
+    for (val entry : lags.entrySet()) {
+      if (entry.getKey() >= first) {
+        result.add(entry.getValue());
+      }
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,131 @@
+package com.echzny.playhls.hls;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistParserTest {
+  private static final String MEDIA = "#EXTM3U\r\n"
+      + "#EXT-X-VERSION:3\r\n"
+      + "#EXT-X-TARGETDURATION:5\r\n"
+      + "#EXT-X-MEDIA-SEQUENCE:1234\r\n"
+      + "#EXTINF:5.005,\r\n"
+      + "seg1234.aac\r\n"
+      + "#EXTINF:4.9,title\r\n"
+      + "  http://example.com/seg1235.aac  \r\n"
+      + "\r\n"
+      + "#EXTINF:5,\r\n"
+      + "/live/seg1236.aac";     // 最後の行は改行無し
+
+  private static final String MASTER = "#EXTM3U\n"
+      + "#EXT-X-STREAM-INF:PROGRAM-ID=1,BANDWIDTH=52973,CODECS=\"mp4a.40.5\"\n"
+      + "http://example.com/a/playlist.m3u8\n"
+      + "#EXT-X-STREAM-INF:CODECS=\"mp4a.40.5\"\n"
+      + "b/playlist.m3u8\n";
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static void assertMedia(Playlist playlist) {
+    assertFalse(playlist.isMaster());
+    assertFalse(playlist.isEndList());
+    assertEquals(5, playlist.getTargetDuration());
+    assertEquals(1234, playlist.getMediaSequence());
+    assertEquals(3, playlist.getSegmentCount());
+
+    assertEquals(1234, playlist.getSegmentSequence(0));
+    assertEquals(1236, playlist.getSegmentSequence(2));
+    assertEquals(5005, playlist.getSegmentDurationMillis(0));
+    assertEquals(4900, playlist.getSegmentDurationMillis(1));
+    assertEquals(5000, playlist.getSegmentDurationMillis(2));
+    assertEquals("seg1234.aac", playlist.getSegmentUri(0));
+    assertEquals("http://example.com/seg1235.aac", playlist.getSegmentUri(1));
+    assertEquals("/live/seg1236.aac", playlist.getSegmentUri(2));
+  }
+
+  @Test
+  void parseMediaPlaylist() {
+    assertMedia(PlaylistParser.parse(bytes(MEDIA)));
+  }
+
+  @Test
+  void feedInAnySplit() {
+    val data = bytes(MEDIA);
+
+    // 1 バイトずつ・行の途中で分割して渡しても結果は同じ
+    for (val size : new int[] { 1, 2, 7, 16, 100 }) {
+      val parser = new PlaylistParser();
+
+      for (int off = 0; off < data.length; off += size) {
+        parser.feed(data, off, Math.min(size, data.length - off));
+      }
+
+      assertMedia(parser.finish());
+    }
+  }
+
+  @Test
+  void handlerReceivesTrimmedLines() {
+    val types = new ArrayList<PlaylistParser.LineType>();
+    val lines = new ArrayList<String>();
+    val parser = new PlaylistParser((buf, off, len, type) -> {
+      types.add(type);
+      lines.add(new String(buf, off, len, StandardCharsets.US_ASCII));
+    });
+    val data = bytes(MASTER);
+    parser.feed(data, 0, 20);
+    parser.feed(data, 20, data.length - 20);
+    parser.finish();
+
+    assertEquals(List.of(PlaylistParser.LineType.TAG,
+        PlaylistParser.LineType.TAG, PlaylistParser.LineType.VARIANT_URI,
+        PlaylistParser.LineType.TAG, PlaylistParser.LineType.VARIANT_URI),
+        types);
+    assertEquals("http://example.com/a/playlist.m3u8", lines.get(2));
+  }
+
+  @Test
+  void parseMasterPlaylist() {
+    val playlist = PlaylistParser.parse(bytes(MASTER));
+
+    assertTrue(playlist.isMaster());
+    assertEquals(2, playlist.getVariantCount());
+    assertEquals(0, playlist.getSegmentCount());
+    assertEquals(52973, playlist.getVariantBandwidth(0));
+    assertEquals(0, playlist.getVariantBandwidth(1));
+    assertEquals("b/playlist.m3u8", playlist.getVariantUri(1));
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() {
+    val text = new StringBuilder("#EXTM3U\n#EXT-X-TARGETDURATION:2\n");
+    val longPath = "x".repeat(300);
+
+    for (int i = 0; i < 50; i++) {
+      text.append("#EXTINF:2.0,\n").append(longPath).append(i).append(".aac\n");
+    }
+    text.append("#EXT-X-ENDLIST\n");
+
+    val playlist = PlaylistParser.parse(bytes(text.toString()));
+
+    assertTrue(playlist.isEndList());
+    assertEquals(50, playlist.getSegmentCount());
+    assertEquals(longPath + "49.aac", playlist.getSegmentUri(49));
+    assertEquals(2000, playlist.getSegmentDurationMillis(49));
+  }
+
+  @Test
+  void feedAfterFinishFails() {
+    val parser = new PlaylistParser();
+    parser.finish();
+
+    assertThrows(IllegalStateException.class,
+        () -> parser.feed(new byte[1], 0, 1));
+  }
+}
@@ -0,0 +1,138 @@
+package com.echzny.playhls.proxy;
+
+import com.echzny.playhls.hls.Playlist;
+import com.echzny.playhls.hls.PlaylistParser;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistCacheTest {
+  private static final String URI = "http://example.com/live/playlist.m3u8";
+
+  private static Playlist playlist(int targetDuration) {
+    return PlaylistParser.parse(("#EXTM3U\n#EXT-X-TARGETDURATION:"
+        + targetDuration + "\n#EXTINF:5.0,\nseg1.aac\n")
+        .getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static SegmentCache.Entry entry(String body) {
+    return new SegmentCache.Entry(HttpResponseStatus.OK,
+        "application/vnd.apple.mpegurl",
+        body.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void firstRequestFetchesAndConcurrentRequestsWaitForIt() throws Exception {
+    val cache = new PlaylistCache(0.5, Duration.ofSeconds(2),
+        Duration.ofSeconds(10));
+
+    val first = cache.lookup(URI);
+    assertFalse(first.isHit());
+    assertFalse(first.isPending());
+
+    // 取得中のリクエストは同じ取得を待つ
+    val second = cache.lookup(URI);
+    val third = cache.lookup(URI);
+    assertTrue(second.isPending());
+    assertTrue(third.isPending());
+    assertFalse(second.getPending().isDone());
+
+    val fetched = entry("fetched");
+    cache.put(URI, fetched, playlist(6));
+
+    assertSame(fetched, second.getPending().get(1, TimeUnit.SECONDS));
+    assertSame(fetched, third.getPending().get(1, TimeUnit.SECONDS));
+
+    // 有効期限内はそのまま応答する
+    val hit = cache.lookup(URI);
+    assertTrue(hit.isHit());
+    assertSame(fetched, hit.getEntry());
+  }
+
+  @Test
+  void waitersFailWhenFetchFails() {
+    val cache = new PlaylistCache(0.5, Duration.ofSeconds(2),
+        Duration.ofSeconds(10));
+
+    cache.lookup(URI);
+    val waiter = cache.lookup(URI);
+    cache.fetchFailed(URI);
+
+    assertThrows(ExecutionException.class,
+        () -> waiter.getPending().get(1, TimeUnit.SECONDS));
+    // 次のリクエストが取得し直す
+    val retry = cache.lookup(URI);
+    assertFalse(retry.isHit());
+    assertFalse(retry.isPending());
+  }
+
+  @Test
+  void cancellingWaiterDoesNotCancelFetch() throws Exception {
+    val cache = new PlaylistCache(0.5, Duration.ofSeconds(2),
+        Duration.ofSeconds(10));
+
+    cache.lookup(URI);
+    val cancelled = cache.lookup(URI);
+    val waiting = cache.lookup(URI);
+    cancelled.getPending().cancel(false);
+
+    val fetched = entry("fetched");
+    cache.put(URI, fetched, playlist(6));
+
+    assertSame(fetched, waiting.getPending().get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void expiresAfterTargetDurationTimesRatio() throws Exception {
+    val cache = new PlaylistCache(0.05, Duration.ofSeconds(2),
+        Duration.ofSeconds(10));
+
+    cache.lookup(URI);
+    cache.put(URI, entry("old"), playlist(1));   // 有効期限 50ms
+    assertTrue(cache.lookup(URI).isHit());
+
+    Thread.sleep(80);
+    val expired = cache.lookup(URI);
+    assertFalse(expired.isHit());
+    assertFalse(expired.isPending());
+    // 有効期限の 2 倍までは失敗時の代わりに使える
+    assertTrue(cache.getStale(URI).isPresent());
+
+    Thread.sleep(50);
+    assertFalse(cache.getStale(URI).isPresent());
+  }
+
+  @Test
+  void ttlFallsBackToDefaultWithoutTargetDuration() {
+    val cache = new PlaylistCache(0.5, Duration.ofSeconds(2),
+        Duration.ofSeconds(10));
+    val master = PlaylistParser.parse(
+        "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=48000\nmedia.m3u8\n"
+            .getBytes(StandardCharsets.US_ASCII));
+
+    assertEquals(2000, cache.ttlMillis(master));
+    assertEquals(3000, cache.ttlMillis(playlist(6)));
+  }
+
+  @Test
+  void stalledFetchIsTakenOverAfterFetchTimeout() throws Exception {
+    val cache = new PlaylistCache(0.5, Duration.ofSeconds(2),
+        Duration.ofMillis(50));
+
+    cache.lookup(URI);
+    val waiter = cache.lookup(URI);
+    Thread.sleep(80);
+
+    val takeover = cache.lookup(URI);
+    assertFalse(takeover.isPending());
+    assertThrows(ExecutionException.class,
+        () -> waiter.getPending().get(1, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,99 @@
+package com.echzny.playhls.proxy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistRewriterTest {
+  private static final String PREFIX = "http://127.0.0.1:8080/";
+  private static final URI PLAYLIST
+      = URI.create("http://example.com/live/tbs/playlist.m3u8?token=1");
+
+  private static final String INPUT = "#EXTM3U\n"
+      + "#EXT-X-TARGETDURATION:5\n"
+      + "#EXTINF:5,\n"
+      + "http://cdn.example.com/a/1.aac\n"
+      + "#EXTINF:5,\n"
+      + "https://secure.example.com/a/2.aac\n"
+      + "#EXTINF:5,\n"
+      + "//cdn.example.com/a/3.aac\n"
+      + "#EXTINF:5,\r\n"
+      + "/root/4.aac\r\n"
+      + "#EXTINF:5,\n"
+      + "5.aac?x=1";
+
+  private static final String EXPECTED = "#EXTM3U\n"
+      + "#EXT-X-TARGETDURATION:5\n"
+      + "#EXTINF:5,\n"
+      + "http://127.0.0.1:8080/cdn.example.com/a/1.aac\n"
+      + "#EXTINF:5,\n"
+      + "https://secure.example.com/a/2.aac\n"
+      + "#EXTINF:5,\n"
+      + "http://127.0.0.1:8080/cdn.example.com/a/3.aac\n"
+      + "#EXTINF:5,\n"
+      + "http://127.0.0.1:8080/example.com/root/4.aac\n"
+      + "#EXTINF:5,\n"
+      + "http://127.0.0.1:8080/example.com/live/tbs/5.aac?x=1\n";
+
+  private static String string(ByteBuf buf) {
+    return buf.toString(StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  void rewritesEveryUriForm() {
+    val rewriter = new PlaylistRewriter(PREFIX, PLAYLIST);
+    val out = string(rewriter.rewrite(Unpooled.copiedBuffer(INPUT,
+        StandardCharsets.US_ASCII))) + string(rewriter.finish());
+
+    assertEquals(EXPECTED, out);
+    assertEquals(5, rewriter.getPlaylist().getSegmentCount());
+    // 解析結果は書き換える前の URI
+    assertEquals("http://cdn.example.com/a/1.aac",
+        rewriter.getPlaylist().getSegmentUri(0));
+  }
+
+  @Test
+  void rewritesChunksSplitInsideLines() {
+    val data = INPUT.getBytes(StandardCharsets.US_ASCII);
+
+    for (val size : new int[] { 1, 3, 10, 33 }) {
+      val rewriter = new PlaylistRewriter(PREFIX, PLAYLIST);
+      val out = new StringBuilder();
+
+      for (int off = 0; off < data.length; off += size) {
+        out.append(string(rewriter.rewrite(Unpooled.wrappedBuffer(data, off,
+            Math.min(size, data.length - off)))));
+      }
+      out.append(string(rewriter.finish()));
+
+      assertEquals(EXPECTED, out.toString(), "chunk size " + size);
+    }
+  }
+
+  @Test
+  void rewriteDoesNotConsumeInput() {
+    val in = Unpooled.copiedBuffer("#EXTM3U\n", StandardCharsets.US_ASCII);
+    new PlaylistRewriter(PREFIX, PLAYLIST).rewrite(in);
+
+    assertEquals(8, in.readableBytes());
+  }
+
+  @Test
+  void toUpstreamUri() {
+    assertEquals("http://cdn.example.com/a/1.aac",
+        PlaylistRewriter.toUpstreamUri("/cdn.example.com/a/1.aac"));
+    assertEquals("http://example.com",
+        PlaylistRewriter.toUpstreamUri("/example.com"));
+    // ホスト名らしくないものと絶対 URI はそのまま
+    assertEquals("/status", PlaylistRewriter.toUpstreamUri("/status"));
+    assertEquals("http://example.com/a",
+        PlaylistRewriter.toUpstreamUri("http://example.com/a"));
+    assertNull(PlaylistRewriter.toUpstreamUri(null));
+  }
+}
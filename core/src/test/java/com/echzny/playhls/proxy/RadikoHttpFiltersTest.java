@@ -0,0 +1,177 @@
+package com.echzny.playhls.proxy;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.*;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RadikoHttpFiltersTest {
+  private static final String PREFIX = "http://127.0.0.1:8080/";
+  private static final String URI = "http://example.com/vod/playlist.m3u8";
+  private static final String BODY = "#EXTM3U\n#EXT-X-TARGETDURATION:5\n"
+      + "#EXTINF:5,\nseg1.aac\n#EXT-X-ENDLIST\n";
+  private static final String REWRITTEN = "#EXTM3U\n#EXT-X-TARGETDURATION:5\n"
+      + "#EXTINF:5,\nhttp://127.0.0.1:8080/example.com/vod/seg1.aac\n"
+      + "#EXT-X-ENDLIST\n";
+
+  private final SegmentCache segmentCache = new SegmentCache(1 << 20,
+      Duration.ofMinutes(1), Duration.ofMinutes(1));
+  private final PlaylistCache playlistCache = new PlaylistCache(0.5,
+      Duration.ofSeconds(2), Duration.ofSeconds(10));
+
+  private static HttpRequest request() {
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+        "/example.com/vod/playlist.m3u8");
+  }
+
+  private RadikoHttpFilters filters() {
+    return filters(request());
+  }
+
+  private RadikoHttpFilters filters(HttpRequest request) {
+    return new RadikoHttpFilters(request, null, new RoutingTable(() -> "token"),
+        new Route("example.com", "test", () -> "token"), segmentCache,
+        playlistCache, new LivePoller(segmentCache, playlistCache, PREFIX,
+        Duration.ofSeconds(30), Duration.ofSeconds(10)),
+        new ProxyMetrics(), PREFIX);
+  }
+
+  private static HttpResponse header(HttpResponse res) {
+    res.headers().set(HttpHeaders.Names.CONTENT_TYPE,
+        "application/vnd.apple.mpegurl");
+    res.headers().set("X-Upstream", "1");
+    return res;
+  }
+
+  private String cached() {
+    val lookup = playlistCache.lookup(URI);
+
+    assertTrue(lookup.isHit());
+    assertEquals(HttpResponseStatus.OK, lookup.getEntry().getStatus());
+    return new String(lookup.getEntry().getBody(), StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  void rewritesFullResponseKeepingHeaders() {
+    val upstream = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.PARTIAL_CONTENT,
+        Unpooled.copiedBuffer(BODY, StandardCharsets.US_ASCII));
+    header(upstream);
+    upstream.headers().set(HttpHeaders.Names.CONTENT_RANGE,
+        "bytes 0-" + (BODY.length() - 1) + "/" + BODY.length());
+    HttpHeaders.setContentLength(upstream, BODY.length());
+
+    val result = filters().serverToProxyResponse(upstream);
+
+    assertTrue(result instanceof FullHttpResponse);
+    val res = (FullHttpResponse) result;
+    assertEquals(HttpResponseStatus.OK, res.getStatus());
+    assertEquals("1", res.headers().get("X-Upstream"));
+    assertEquals("application/vnd.apple.mpegurl",
+        res.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+    assertFalse(res.headers().contains(HttpHeaders.Names.CONTENT_RANGE));
+    assertEquals(REWRITTEN.length(), HttpHeaders.getContentLength(res));
+    assertEquals(REWRITTEN, res.content().toString(StandardCharsets.US_ASCII));
+    assertEquals(REWRITTEN, cached());
+  }
+
+  @Test
+  void rewritesChunkedResponse() {
+    val filters = filters();
+    val upstream = header(new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.OK));
+    HttpHeaders.setContentLength(upstream, BODY.length());
+
+    val res = (HttpResponse) filters.serverToProxyResponse(upstream);
+    assertTrue(HttpHeaders.isTransferEncodingChunked(res));
+    assertFalse(HttpHeaders.isContentLengthSet(res));
+
+    val body = BODY.getBytes(StandardCharsets.US_ASCII);
+    val first = (HttpContent) filters.serverToProxyResponse(
+        new DefaultHttpContent(Unpooled.wrappedBuffer(body, 0, 20)));
+    val last = (HttpContent) filters.serverToProxyResponse(
+        new DefaultLastHttpContent(Unpooled.wrappedBuffer(body, 20,
+            body.length - 20)));
+
+    assertTrue(last instanceof LastHttpContent);
+    assertEquals(REWRITTEN, first.content().toString(StandardCharsets.US_ASCII)
+        + last.content().toString(StandardCharsets.US_ASCII));
+    assertEquals(REWRITTEN, cached());
+  }
+
+  private FullHttpResponse upstream() {
+    val upstream = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.OK,
+        Unpooled.copiedBuffer(BODY, StandardCharsets.US_ASCII));
+    HttpHeaders.setContentLength(header(upstream), BODY.length());
+    return upstream;
+  }
+
+  private static void later(Runnable runnable) {
+    val thread = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        return;
+      }
+      runnable.run();
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Test
+  void collapsedRequestWaitsForFullResponse() {
+    // 先のリクエストが取得中
+    assertFalse(playlistCache.lookup(URI).isHit());
+    later(() -> filters().serverToProxyResponse(upstream()));
+
+    val request = request();
+    val res = filters(request).clientToProxyRequest(request);
+
+    // ヘッダーだけでなく本文まで 1 つのレスポンスで返す
+    assertTrue(res instanceof FullHttpResponse);
+    assertEquals(HttpResponseStatus.OK, res.getStatus());
+    assertEquals(REWRITTEN,
+        ((FullHttpResponse) res).content().toString(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void collapsedRequestGoesUpstreamWhenFetchFails() {
+    assertFalse(playlistCache.lookup(URI).isHit());
+    later(() -> playlistCache.fetchFailed(URI));
+
+    val request = request();
+    assertNull(filters(request).clientToProxyRequest(request));
+  }
+
+  @Test
+  void collapsedRequestServesStaleWhenFetchFails() throws Exception {
+    filters().serverToProxyResponse(upstream());
+    // 有効期限（TARGETDURATION の半分）を過ぎてから取得し直す
+    Thread.sleep(2600);
+    assertFalse(playlistCache.lookup(URI).isHit());
+    later(() -> playlistCache.fetchFailed(URI));
+
+    val request = request();
+    val res = filters(request).clientToProxyRequest(request);
+
+    assertTrue(res instanceof FullHttpResponse);
+    assertEquals(REWRITTEN,
+        ((FullHttpResponse) res).content().toString(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void passesThroughErrors() {
+    val upstream = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.NOT_FOUND);
+
+    assertSame(upstream, filters().serverToProxyResponse(upstream));
+    assertFalse(playlistCache.lookup(URI).isHit());
+  }
+}
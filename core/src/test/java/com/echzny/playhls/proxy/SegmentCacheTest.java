@@ -0,0 +1,126 @@
+package com.echzny.playhls.proxy;
+
+import io.netty.handler.codec.http.*;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentCacheTest {
+  private static SegmentCache.Entry entry(int size) {
+    return new SegmentCache.Entry(HttpResponseStatus.OK, "audio/aac",
+        new byte[size]);
+  }
+
+  private static HttpResponse response(HttpResponseStatus status,
+                                       String contentRange) {
+    val res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+
+    if (contentRange != null) {
+      res.headers().set(HttpHeaders.Names.CONTENT_RANGE, contentRange);
+    }
+
+    return res;
+  }
+
+  @Test
+  void segmentUri() {
+    assertTrue(SegmentCache.isSegmentUri("http://example.com/a/1.aac"));
+    assertTrue(SegmentCache.isSegmentUri("http://example.com/a/1.ts?x=1.m3u8"));
+    assertFalse(SegmentCache.isSegmentUri("http://example.com/a.m3u8?x=1.aac"));
+    assertFalse(SegmentCache.isSegmentUri(null));
+  }
+
+  @Test
+  void freshThenStaleThenExpired() throws Exception {
+    val cache = new SegmentCache(1000, Duration.ofMillis(100),
+        Duration.ofMillis(200));
+    cache.put("a", entry(10));
+
+    assertTrue(cache.getFresh("a").isPresent());
+    assertTrue(cache.getStale("a").isPresent());
+
+    Thread.sleep(150);
+    // maxAge を過ぎたら上流のエラー時だけ使う
+    assertFalse(cache.getFresh("a").isPresent());
+    assertTrue(cache.getStale("a").isPresent());
+
+    Thread.sleep(200);
+    assertFalse(cache.getStale("a").isPresent());
+
+    // 期限切れのものは次の保存時に破棄する
+    cache.put("b", entry(10));
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getTotalBytes());
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedOverMaxBytes() {
+    val cache = new SegmentCache(30, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    cache.put("a", entry(10));
+    cache.put("b", entry(10));
+    cache.put("c", entry(10));
+
+    // a を参照したので、次は b が最も古い
+    assertTrue(cache.getFresh("a").isPresent());
+    cache.put("d", entry(10));
+
+    assertTrue(cache.getFresh("a").isPresent());
+    assertFalse(cache.getFresh("b").isPresent());
+    assertTrue(cache.getFresh("c").isPresent());
+    assertTrue(cache.getFresh("d").isPresent());
+    assertEquals(30, cache.getTotalBytes());
+
+    // 置き換えた分の大きさは差し引く
+    cache.put("d", entry(5));
+    assertEquals(25, cache.getTotalBytes());
+  }
+
+  @Test
+  void ignoresEntryLargerThanMaxBytes() {
+    val cache = new SegmentCache(30, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    cache.put("a", entry(10));
+    cache.put("big", entry(31));
+
+    assertFalse(cache.getFresh("big").isPresent());
+    assertTrue(cache.getFresh("a").isPresent());
+    assertEquals(10, cache.getTotalBytes());
+  }
+
+  @Test
+  void completeResponse() {
+    assertTrue(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.OK, null)));
+    assertTrue(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, "bytes 0-999/1000")));
+
+    // 一部だけ・全体の長さが不明な 206 はキャッシュしない
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, "bytes 0-499/1000")));
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, "bytes 500-999/1000")));
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, "bytes 0-999/*")));
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, "bytes 0-999")));
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.PARTIAL_CONTENT, null)));
+    assertFalse(SegmentCache.isCompleteResponse(
+        response(HttpResponseStatus.NOT_FOUND, null)));
+  }
+
+  @Test
+  void entryResponseHeaders() {
+    val res = new SegmentCache.Entry(HttpResponseStatus.OK, "audio/aac",
+        new byte[] { 1, 2, 3 }).toResponse();
+
+    assertEquals(HttpResponseStatus.OK, res.getStatus());
+    assertEquals("audio/aac", res.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+    assertEquals(3, HttpHeaders.getContentLength(res));
+    assertFalse(res.headers().contains(HttpHeaders.Names.CONTENT_RANGE));
+    assertEquals(3, res.content().readableBytes());
+    res.release();
+  }
+}
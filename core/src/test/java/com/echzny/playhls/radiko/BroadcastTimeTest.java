@@ -0,0 +1,104 @@
+package com.echzny.playhls.radiko;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BroadcastTimeTest {
+  private static long epochSecond(String ldt) {
+    return LocalDateTime.parse(ldt).toEpochSecond(BroadcastTime.JST);
+  }
+
+  @Test
+  void parseRadikoTimestamp() {
+    assertEquals(epochSecond("2024-04-01T05:00:00"),
+        BroadcastTime.parseRadikoTimestamp("20240401050000"));
+    assertEquals(epochSecond("2024-02-29T23:59:59"),
+        BroadcastTime.parseRadikoTimestamp("20240229235959"));
+    assertEquals(epochSecond("2000-02-29T00:00:00"),
+        BroadcastTime.parseRadikoTimestamp("20000229000000"));
+    assertEquals(epochSecond("2023-12-31T12:34:56"),
+        BroadcastTime.parseRadikoTimestamp("20231231123456"));
+  }
+
+  @Test
+  void rejectsInvalidTimestamp() {
+    for (val s : new String[] {
+        "20240231000000",   // 2 月 31 日
+        "20230229000000",   // 閏年でない 2 月 29 日
+        "21000229000000",   // 100 で割り切れる年は閏年でない
+        "20240431000000",   // 30 日までの月
+        "20241301000000",
+        "20240100000000",
+        "20240101240000",
+        "20240101006000",
+        "2024010100000",
+        "2024010100000x" }) {
+      assertThrows(IllegalArgumentException.class,
+          () -> BroadcastTime.parseRadikoTimestamp(s), s);
+    }
+  }
+
+  @Test
+  void lengthOfMonthMatchesJavaTime() {
+    for (val year : new int[] { 1900, 2000, 2023, 2024, 2100 }) {
+      for (int month = 1; month <= 12; month++) {
+        assertEquals(LocalDate.of(year, month, 1).lengthOfMonth(),
+            BroadcastTime.lengthOfMonth(year, month), year + "-" + month);
+      }
+    }
+  }
+
+  @Test
+  void broadcastDayChangesAtFive() {
+    // 04:59 までは前日の放送日
+    assertEquals(LocalDate.parse("2024-03-31"),
+        BroadcastTime.broadcastDate(epochSecond("2024-04-01T04:59:59")));
+    assertEquals(LocalDate.parse("2024-04-01"),
+        BroadcastTime.broadcastDate(epochSecond("2024-04-01T05:00:00")));
+    assertEquals(LocalDate.parse("2024-04-01"),
+        BroadcastTime.broadcastDate(epochSecond("2024-04-01T23:59:59")));
+    assertEquals(LocalDate.parse("2024-04-01"),
+        BroadcastTime.broadcastDate(epochSecond("2024-04-02T00:00:00")));
+  }
+
+  @Test
+  void minutesAndFormatOf29H() {
+    assertEquals(300, BroadcastTime.minutesOf29H(epochSecond("2024-04-01T05:00:00")));
+    assertEquals(1439, BroadcastTime.minutesOf29H(epochSecond("2024-04-01T23:59:00")));
+    assertEquals(1440, BroadcastTime.minutesOf29H(epochSecond("2024-04-02T00:00:00")));
+    assertEquals(1739, BroadcastTime.minutesOf29H(epochSecond("2024-04-02T04:59:59")));
+    assertEquals(1500, BroadcastTime.minutesOf29H(1, 0));
+    assertEquals(300, BroadcastTime.minutesOf29H(5, 0));
+
+    val buf = new char[7];
+    assertEquals(5, BroadcastTime.format29H(
+        epochSecond("2024-04-02T04:59:00"), buf, 1));
+    assertEquals("28:59", new String(buf, 1, 5));
+    assertEquals("05:00", BroadcastTime.append29H(
+        epochSecond("2024-04-01T05:00:00"), new StringBuilder()).toString());
+    assertEquals("24:30", BroadcastTime.append29H(
+        epochSecond("2024-04-02T00:30:00"), new StringBuilder()).toString());
+  }
+
+  @Test
+  void formatRoundTrip() {
+    val buf = new char[14];
+
+    for (val s : new String[] { "20240229235959", "20000101000000",
+        "19991231235959", "20240401045959" }) {
+      BroadcastTime.formatRadikoTimestamp(
+          BroadcastTime.parseRadikoTimestamp(s), buf, 0);
+      assertEquals(s, new String(buf));
+    }
+
+    val date = new char[10];
+    BroadcastTime.formatDate(LocalDate.parse("2024-02-29").toEpochDay(), '/',
+        date, 0);
+    assertEquals("2024/02/29", new String(date));
+  }
+}
@@ -0,0 +1,30 @@
+package com.echzny.playhls.radiko;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelTest {
+  @Test
+  void splitsAreaId() {
+    val channel = new Channel("TBS", "TBSラジオ", "JP13:radiko");
+
+    assertEquals("TBS:JP13:radiko", channel.getId());
+    assertEquals("JP13", channel.getAreaCode().get());
+    assertEquals(BroadcasterType.radiko, channel.getBroadcasterType().get());
+  }
+
+  @Test
+  void unknownBroadcasterTypeIsEmpty() {
+    val channel = new Channel("X", "unknown", "JP13:unknown");
+
+    assertEquals("JP13", channel.getAreaCode().get());
+    assertFalse(channel.getBroadcasterType().isPresent());
+
+    assertFalse(new Channel("X", "no type", "JP13").getBroadcasterType()
+        .isPresent());
+    assertFalse(new Channel("X", "null", null).getBroadcasterType()
+        .isPresent());
+  }
+}
@@ -0,0 +1,131 @@
+package com.echzny.playhls.radiko;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuideIndexTest {
+  private static final String TBS = "TBS:JP13:radiko";
+  private static final String QRR = "QRR:JP13:radiko";
+  private static final String ABC = "ABC:JP27:radiko";
+
+  private static Program program(String code, String channelId,
+                                 String start, String finish) {
+    return new Program(code, channelId, channelId, code, null, null, null,
+        null, null, LocalDateTime.parse(start), LocalDateTime.parse(finish),
+        null);
+  }
+
+  private static GuideIndex index() {
+    return GuideIndex.of(Arrays.asList(
+        program("t2", TBS, "2024-04-01T06:00", "2024-04-01T08:30"),
+        program("t1", TBS, "2024-04-01T05:00", "2024-04-01T06:00"),
+        program("t3", TBS, "2024-04-01T08:30", "2024-04-01T11:00"),
+        program("q1", QRR, "2024-04-01T05:30", "2024-04-01T07:00"),
+        program("q2", QRR, "2024-04-01T07:00", "2024-04-01T09:00"),
+        program("a1", ABC, "2024-04-01T05:00", "2024-04-01T09:00")));
+  }
+
+  private static String codes(Iterable<Program> programs) {
+    val codes = new ArrayList<String>();
+
+    for (val program : programs) {
+      codes.add(program.getCode());
+    }
+
+    return String.join(",", codes);
+  }
+
+  @Test
+  void onAirExcludesStartAndFinishBoundaries() {
+    val index = index();
+
+    // 開始時刻ちょうどは前の番組も次の番組も放送中としない（Program.isOnAir と同じ）
+    assertFalse(index.getOnAir(TBS, LocalDateTime.parse("2024-04-01T06:00"))
+        .isPresent());
+    assertEquals("t2", index.getOnAir(TBS,
+        LocalDateTime.parse("2024-04-01T06:00:00.001")).get().getCode());
+    assertEquals("t2", index.getOnAir(TBS,
+        LocalDateTime.parse("2024-04-01T08:29:59.999")).get().getCode());
+    assertFalse(index.getOnAir(TBS, LocalDateTime.parse("2024-04-01T04:59"))
+        .isPresent());
+    assertFalse(index.getOnAir(TBS, LocalDateTime.parse("2024-04-01T11:00"))
+        .isPresent());
+    assertFalse(index.getOnAir("unknown", LocalDateTime.parse("2024-04-01T07:00"))
+        .isPresent());
+  }
+
+  @Test
+  void onAirAllUsesSameTimeForEveryChannel() {
+    val onAir = index().getOnAirAll(LocalDateTime.parse("2024-04-01T07:30"));
+
+    assertEquals(3, onAir.size());
+    assertEquals("t2", onAir.get(TBS).getCode());
+    assertEquals("q2", onAir.get(QRR).getCode());
+    assertEquals("a1", onAir.get(ABC).getCode());
+
+    val byArea = index().getOnAirByAreaId("JP13:radiko",
+        LocalDateTime.parse("2024-04-01T07:30"));
+
+    assertEquals(2, byArea.size());
+    assertFalse(byArea.containsKey(ABC));
+  }
+
+  @Test
+  void rangeIncludesOverlappingProgramsOnly() {
+    val index = index();
+    val tbs = Collections.singletonList(TBS);
+
+    // 終了時刻が from ちょうど・開始時刻が to ちょうどの番組は含めない
+    assertEquals("t2", codes(index.getRange(tbs,
+        LocalDateTime.parse("2024-04-01T06:00"),
+        LocalDateTime.parse("2024-04-01T08:30"))));
+    assertEquals("t1,t2,t3", codes(index.getRange(tbs,
+        LocalDateTime.parse("2024-04-01T05:59"),
+        LocalDateTime.parse("2024-04-01T08:31"))));
+    // 期間を包む長い番組も含める
+    assertEquals("t2", codes(index.getRange(tbs,
+        LocalDateTime.parse("2024-04-01T07:00"),
+        LocalDateTime.parse("2024-04-01T07:01"))));
+  }
+
+  @Test
+  void emptyRange() {
+    val index = index();
+    val tbs = Collections.singletonList(TBS);
+
+    assertTrue(index.getRange(tbs, LocalDateTime.parse("2024-04-01T07:00"),
+        LocalDateTime.parse("2024-04-01T07:00")).isEmpty());
+    assertTrue(index.getRange(tbs, LocalDateTime.parse("2024-04-01T08:00"),
+        LocalDateTime.parse("2024-04-01T07:00")).isEmpty());
+    assertTrue(index.getRange(tbs, LocalDateTime.parse("2024-04-02T00:00"),
+        LocalDateTime.parse("2024-04-02T05:00")).isEmpty());
+    assertTrue(index.getRange(Collections.singletonList("unknown"),
+        LocalDateTime.parse("2024-04-01T05:00"),
+        LocalDateTime.parse("2024-04-01T11:00")).isEmpty());
+    assertTrue(GuideIndex.of(Collections.emptyList())
+        .getOnAirAll(LocalDateTime.parse("2024-04-01T07:00")).isEmpty());
+  }
+
+  @Test
+  void rangeMergesChannelsInStartOrder() {
+    val index = index();
+
+    // 開始時刻が同じ場合は引数のチャンネルの順
+    assertEquals("t1,q1,t2,q2,t3", codes(index.getRange(Arrays.asList(TBS, QRR),
+        LocalDateTime.parse("2024-04-01T05:00"),
+        LocalDateTime.parse("2024-04-01T11:00"))));
+    assertEquals("q1,t2,q2", codes(index.getRangeByAreaId("JP13:radiko",
+        LocalDateTime.parse("2024-04-01T06:30"),
+        LocalDateTime.parse("2024-04-01T08:30"))));
+    assertEquals("a1", codes(index.getRangeByAreaId("JP27:radiko",
+        LocalDateTime.parse("2024-04-01T08:00"),
+        LocalDateTime.parse("2024-04-01T10:00"))));
+  }
+}
@@ -0,0 +1,135 @@
+package com.echzny.playhls.radiko;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuideStoreTest {
+  private static final String TBS = "TBS:JP13:radiko";
+  private static final String ABC = "ABC:JP27:radiko";
+
+  @TempDir Path directory;
+
+  private static StationRegistry registry() {
+    return new StationRegistry(
+        Arrays.asList(new Area("JP13", "東京", BroadcasterType.radiko),
+            new Area("JP27", "大阪", BroadcasterType.radiko)),
+        Arrays.asList(new Channel("TBS", "TBSラジオ", "JP13:radiko"),
+            new Channel("ABC", "ABCラジオ", "JP27:radiko")));
+  }
+
+  private static Program program(String code, String channelId,
+                                 String start, String finish) {
+    return new Program(code, channelId, channelId + " name", "番組 " + code,
+        "sub", "cast", "http://example.com/" + code, null, "説明",
+        LocalDateTime.parse(start), LocalDateTime.parse(finish),
+        "http://example.com/" + code + ".m3u8");
+  }
+
+  private static List<Program> programs() {
+    return Arrays.asList(
+        program("t1", TBS, "2024-04-01T05:00", "2024-04-01T06:00"),
+        // 24 時以降は前日の放送日（29h 形式）
+        program("t2", TBS, "2024-04-02T01:00", "2024-04-02T05:00"),
+        program("t3", TBS, "2024-04-02T05:00", "2024-04-02T06:00"),
+        program("a1", ABC, "2024-04-01T06:00", "2024-04-01T07:00"));
+  }
+
+  private static List<String> strings(List<Program> programs) {
+    val list = new ArrayList<String>();
+
+    for (val program : programs) {
+      list.add(program.toString());
+    }
+
+    return list;
+  }
+
+  @Test
+  void roundTrip() throws Exception {
+    val programs = programs();
+    GuideStore.save(directory, registry(), Set.of("TBS"), "JP13", programs);
+    val store = GuideStore.open(directory).get();
+
+    assertEquals(registry().getAreaList(), store.getAreaList());
+    assertEquals(registry().getChannelList(), store.getChannelList());
+    assertEquals(Set.of("TBS"), store.getAllowedChannelCodes());
+    assertEquals("JP13", store.getCurrentAreaCode().get());
+    assertEquals(Arrays.asList(LocalDate.parse("2024-04-01"),
+        LocalDate.parse("2024-04-02")), store.getDays());
+
+    val day1 = LocalDate.parse("2024-04-01");
+    assertEquals(3, store.getPrograms(day1).size());
+    assertEquals(strings(programs.subList(0, 2)),
+        strings(store.getPrograms(TBS, day1)));
+    assertEquals(strings(programs.subList(3, 4)),
+        strings(store.getPrograms(ABC, day1)));
+    assertEquals(strings(programs.subList(2, 3)),
+        strings(store.getPrograms(TBS, LocalDate.parse("2024-04-02"))));
+    assertEquals(strings(programs.subList(0, 3)),
+        strings(store.getPrograms(TBS)));
+
+    assertTrue(store.getPrograms("unknown", day1).isEmpty());
+    assertTrue(store.getPrograms(LocalDate.parse("2024-03-31")).isEmpty());
+  }
+
+  @Test
+  void emptyStore() throws Exception {
+    GuideStore.save(directory, StationRegistry.EMPTY, Collections.emptySet(),
+        null, Collections.emptyList());
+    val store = GuideStore.open(directory).get();
+
+    assertTrue(store.getAreaList().isEmpty());
+    assertTrue(store.getAllowedChannelCodes().isEmpty());
+    assertFalse(store.getCurrentAreaCode().isPresent());
+    assertTrue(store.getDays().isEmpty());
+    assertTrue(store.getPrograms(TBS).isEmpty());
+  }
+
+  @Test
+  void saveReplacesOldFile() throws Exception {
+    GuideStore.save(directory, registry(), Set.of("TBS"), "JP13", programs());
+    Thread.sleep(5);
+    GuideStore.save(directory, registry(), Set.of("ABC"), "JP27",
+        Collections.emptyList());
+
+    try (val files = Files.list(directory)) {
+      assertEquals(1, files.count());
+    }
+    val store = GuideStore.open(directory).get();
+    assertEquals(Set.of("ABC"), store.getAllowedChannelCodes());
+    assertEquals("JP27", store.getCurrentAreaCode().get());
+  }
+
+  @Test
+  void openSkipsBrokenFile() throws Exception {
+    assertFalse(GuideStore.open(directory).isPresent());
+
+    GuideStore.save(directory, registry(), Set.of("TBS"), "JP13", programs());
+    // 新しい名前の壊れたファイルは読み飛ばして古いファイルを開く
+    Files.write(directory.resolve(newestName()), new byte[] { 1, 2, 3 });
+
+    assertEquals("JP13", GuideStore.open(directory).get()
+        .getCurrentAreaCode().get());
+  }
+
+  private String newestName() throws Exception {
+    try (val files = Files.list(directory)) {
+      val name = files.findFirst().get().getFileName().toString();
+      // 保存時刻の部分を大きくする
+      return name.replaceFirst("\\d{20}", "99999999999999999999");
+    }
+  }
+}
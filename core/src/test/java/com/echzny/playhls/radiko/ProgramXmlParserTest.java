@@ -0,0 +1,130 @@
+package com.echzny.playhls.radiko;
+
+import lombok.val;
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramXmlParserTest {
+  private static final Channel TBS = new Channel("TBS", "TBSラジオ", "JP13:radiko");
+
+  // 空白・入れ子のタグ・CDATA・文字参照・タグの欠落・休止中の番組
+  private static final String EDGE_CASES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<radiko><stations><station id=\"TBS\"><progs>\n"
+      + "<prog id=\"1\" ft=\"20210201235000\" to=\"20210202010000\">\n"
+      + "  <title>\n  深夜の\t 番組 &amp; <b>特集</b>  </title>\n"
+      + "  <desc><![CDATA[<p>1 行目<br/>\n2 行目 &amp; 3</p>]]></desc>\n"
+      + "  <pfm>  出演者\u3000A\u00a0 B  </pfm>\n"
+      + "  <info>&lt;p&gt;info&lt;/p&gt;</info>\n"
+      + "  <img></img>\n"
+      + "</prog>\n"
+      + "<prog id=\"2\" ft=\"20210202010000\" to=\"20210202050000\">\n"
+      + "  <title>番組休止中</title>\n"
+      + "</prog>\n"
+      + "<prog id=\"3\" ft=\"20210202010000\" to=\"20210202050000\">\n"
+      + "  <title>タグ欠落</title>\n"
+      + "  <desc>" + "長い説明".repeat(100) + "</desc>\n"
+      + "</prog>\n"
+      + "</progs></station></stations></radiko>\n";
+
+  @TempDir Path directory;
+
+  private Radiko radiko;
+
+  @BeforeEach
+  void setUp() {
+    radiko = new Radiko(directory);
+  }
+
+  private List<Program> viaDocument(byte[] xml) {
+    val doc = Jsoup.parse(new String(xml, StandardCharsets.UTF_8), "",
+        Parser.xmlParser());
+
+    return radiko.elementsToProgramList(doc.getElementsByTag("station"), TBS);
+  }
+
+  private List<Program> viaStream(byte[] xml) throws IOException {
+    return radiko.streamToProgramList(new ByteArrayInputStream(xml), TBS);
+  }
+
+  private static List<String> strings(List<Program> programs) {
+    val list = new ArrayList<String>();
+
+    for (val program : programs) {
+      list.add(program + " onAirDate=" + program.getOnAirDate());
+    }
+
+    return list;
+  }
+
+  private static byte[] weekly() throws IOException {
+    try (val in = ProgramXmlParserTest.class
+        .getResourceAsStream("/radiko/weekly-TBS.xml")) {
+      assertNotNull(in, "weekly-TBS.xml");
+      return in.readAllBytes();
+    }
+  }
+
+  @Test
+  void weeklyMatchesDocumentParser() throws IOException {
+    val xml = weekly();
+    val expected = viaDocument(xml);
+    val actual = viaStream(xml);
+
+    // 休止中の 3 件は除く
+    assertEquals(152, expected.size());
+    assertEquals(strings(expected), strings(actual));
+
+    // 24 時以降に始まる番組は前日の放送日（29h 形式）
+    val lateNight = actual.stream()
+        .filter(p -> p.getStart().getHour() < 5)
+        .findFirst().get();
+    assertEquals(lateNight.getStart().toLocalDate().minusDays(1),
+        lateNight.getOnAirDate());
+  }
+
+  @Test
+  void edgeCasesMatchDocumentParser() throws IOException {
+    val xml = EDGE_CASES.getBytes(StandardCharsets.UTF_8);
+    val expected = viaDocument(xml);
+    val actual = viaStream(xml);
+
+    assertEquals(strings(expected), strings(actual));
+    assertEquals(2, actual.size());
+
+    val first = actual.get(0);
+    // title 内の空白はまとめない
+    assertEquals("深夜の\t 番組 & 特集", first.getName());
+    assertEquals("1 行目 2 行目 & 3", first.getSubTitle());
+    // 全角スペースは空白としない
+    assertEquals("出演者\u3000A B", first.getCastMember());
+    assertEquals("1-20210201235000-20210202010000", first.getCode());
+    assertEquals(LocalDateTime.parse("2021-02-01T23:50"), first.getStart());
+    assertEquals(LocalDate.parse("2021-02-01"), first.getOnAirDate());
+
+    val second = actual.get(1);
+    assertEquals(LocalDate.parse("2021-02-01"), second.getOnAirDate());
+    assertEquals(256, second.getSubTitle().length());
+  }
+
+  @Test
+  void normalize() {
+    assertEquals("a b c", ProgramXmlParser.normalize(" \n a \t b  c \r\n"));
+    assertEquals("", ProgramXmlParser.normalize(" \n "));
+    assertEquals("a\u3000b", ProgramXmlParser.normalize("a\u3000b"));
+    assertEquals("a", ProgramXmlParser.normalize("\u000ba "));
+  }
+}
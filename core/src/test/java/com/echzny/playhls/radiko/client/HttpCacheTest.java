@@ -0,0 +1,184 @@
+package com.echzny.playhls.radiko.client;
+
+import com.echzny.playhls.radiko.JsoupSession;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpCacheTest {
+  @TempDir Path directory;
+
+  private HttpServer server;
+  private String url;
+  private volatile String cacheControl;
+  private volatile String etag = "\"v1\"";
+  private volatile String body = "v1";
+  // 受け取った If-None-Match（無ければ "-"）
+  private final List<String> conditions = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/station.xml";
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    val condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+    conditions.add(condition == null ? "-" : condition);
+
+    if (cacheControl != null) {
+      exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+    }
+    exchange.getResponseHeaders().set("ETag", etag);
+
+    if (etag.equals(condition)) {
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+
+    val bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/xml");
+    exchange.sendResponseHeaders(200, bytes.length);
+    exchange.getResponseBody().write(bytes);
+    exchange.close();
+  }
+
+  private static String text(HttpCache.Entry entry) {
+    return new String(entry.getBody(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void freshEntryIsServedWithoutRequest() throws Exception {
+    cacheControl = "max-age=60";
+    val cache = new HttpCache(new JsoupSession(), directory);
+
+    assertEquals("v1", text(cache.get(url)));
+    body = "v2";
+    // 別のインスタンスでもディスクから読む
+    assertEquals("v1", text(new HttpCache(new JsoupSession(), directory).get(url)));
+    assertEquals(List.of("-"), conditions);
+  }
+
+  @Test
+  void staleEntryIsRevalidated() throws Exception {
+    cacheControl = "max-age=0";
+    val cache = new HttpCache(new JsoupSession(), directory);
+
+    assertEquals("v1", text(cache.get(url)));
+    // 304 の場合は保存済みの本文を返す
+    assertEquals("v1", text(cache.get(url)));
+
+    etag = "\"v2\"";
+    body = "v2";
+    assertEquals("v2", text(cache.get(url)));
+    assertEquals(List.of("-", "\"v1\"", "\"v1\""), conditions);
+  }
+
+  @Test
+  void noStoreIsNotCached() throws Exception {
+    cacheControl = "no-store";
+    val cache = new HttpCache(new JsoupSession(), directory);
+
+    assertEquals("v1", text(cache.get(url)));
+    assertEquals("v1", text(cache.get(url)));
+    assertEquals(List.of("-", "-"), conditions);
+  }
+
+  @Test
+  void staleEntryIsServedWhenServerIsDown() throws Exception {
+    cacheControl = "max-age=0";
+    val cache = new HttpCache(new JsoupSession(), directory);
+    assertEquals("v1", text(cache.get(url)));
+
+    server.stop(0);
+    server = null;
+    assertEquals("v1", text(cache.get(url)));
+  }
+
+  @Test
+  void mustRevalidateIsNotServedStale() throws Exception {
+    cacheControl = "max-age=0, must-revalidate";
+    val cache = new HttpCache(new JsoupSession(), directory);
+    assertEquals("v1", text(cache.get(url)));
+
+    server.stop(0);
+    server = null;
+    assertThrows(IOException.class, () -> cache.get(url));
+  }
+
+  private static HttpHeaders headers(Map<String, List<String>> map) {
+    return HttpHeaders.of(map, (name, value) -> true);
+  }
+
+  private static String date(Instant instant) {
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        instant.atOffset(ZoneOffset.UTC));
+  }
+
+  @Test
+  void freshnessFromHeaders() {
+    val now = Instant.parse("2024-04-01T00:00:00Z");
+    val entry = new HttpCache.Entry("http://example.com/", new byte[0], null,
+        null, null, now, Duration.ZERO, false);
+
+    // max-age は Age を差し引く
+    val maxAge = entry.revalidated(headers(Map.of(
+        "Cache-Control", List.of("public, max-age=60"), "Age", List.of("10"))),
+        now);
+    assertTrue(maxAge.isFresh(now.plusSeconds(49)));
+    assertFalse(maxAge.isFresh(now.plusSeconds(50)));
+
+    // Expires は Date からの差
+    val expires = entry.revalidated(headers(Map.of(
+        "Date", List.of(date(now)),
+        "Expires", List.of(date(now.plusSeconds(30))))), now);
+    assertTrue(expires.isFresh(now.plusSeconds(29)));
+    assertFalse(expires.isFresh(now.plusSeconds(30)));
+    assertFalse(entry.revalidated(headers(Map.of(
+        "Expires", List.of("0"))), now).isFresh(now));
+
+    // 鮮度の情報が無ければ Last-Modified からの経過の 10%（上限 1 日）
+    val heuristic = entry.revalidated(headers(Map.of(
+        "Date", List.of(date(now)),
+        "Last-Modified", List.of(date(now.minusSeconds(1000))))), now);
+    assertTrue(heuristic.isFresh(now.plusSeconds(99)));
+    assertFalse(heuristic.isFresh(now.plusSeconds(100)));
+    val capped = entry.revalidated(headers(Map.of(
+        "Date", List.of(date(now)),
+        "Last-Modified", List.of(date(now.minus(Duration.ofDays(365)))))), now);
+    assertFalse(capped.isFresh(now.plus(Duration.ofDays(1))));
+
+    // no-cache は毎回再検証する
+    assertFalse(entry.revalidated(headers(Map.of(
+        "Cache-Control", List.of("no-cache, max-age=60"))), now).isFresh(now));
+  }
+}
@@ -0,0 +1,96 @@
+package com.echzny.playhls.radiko.record;
+
+import com.echzny.playhls.hls.PlaylistFollower;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentPipelineTest {
+  private final Map<URI, CompletableFuture<byte[]>> fetches
+      = new ConcurrentHashMap<>();
+  private final List<String> received = Collections.synchronizedList(
+      new ArrayList<>());
+
+  private SegmentPipeline newPipeline(int maxConcurrentFetches) {
+    return new SegmentPipeline("test", uri -> fetches.computeIfAbsent(uri,
+        key -> new CompletableFuture<>()), maxConcurrentFetches,
+        data -> received.add(new String(data)));
+  }
+
+  private static PlaylistFollower.Segment segment(long sequence) {
+    return new PlaylistFollower.Segment(sequence,
+        URI.create("http://example.com/" + sequence + ".aac"), 5000);
+  }
+
+  private void complete(long sequence) {
+    fetches.get(segment(sequence).getUri())
+        .complete(String.valueOf(sequence).getBytes());
+  }
+
+  @Test
+  void deliversInAppendOrderEvenWhenFetchesFinishOutOfOrder() throws Exception {
+    val pipeline = newPipeline(3);
+
+    for (long i = 1; i <= 3; i++) {
+      pipeline.append(segment(i));
+    }
+
+    complete(3);
+    complete(2);
+    assertTrue(received.isEmpty());
+
+    complete(1);
+    pipeline.drained().get(1, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("1", "2", "3"), received);
+  }
+
+  @Test
+  void limitsConcurrentFetches() {
+    val pipeline = newPipeline(2);
+
+    for (long i = 1; i <= 4; i++) {
+      pipeline.append(segment(i));
+    }
+    assertEquals(2, fetches.size());
+
+    complete(1);
+    assertEquals(3, fetches.size());
+  }
+
+  @Test
+  void skipsFailedSegments() throws Exception {
+    val pipeline = newPipeline(2);
+
+    pipeline.append(segment(1));
+    pipeline.append(segment(2));
+    fetches.get(segment(1).getUri())
+        .completeExceptionally(new IOException("not found"));
+    complete(2);
+
+    pipeline.drained().get(1, TimeUnit.SECONDS);
+    assertEquals(Collections.singletonList("2"), received);
+    assertEquals(1, pipeline.getSkippedSegments());
+  }
+
+  @Test
+  void cancelSkipsPendingSegments() throws Exception {
+    val pipeline = newPipeline(1);
+
+    pipeline.append(segment(1));
+    pipeline.append(segment(2));
+    pipeline.cancel();
+
+    pipeline.drained().get(1, TimeUnit.SECONDS);
+    assertTrue(received.isEmpty());
+    assertEquals(2, pipeline.getSkippedSegments());
+    assertTrue(fetches.get(segment(1).getUri()).isCancelled());
+  }
+}
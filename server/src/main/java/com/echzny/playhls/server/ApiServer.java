@@ -0,0 +1,316 @@
+package com.echzny.playhls.server;
+
+import com.echzny.playhls.Config;
+import com.echzny.playhls.concurrent.Workers;
+import com.echzny.playhls.radiko.BroadcastTime;
+import com.echzny.playhls.radiko.Channel;
+import com.echzny.playhls.radiko.Program;
+import com.echzny.playhls.radiko.Radiko;
+import com.echzny.playhls.radiko.record.RecordScheduler;
+import com.echzny.playhls.radiko.relay.RelayServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 番組表の参照と録音の予約を JSON で提供する HTTP の API
+ * <pre>
+ * GET  /api/channels                       チャンネル一覧（中継・ADTS の URL と放送中の番組を含む）
+ * GET  /api/onair                          全チャンネルの放送中の番組
+ * GET  /api/guide/{channelId}?date=        番組表（date は放送日 yyyy-MM-dd、省略時は今日）
+ * GET  /api/guide/{channelId}?from=&to=    期間（yyyy-MM-ddTHH:mm、日本時間）内の番組
+ * GET  /api/reservations                   開始前・録音中の予約
+ * POST /api/reservations?program=&date=    番組表の番組を予約する
+ * POST /api/reservations?station=&start=&finish=
+ *                                          時刻（yyyy-MM-ddTHH:mm、日本時間）を指定して予約する
+ * </pre>
+ */
+@Slf4j
+public class ApiServer {
+  public static final String PATH = "/api/";
+  private static final DateTimeFormatter FILE_NAME_FORMATTER
+      = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+
+  private final Radiko radiko;
+  private final Path recordDirectory;
+  private final HttpServer server;
+  private final ExecutorService executor = Workers.newExecutor("api");
+
+  /**
+   * コンストラクタ
+   * @param radiko          Radiko のインスタンス
+   * @param recordDirectory 録音したファイルの保存先
+   * @param address         待ち受けるアドレス
+   * @throws IOException
+   */
+  public ApiServer(@NonNull Radiko radiko, @NonNull Path recordDirectory,
+                   @NonNull InetSocketAddress address) throws IOException {
+    this.radiko = radiko;
+    this.recordDirectory = recordDirectory;
+    this.server = HttpServer.create(address, 0);
+    this.server.createContext(PATH, this::handle);
+    this.server.setExecutor(executor);
+  }
+
+  /**
+   * 待ち受けを始める
+   * @return
+   */
+  public ApiServer start() {
+    server.start();
+    log.info("api: http://" + server.getAddress().getHostString()
+        + ":" + server.getAddress().getPort() + PATH);
+
+    return this;
+  }
+
+  /**
+   * 待ち受けをやめる
+   */
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * 待ち受けているポート
+   * @return
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      val method = exchange.getRequestMethod();
+      val path = exchange.getRequestURI().getPath().substring(PATH.length());
+      val query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+      if (path.equals("channels") && method.equals("GET")) {
+        send(exchange, 200, channels(exchange));
+      } else if (path.equals("onair") && method.equals("GET")) {
+        send(exchange, 200, onAir());
+      } else if (path.startsWith("guide/") && method.equals("GET")) {
+        send(exchange, 200, guide(path.substring("guide/".length()), query));
+      } else if (path.equals("reservations") && method.equals("GET")) {
+        send(exchange, 200, reservations());
+      } else if (path.equals("reservations") && method.equals("POST")) {
+        send(exchange, 201, toJson(reserve(query)));
+      } else {
+        send(exchange, 404, error("not found: " + method + " " + path));
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      send(exchange, 400, error(e.getMessage()));
+    } catch (NoSuchElementException e) {
+      send(exchange, 404, error(e.getMessage()));
+    } catch (IOException e) {
+      log.warn("api failed: " + exchange.getRequestURI(), e);
+      send(exchange, 502, error(e.getMessage()));
+    } catch (RuntimeException e) {
+      log.error("api failed: " + exchange.getRequestURI(), e);
+      send(exchange, 500, error(e.getMessage()));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private JSONArray channels(HttpExchange exchange) {
+    // 中継の URL はリクエストされたホスト名で組み立てる（他の端末から参照されるため）
+    val host = Optional.ofNullable(exchange.getRequestHeaders().getFirst("Host"))
+        .map(value -> value.contains(":")
+            ? value.substring(0, value.lastIndexOf(':')) : value)
+        .orElse(server.getAddress().getHostString());
+    val array = new JSONArray();
+
+    val relay = "http://" + host + ":" + Config.RELAY_PORT;
+    // 全チャンネルを同じ時刻で判定する
+    val onAir = radiko.getOnAirPrograms(LocalDateTime.now());
+
+    for (val channel : radiko.getChannelList()) {
+      val program = onAir.get(channel.getId());
+
+      array.put(new JSONObject()
+          .put("id", channel.getId())
+          .put("code", channel.getCode())
+          .put("name", channel.getName())
+          .put("areaId", channel.getAreaId())
+          .put("playable", radiko.isPlayable(channel))
+          .put("relay", relay + RelayServer.PATH + channel.getCode())
+          .put("adts", relay + RelayServer.ADTS_PATH + channel.getCode())
+          .put("onAir", Objects.isNull(program) ? JSONObject.NULL : toJson(program)));
+    }
+
+    return array;
+  }
+
+  private JSONArray onAir() {
+    val array = new JSONArray();
+    val programs = new ArrayList<>(
+        radiko.getOnAirPrograms(LocalDateTime.now()).values());
+    programs.sort(Comparator.comparing(Program::getChannelId));
+
+    for (val program : programs) {
+      array.put(toJson(program));
+    }
+
+    return array;
+  }
+
+  private JSONArray guide(String channelId, Map<String, String> query)
+      throws IOException {
+    val channel = radiko.getChannelById(channelId)
+        .orElseThrow(() -> new NoSuchElementException(
+            "channel not found: " + channelId));
+
+    if (query.containsKey("from") || query.containsKey("to")) {
+      val from = LocalDateTime.parse(required(query, "from"));
+      val to = LocalDateTime.parse(required(query, "to"));
+      val array = new JSONArray();
+
+      for (val program : radiko.getStoredProgramList(channel, from, to)) {
+        array.put(toJson(program));
+      }
+
+      return array;
+    }
+
+    val date = query.containsKey("date") ? LocalDate.parse(query.get("date"))
+        : BroadcastTime.broadcastDate(Instant.now().getEpochSecond());
+    val array = new JSONArray();
+
+    for (val program : programsOf(channel, date)) {
+      array.put(toJson(program));
+    }
+
+    return array;
+  }
+
+  /**
+   * 保存してある番組表を優先し、無ければ取得する
+   */
+  private List<Program> programsOf(Channel channel, LocalDate date)
+      throws IOException {
+    val stored = radiko.getStoredProgramList(channel, date);
+
+    return stored.isEmpty()
+        ? radiko.getProgramListOfOneDay(channel, date) : stored;
+  }
+
+  private JSONArray reservations() {
+    val array = new JSONArray();
+
+    for (val reservation : radiko.getRecordScheduler().getPendingReservations()) {
+      array.put(toJson(reservation));
+    }
+
+    return array;
+  }
+
+  private RecordScheduler.Reservation reserve(Map<String, String> query)
+      throws IOException {
+    if (query.containsKey("program")) {
+      val id = query.get("program");
+      val date = LocalDate.parse(required(query, "date"));
+      val program = radiko.getStoredProgramList(date).stream()
+          .filter(p -> p.getId().equals(id))
+          .findFirst()
+          .orElseThrow(() -> new NoSuchElementException(
+              "program not found: " + id));
+
+      return radiko.reserve(program, targetOf(program.getChannelCode(),
+          program.getStart()));
+    }
+
+    val stationId = required(query, "station");
+    val start = LocalDateTime.parse(required(query, "start"));
+    val finish = LocalDateTime.parse(required(query, "finish"));
+
+    return radiko.getRecordScheduler().reserve(stationId,
+        start.toInstant(BroadcastTime.JST), finish.toInstant(BroadcastTime.JST),
+        targetOf(stationId, start));
+  }
+
+  private Path targetOf(String stationId, LocalDateTime start) {
+    return recordDirectory.resolve(
+        stationId + "_" + start.format(FILE_NAME_FORMATTER) + ".aac");
+  }
+
+  private JSONObject toJson(Program program) {
+    return new JSONObject()
+        .put("id", program.getId())
+        .put("channelId", program.getChannelId())
+        .put("name", program.getName())
+        .put("castMember", program.getCastMember())
+        .put("start", Objects.toString(program.getStart(), null))
+        .put("finish", Objects.toString(program.getFinish(), null))
+        .put("recordable", radiko.isRecordable(program));
+  }
+
+  private JSONObject toJson(RecordScheduler.Reservation reservation) {
+    return new JSONObject()
+        .put("station", reservation.getStationId())
+        .put("start", reservation.getStart().toString())
+        .put("finish", reservation.getFinish().toString())
+        .put("target", reservation.getTarget().toString())
+        .put("state", reservation.getState().name());
+  }
+
+  private static JSONObject error(String message) {
+    return new JSONObject().put("error", String.valueOf(message));
+  }
+
+  private static String required(Map<String, String> query, String name) {
+    val value = query.get(name);
+
+    if (Objects.isNull(value) || value.isEmpty()) {
+      throw new IllegalArgumentException(name + " is required");
+    }
+
+    return value;
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    val query = new HashMap<String, String>();
+
+    if (Objects.isNull(rawQuery)) {
+      return query;
+    }
+
+    for (val pair : rawQuery.split("&")) {
+      val eq = pair.indexOf('=');
+      val name = eq < 0 ? pair : pair.substring(0, eq);
+      val value = eq < 0 ? "" : pair.substring(eq + 1);
+
+      query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+
+    return query;
+  }
+
+  private static void send(HttpExchange exchange, int status, Object json)
+      throws IOException {
+    val body = json.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type",
+        "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+  }
+}
@@ -0,0 +1,55 @@
+package com.echzny.playhls.server;
+
+import com.echzny.playhls.Config;
+import com.echzny.playhls.RadioProxySelector;
+import com.echzny.playhls.radiko.Radiko;
+import com.echzny.playhls.radiko.Util;
+import com.echzny.playhls.radiko.relay.RelayServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.nio.file.Paths;
+
+/**
+ * UI を使わずに起動するランチャー
+ * プロキシ・放送の中継・番組表と録音予約の API を起動する
+ * 引数に録音したファイルの保存先を指定できる（省略時はアプリケーションデータ内の recordings）
+ */
+@Slf4j
+public class PlayHLSServer {
+  @Getter private static RadioProxySelector radioProxySelector;
+
+  public static void main(String[] args) {
+    try {
+      radioProxySelector = new RadioProxySelector();
+      ProxySelector.setDefault(radioProxySelector);
+
+      val radiko = new Radiko();
+      radiko.init();
+      radioProxySelector.attach(radiko.getClient());
+      radiko.getClient().getTokens().getTokenAsync();
+
+      val recordDirectory = args.length > 0
+          ? Paths.get(args[0]) : Util.getDataPath("recordings");
+      // 中継は他の端末から聴けるよう全てのインターフェースで、API はループバックのみで待ち受ける
+      val relay = new RelayServer(radiko.getStationRelay(),
+          new InetSocketAddress(Config.RELAY_PORT)).start();
+      val api = new ApiServer(radiko, recordDirectory,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(),
+              Config.API_PORT)).start();
+
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        api.stop();
+        relay.stop();
+      }, "shutdown"));
+      log.info("recordings: " + recordDirectory.toAbsolutePath());
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+      System.exit(1);
+    }
+  }
+}
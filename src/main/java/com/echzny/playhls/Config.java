@@ -1,11 +0,0 @@
-package com.echzny.playhls;
-
-public class Config {
-  public static final int PROXY_PORT = 3000;
-  /*public static final String HOST_NAME = "radio-stream.nhk.jp";
-  public static final String HLS_URL =
-      "http://" + HOST_NAME + "/hls/live/2023545/nhkradiruikr1/master.m3u8";*/
-  public static final String HOST_NAME = "f-radiko.smartstream.ne.jp";
-  public static final String HLS_URL =
-      "http://" + HOST_NAME + "/TBS/_definst_/simul-stream.stream/playlist.m3u8";
-}